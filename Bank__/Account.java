@@ -1,3 +1,8 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongUnaryOperator;
+
 /**
  * An abstract representation of a bank account, providing core functionalities 
  * such as deposits, withdrawals, transfers, and account information retrieval.
@@ -7,32 +12,146 @@
  * as well as methods for managing account transactions. This class is intended to be 
  * extended by specific account types such as checking and savings accounts.
  * </p>
+ *
+ * <p>
+ * All balances and amounts are whole numbers of cents; see {@link Money}.
+ * </p>
+ *
+ * <p>
+ * Accounts are safe to use from many threads, and every balance change checks its
+ * rule and applies the change as one atomic step. The {@code bank.concurrency} system
+ * property selects how:
+ * </p>
+ * <ul>
+ *   <li>{@code lockfree} (the default): the balance is updated with a
+ *       compare-and-set loop through a {@link VarHandle}; deposits and withdrawals
+ *       never take a lock.</li>
+ *   <li>{@code locked}: the balance is updated under the account's
+ *       {@link AccountLocks} stripe.</li>
+ * </ul>
+ * <p>
+ * In both modes a transfer locks both accounts in a global order, so it cannot
+ * deadlock, and no other transfer touching either account sees it half made. In both
+ * modes reading the balance is a plain volatile load, with no lock. A reader summing
+ * many balances while transfers run, such as {@link AccountStore#totalBalance()} or a
+ * {@link CsvCheckpointer}, may therefore see an amount already taken from one account
+ * but not yet added to the other; each balance it reads is a real one, and the amount
+ * in flight is found in the target once the transfer returns. Exact, consistent
+ * snapshots come from the journal, through the {@link JournalCheckpointer}.
+ * </p>
+ *
+ * <p>
+ * The balance itself is not a field of the account: it lives in the shared
+ * {@link AccountStore}, next to the balances of every other account, at the slot the
+ * account was given when it was created. The account keeps a reference to the page of
+ * the store holding that slot and updates its element atomically, whether the page is
+ * an array on the heap or a page of a {@link LedgerFile} with {@code -Dbank.ledger=mapped}.
+ * </p>
+ *
+ * <p>
+ * Every successful balance change marks the account as changed. The first change since
+ * the account was last saved hands the account to the {@link ChangeTracker}, so saving
+ * the bank only has to visit the accounts that actually changed.
+ * </p>
  * 
  * @author [Jose Luis Hernandez]
  * @version 1.4
  */
 public abstract class Account {
 
+    /**
+     * {@code true} when balances are updated with compare-and-set instead of striped locks.
+     */
+    static final boolean LOCK_FREE = !"locked".equalsIgnoreCase(System.getProperty("bank.concurrency"));
+
+    /**
+     * Returned instead of a new balance by the operations that did not change it. No
+     * balance can reach this value, as every change is checked for overflow.
+     */
+    static final long REJECTED = Long.MIN_VALUE;
+
+    /**
+     * The message shown when a deposit is rejected.
+     */
+    static final String DEPOSIT_FAILED = "Invalid deposit amount.";
+
+    /**
+     * The message shown when a transfer is rejected.
+     */
+    static final String TRANSFER_FAILED = "Transfer failed. Check the amount.";
+
+    /**
+     * Atomic access to the {@code changed} field.
+     */
+    private static final VarHandle CHANGED;
+
+    static {
+        try {
+            CHANGED = MethodHandles.lookup().findVarHandle(Account.class, "changed", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
      * The unique account number associated with this account.
      */
     protected int accountNumber;
 
     /**
-     * The current balance of the account.
+     * The slot of this account in the {@link AccountStore}.
+     */
+    private final int slot;
+
+    /**
+     * The page of the store's balance column holding this account's balance, in cents:
+     * a {@code long[]}, or a mapped buffer with {@code -Dbank.ledger=mapped}.
+     * Only changed through the atomic update methods of this class.
      */
-    protected double balance;
+    private final Object balances;
+
+    /**
+     * The position of this account's balance within {@code balances}.
+     */
+    private final int index;
+
+    /**
+     * {@code true} when the balance has changed since the account was last saved.
+     */
+    private volatile boolean changed;
 
     /**
      * Constructs a new {@code Account} with the specified account number 
      * and initial balance.
      * 
      * @param accountNumber The unique number associated with this account.
-     * @param balance       The initial balance of the account.
+     * @param balance       The initial balance of the account, in cents.
      */
-    public Account(int accountNumber, double balance) {
+    @SuppressWarnings("this-escape")  // The store only keeps the reference
+    public Account(int accountNumber, long balance) {
+        // Subclasses that pass no type are registered under their class name
         this.accountNumber = accountNumber;
-        this.balance = balance;
+        this.slot = AccountStore.ACCOUNTS.add(this, accountNumber, (byte) AccountType.of(getClass()).getId(),
+                balance, 0);
+        this.balances = AccountStore.ACCOUNTS.balancePageFor(slot);
+        this.index = slot & AccountStore.PAGE_MASK;
+    }
+
+    /**
+     * Constructs a new {@code Account} of a known type, adding it to the
+     * {@link AccountStore}.
+     *
+     * @param accountNumber The unique number associated with this account.
+     * @param type          The type of the account, such as {@link AccountType#CHECKING}.
+     * @param balance       The initial balance of the account, in cents.
+     * @param creditLimit   The credit limit in cents, or 0 for accounts without credit.
+     */
+    @SuppressWarnings("this-escape")  // The store only keeps the reference
+    protected Account(int accountNumber, AccountType type, long balance, long creditLimit) {
+        this.accountNumber = accountNumber;
+        this.slot = AccountStore.ACCOUNTS.add(this, accountNumber, (byte) type.getId(), balance, creditLimit);
+        this.balances = AccountStore.ACCOUNTS.balancePageFor(slot);
+        this.index = slot & AccountStore.PAGE_MASK;
     }
 
     /**
@@ -47,72 +166,383 @@ public abstract class Account {
     /**
      * Returns the current balance of this account.
      * 
-     * @return The balance of the account.
+     * @return The balance of the account, in cents.
+     */
+    public long getBalance() {
+        return AccountStore.getBalance(balances, index);
+    }
+
+    /**
+     * Returns the slot of this account in the {@link AccountStore}.
+     *
+     * @return The slot number.
      */
-    public double getBalance() {
-        return balance;
+    public int getSlot() {
+        return slot;
     }
 
     /**
      * Deposits a specified amount into the account.
      * 
-     * @param amount The amount to be deposited. Must be greater than 0.
+     * @param amount The amount to be deposited, in cents. Must be greater than 0
+     *               and must not overflow the balance.
+     * @return {@code true} if the deposit was made; otherwise nothing was changed.
      */
-    public void deposit(double amount) {
-        if (amount > 0) {
-            balance += amount;
-        } else {
-            System.out.println("Invalid deposit amount.");
-        }
+    public boolean deposit(long amount) {
+        return tryDeposit(amount) != REJECTED;
     }
 
     /**
      * Withdraws a specified amount from the account if it is valid.
      * 
-     * @param amount The amount to be withdrawn. Must be greater than 0 and 
+     * @param amount The amount to be withdrawn, in cents. Must be greater than 0 and 
      *               less than or equal to the current balance.
+     * @return {@code true} if the withdrawal was made; otherwise nothing was changed.
      */
-    public void withdraw(double amount) {
-        if (amount > 0 && amount <= balance) {
-            balance -= amount;
-        } else {
-            System.out.println("Invalid withdrawal amount.");
-        }
+    public boolean withdraw(long amount) {
+        return tryWithdraw(amount, minimumBalance()) != REJECTED;
     }
 
     /**
      * Transfers a specified amount from this account to a target account if valid.
      * 
      * @param targetAccount The account to which the money is to be transferred.
-     * @param amount        The amount to be transferred. Must be greater than 0 
+     * @param amount        The amount to be transferred, in cents. Must be greater than 0 
      *                      and less than or equal to the current balance.
+     * @return {@code true} if the transfer was made; otherwise nothing was changed.
+     */
+    public boolean transfer(Account targetAccount, long amount) {
+        return tryTransfer(targetAccount, amount, null, 0) != REJECTED;
+    }
+
+    /**
+     * Transfers an amount to a target account; the account may not be this one.
+     *
+     * @param targetAccount The account to which the money is to be transferred.
+     * @param amount        The amount to be transferred, in cents.
+     * @param targetBalance Receives the new balance of the target account at {@code at},
+     *                      if the transfer was made; may be {@code null}.
+     * @param at            The position in {@code targetBalance} to store it at.
+     * @return The new balance of this account, in cents, or {@link #REJECTED}.
+     */
+    final long tryTransfer(Account targetAccount, long amount, long[] targetBalance, int at) {
+        return targetAccount != this ? moveTo(targetAccount, amount, 0, targetBalance, at) : REJECTED;
+    }
+
+    /**
+     * Returns the lowest balance a withdrawal may leave in this account.
+     *
+     * @return The minimum balance, in cents. 0 unless overridden.
+     */
+    protected long minimumBalance() {
+        return 0;
+    }
+
+    /**
+     * Returns the message shown when a withdrawal from this account is rejected.
+     *
+     * @return The failure message.
+     */
+    String withdrawalFailure() {
+        return "Invalid withdrawal amount.";
+    }
+
+    /**
+     * Atomically adds an amount to the balance if it is positive and does not overflow.
+     *
+     * @param amount The amount to be deposited, in cents.
+     * @return The balance the deposit left, in cents, or {@link #REJECTED} if the balance
+     *         was not changed.
      */
-    public void transfer(Account targetAccount, double amount) {
-        if (amount > 0 && amount <= balance) {
-            withdraw(amount);
-            targetAccount.deposit(amount);
-        } else {
-            System.out.println("Transfer failed. Check the amount.");
+    final long tryDeposit(long amount) {
+        if (amount <= 0) {
+            return REJECTED;
+        }
+        if (LOCK_FREE) {
+            long current;
+            do {
+                current = getBalance();
+                if (current > Long.MAX_VALUE - amount) {
+                    return REJECTED;
+                }
+            } while (!AccountStore.weakCompareAndSetBalance(balances, index, current, current + amount));
+            markChanged();
+            return current + amount;
+        }
+
+        ReentrantLock lock = AccountLocks.lockFor(accountNumber);
+        lock.lock();
+        try {
+            return applyDeposit(amount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically subtracts an amount from the balance if it is positive and the
+     * resulting balance stays at or above the given floor.
+     *
+     * @param amount The amount to be withdrawn, in cents.
+     * @param floor  The lowest balance the withdrawal may leave, in cents.
+     * @return The balance the withdrawal left, in cents, or {@link #REJECTED} if the
+     *         balance was not changed.
+     */
+    final long tryWithdraw(long amount, long floor) {
+        if (amount <= 0) {
+            return REJECTED;
+        }
+        if (LOCK_FREE) {
+            long current;
+            long next;
+            do {
+                current = getBalance();
+                next = current - amount;
+                if (next > current || next < floor) {  // Underflow or below the floor
+                    return REJECTED;
+                }
+            } while (!AccountStore.weakCompareAndSetBalance(balances, index, current, next));
+            markChanged();
+            return next;
+        }
+
+        ReentrantLock lock = AccountLocks.lockFor(accountNumber);
+        lock.lock();
+        try {
+            return applyWithdraw(amount, floor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves an amount from this account to a target account, holding the locks of both.
+     * The withdrawal follows the given floor; if the target cannot take the amount,
+     * nothing is moved.
+     *
+     * @param target        The account receiving the amount. Must not be this account.
+     * @param amount        The amount to move, in cents.
+     * @param floor         The lowest balance the move may leave in this account, in cents.
+     * @param targetBalance Receives the new balance of the target at {@code at}, if the
+     *                      amount was moved; may be {@code null}.
+     * @param at            The position in {@code targetBalance} to store it at.
+     * @return The new balance of this account, in cents, or {@link #REJECTED} if nothing
+     *         was moved.
+     */
+    final long moveTo(Account target, long amount, long floor, long[] targetBalance, int at) {
+        AccountLocks.lockBoth(accountNumber, target.accountNumber);
+        try {
+            if (amount <= 0 || target.getBalance() > Long.MAX_VALUE - amount) {
+                return REJECTED;
+            }
+            if (LOCK_FREE) {
+                // Other transfers wait for the locks; single-account changes still race the CAS
+                long balance = tryWithdraw(amount, floor);
+                if (balance == REJECTED) {
+                    return REJECTED;
+                }
+                long received = target.tryDeposit(amount);
+                if (received == REJECTED) {  // A concurrent deposit left no room after the check
+                    AccountStore.getAndAddBalance(balances, index, amount);  // Give the amount back
+                    markChanged();
+                    return REJECTED;
+                }
+                if (targetBalance != null) {
+                    targetBalance[at] = received;
+                }
+                return balance;
+            }
+
+            long balance = applyWithdraw(amount, floor);
+            if (balance == REJECTED) {
+                return REJECTED;
+            }
+            long received = target.applyDeposit(amount);
+            if (targetBalance != null) {
+                targetBalance[at] = received;
+            }
+            return balance;
+        } finally {
+            AccountLocks.unlockBoth(accountNumber, target.accountNumber);
         }
     }
 
+    /**
+     * Atomically replaces the balance with the result of applying a function to it.
+     * The function may be called more than once and must not have side effects.
+     *
+     * @param update The function computing the new balance from the current one.
+     * @return The new balance, in cents.
+     */
+    protected final long updateBalance(LongUnaryOperator update) {
+        if (LOCK_FREE) {
+            long current;
+            long next;
+            do {
+                current = getBalance();
+                next = update.applyAsLong(current);
+            } while (!AccountStore.weakCompareAndSetBalance(balances, index, current, next));
+            markChanged();
+            return next;
+        }
+
+        ReentrantLock lock = AccountLocks.lockFor(accountNumber);
+        lock.lock();
+        try {
+            long next = update.applyAsLong(getBalance());
+            AccountStore.setBalance(balances, index, next);
+            markChanged();
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically adds to the balance a change computed from the current balance, such as
+     * interest. The function may be called more than once and must not have side effects.
+     *
+     * @param change The function computing the change from the current balance, in cents.
+     * @return The change that was added, in cents; 0 if nothing was changed.
+     */
+    final long addChange(LongUnaryOperator change) {
+        if (LOCK_FREE) {
+            long current;
+            long delta;
+            do {
+                current = getBalance();
+                delta = change.applyAsLong(current);
+                if (delta == 0) {
+                    return 0;
+                }
+            } while (!AccountStore.weakCompareAndSetBalance(balances, index, current, Math.addExact(current, delta)));
+            markChanged();
+            return delta;
+        }
+
+        ReentrantLock lock = AccountLocks.lockFor(accountNumber);
+        lock.lock();
+        try {
+            long current = getBalance();
+            long delta = change.applyAsLong(current);
+            if (delta != 0) {
+                AccountStore.setBalance(balances, index, Math.addExact(current, delta));
+                markChanged();
+            }
+            return delta;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the balance to a value recovered from a snapshot, without any checks.
+     * Only for crash recovery, before the account is used by any other thread.
+     *
+     * @param value The recovered balance, in cents.
+     */
+    final void restoreBalance(long value) {
+        AccountStore.setBalance(balances, index, value);
+        markChanged();
+    }
+
+    /**
+     * Adds a change replayed from the journal to the balance, without any checks:
+     * the change was already checked when it was first made. Only for crash recovery,
+     * before the account is used by any other thread.
+     *
+     * @param delta The signed change, in cents.
+     */
+    final void replayChange(long delta) {
+        AccountStore.getAndAddBalance(balances, index, delta);
+        markChanged();
+    }
+
+    /**
+     * Adds an amount to the balance. The caller must hold the account's lock.
+     *
+     * @return The new balance, or {@link #REJECTED}.
+     */
+    private long applyDeposit(long amount) {
+        long current = getBalance();
+        if (current > Long.MAX_VALUE - amount) {
+            return REJECTED;
+        }
+        AccountStore.setBalance(balances, index, current + amount);
+        markChanged();
+        return current + amount;
+    }
+
+    /**
+     * Subtracts an amount from the balance. The caller must hold the account's lock.
+     *
+     * @return The new balance, or {@link #REJECTED}.
+     */
+    private long applyWithdraw(long amount, long floor) {
+        long current = getBalance();
+        long next = current - amount;
+        if (next > current || next < floor) {
+            return REJECTED;
+        }
+        AccountStore.setBalance(balances, index, next);
+        markChanged();
+        return next;
+    }
+
+    /**
+     * Marks the account as changed, handing it to the {@link ChangeTracker} on the
+     * first change since it was last saved, and lets a mapped ledger force the change
+     * to disk. Must be called after the balance is written.
+     */
+    private void markChanged() {
+        AccountStore.ACCOUNTS.balanceWritten(balances, index);
+        if (!changed && CHANGED.compareAndSet(this, false, true)) {
+            ChangeTracker.accountChanged(this);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the balance has changed since the account was last saved.
+     *
+     * @return Whether the account is marked as changed.
+     */
+    final boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Clears the changed mark before the account is saved. A change made after this
+     * call marks the account again, so it is never missed by the next save.
+     */
+    final void clearChanged() {
+        changed = false;
+    }
+
     /**
      * Returns a string containing the account details.
      * 
      * @return A string with the account number and current balance.
      */
     public String getAccountDetails() {
-        return "Account Number: " + accountNumber + ", Balance: " + balance;
+        return "Account Number: " + accountNumber + ", Balance: " + Money.toString(getBalance());
+    }
+
+    /**
+     * Returns the type of this account, read from its type tag in the {@link AccountStore}.
+     *
+     * @return The registered type, such as {@link AccountType#CHECKING}.
+     */
+    public AccountType getType() {
+        return AccountType.byId(AccountStore.ACCOUNTS.getType(slot));
     }
 
     /**
      * Returns a string containing account type
      * 
-     * @return A string with account type 
+     * @return A string with account type, the cached name of its {@link AccountType}
      */
-
     public String getAccountType(){
-       return this.getClass().getSimpleName();
+       return getType().getName();
     }
 }
 
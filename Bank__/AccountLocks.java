@@ -0,0 +1,146 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks that guard account balances.
+ *
+ * <p>
+ * Rather than one lock per account or one lock for the whole bank, the
+ * {@code AccountLocks} class keeps a fixed array of locks and maps every account
+ * number onto one of them. Operations on different accounts almost always take
+ * different locks and run in parallel, while memory use stays constant no matter
+ * how many accounts exist.
+ * </p>
+ *
+ * <p>
+ * Operations that touch two accounts take both locks through {@link #lockBoth(int, int)},
+ * which always acquires the lower-numbered stripe first. Because every thread acquires
+ * stripes in the same global order, two opposing transfers can never deadlock.
+ * The locks are reentrant, so a locked operation may call another operation on
+ * the same account.
+ * </p>
+ *
+ * @see Account
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class AccountLocks {
+
+    /**
+     * The locks, one per stripe. The length is a power of two.
+     */
+    private static final ReentrantLock[] STRIPES = createStripes(Integer.getInteger("bank.lock.stripes", 1024));
+
+    /**
+     * Prevents instantiation; this class only has static methods.
+     */
+    private AccountLocks() {
+    }
+
+    /**
+     * Returns the stripe index an account number maps to.
+     *
+     * @param accountNumber The account number.
+     * @return The stripe index.
+     */
+    public static int stripeOf(int accountNumber) {
+        int h = accountNumber * 0x9E3779B9;  // Spread sequential account numbers
+        return (h ^ (h >>> 16)) & (STRIPES.length - 1);
+    }
+
+    /**
+     * Returns the lock that guards an account.
+     *
+     * @param accountNumber The account number.
+     * @return The lock for the account's stripe.
+     */
+    public static ReentrantLock lockFor(int accountNumber) {
+        return STRIPES[stripeOf(accountNumber)];
+    }
+
+    /**
+     * Acquires the locks for two accounts in global stripe order.
+     * Must be paired with {@link #unlockBoth(int, int)} in a {@code finally} block.
+     *
+     * @param first  The first account number.
+     * @param second The second account number.
+     */
+    public static void lockBoth(int first, int second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        STRIPES[Math.min(a, b)].lock();
+        if (a != b) {
+            STRIPES[Math.max(a, b)].lock();
+        }
+    }
+
+    /**
+     * Releases the locks acquired by {@link #lockBoth(int, int)}.
+     *
+     * @param first  The first account number.
+     * @param second The second account number.
+     */
+    public static void unlockBoth(int first, int second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        if (a != b) {
+            STRIPES[Math.max(a, b)].unlock();
+        }
+        STRIPES[Math.min(a, b)].unlock();
+    }
+
+    /**
+     * Acquires the locks of many accounts at once, each stripe once and in global stripe
+     * order, so a batch of operations pays for each lock once. The account numbers are
+     * replaced by the sorted stripes that were locked. Must be paired with
+     * {@link #unlockAll(int[], int)} in a {@code finally} block.
+     *
+     * @param accountNumbers The account numbers; overwritten with the locked stripes.
+     * @param count          The number of account numbers.
+     * @return The number of stripes locked.
+     */
+    public static int lockAll(int[] accountNumbers, int count) {
+        for (int i = 0; i < count; i++) {
+            accountNumbers[i] = stripeOf(accountNumbers[i]);
+        }
+        Arrays.sort(accountNumbers, 0, count);
+        int stripes = 0;
+        for (int i = 0; i < count; i++) {
+            if (stripes == 0 || accountNumbers[i] != accountNumbers[stripes - 1]) {
+                accountNumbers[stripes++] = accountNumbers[i];
+            }
+        }
+        for (int i = 0; i < stripes; i++) {
+            STRIPES[accountNumbers[i]].lock();
+        }
+        return stripes;
+    }
+
+    /**
+     * Releases the locks acquired by {@link #lockAll(int[], int)}.
+     *
+     * @param stripes The stripes returned in the array by {@code lockAll}.
+     * @param count   The number of stripes {@code lockAll} returned.
+     */
+    public static void unlockAll(int[] stripes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            STRIPES[stripes[i]].unlock();
+        }
+    }
+
+    /**
+     * Creates the stripe array, rounding the requested count up to a power of two.
+     *
+     * @param requested The requested number of stripes.
+     * @return The lock array.
+     */
+    private static ReentrantLock[] createStripes(int requested) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(requested, 1 << 20)) * 2 - 1);
+        ReentrantLock[] stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        return stripes;
+    }
+}
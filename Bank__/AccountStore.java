@@ -0,0 +1,811 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A columnar store holding the data of every account in parallel primitive arrays.
+ *
+ * <p>
+ * Each account is given a dense slot number when it is created, and its account number,
+ * type, balance and credit limit are kept at that slot in four separate columns. An
+ * {@link Account} object is only a view that remembers its slot; its balance lives here,
+ * and a fifth column maps each slot back to its view.
+ * Bank-wide passes such as totals or interest therefore read one or two columns
+ * sequentially instead of following a pointer from every customer to every account,
+ * so they run at memory bandwidth rather than at the speed of cache misses.
+ * </p>
+ *
+ * <p>
+ * The columns are split into fixed-size pages of {@value #PAGE_SIZE} slots. Pages are
+ * allocated as slots are handed out and never move, so accounts can be created from
+ * many threads at once and a balance can be updated atomically with a compare-and-set
+ * on its array element while new pages are being added. Scans read the balances
+ * without synchronization; while other threads are changing balances, the result of a
+ * scan is not a consistent snapshot of the bank.
+ * </p>
+ *
+ * <p>
+ * With {@code -Dbank.ledger=mapped} the number, type, balance and limit columns of a
+ * page are one region of a {@link LedgerFile} mapped into memory instead of four arrays,
+ * so every balance change is written through to the file, and balances are updated
+ * atomically through a {@link VarHandle} view of the region. The accounts work the same
+ * either way; only the account column, which refers to the {@link Account} objects,
+ * stays on the heap. When the store is opened on a file that already holds accounts,
+ * an account added with the number and type of one of them takes over its slot and
+ * keeps the balance in the file. If the file cannot be opened, the pages are direct
+ * buffers of the same layout.
+ * </p>
+ *
+ * <p>
+ * With {@code -Dbank.ledger=offheap} the same four columns live in native memory
+ * segments of the {@link OffHeapLedger} instead, with nothing written to a file. The
+ * heap then holds only the account column and the {@link Account} views it refers to.
+ * </p>
+ *
+ * @see Account
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class AccountStore {
+
+    /**
+     * The type tag no account has; every account is tagged with its {@link AccountType} ID.
+     */
+    static final byte OTHER = 0;
+
+    /**
+     * The type tag of a {@link Checking} account.
+     */
+    static final byte CHECKING = 1;
+
+    /**
+     * The type tag of a {@link Saving} account.
+     */
+    static final byte SAVING = 2;
+
+    /**
+     * The type tag of a {@link Credit} account.
+     */
+    static final byte CREDIT = 3;
+
+    /**
+     * The number of bits of a slot number that select the position within a page.
+     */
+    static final int PAGE_BITS = 16;
+
+    /**
+     * The number of slots in one page.
+     */
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * The mask selecting the position within a page from a slot number.
+     */
+    static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * {@code true} when the ledger pages are mapped from a {@link LedgerFile}.
+     */
+    static final boolean MAPPED = "mapped".equalsIgnoreCase(System.getProperty("bank.ledger"));
+
+    /**
+     * {@code true} when the pages are native memory segments of the {@link OffHeapLedger},
+     * with {@code -Dbank.ledger=offheap} on a JVM running with {@code --enable-preview}.
+     */
+    static final boolean OFF_HEAP = "offheap".equalsIgnoreCase(System.getProperty("bank.ledger"))
+            && offHeapAvailable();
+
+    // The layout of an off-heap page: the balance and limit columns, then the numbers and types
+    static final int LEDGER_LIMITS = PAGE_SIZE * 8;
+    static final int LEDGER_NUMBERS = PAGE_SIZE * 16;
+    static final int LEDGER_TYPES = PAGE_SIZE * 20;
+
+    /**
+     * The size of an off-heap page, in bytes.
+     */
+    static final int LEDGER_PAGE_BYTES = PAGE_SIZE * 21;
+
+    /**
+     * Atomic access to the elements of a balance page.
+     */
+    static final VarHandle BALANCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Atomic access to the balances of an off-heap page, at eight bytes per slot.
+     */
+    private static final VarHandle LEDGER_BALANCES = MethodHandles.byteBufferViewVarHandle(long[].class,
+            LedgerFile.ORDER);
+
+    /**
+     * The store shared by all accounts of the bank.
+     */
+    static final AccountStore ACCOUNTS = new AccountStore();
+
+    /**
+     * The pages of the columns. Replaced by a larger copy when a page is added;
+     * existing pages are shared by every copy and never move. In a mapped ledger the
+     * number, type, balance and limit pages are null and the ledger pages hold them;
+     * off the heap, the segment pages hold them.
+     */
+    static final class Pages {
+        final int[][] numbers;
+        final byte[][] types;
+        final long[][] balances;
+        final long[][] limits;
+        final ByteBuffer[] ledgers;
+        final Object[] segments;
+        final Account[][] accounts;
+
+        Pages(int count) {
+            numbers = new int[count][];
+            types = new byte[count][];
+            balances = new long[count][];
+            limits = new long[count][];
+            ledgers = new ByteBuffer[count];
+            segments = new Object[count];
+            accounts = new Account[count][];
+        }
+    }
+
+    /**
+     * The current pages.
+     */
+    private volatile Pages pages = new Pages(0);
+
+    /**
+     * The number of slots handed out.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * The file the ledger pages are mapped from, or {@code null} if they are not.
+     * Set before any account is added.
+     */
+    private LedgerFile ledgerFile;
+
+    /**
+     * The slots of the accounts found in the ledger file that no account has taken
+     * over yet, by account number; {@code null} once they are released.
+     */
+    private IntHashIndex<Integer> persisted;
+
+    /**
+     * The slots given back with {@link #free}, handed out again before new ones. The
+     * first {@link #freeCount} are in use. Guarded by this store's monitor.
+     */
+    private int[] freeSlots = new int[16];
+
+    /**
+     * The number of free slots, read without the monitor to skip it when there are none.
+     */
+    private volatile int freeCount;
+
+    /**
+     * Constructs a new, empty {@code AccountStore}.
+     */
+    AccountStore() {
+    }
+
+    /**
+     * Returns whether the {@link OffHeapLedger} can be loaded, which needs a JVM running
+     * with {@code --enable-preview}; if not, says so and keeps the pages on the heap.
+     */
+    private static boolean offHeapAvailable() {
+        try {
+            Class.forName("OffHeapLedger");
+            return true;
+        } catch (ClassNotFoundException | UnsupportedClassVersionError e) {
+            System.err.println("The offheap ledger needs java --enable-preview, balances are kept on the heap.");
+            return false;
+        }
+    }
+
+    /**
+     * Adds an account to the store.
+     *
+     * @param account       The account viewing the new slot.
+     * @param accountNumber The account number.
+     * @param type          The type tag of the account.
+     * @param balance       The starting balance, in cents; ignored when the account
+     *                      takes over a slot found in the ledger file.
+     * @param creditLimit   The credit limit in cents, or 0 for accounts without credit.
+     * @return The slot number of the account.
+     */
+    int add(Account account, int accountNumber, byte type, long balance, long creditLimit) {
+        if (persisted != null) {
+            int slot = takeOver(account, accountNumber, type, creditLimit);
+            if (slot >= 0) {
+                return slot;
+            }
+        }
+        int slot = freeCount > 0 ? reuse() : -1;
+        if (slot < 0) {
+            slot = size.getAndIncrement();
+            if (slot < 0) {
+                size.decrementAndGet();
+                throw new IllegalStateException("Account store is full.");
+            }
+        }
+        Pages current = pageFor(slot);
+        int page = slot >>> PAGE_BITS;
+        int index = slot & PAGE_MASK;
+        current.accounts[page][index] = account;
+        if (OFF_HEAP) {
+            OffHeapLedger.add(current.segments[page], index, accountNumber, type, balance, creditLimit);
+            return slot;
+        }
+        if (MAPPED) {
+            ByteBuffer ledger = current.ledgers[page];
+            ledger.putInt(LEDGER_NUMBERS + (index << 2), accountNumber);
+            ledger.putLong(LEDGER_LIMITS + (index << 3), creditLimit);
+            LEDGER_BALANCES.setVolatile(ledger, index << 3, balance);
+            ledger.put(LEDGER_TYPES + index, type);  // Marks the slot used in a ledger file
+            return slot;
+        }
+        current.numbers[page][index] = accountNumber;
+        current.types[page][index] = type;
+        current.limits[page][index] = creditLimit;
+        BALANCES.setVolatile(current.balances[page], index, balance);
+        return slot;
+    }
+
+    /**
+     * Gives an account the slot of the account with the same number and type found in
+     * the ledger file, keeping the balance in the file.
+     *
+     * @return The slot, or -1 if the file holds no such account.
+     */
+    private synchronized int takeOver(Account account, int accountNumber, byte type, long creditLimit) {
+        if (persisted == null) {
+            return -1;
+        }
+        Integer found = persisted.get(accountNumber);
+        if (found == null) {
+            return -1;
+        }
+        int slot = found;
+        int page = slot >>> PAGE_BITS;
+        int index = slot & PAGE_MASK;
+        ByteBuffer ledger = pages.ledgers[page];
+        Account[] accounts = pages.accounts[page];
+        if (accounts[index] != null || ledger.get(LEDGER_TYPES + index) != type
+                || ledger.getInt(LEDGER_NUMBERS + (index << 2)) != accountNumber) {
+            return -1;  // Taken over already, or freed and given to another account
+        }
+        ledger.putLong(LEDGER_LIMITS + (index << 3), creditLimit);
+        accounts[index] = account;
+        return slot;
+    }
+
+    /**
+     * Takes a slot given back with {@link #free}.
+     *
+     * @return The slot, or -1 if there is none.
+     */
+    private synchronized int reuse() {
+        if (freeCount == 0) {
+            return -1;
+        }
+        int slot = freeSlots[freeCount - 1];
+        freeCount--;
+        return slot;
+    }
+
+    /**
+     * Stops a slot from referring to its account, so that the account can be garbage
+     * collected once nothing else uses it. The slot keeps its balance, which stays
+     * readable with {@link #getBalance(int)} until the slot is freed.
+     *
+     * @param slot The slot number.
+     */
+    void detach(int slot) {
+        pages.accounts[slot >>> PAGE_BITS][slot & PAGE_MASK] = null;
+    }
+
+    /**
+     * Gives back the slot of an account that is no longer used, clearing its columns and
+     * its recent activity so that the next account added can take it. No account may
+     * view the slot any more.
+     *
+     * @param slot The slot number.
+     */
+    synchronized void free(int slot) {
+        Pages current = pages;
+        int page = slot >>> PAGE_BITS;
+        int index = slot & PAGE_MASK;
+        current.accounts[page][index] = null;
+        if (OFF_HEAP) {
+            OffHeapLedger.free(current.segments[page], index);
+        } else if (MAPPED) {
+            ByteBuffer ledger = current.ledgers[page];
+            ledger.put(LEDGER_TYPES + index, OTHER);  // Marks the slot free in a ledger file
+            ledger.putInt(LEDGER_NUMBERS + (index << 2), 0);
+            ledger.putLong(LEDGER_LIMITS + (index << 3), 0);
+            LEDGER_BALANCES.setVolatile(ledger, index << 3, 0L);
+        } else {
+            current.types[page][index] = OTHER;
+            current.numbers[page][index] = 0;
+            current.limits[page][index] = 0;
+            BALANCES.setVolatile(current.balances[page], index, 0L);
+        }
+        RecentActivity.ACCOUNTS.forget(slot);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount] = slot;
+        freeCount++;
+    }
+
+    /**
+     * Maps the ledger pages from a file, for {@code -Dbank.ledger=mapped}. The accounts
+     * the file already holds keep their slots until {@link #releasePersisted()}; until
+     * then, an account added with the number and type of one of them takes over its slot
+     * and balance. Must be called before any account is added.
+     *
+     * @param file The ledger file.
+     * @return The number of accounts found in the file.
+     * @throws IOException If a page of the file cannot be mapped.
+     */
+    synchronized int openLedger(LedgerFile file) throws IOException {
+        if (!MAPPED || size() > 0 || ledgerFile != null) {
+            throw new IllegalStateException("The ledger file must be opened before any account is added.");
+        }
+        int pageCount = file.pageCount();
+        Pages opened = new Pages(pageCount);
+        IntHashIndex<Integer> found = new IntHashIndex<>();
+        int end = 0;
+        for (int page = 0; page < pageCount; page++) {
+            ByteBuffer ledger = file.map(page);
+            opened.ledgers[page] = ledger;
+            opened.accounts[page] = new Account[PAGE_SIZE];
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                if (ledger.get(LEDGER_TYPES + i) != OTHER) {
+                    found.put(ledger.getInt(LEDGER_NUMBERS + (i << 2)), (page << PAGE_BITS) | i);
+                    end = (page << PAGE_BITS) + i + 1;
+                } else {
+                    ledger.putLong(i << 3, 0);  // Left by an account whose addition was cut short
+                }
+            }
+        }
+        pages = opened;
+        size.set(end);
+        persisted = found;
+        ledgerFile = file;
+        return found.size();
+    }
+
+    /**
+     * Frees the slots of the accounts found in the ledger file that no account took
+     * over, such as the accounts of customers no longer in the CSV file, so that totals
+     * and scans only see the accounts of the bank. Called once the customers are loaded.
+     *
+     * @return The number of slots freed.
+     */
+    synchronized int releasePersisted() {
+        if (persisted == null) {
+            return 0;
+        }
+        int released = 0;
+        Pages current = pages;
+        int end = size();
+        for (int page = 0; page < pageCount(current, end); page++) {
+            ByteBuffer ledger = current.ledgers[page];
+            Account[] accounts = current.accounts[page];
+            int length = pageLength(page, end);
+            for (int i = 0; i < length; i++) {
+                if (accounts[i] == null && ledger.get(LEDGER_TYPES + i) != OTHER) {
+                    ledger.put(LEDGER_TYPES + i, OTHER);
+                    LEDGER_BALANCES.setVolatile(ledger, i << 3, 0L);
+                    released++;
+                }
+            }
+        }
+        persisted = null;
+        return released;
+    }
+
+    /**
+     * Called by an account after its balance has changed, so that a mapped ledger can
+     * force the change to disk if its {@link LedgerFile.ForcePolicy} asks for it.
+     *
+     * @param page  The balance page of the account.
+     * @param index The position of the account's slot within the page.
+     */
+    void balanceWritten(Object page, int index) {
+        LedgerFile file = ledgerFile;
+        if (file != null) {
+            file.balanceWritten((ByteBuffer) page, index);
+        }
+    }
+
+    /**
+     * Returns the pages, adding the page of the given slot if it does not exist yet.
+     */
+    private Pages pageFor(int slot) {
+        int page = slot >>> PAGE_BITS;
+        Pages current = pages;
+        if (page < current.accounts.length && current.accounts[page] != null) {
+            return current;
+        }
+        synchronized (this) {
+            current = pages;
+            if (page >= current.accounts.length) {
+                Pages grown = new Pages(Math.max(page + 1, current.accounts.length * 2));
+                System.arraycopy(current.numbers, 0, grown.numbers, 0, current.numbers.length);
+                System.arraycopy(current.types, 0, grown.types, 0, current.types.length);
+                System.arraycopy(current.balances, 0, grown.balances, 0, current.balances.length);
+                System.arraycopy(current.limits, 0, grown.limits, 0, current.limits.length);
+                System.arraycopy(current.ledgers, 0, grown.ledgers, 0, current.ledgers.length);
+                System.arraycopy(current.segments, 0, grown.segments, 0, current.segments.length);
+                System.arraycopy(current.accounts, 0, grown.accounts, 0, current.accounts.length);
+                current = grown;
+            }
+            if (current.accounts[page] == null) {
+                if (ledgerFile != null) {
+                    try {
+                        current.ledgers[page] = ledgerFile.map(page);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Cannot map ledger page " + page + ": " + e.getMessage(), e);
+                    }
+                } else if (OFF_HEAP) {
+                    current.segments[page] = OffHeapLedger.allocatePage();
+                } else if (MAPPED) {  // The ledger file could not be opened
+                    current.ledgers[page] = ByteBuffer.allocateDirect(LEDGER_PAGE_BYTES).order(LedgerFile.ORDER);
+                } else {
+                    current.numbers[page] = new int[PAGE_SIZE];
+                    current.types[page] = new byte[PAGE_SIZE];
+                    current.balances[page] = new long[PAGE_SIZE];
+                    current.limits[page] = new long[PAGE_SIZE];
+                }
+                current.accounts[page] = new Account[PAGE_SIZE];
+            }
+            pages = current;
+            return current;
+        }
+    }
+
+    /**
+     * Returns the number of accounts in the store. Slots run from 0 to this number, minus one.
+     *
+     * @return The number of accounts.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the page of the balance column holding a slot. An account keeps this page
+     * and updates its balance through the static balance methods of this class.
+     *
+     * @param slot The slot number.
+     * @return The balance page: a {@code long[]}, a {@code ByteBuffer} in a mapped
+     *         ledger, or a {@code MemorySegment} off the heap.
+     */
+    Object balancePageFor(int slot) {
+        Pages current = pageFor(slot);
+        int page = slot >>> PAGE_BITS;
+        return OFF_HEAP ? current.segments[page] : MAPPED ? current.ledgers[page] : current.balances[page];
+    }
+
+    /**
+     * Reads a balance of a balance page with volatile semantics.
+     *
+     * @param page  A page returned by {@link #balancePageFor} or {@link #balancePage}.
+     * @param index The position of the slot within the page.
+     * @return The balance, in cents.
+     */
+    static long getBalance(Object page, int index) {
+        if (OFF_HEAP) {
+            return OffHeapLedger.getBalance(page, index);
+        }
+        return MAPPED
+                ? (long) LEDGER_BALANCES.getVolatile((ByteBuffer) page, index << 3)
+                : (long) BALANCES.getVolatile((long[]) page, index);
+    }
+
+    /**
+     * Reads a balance of a balance page without ordering, for scans.
+     *
+     * @param page  A page returned by {@link #balancePage}.
+     * @param index The position of the slot within the page.
+     * @return The balance, in cents.
+     */
+    static long getBalancePlain(Object page, int index) {
+        if (OFF_HEAP) {
+            return OffHeapLedger.getBalancePlain(page, index);
+        }
+        return MAPPED ? ((ByteBuffer) page).getLong(index << 3) : ((long[]) page)[index];
+    }
+
+    /**
+     * Sets a balance of a balance page if it still holds the expected value; may fail
+     * spuriously, so it is called in a loop.
+     *
+     * @param page     A page returned by {@link #balancePageFor}.
+     * @param index    The position of the slot within the page.
+     * @param expected The balance expected, in cents.
+     * @param next     The new balance, in cents.
+     * @return {@code true} if the balance was set.
+     */
+    static boolean weakCompareAndSetBalance(Object page, int index, long expected, long next) {
+        if (OFF_HEAP) {
+            return OffHeapLedger.weakCompareAndSetBalance(page, index, expected, next);
+        }
+        return MAPPED
+                ? LEDGER_BALANCES.weakCompareAndSet((ByteBuffer) page, index << 3, expected, next)
+                : BALANCES.weakCompareAndSet((long[]) page, index, expected, next);
+    }
+
+    /**
+     * Sets a balance of a balance page with volatile semantics.
+     *
+     * @param page  A page returned by {@link #balancePageFor}.
+     * @param index The position of the slot within the page.
+     * @param value The new balance, in cents.
+     */
+    static void setBalance(Object page, int index, long value) {
+        if (OFF_HEAP) {
+            OffHeapLedger.setBalance(page, index, value);
+        } else if (MAPPED) {
+            LEDGER_BALANCES.setVolatile((ByteBuffer) page, index << 3, value);
+        } else {
+            BALANCES.setVolatile((long[]) page, index, value);
+        }
+    }
+
+    /**
+     * Atomically adds an amount to a balance of a balance page.
+     *
+     * @param page  A page returned by {@link #balancePageFor}.
+     * @param index The position of the slot within the page.
+     * @param delta The amount to add, in cents.
+     * @return The balance before the addition, in cents.
+     */
+    static long getAndAddBalance(Object page, int index, long delta) {
+        if (OFF_HEAP) {
+            return OffHeapLedger.getAndAddBalance(page, index, delta);
+        }
+        return MAPPED
+                ? (long) LEDGER_BALANCES.getAndAdd((ByteBuffer) page, index << 3, delta)
+                : (long) BALANCES.getAndAdd((long[]) page, index, delta);
+    }
+
+    /**
+     * Reads a type tag of a type page.
+     *
+     * @param page  A page returned by {@link #typePage}.
+     * @param index The position of the slot within the page.
+     * @return The type tag.
+     */
+    static byte getType(Object page, int index) {
+        if (OFF_HEAP) {
+            return OffHeapLedger.getType(page, index);
+        }
+        return MAPPED ? ((ByteBuffer) page).get(LEDGER_TYPES + index) : ((byte[]) page)[index];
+    }
+
+    /**
+     * Returns the account number at a slot.
+     *
+     * @param slot The slot number.
+     * @return The account number.
+     */
+    public int getAccountNumber(int slot) {
+        if (OFF_HEAP) {
+            return OffHeapLedger.getAccountNumber(pages.segments[slot >>> PAGE_BITS], slot & PAGE_MASK);
+        }
+        if (MAPPED) {
+            return pages.ledgers[slot >>> PAGE_BITS].getInt(LEDGER_NUMBERS + ((slot & PAGE_MASK) << 2));
+        }
+        return pages.numbers[slot >>> PAGE_BITS][slot & PAGE_MASK];
+    }
+
+    /**
+     * Returns the type tag at a slot.
+     *
+     * @param slot The slot number.
+     * @return The type tag, such as {@link #CHECKING}.
+     */
+    public byte getType(int slot) {
+        return getType(typePage(slot >>> PAGE_BITS), slot & PAGE_MASK);
+    }
+
+    /**
+     * Returns the balance at a slot.
+     *
+     * @param slot The slot number.
+     * @return The balance, in cents.
+     */
+    public long getBalance(int slot) {
+        return getBalance(balancePage(slot >>> PAGE_BITS), slot & PAGE_MASK);
+    }
+
+    /**
+     * Returns the credit limit at a slot.
+     *
+     * @param slot The slot number.
+     * @return The credit limit in cents, or 0 for accounts without credit.
+     */
+    public long getCreditLimit(int slot) {
+        if (OFF_HEAP) {
+            return OffHeapLedger.getCreditLimit(pages.segments[slot >>> PAGE_BITS], slot & PAGE_MASK);
+        }
+        if (MAPPED) {
+            return pages.ledgers[slot >>> PAGE_BITS].getLong(LEDGER_LIMITS + ((slot & PAGE_MASK) << 3));
+        }
+        return pages.limits[slot >>> PAGE_BITS][slot & PAGE_MASK];
+    }
+
+    /**
+     * Returns the account viewing a slot.
+     *
+     * @param slot The slot number.
+     * @return The account.
+     */
+    public Account getAccount(int slot) {
+        return pages.accounts[slot >>> PAGE_BITS][slot & PAGE_MASK];
+    }
+
+    /**
+     * Returns the number of pages holding the accounts added so far.
+     *
+     * @return The number of pages.
+     */
+    int pageCount() {
+        return pageCount(pages, size());
+    }
+
+    /**
+     * Returns the number of accounts in a page, which is {@link #PAGE_SIZE} for every
+     * page but the last.
+     *
+     * @param page The page number.
+     * @return The number of slots in use.
+     */
+    int pageLength(int page) {
+        return pageLength(page, size());
+    }
+
+    /**
+     * Returns one page of the type column, read with {@link #getType(Object, int)}.
+     *
+     * @param page The page number.
+     * @return The type tags of the page: a {@code byte[]}, a {@code ByteBuffer} in a mapped
+     *         ledger, or a {@code MemorySegment} off the heap.
+     */
+    Object typePage(int page) {
+        Pages current = pages;
+        return OFF_HEAP ? current.segments[page] : MAPPED ? current.ledgers[page] : current.types[page];
+    }
+
+    /**
+     * Returns one page of the balance column, read with {@link #getBalancePlain}.
+     * Balances must only be changed through their {@link Account}.
+     *
+     * @param page The page number.
+     * @return The balances of the page, in cents: a {@code long[]}, a {@code ByteBuffer} in a
+     *         mapped ledger, or a {@code MemorySegment} off the heap.
+     */
+    Object balancePage(int page) {
+        Pages current = pages;
+        return OFF_HEAP ? current.segments[page] : MAPPED ? current.ledgers[page] : current.balances[page];
+    }
+
+    /**
+     * Returns one page of the account column.
+     *
+     * @param page The page number.
+     * @return The accounts of the page.
+     */
+    Account[] accountPage(int page) {
+        return pages.accounts[page];
+    }
+
+    /**
+     * Returns the number of pages a scan of the first {@code end} slots covers, leaving out
+     * a page that another thread is still adding.
+     */
+    static int pageCount(Pages current, int end) {
+        int count = (int) (((long) end + PAGE_MASK) >>> PAGE_BITS);
+        count = Math.min(count, current.accounts.length);
+        while (count > 0 && current.accounts[count - 1] == null) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of slots of a page that lie before {@code end}.
+     */
+    static int pageLength(int page, int end) {
+        return Math.min(PAGE_SIZE, end - (page << PAGE_BITS));
+    }
+
+    /**
+     * Returns the sum of every balance in the store. The balances are read one at a time
+     * without locks, so while transfers are running the sum may miss an amount in flight
+     * between two accounts; it is exact once they have returned.
+     *
+     * @return The total balance, in cents.
+     */
+    public long totalBalance() {
+        Pages current = pages;
+        int end = size();
+        long total = 0;
+        for (int page = 0; page < pageCount(current, end); page++) {
+            int length = pageLength(page, end);
+            if (OFF_HEAP) {
+                total += OffHeapLedger.totalBalance(current.segments[page], length);
+                continue;
+            }
+            if (MAPPED) {
+                ByteBuffer ledger = current.ledgers[page];
+                for (int i = 0; i < length; i++) {
+                    total += ledger.getLong(i << 3);
+                }
+                continue;
+            }
+            long[] balances = current.balances[page];
+            for (int i = 0; i < length; i++) {
+                total += balances[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sum of the balances of every account of one type.
+     *
+     * @param type The type tag, such as {@link #SAVING}.
+     * @return The total balance of that type, in cents.
+     */
+    public long totalBalance(byte type) {
+        Pages current = pages;
+        int end = size();
+        long total = 0;
+        for (int page = 0; page < pageCount(current, end); page++) {
+            int length = pageLength(page, end);
+            if (OFF_HEAP) {
+                total += OffHeapLedger.totalBalance(current.segments[page], length, type);
+                continue;
+            }
+            if (MAPPED) {
+                ByteBuffer ledger = current.ledgers[page];
+                for (int i = 0; i < length; i++) {
+                    total += ledger.get(LEDGER_TYPES + i) == type ? ledger.getLong(i << 3) : 0;
+                }
+                continue;
+            }
+            byte[] types = current.types[page];
+            long[] balances = current.balances[page];
+            for (int i = 0; i < length; i++) {
+                total += types[i] == type ? balances[i] : 0;  // Branch-free select
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of accounts of one type.
+     *
+     * @param type The type tag, such as {@link #CREDIT}.
+     * @return The number of accounts of that type.
+     */
+    public int count(byte type) {
+        Pages current = pages;
+        int end = size();
+        int count = 0;
+        for (int page = 0; page < pageCount(current, end); page++) {
+            Object types = OFF_HEAP ? current.segments[page] : MAPPED ? current.ledgers[page] : current.types[page];
+            int length = pageLength(page, end);
+            for (int i = 0; i < length; i++) {
+                count += getType(types, i) == type ? 1 : 0;
+            }
+        }
+        return count;
+    }
+}
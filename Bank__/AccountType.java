@@ -0,0 +1,249 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A kind of account, such as checking, savings or credit, registered under a small
+ * integer ID.
+ *
+ * <p>
+ * The {@code AccountType} class is the registry of every account type the bank knows.
+ * Each type has a name, such as {@code Checking}, which is cached together with its
+ * UTF-8 bytes for the log, and an ID that is both the type tag stored in the
+ * {@link AccountStore} and the index of the type's slot in every {@link Customer}. Looking
+ * up an account's type, or a customer's account of a type, is therefore an array load
+ * rather than a comparison of class names.
+ * </p>
+ *
+ * <p>
+ * The built-in types are {@link #CHECKING}, {@link #SAVING} and {@link #CREDIT}. A new kind
+ * of account plugs in by registering itself, for example:
+ * </p>
+ *
+ * <pre>
+ * static final AccountType INVESTMENT = AccountType.register("Investment", Investment.class);
+ * </pre>
+ *
+ * <p>
+ * and passing the type to the {@link Account} constructor. An {@code Account} subclass
+ * that does not register is given a type named after its class the first time one of
+ * its accounts is created.
+ * </p>
+ *
+ * @see Account
+ * @see Customer
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class AccountType {
+
+    /**
+     * The largest number of types, so that every ID fits the store's type tag.
+     */
+    private static final int MAX_TYPES = Byte.MAX_VALUE;
+
+    /**
+     * The registered types, indexed by ID; ID 0 ({@link AccountStore#OTHER}) is never
+     * used. Replaced by a larger copy when a type is registered.
+     */
+    private static volatile AccountType[] byId = new AccountType[AccountStore.OTHER + 1];
+
+    /**
+     * The registered types, indexed by their name in lower case.
+     */
+    private static final ConcurrentHashMap<String, AccountType> BY_NAME = new ConcurrentHashMap<>();
+
+    /**
+     * The type of each account class, registering unknown classes when first asked for.
+     */
+    private static final ClassValue<AccountType> BY_CLASS = new ClassValue<AccountType>() {
+        @Override
+        protected AccountType computeValue(Class<?> type) {
+            return find(type.asSubclass(Account.class));
+        }
+    };
+
+    /**
+     * The type of {@link Checking} accounts.
+     */
+    public static final AccountType CHECKING = register(AccountStore.CHECKING, "Checking", Checking.class);
+
+    /**
+     * The type of {@link Saving} accounts.
+     */
+    public static final AccountType SAVING = register(AccountStore.SAVING, "Saving", Saving.class);
+
+    /**
+     * The type of {@link Credit} accounts.
+     */
+    public static final AccountType CREDIT = register(AccountStore.CREDIT, "Credit", Credit.class);
+
+    /**
+     * The ID of the type.
+     */
+    private final int id;
+
+    /**
+     * The name of the type, as written in the log.
+     */
+    private final String name;
+
+    /**
+     * The name encoded as UTF-8.
+     */
+    private final byte[] encodedName;
+
+    /**
+     * The class of the type's accounts.
+     */
+    private final Class<? extends Account> accountClass;
+
+    /**
+     * Constructs a new {@code AccountType}.
+     */
+    private AccountType(int id, String name, Class<? extends Account> accountClass) {
+        this.id = id;
+        this.name = name;
+        this.encodedName = name.getBytes(StandardCharsets.UTF_8);
+        this.accountClass = accountClass;
+    }
+
+    /**
+     * Registers a new account type under the next free ID.
+     *
+     * @param name         The name of the type, unique ignoring case.
+     * @param accountClass The class of the type's accounts.
+     * @return The new type.
+     * @throws IllegalArgumentException If the name or the class is already registered.
+     * @throws IllegalStateException    If no ID is left.
+     */
+    public static synchronized AccountType register(String name, Class<? extends Account> accountClass) {
+        return register(byId.length, name, accountClass);
+    }
+
+    /**
+     * Registers a type under a given ID.
+     */
+    private static synchronized AccountType register(int id, String name, Class<? extends Account> accountClass) {
+        if (id > MAX_TYPES) {
+            throw new IllegalStateException("No more account types can be registered.");
+        }
+        String key = name.toLowerCase(Locale.ROOT);
+        if (BY_NAME.containsKey(key)) {
+            throw new IllegalArgumentException("Account type " + name + " is already registered.");
+        }
+        for (AccountType type : byId) {
+            if (type != null && type.accountClass == accountClass) {
+                throw new IllegalArgumentException(accountClass.getName() + " is already registered as " + type.name + ".");
+            }
+        }
+        AccountType type = new AccountType(id, name, accountClass);
+        AccountType[] grown = Arrays.copyOf(byId, Math.max(byId.length, id + 1));
+        grown[id] = type;
+        BY_NAME.put(key, type);
+        byId = grown;
+        return type;
+    }
+
+    /**
+     * Returns the type registered for an account class, registering the class under its
+     * simple name if it is not registered yet.
+     *
+     * @param accountClass The class of an account.
+     * @return The type.
+     */
+    public static AccountType of(Class<? extends Account> accountClass) {
+        return BY_CLASS.get(accountClass);
+    }
+
+    /**
+     * Finds the registered type of a class, or registers it.
+     */
+    private static synchronized AccountType find(Class<? extends Account> accountClass) {
+        for (AccountType type : byId) {
+            if (type != null && type.accountClass == accountClass) {
+                return type;
+            }
+        }
+        return register(accountClass.getSimpleName(), accountClass);
+    }
+
+    /**
+     * Returns the type with an ID.
+     *
+     * @param id The ID, such as an {@link AccountStore} type tag.
+     * @return The type, or {@code null} if no type has that ID.
+     */
+    public static AccountType byId(int id) {
+        AccountType[] types = byId;
+        return id >= 0 && id < types.length ? types[id] : null;
+    }
+
+    /**
+     * Returns the type with a name, ignoring case.
+     *
+     * @param name The name, such as {@code "checking"}.
+     * @return The type, or {@code null} if no type has that name.
+     */
+    public static AccountType forName(String name) {
+        return BY_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns one more than the highest registered ID, the number of slots a customer
+     * needs for an account of every type.
+     *
+     * @return The number of IDs in use, including the unused ID 0.
+     */
+    public static int count() {
+        return byId.length;
+    }
+
+    /**
+     * Returns the ID of the type.
+     *
+     * @return The ID.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the name of the type.
+     *
+     * @return The name, such as {@code Checking}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the name of the type encoded as UTF-8. The array must not be changed.
+     *
+     * @return The encoded name.
+     */
+    byte[] getEncodedName() {
+        return encodedName;
+    }
+
+    /**
+     * Returns the class of the type's accounts.
+     *
+     * @return The account class.
+     */
+    public Class<? extends Account> getAccountClass() {
+        return accountClass;
+    }
+
+    /**
+     * Returns the name of the type.
+     *
+     * @return The name.
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
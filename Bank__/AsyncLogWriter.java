@@ -0,0 +1,545 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An asynchronous, group-commit writer for the transaction log.
+ *
+ * <p>
+ * Callers place messages into a bounded ring buffer and return; a single background
+ * thread drains everything that has queued up since its last pass, encodes it into one
+ * large buffer and writes it to a log file channel that stays open for the life of the
+ * writer. When the ring buffer is full, callers wait for the writer to make room.
+ * </p>
+ *
+ * <p>
+ * A message is either free text or a transaction event. The ring buffer holds events
+ * in preallocated columns, one per field, so queuing one stores a type, four
+ * references to existing customers and accounts, and three numbers, and allocates
+ * nothing. The sentence of an event is only rendered by the writer thread, with a
+ * {@link LogLine}, straight into the bytes written to the file. Once a batch is written,
+ * the accounts of its events are added to the log's {@link TransactionLogIndex}.
+ * </p>
+ *
+ * <p>
+ * How often the file is forced to disk is controlled by a {@link Durability} setting.
+ * With {@link Durability#BATCH}, a caller does not return until the batch holding its
+ * message has been written and forced, so many concurrent callers share one fsync.
+ * </p>
+ *
+ * <p>
+ * If a batch cannot be written or forced, the file no longer holds every message, so
+ * the writer stops writing: the messages of that batch and every message queued after
+ * it are dropped and reported as not written. A caller waiting for its batch in
+ * {@link Durability#BATCH} mode therefore learns whether its message reached the disk;
+ * in the other modes, callers only learn of a failure that happened before they queued.
+ * </p>
+ *
+ * @see transactionLogger
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class AsyncLogWriter {
+
+    /**
+     * The durability policies supported by the writer.
+     */
+    public enum Durability {
+        /** Never force the file; the operating system decides when data reaches disk. */
+        NONE,
+        /** Force the file at most once per configured interval. */
+        INTERVAL,
+        /** Force the file after every batch and make callers wait for their batch. */
+        BATCH
+    }
+
+    /**
+     * The size of the buffer that a batch is encoded into before it is written.
+     */
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The open channel to the log file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The index of the log file, or {@code null} if it is not indexed.
+     */
+    private final TransactionLogIndex index;
+
+    /**
+     * The durability policy of this writer.
+     */
+    private final Durability durability;
+
+    /**
+     * The interval between forces in {@link Durability#INTERVAL} mode, in nanoseconds.
+     */
+    private final long fsyncIntervalNanos;
+
+    // The ring buffer of queued messages, one column per field. The type is null for
+    // free text, which is held in the messages column.
+    private final TransactionType[] types;
+    private final String[] messages;
+    private final Customer[] customers;
+    private final Account[] accounts;
+    private final Customer[] receivers;
+    private final Account[] targets;
+    private final long[] amounts;
+    private final long[] balances;
+    private final long[] targetBalances;
+
+    /**
+     * Guards the ring buffer and the sequence counters.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when messages are queued or the writer is closed.
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Signalled when the writer frees space in the ring buffer.
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Signalled when a batch has been completed.
+     */
+    private final Condition batchDone = lock.newCondition();
+
+    /**
+     * The sequence number of the next message to be queued.
+     */
+    private long tailSeq;
+
+    /**
+     * The sequence number of the next message to be written. The writer renders the
+     * slots from here to {@link #tailSeq} without the lock, and only then frees them.
+     */
+    private long headSeq;
+
+    /**
+     * Every message with a sequence number below this value has been completed.
+     */
+    private long completedSeq;
+
+    /**
+     * The sequence number of the first message that was not written, because its batch
+     * failed; {@code Long.MAX_VALUE} while every batch has been written.
+     */
+    private long failedSeq = Long.MAX_VALUE;
+
+    /**
+     * Set once the writer has been asked to drain and stop.
+     */
+    private boolean closing;
+
+    /**
+     * The background thread that writes batches to the file.
+     */
+    private final Thread writerThread;
+
+    /**
+     * Opens the log file in append mode and starts the background writer.
+     *
+     * @param logFile            The path of the log file.
+     * @param index              The index of the log file, or {@code null} to not index it.
+     * @param capacity           The number of messages the ring buffer can hold.
+     * @param durability         The durability policy.
+     * @param fsyncIntervalMillis The interval between forces in {@link Durability#INTERVAL} mode.
+     * @throws IOException If the log file cannot be opened.
+     */
+    public AsyncLogWriter(String logFile, TransactionLogIndex index, int capacity, Durability durability,
+            long fsyncIntervalMillis) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring buffer capacity must be greater than 0.");
+        }
+        Path path = Paths.get(logFile);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.index = index;
+        this.durability = durability;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, fsyncIntervalMillis));
+        this.types = new TransactionType[capacity];
+        this.messages = new String[capacity];
+        this.customers = new Customer[capacity];
+        this.accounts = new Account[capacity];
+        this.receivers = new Customer[capacity];
+        this.targets = new Account[capacity];
+        this.amounts = new long[capacity];
+        this.balances = new long[capacity];
+        this.targetBalances = new long[capacity];
+        this.writerThread = new Thread(this::runWriter, "transaction-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a message for writing.
+     *
+     * <p>
+     * Blocks while the ring buffer is full. In {@link Durability#BATCH} mode, also blocks
+     * until the batch containing the message has been written and forced to disk.
+     * </p>
+     *
+     * @param message The message to write.
+     * @return {@code true} if the message was queued, and in {@link Durability#BATCH} mode
+     *         written and forced; {@code false} if the writer has been closed or a batch
+     *         could not be written.
+     */
+    public boolean append(String message) {
+        lock.lock();
+        try {
+            if (!awaitRoom()) {
+                return false;
+            }
+            long seq = tailSeq++;
+            int slot = (int) (seq % types.length);
+            types[slot] = null;
+            messages[slot] = message;
+            notEmpty.signal();
+            return awaitCompleted(seq);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the event of one transaction for writing. Blocks like {@link #append(String)}.
+     *
+     * @param type          The type of the transaction.
+     * @param customer      The customer who made it.
+     * @param account       The customer's account.
+     * @param receiver      The receiving customer of a transfer or payment, or {@code null}.
+     * @param target        The receiving account of a transfer or payment, or {@code null}.
+     * @param amount        The amount, in cents.
+     * @param balance       The balance it left in the customer's account, in cents.
+     * @param targetBalance The balance it left in the receiving account, in cents.
+     * @return {@code true} if the event was queued, and in {@link Durability#BATCH} mode
+     *         written and forced; {@code false} if the writer has been closed or a batch
+     *         could not be written.
+     * @see LogLine#appendEvent
+     */
+    public boolean appendEvent(TransactionType type, Customer customer, Account account, Customer receiver,
+            Account target, long amount, long balance, long targetBalance) {
+        lock.lock();
+        try {
+            if (!awaitRoom()) {
+                return false;
+            }
+            long seq = tailSeq++;
+            put((int) (seq % types.length), type, customer, account, receiver, target, amount, balance,
+                    targetBalance);
+            notEmpty.signal();
+            return awaitCompleted(seq);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the events of many transactions in order under one acquisition of the lock,
+     * waiting for room as often as needed. In {@link Durability#BATCH} mode, blocks once
+     * until the batch containing the last event has been forced to disk. The arguments
+     * are columns of the events, as in {@link #appendEvent}; entries whose type is
+     * {@code null} are skipped.
+     *
+     * @param types          The types of the transactions; {@code null} skips an entry.
+     * @param customers      The customers who made them.
+     * @param accounts       The customers' accounts.
+     * @param receivers      The receiving customers of transfers and payments, or {@code null}.
+     * @param targets        The receiving accounts of transfers and payments, or {@code null}.
+     * @param amounts        The amounts, in cents.
+     * @param balances       The balances they left in the customers' accounts, in cents.
+     * @param targetBalances The balances they left in the receiving accounts, in cents.
+     * @param count          The number of entries in the columns.
+     * @return {@code true} if every event was queued, and in {@link Durability#BATCH} mode
+     *         written and forced; {@code false} if the writer was closed first or a batch
+     *         could not be written.
+     */
+    public boolean appendEvents(TransactionType[] types, Customer[] customers, Account[] accounts,
+            Customer[] receivers, Account[] targets, long[] amounts, long[] balances, long[] targetBalances,
+            int count) {
+        lock.lock();
+        try {
+            long last = -1;
+            for (int i = 0; i < count; i++) {
+                if (types[i] == null) {
+                    continue;
+                }
+                if (!awaitRoom()) {
+                    return false;
+                }
+                last = tailSeq++;
+                put((int) (last % this.types.length), types[i], customers[i], accounts[i], receivers[i],
+                        targets[i], amounts[i], balances[i], targetBalances[i]);
+                notEmpty.signal();
+            }
+            return last < 0 || awaitCompleted(last);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores an event in a slot of the ring buffer. Must be called with the lock held.
+     */
+    private void put(int slot, TransactionType type, Customer customer, Account account, Customer receiver,
+            Account target, long amount, long balance, long targetBalance) {
+        types[slot] = type;
+        customers[slot] = customer;
+        accounts[slot] = account;
+        receivers[slot] = receiver;
+        targets[slot] = target;
+        amounts[slot] = amount;
+        balances[slot] = balance;
+        targetBalances[slot] = targetBalance;
+    }
+
+    /**
+     * Returns whether a batch could not be written, after which the writer drops every
+     * message instead of writing it.
+     *
+     * @return {@code true} if a batch has failed.
+     */
+    public boolean hasFailed() {
+        lock.lock();
+        try {
+            return failedSeq != Long.MAX_VALUE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits while the ring buffer is full. Must be called with the lock held.
+     *
+     * @return {@code false} if the writer has been closed or has stopped after a failed batch.
+     */
+    private boolean awaitRoom() {
+        while (!closing && failedSeq == Long.MAX_VALUE && tailSeq - headSeq == types.length) {
+            notFull.awaitUninterruptibly();
+        }
+        return !closing && failedSeq == Long.MAX_VALUE;
+    }
+
+    /**
+     * In {@link Durability#BATCH} mode, waits until the message with the given sequence
+     * number has been written and forced. Must be called with the lock held.
+     *
+     * @return {@code false} if the message was dropped because a batch failed.
+     */
+    private boolean awaitCompleted(long seq) {
+        if (durability == Durability.BATCH) {
+            while (completedSeq <= seq) {
+                batchDone.awaitUninterruptibly();
+            }
+        }
+        return seq < failedSeq;
+    }
+
+    /**
+     * Stops accepting messages, waits for everything already queued to be written,
+     * forces the file to disk and closes it. Calling this again has no effect beyond
+     * waiting for the same to finish, so a caller whose message was refused because the
+     * writer is closing can call it before writing to the file some other way.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closing = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The body of the background writer thread. Takes every queued message as one
+     * batch, writes it, and forces the file according to the durability policy.
+     */
+    private void runWriter() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        LogLine line = new LogLine(512);
+        TransactionLogIndex.Pending pending = new TransactionLogIndex.Pending();
+        long lastForce = System.nanoTime();
+        boolean unforced = false;
+        boolean failed = false;
+
+        while (true) {
+            int count;
+            long batchStart;
+
+            lock.lock();
+            try {
+                while (headSeq == tailSeq && !closing) {
+                    if (durability == Durability.INTERVAL && unforced) {
+                        long remaining = fsyncIntervalNanos - (System.nanoTime() - lastForce);
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        notEmpty.awaitNanos(remaining);
+                    } else {
+                        notEmpty.await();
+                    }
+                }
+
+                // Take every queued message as a single batch
+                count = (int) (tailSeq - headSeq);
+                batchStart = headSeq;
+            } catch (InterruptedException e) {
+                continue;  // Only close() stops the writer
+            } finally {
+                lock.unlock();
+            }
+
+            // After a failed batch, later messages are dropped rather than written out of order
+            boolean batchFailed = false;
+            try {
+                if (count > 0 && !failed) {
+                    writeBatch(batchStart, count, buffer, line, pending);
+                    unforced = true;
+                }
+                boolean intervalElapsed = System.nanoTime() - lastForce >= fsyncIntervalNanos;
+                if (unforced && (durability == Durability.BATCH
+                        || (durability == Durability.INTERVAL && intervalElapsed)
+                        || (count == 0 && closing))) {
+                    channel.force(false);
+                    lastForce = System.nanoTime();
+                    unforced = false;
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing to log file, dropping later messages: " + e.getMessage());
+                batchFailed = !failed;
+                failed = true;
+                unforced = false;
+            }
+
+            lock.lock();
+            try {
+                if (batchFailed) {
+                    failedSeq = batchStart;
+                }
+                headSeq = batchStart + count;
+                completedSeq = headSeq;
+                notFull.signalAll();
+                batchDone.signalAll();
+                // Stop once drained and forced, or once a final force has been attempted
+                if (closing && headSeq == tailSeq && (!unforced || count == 0)) {
+                    break;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing log file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Renders the messages of a batch into the buffer and writes them to the channel,
+     * flushing the buffer whenever the next line does not fit. The slots of the batch
+     * are not freed yet, so they are read without the lock.
+     *
+     * @param first   The sequence number of the first message in the batch.
+     * @param count   The number of messages in the batch.
+     * @param buffer  The reusable buffer to write from.
+     * @param line    The reusable line to render each message into.
+     * @param pending The reusable list of the accounts to index.
+     * @throws IOException If the write fails.
+     */
+    private void writeBatch(long first, int count, ByteBuffer buffer, LogLine line,
+            TransactionLogIndex.Pending pending) throws IOException {
+        buffer.clear();
+        pending.clear();
+        long base = index != null ? channel.size() : 0;
+        long written = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((first + i) % types.length);
+            line.reset();
+            if (types[slot] == null) {
+                line.append(messages[slot]);
+                messages[slot] = null;
+            } else {
+                line.appendEvent(types[slot], customers[slot], accounts[slot], receivers[slot], targets[slot],
+                        amounts[slot], balances[slot], targetBalances[slot]);
+                pending.addEvent(types[slot], written, accounts[slot], targets[slot]);
+
+                // Let a customer or account that is dropped later be collected
+                customers[slot] = null;
+                accounts[slot] = null;
+                receivers[slot] = null;
+                targets[slot] = null;
+            }
+            line.appendLineSeparator();
+            put(line, buffer);
+            written += line.length();
+        }
+        flush(buffer);
+        if (index != null) {
+            index.commit(pending, base);
+        }
+    }
+
+    /**
+     * Copies one rendered line into the buffer, writing the buffer out whenever it is full.
+     *
+     * @param line   The rendered line.
+     * @param buffer The buffer to copy into.
+     * @throws IOException If a write fails.
+     */
+    private void put(LogLine line, ByteBuffer buffer) throws IOException {
+        int offset = 0;
+        int remaining = line.length();
+        while (remaining > 0) {
+            if (!buffer.hasRemaining()) {
+                flush(buffer);
+            }
+            int chunk = Math.min(remaining, buffer.remaining());
+            buffer.put(line.array(), offset, chunk);
+            offset += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel and clears it.
+     *
+     * @param buffer The buffer to write.
+     * @throws IOException If the write fails.
+     */
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
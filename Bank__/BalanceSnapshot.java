@@ -0,0 +1,264 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * The balance of every account as of one point in the {@link TransactionJournal}.
+ *
+ * <p>
+ * A snapshot holds the balances produced by every journal record before its sequence
+ * number, so recovery loads the newest snapshot and replays only the records from that
+ * sequence on. Snapshots are stored next to the journal segments as files named after
+ * their sequence number, written to a temporary file, forced and then atomically
+ * renamed, and end with a CRC-32C checksum; a damaged snapshot is skipped in favour of
+ * the one before it, which is why the previous snapshot is always kept.
+ * </p>
+ *
+ * <p>
+ * File layout (all values big-endian):
+ * </p>
+ * <pre>
+ *  size  field
+ *     4  magic number "BSNP"
+ *     4  format version (1)
+ *     8  sequence number of the first journal record not included
+ *     4  number of accounts
+ *    12  per account: account number (4) and balance in cents (8)
+ *     4  CRC-32C of everything before it
+ * </pre>
+ *
+ * @see JournalCheckpointer
+ * @see JournalRecovery
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class BalanceSnapshot {
+
+    /**
+     * The file name suffix of a snapshot file.
+     */
+    static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    /**
+     * The magic number at the start of every snapshot file.
+     */
+    private static final int MAGIC = 0x42534E50;  // "BSNP"
+
+    /**
+     * The current file format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the fixed header in bytes.
+     */
+    private static final int HEADER_SIZE = 20;
+
+    /**
+     * The size of one account entry in bytes.
+     */
+    private static final int ENTRY_SIZE = 12;
+
+    /**
+     * The sequence number of the first journal record not included in the snapshot.
+     */
+    private final long sequence;
+
+    /**
+     * The account numbers, parallel to {@code balances}.
+     */
+    private final int[] accounts;
+
+    /**
+     * The balances in cents, parallel to {@code accounts}.
+     */
+    private final long[] balances;
+
+    /**
+     * Constructs a snapshot over the given arrays. The arrays are not copied.
+     *
+     * @param sequence The sequence number of the first journal record not included.
+     * @param accounts The account numbers.
+     * @param balances The balances in cents, parallel to {@code accounts}.
+     */
+    public BalanceSnapshot(long sequence, int[] accounts, long[] balances) {
+        if (accounts.length != balances.length) {
+            throw new IllegalArgumentException("Accounts and balances differ in length.");
+        }
+        this.sequence = sequence;
+        this.accounts = accounts;
+        this.balances = balances;
+    }
+
+    /**
+     * Returns the sequence number of the first journal record not included in the snapshot.
+     *
+     * @return The sequence number where replay must start.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the number of accounts in the snapshot.
+     *
+     * @return The number of accounts.
+     */
+    public int size() {
+        return accounts.length;
+    }
+
+    /**
+     * Returns the account number of an entry.
+     *
+     * @param index The index of the entry.
+     * @return The account number.
+     */
+    public int getAccount(int index) {
+        return accounts[index];
+    }
+
+    /**
+     * Returns the balance of an entry.
+     *
+     * @param index The index of the entry.
+     * @return The balance, in cents.
+     */
+    public long getBalance(int index) {
+        return balances[index];
+    }
+
+    /**
+     * Writes the snapshot to the journal directory, replacing nothing until it is
+     * complete and on disk, then removes every snapshot older than the previous one.
+     *
+     * @param directory The journal directory.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void write(File directory) throws IOException {
+        File target = new File(directory, snapshotName(sequence));
+        File temp = new File(directory, snapshotName(sequence) + ".tmp");
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(accounts.length);
+            for (int i = 0; i < accounts.length; i++) {
+                if (buffer.remaining() < ENTRY_SIZE) {
+                    drain(channel, buffer, crc);
+                }
+                buffer.putInt(accounts[i]).putLong(balances[i]);
+            }
+            drain(channel, buffer, crc);
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        // Keep this snapshot and the one before it
+        File[] snapshots = listSnapshots(directory);
+        for (int i = 0; i < snapshots.length - 2; i++) {
+            Files.deleteIfExists(snapshots[i].toPath());
+        }
+    }
+
+    /**
+     * Reads the newest intact snapshot in a journal directory.
+     *
+     * @param directory The journal directory.
+     * @return The newest snapshot, or {@code null} if there is none.
+     * @throws IOException If a snapshot file cannot be read.
+     */
+    public static BalanceSnapshot readLatest(File directory) throws IOException {
+        File[] snapshots = listSnapshots(directory);
+        for (int i = snapshots.length - 1; i >= 0; i--) {
+            BalanceSnapshot snapshot = read(snapshots[i]);
+            if (snapshot != null) {
+                return snapshot;
+            }
+            System.err.println("Skipping damaged snapshot " + snapshots[i].getName());
+        }
+        return null;
+    }
+
+    /**
+     * Reads one snapshot file.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot, or {@code null} if the file is damaged.
+     * @throws IOException If the file cannot be read.
+     */
+    private static BalanceSnapshot read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int count = buf.getInt(16);
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION || count < 0
+                    || size != HEADER_SIZE + (long) count * ENTRY_SIZE + 4) {
+                return null;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buf.duplicate().limit((int) size - 4));
+            if ((int) crc.getValue() != buf.getInt((int) size - 4)) {
+                return null;
+            }
+
+            int[] accounts = new int[count];
+            long[] balances = new long[count];
+            int position = HEADER_SIZE;
+            for (int i = 0; i < count; i++) {
+                accounts[i] = buf.getInt(position);
+                balances[i] = buf.getLong(position + 4);
+                position += ENTRY_SIZE;
+            }
+            return new BalanceSnapshot(buf.getLong(8), accounts, balances);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel and adds them to the checksum.
+     */
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32C crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the file name of the snapshot at the given sequence number.
+     */
+    private static String snapshotName(long sequence) {
+        return String.format("%020d%s", sequence, SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Lists the snapshot files of a journal directory, oldest first.
+     */
+    private static File[] listSnapshots(File directory) {
+        File[] snapshots = directory.listFiles((dir, name) -> name.endsWith(SNAPSHOT_SUFFIX));
+        if (snapshots == null) {
+            return new File[0];
+        }
+        Arrays.sort(snapshots);  // Zero-padded names sort in sequence order
+        return snapshots;
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.List;
+
+/**
+ * A bank-wide directory of customers and accounts.
+ *
+ * <p>
+ * The {@code BankDirectory} class indexes every customer by ID and every account by
+ * account number, together with the customer who owns it. Lookups are a single probe
+ * into an {@link IntHashIndex}, so they take the same time whether the bank has a
+ * hundred customers or a few million.
+ * </p>
+ *
+ * <p>
+ * Customers can also be searched by the start of their last name, through a
+ * {@link LastNameIndex}, and by phone number, through a {@link PhoneIndex}. Both are
+ * updated as customers are added, so neither search compares every customer.
+ * </p>
+ *
+ * @see IntHashIndex
+ * @see LastNameIndex
+ * @see PhoneIndex
+ * @see Customer
+ * @see Account
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class BankDirectory {
+
+    /**
+     * Customers indexed by their unique ID.
+     */
+    private final IntHashIndex<Customer> customers;
+
+    /**
+     * Accounts indexed by their account number.
+     */
+    private final IntHashIndex<Account> accounts;
+
+    /**
+     * The owner of each account, indexed by account number.
+     */
+    private final IntHashIndex<Customer> accountOwners;
+
+    /**
+     * Customers sorted by last name, for prefix searches.
+     */
+    private final LastNameIndex lastNames;
+
+    /**
+     * Customers indexed by the digits of their phone number.
+     */
+    private final PhoneIndex phones;
+
+    /**
+     * Constructs a new {@code BankDirectory} sized for the expected number of customers.
+     *
+     * @param expectedCustomers The number of customers the directory is expected to hold.
+     */
+    public BankDirectory(int expectedCustomers) {
+        this.customers = new IntHashIndex<>(expectedCustomers);
+        this.accounts = new IntHashIndex<>(expectedCustomers * 3);
+        this.accountOwners = new IntHashIndex<>(expectedCustomers * 3);
+        this.lastNames = new LastNameIndex();
+        this.phones = new PhoneIndex(expectedCustomers);
+    }
+
+    /**
+     * Constructs a new, empty {@code BankDirectory}.
+     */
+    public BankDirectory() {
+        this(16);
+    }
+
+    /**
+     * Grows the indexes, if needed, to hold the given number of customers with
+     * three accounts each without resizing. Useful before a bulk load.
+     *
+     * @param expectedCustomers The number of customers the directory is expected to hold.
+     */
+    public void ensureCapacity(int expectedCustomers) {
+        customers.ensureCapacity(expectedCustomers);
+        accounts.ensureCapacity(expectedCustomers * 3);
+        accountOwners.ensureCapacity(expectedCustomers * 3);
+        lastNames.ensureCapacity(expectedCustomers);
+        phones.ensureCapacity(expectedCustomers);
+    }
+
+    /**
+     * Adds a customer and all of the customer's current accounts to the directory.
+     *
+     * @param customer The customer to add.
+     * @throws IllegalStateException If the directory keeps its customers in a file that
+     *                               cannot take this one, such as the snapshot of a
+     *                               {@link LazyDirectory}.
+     */
+    public void addCustomer(Customer customer) {
+        customers.put(customer.getId(), customer);
+        lastNames.add(customer);
+        phones.add(customer);
+        for (Account account : customer.getAccounts()) {
+            addAccount(customer, account);
+        }
+    }
+
+    /**
+     * Adds an account owned by the given customer to the directory.
+     *
+     * @param owner   The customer who owns the account.
+     * @param account The account to add.
+     */
+    public void addAccount(Customer owner, Account account) {
+        accounts.put(account.getAccountNumber(), account);
+        accountOwners.put(account.getAccountNumber(), owner);
+    }
+
+    /**
+     * Finds a customer by ID.
+     *
+     * @param customerID The ID of the customer.
+     * @return The customer if found, otherwise null.
+     */
+    public Customer findCustomer(int customerID) {
+        return customers.get(customerID);
+    }
+
+    /**
+     * Finds an account by account number.
+     *
+     * @param accountNumber The account number to look up.
+     * @return The account if found, otherwise null.
+     */
+    public Account findAccount(int accountNumber) {
+        return accounts.get(accountNumber);
+    }
+
+    /**
+     * Finds an account by account number, only if it belongs to the given customer.
+     *
+     * @param owner         The customer who must own the account.
+     * @param accountNumber The account number to look up.
+     * @return The account if found and owned by {@code owner}, otherwise null.
+     */
+    public Account findAccount(Customer owner, int accountNumber) {
+        if (accountOwners.get(accountNumber) != owner) {
+            return null;  // Account not found or owned by someone else
+        }
+        return accounts.get(accountNumber);
+    }
+
+    /**
+     * Finds the customer who owns an account.
+     *
+     * @param accountNumber The account number to look up.
+     * @return The owning customer if found, otherwise null.
+     */
+    public Customer findOwner(int accountNumber) {
+        return accountOwners.get(accountNumber);
+    }
+
+    /**
+     * Finds one page of the customers whose last name starts with a prefix, ignoring
+     * case, ordered by last name and then by ID.
+     *
+     * @param prefix The start of the last name; an empty prefix matches every customer.
+     * @param offset The number of matching customers to skip.
+     * @param limit  The largest number of customers to return.
+     * @return The customers of the page; empty past the last match.
+     */
+    public List<Customer> findCustomersByLastName(String prefix, int offset, int limit) {
+        return lastNames.search(prefix, offset, limit);
+    }
+
+    /**
+     * Counts the customers whose last name starts with a prefix, ignoring case.
+     *
+     * @param prefix The start of the last name.
+     * @return The number of matching customers.
+     */
+    public int countCustomersByLastName(String prefix) {
+        return lastNames.count(prefix);
+    }
+
+    /**
+     * Finds the customers with a phone number, in any format.
+     *
+     * @param phoneNumber The phone number, such as {@code (915) 747-5042}.
+     * @return The customers with that number; empty if there are none.
+     */
+    public List<Customer> findCustomersByPhone(String phoneNumber) {
+        return phones.find(phoneNumber);
+    }
+
+    /**
+     * Sorts the customers added since the last search into the last-name index. Called
+     * at the end of a bulk load, so the first search does not pay for the sort.
+     */
+    public void buildSearchIndexes() {
+        lastNames.merge();
+    }
+
+    /**
+     * Returns the number of customers in the directory.
+     *
+     * @return The number of customers.
+     */
+    public int customerCount() {
+        return customers.size();
+    }
+
+    /**
+     * Returns the number of accounts in the directory.
+     *
+     * @return The number of accounts.
+     */
+    public int accountCount() {
+        return accounts.size();
+    }
+
+    /**
+     * Returns whether every customer and account of the bank is in memory, as passes
+     * over all accounts, such as paying interest, need.
+     *
+     * @return {@code true} for this class.
+     */
+    public boolean isComplete() {
+        return true;
+    }
+}
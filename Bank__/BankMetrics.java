@@ -0,0 +1,219 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The latency and throughput metrics of the bank.
+ *
+ * <p>
+ * Every banking operation is timed from the balance change to the moment it is
+ * acknowledged, including its journal and log records, and counted as succeeded or
+ * failed. The parts an operation is made of are timed separately, so the cost of each
+ * can be told apart:
+ * </p>
+ * <ul>
+ *   <li>{@code lookup}: finding a customer or an account; a miss counts as failed.</li>
+ *   <li>{@code balance}: checking and changing the balances.</li>
+ *   <li>{@code journal}: appending to the binary {@link TransactionJournal}.</li>
+ *   <li>{@code log}: writing to the transaction log, or handing the event to the
+ *       asynchronous writer.</li>
+ * </ul>
+ *
+ * <p>
+ * All metrics are {@link OperationMetrics}, which record without allocating. They are
+ * registered as JMX MBeans named {@code Bank:type=Operation,name=...} and
+ * {@code Bank:type=Phase,name=...}, and can be written as a text table with the mean,
+ * p50, p99, p99.9 and maximum latency of each to a file at a fixed interval.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class BankMetrics {
+
+    /**
+     * The metrics of each operation, indexed by {@link TransactionType#ordinal()}.
+     */
+    private static final OperationMetrics[] OPERATIONS = new OperationMetrics[TransactionType.values().length];
+
+    static {
+        for (TransactionType type : TransactionType.values()) {
+            OPERATIONS[type.ordinal()] = new OperationMetrics(type.name().toLowerCase());
+        }
+    }
+
+    /**
+     * Customer and account lookups.
+     */
+    static final OperationMetrics LOOKUP = new OperationMetrics("lookup");
+
+    /**
+     * Balance checks and changes.
+     */
+    static final OperationMetrics BALANCE = new OperationMetrics("balance");
+
+    /**
+     * Journal appends.
+     */
+    static final OperationMetrics JOURNAL = new OperationMetrics("journal");
+
+    /**
+     * Transaction log writes.
+     */
+    static final OperationMetrics LOG = new OperationMetrics("log");
+
+    /**
+     * The phases, in the order they are dumped.
+     */
+    private static final OperationMetrics[] PHASES = {LOOKUP, BALANCE, JOURNAL, LOG};
+
+    /**
+     * The thread writing the periodic dump, or {@code null} if none is running.
+     */
+    private static Thread dumper;
+
+    /**
+     * Set when the dump thread should stop.
+     */
+    private static volatile boolean stopping;
+
+    /**
+     * The file the periodic dump is written to.
+     */
+    private static String dumpFile;
+
+    private BankMetrics() {
+    }
+
+    /**
+     * Returns the metrics of one kind of operation.
+     *
+     * @param type The type of the operation.
+     * @return The metrics.
+     */
+    static OperationMetrics of(TransactionType type) {
+        return OPERATIONS[type.ordinal()];
+    }
+
+    /**
+     * Registers every metric with the platform MBean server. Errors are reported and
+     * otherwise ignored, since the metrics keep being recorded either way.
+     */
+    static void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (OperationMetrics metrics : OPERATIONS) {
+                register(server, "Operation", metrics);
+            }
+            for (OperationMetrics metrics : PHASES) {
+                register(server, "Phase", metrics);
+            }
+        } catch (JMException | SecurityException e) {
+            System.err.println("Error registering metrics MBeans: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registers one metric, unless a metric with the same name is already registered.
+     */
+    private static void register(MBeanServer server, String type, OperationMetrics metrics) throws JMException {
+        ObjectName name = new ObjectName("Bank:type=" + type + ",name=" + metrics.getName());
+        if (!server.isRegistered(name)) {
+            server.registerMBean(metrics, name);
+        }
+    }
+
+    /**
+     * Starts writing the text dump to a file at a fixed interval on a background thread.
+     * Each dump replaces the previous one.
+     *
+     * @param file           The file to write the dump to.
+     * @param intervalMillis The time between dumps, in milliseconds.
+     */
+    static synchronized void startDump(String file, long intervalMillis) {
+        if (dumper != null) {
+            return;
+        }
+        dumpFile = file;
+        stopping = false;
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        dumper = new Thread(() -> {
+            while (!stopping) {
+                LockSupport.parkNanos(intervalNanos);
+                if (!stopping) {
+                    writeDump(file);
+                }
+            }
+        }, "metrics-dump");
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    /**
+     * Stops the periodic dump, if it is running, and writes a final dump.
+     */
+    static void stopDump() {
+        Thread worker;
+        synchronized (BankMetrics.class) {
+            worker = dumper;
+            dumper = null;
+            stopping = true;
+        }
+        if (worker == null) {
+            return;
+        }
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeDump(dumpFile);
+    }
+
+    /**
+     * Writes the text dump to a file, replacing its contents.
+     */
+    private static void writeDump(String file) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write(dump());
+        } catch (IOException e) {
+            System.err.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a text table of every metric, with latencies in microseconds.
+     *
+     * @return The table.
+     */
+    static String dump() {
+        StringBuilder text = new StringBuilder(2048);
+        text.append("Bank metrics at ").append(Instant.now()).append('\n');
+        appendHeader(text, "operation");
+        for (OperationMetrics metrics : OPERATIONS) {
+            metrics.appendSummary(text).append('\n');
+        }
+        text.append('\n');
+        appendHeader(text, "phase");
+        for (OperationMetrics metrics : PHASES) {
+            metrics.appendSummary(text).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Appends the column headings of a table.
+     */
+    private static void appendHeader(StringBuilder text, String kind) {
+        text.append(String.format("%-12s %12s %10s %10s %10s %10s %10s %10s%n",
+                kind, "succeeded", "failed", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A TCP front end that serves banking sessions over a line protocol.
+ *
+ * <p>
+ * The {@code BankServer} class accepts connections on a local port and runs each one
+ * on its own virtual thread, so tens of thousands of idle or slow clients cost a few
+ * kilobytes of heap each rather than a platform thread each. All sessions share the
+ * customers and accounts loaded by {@link RunBank}, whose operations are thread-safe.
+ * </p>
+ *
+ * <p>
+ * A client sends one operation per line in the operations-file format of
+ * {@link BatchRunner}, for example:
+ * </p>
+ * <pre>
+ * deposit,79,1078,150.25
+ * </pre>
+ * <p>
+ * and receives one results line, {@code request,type,status,detail}, where the request
+ * is the number of the line on its connection, starting at 1. Operations go through the
+ * same checks, journal records and log messages as the menu. Blank lines and lines
+ * starting with {@code #} get no reply, {@code quit} closes the connection,
+ * {@code interest} is refused, and lines longer than {@value #MAX_LINE} characters get
+ * an {@code ERROR} reply. Clients may pipeline requests: the requests that have
+ * arrived together are submitted to the {@link BankService} as one batch, and their
+ * replies are written in order once no more requests are waiting.
+ * </p>
+ *
+ * @see BatchRunner
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class BankServer {
+
+    /**
+     * The default port.
+     */
+    public static final int DEFAULT_PORT = 7070;
+
+    /**
+     * The size of the input and output buffers of one connection. Requests and replies
+     * are well under 100 bytes, and small buffers keep idle connections cheap.
+     */
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * The longest request line that is accepted; longer lines are refused with an
+     * {@code ERROR} reply, and the rest of them is skipped unread.
+     */
+    private static final int MAX_LINE = 256;
+
+    /**
+     * The number of pending connections the operating system queues before accepting.
+     */
+    private static final int BACKLOG = 4096;
+
+    /**
+     * How long to wait before accepting again after a failed accept.
+     */
+    private static final long ACCEPT_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The listening socket.
+     */
+    private final ServerSocket server;
+
+    /**
+     * The open connections, closed when the server stops.
+     */
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The number of connections accepted so far.
+     */
+    private final AtomicLong accepted = new AtomicLong();
+
+    /**
+     * Set once the server is closed.
+     */
+    private volatile boolean stopping;
+
+    /**
+     * Constructs a new {@code BankServer} listening on the loopback interface.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public BankServer(int port) throws IOException {
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress("localhost", port), BACKLOG);
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until {@link #close()} is called, then waits for every session
+     * to end.
+     */
+    public void serve() {
+        System.out.println("Bank server listening on " + server.getLocalSocketAddress() + ".");
+        try (ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (!stopping) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    break;  // The server socket was closed
+                } catch (IOException e) {
+                    // Usually out of file descriptors; wait for sessions to end rather than spin
+                    System.err.println("Error accepting connection: " + e.getMessage());
+                    LockSupport.parkNanos(ACCEPT_RETRY_NANOS);
+                    continue;
+                }
+                connections.add(socket);
+                accepted.incrementAndGet();
+                sessions.execute(() -> session(socket));
+            }
+
+            // Unblock the sessions waiting for their next request
+            for (Socket socket : connections) {
+                closeQuietly(socket);
+            }
+        }
+        System.out.println("Bank server stopped after " + accepted.get() + " connections.");
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones. {@link #serve()} returns
+     * once every session has ended.
+     */
+    public void close() {
+        stopping = true;
+        closeQuietly(server);
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Serves one connection until the client closes it or sends {@code quit}.
+     */
+    private void session(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            byte[] input = new byte[BUFFER_SIZE];
+            byte[] output = new byte[BUFFER_SIZE];
+            int position = 0;
+            int limit = 0;
+            StringBuilder request = new StringBuilder(64);
+            StringBuilder replies = new StringBuilder(128);
+            BatchRunner runner = new BatchRunner(replies, false);
+            long requestNumber = 0;
+
+            while (true) {
+                // Read one request line; the requests read so far run as one batch, and
+                // their replies are sent, before waiting for more input
+                request.setLength(0);
+                boolean tooLong = false;
+                boolean ended = false;
+                while (!ended) {
+                    if (position == limit) {
+                        runner.flush();
+                        send(replies, output, out);
+                        limit = in.read(input);
+                        position = 0;
+                        if (limit < 0) {
+                            return;
+                        }
+                    }
+                    while (position < limit) {
+                        byte b = input[position++];
+                        if (b == '\n') {
+                            ended = true;
+                            break;
+                        }
+                        if (b == '\r' || tooLong) {
+                            continue;
+                        }
+                        if (request.length() == MAX_LINE) {
+                            tooLong = true;
+                            continue;
+                        }
+                        request.append((char) (b & 0xFF));
+                    }
+                }
+
+                if (tooLong) {
+                    runner.refuseLine(++requestNumber, "Request longer than " + MAX_LINE + " characters.");
+                    continue;
+                }
+                if (request.length() == 4 && "quit".contentEquals(request)) {
+                    break;
+                }
+                runner.executeLine(++requestNumber, request.toString());
+            }
+            runner.flush();
+            send(replies, output, out);
+        } catch (IOException e) {
+            if (!stopping) {
+                System.err.println("Connection error: " + e.getMessage());
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Sends the pending replies through the output buffer and clears them.
+     */
+    private static void send(StringBuilder replies, byte[] output, OutputStream out) throws IOException {
+        int written = 0;
+        for (int i = 0; i < replies.length(); i++) {
+            if (written == output.length) {
+                out.write(output, 0, written);
+                written = 0;
+            }
+            char c = replies.charAt(i);
+            output[written++] = (byte) (c < 0x80 ? c : '?');
+        }
+        if (written > 0) {
+            out.write(output, 0, written);
+        }
+        replies.setLength(0);
+    }
+
+    /**
+     * Closes a socket, ignoring errors.
+     */
+    private static void closeQuietly(Closeable socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed or broken; nothing left to release
+        }
+    }
+}
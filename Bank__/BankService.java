@@ -0,0 +1,894 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The banking operations, without any user interface.
+ *
+ * <p>
+ * The {@code BankService} class checks, applies, journals, logs and times every
+ * operation, and reports its outcome as a {@link Result} instead of printing it. The
+ * console menu, the {@link BatchRunner} and the {@link BankServer} are all clients of
+ * one service, so an operation behaves the same whichever way it was made. Failed
+ * operations change nothing, except one that is {@link Outcome#NOT_DURABLE}; their
+ * {@link Result#getMessage() message} is the one the menu shows.
+ * </p>
+ *
+ * <p>
+ * When the journal is enabled, room for the record is reserved first, then the change is
+ * made while holding the {@link AccountLocks} of its accounts and its record is appended
+ * before they are released, so no other thread can see or build on a change of those
+ * accounts that is not yet in the journal, and recovery replays every account's changes
+ * in the order they were made. Operations on other accounts are made and recorded at the
+ * same time. If the journal cannot reserve the room, the change is not made. The
+ * journal is forced, when required, after the locks are released, and only then is the
+ * operation logged and acknowledged.
+ * </p>
+ *
+ * <p>
+ * Operations can be made one at a time, or many at once with
+ * {@link #submitBatch(List)}. A batch runs its commands in order, exactly as if they had
+ * been made one by one, but shares the fixed costs among them: every customer and
+ * account is looked up in one pass, the account locks the batch needs are taken once in
+ * {@code locked} concurrency mode or when journaling, the journal's room for the whole
+ * batch is reserved at once with at most one forced write, and all log lines are
+ * written at once. If the journal cannot reserve the room, none of the batch is made.
+ * Results are only returned once the whole batch is journaled, so a batch is
+ * acknowledged like one operation.
+ * </p>
+ *
+ * <p>
+ * Operations made one at a time record their lookups and phases in {@link BankMetrics}
+ * individually; a batch records each phase once, and the latency of each of its
+ * operations is the time the whole batch took.
+ * </p>
+ *
+ * @see RunBank
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class BankService {
+
+    /**
+     * The outcome of an operation.
+     */
+    public enum Outcome {
+        /** The operation was made. */
+        OK,
+        /** The customer making the operation does not exist. */
+        CUSTOMER_NOT_FOUND,
+        /** The account does not belong to the customer, or is not a credit account for a payment. */
+        ACCOUNT_NOT_FOUND,
+        /** The receiving customer does not exist. */
+        TARGET_CUSTOMER_NOT_FOUND,
+        /** The receiving account does not belong to the receiving customer. */
+        TARGET_ACCOUNT_NOT_FOUND,
+        /** The amount was invalid or exceeded the balance or credit limit. */
+        REJECTED,
+        /** The journal could not record the operation, so it was not made. */
+        NOT_RECORDED,
+        /**
+         * The operation was made and recorded, but the journal could not be forced to disk,
+         * so a crash may lose it.
+         */
+        NOT_DURABLE
+    }
+
+    /**
+     * One operation to submit in a batch. Amounts are in cents.
+     */
+    public static final class Command {
+        final TransactionType type;
+        final int customerID;
+        final int accountNumber;
+        final long amount;
+        final int targetCustomerID;
+        final int targetAccountNumber;
+
+        private Command(TransactionType type, int customerID, int accountNumber, long amount,
+                int targetCustomerID, int targetAccountNumber) {
+            this.type = type;
+            this.customerID = customerID;
+            this.accountNumber = accountNumber;
+            this.amount = amount;
+            this.targetCustomerID = targetCustomerID;
+            this.targetAccountNumber = targetAccountNumber;
+        }
+
+        /**
+         * Returns a command of any of the five customer operations. Unused fields are ignored.
+         *
+         * @param type                The type of the operation; not {@code INTEREST}.
+         * @param customerID          The ID of the customer making the operation.
+         * @param accountNumber       The account number the operation is made on.
+         * @param amount              The amount, in cents.
+         * @param targetCustomerID    The ID of the receiving customer.
+         * @param targetAccountNumber The receiving account number of a transfer.
+         * @return The command.
+         * @throws IllegalArgumentException If the type is {@code INTEREST}.
+         */
+        public static Command of(TransactionType type, int customerID, int accountNumber, long amount,
+                int targetCustomerID, int targetAccountNumber) {
+            if (type == TransactionType.INTEREST) {
+                throw new IllegalArgumentException("Interest is not a customer operation.");
+            }
+            return new Command(type, customerID, accountNumber, amount, targetCustomerID, targetAccountNumber);
+        }
+
+        /**
+         * Returns a balance inquiry.
+         *
+         * @param customerID    The ID of the customer.
+         * @param accountNumber The account number.
+         * @return The command.
+         */
+        public static Command inquiry(int customerID, int accountNumber) {
+            return new Command(TransactionType.INQUIRY, customerID, accountNumber, 0, 0, 0);
+        }
+
+        /**
+         * Returns a deposit.
+         *
+         * @param customerID    The ID of the customer.
+         * @param accountNumber The account number.
+         * @param amount        The amount, in cents.
+         * @return The command.
+         */
+        public static Command deposit(int customerID, int accountNumber, long amount) {
+            return new Command(TransactionType.DEPOSIT, customerID, accountNumber, amount, 0, 0);
+        }
+
+        /**
+         * Returns a withdrawal.
+         *
+         * @param customerID    The ID of the customer.
+         * @param accountNumber The account number.
+         * @param amount        The amount, in cents.
+         * @return The command.
+         */
+        public static Command withdraw(int customerID, int accountNumber, long amount) {
+            return new Command(TransactionType.WITHDRAW, customerID, accountNumber, amount, 0, 0);
+        }
+
+        /**
+         * Returns a transfer.
+         *
+         * @param customerID          The ID of the sender.
+         * @param accountNumber       The source account number.
+         * @param amount              The amount, in cents.
+         * @param targetCustomerID    The ID of the receiver.
+         * @param targetAccountNumber The target account number.
+         * @return The command.
+         */
+        public static Command transfer(int customerID, int accountNumber, long amount,
+                int targetCustomerID, int targetAccountNumber) {
+            return new Command(TransactionType.TRANSFER, customerID, accountNumber, amount,
+                    targetCustomerID, targetAccountNumber);
+        }
+
+        /**
+         * Returns a payment from a credit account into the receiver's first account.
+         *
+         * @param customerID          The ID of the payer.
+         * @param creditAccountNumber The payer's credit account number.
+         * @param amount              The amount, in cents.
+         * @param receiverID          The ID of the receiver.
+         * @return The command.
+         */
+        public static Command pay(int customerID, int creditAccountNumber, long amount, int receiverID) {
+            return new Command(TransactionType.PAY, customerID, creditAccountNumber, amount, receiverID, 0);
+        }
+    }
+
+    /**
+     * The outcome of one operation and the balance it left.
+     */
+    public static final class Result {
+        private final TransactionType type;
+        private final Outcome outcome;
+        private final int customerID;
+        private final Account account;
+        private final long balance;
+
+        Result(TransactionType type, Outcome outcome, int customerID, Account account, long balance) {
+            this.type = type;
+            this.outcome = outcome;
+            this.customerID = customerID;
+            this.account = account;
+            this.balance = balance;
+        }
+
+        /**
+         * Returns the type of the operation.
+         *
+         * @return The type.
+         */
+        public TransactionType getType() {
+            return type;
+        }
+
+        /**
+         * Returns the outcome of the operation.
+         *
+         * @return The outcome.
+         */
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Returns whether the operation was made.
+         *
+         * @return {@code true} if the outcome is {@link Outcome#OK}.
+         */
+        public boolean isOk() {
+            return outcome == Outcome.OK;
+        }
+
+        /**
+         * Returns the account the operation was made on.
+         *
+         * @return The account, or {@code null} if it was not found.
+         */
+        public Account getAccount() {
+            return account;
+        }
+
+        /**
+         * Returns the balance of the account right after the operation.
+         *
+         * @return The balance in cents, or 0 if the operation was not made. An operation
+         *         that is {@link Outcome#NOT_DURABLE} was made and has its balance.
+         */
+        public long getBalance() {
+            return balance;
+        }
+
+        /**
+         * Returns the message the menu shows when the operation fails.
+         *
+         * @return The message, or {@code null} if the operation was made.
+         */
+        public String getMessage() {
+            boolean transfer = type == TransactionType.TRANSFER;
+            boolean pay = type == TransactionType.PAY;
+            switch (outcome) {
+                case CUSTOMER_NOT_FOUND:
+                    return transfer ? "Sender not found." : pay ? "Payer not found."
+                            : "Customer with ID " + customerID + " not found.";
+                case ACCOUNT_NOT_FOUND:
+                    return transfer ? "Source account not found." : pay ? "Invalid credit account." : "Account not found.";
+                case TARGET_CUSTOMER_NOT_FOUND:
+                    return "Receiver not found.";
+                case TARGET_ACCOUNT_NOT_FOUND:
+                    return "Target account not found.";
+                case REJECTED:
+                    switch (type) {
+                        case DEPOSIT:
+                            return Account.DEPOSIT_FAILED;
+                        case WITHDRAW:
+                            return account.withdrawalFailure();
+                        case TRANSFER:
+                            return Account.TRANSFER_FAILED;
+                        default:
+                            return Credit.PAYMENT_FAILED;
+                    }
+                case NOT_RECORDED:
+                    return "The transaction could not be recorded, so it was not made.";
+                case NOT_DURABLE:
+                    return "The transaction was made, but could not be saved to disk.";
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * The customers and accounts.
+     */
+    private final BankDirectory directory;
+
+    /**
+     * The binary transaction journal, or {@code null} when journaling is disabled.
+     */
+    private final TransactionJournal journal;
+
+    /**
+     * Whether each journal record, or each batch's records, is forced to disk before
+     * the operation is acknowledged.
+     */
+    private final boolean journalSync;
+
+    /**
+     * Constructs a new {@code BankService}.
+     *
+     * @param directory   The customers and accounts.
+     * @param journal     The journal to record every operation in, or {@code null}.
+     * @param journalSync Whether to force the journal to disk before acknowledging.
+     */
+    public BankService(BankDirectory directory, TransactionJournal journal, boolean journalSync) {
+        this.directory = directory;
+        this.journal = journal;
+        this.journalSync = journalSync;
+    }
+
+    /**
+     * Finds a customer by ID, timing the lookup in {@link BankMetrics}.
+     *
+     * @param customerID The ID of the customer.
+     * @return The customer, or {@code null} if there is none.
+     */
+    public Customer findCustomer(int customerID) {
+        long start = System.nanoTime();
+        Customer customer = directory.findCustomer(customerID);
+        BankMetrics.LOOKUP.record(start, customer != null);
+        return customer;
+    }
+
+    /**
+     * Finds an account by number, only if it belongs to the given customer, timing the
+     * lookup in {@link BankMetrics}.
+     *
+     * @param customer      The customer who must own the account.
+     * @param accountNumber The account number.
+     * @return The account, or {@code null} if the customer has no such account.
+     */
+    public Account findAccount(Customer customer, int accountNumber) {
+        long start = System.nanoTime();
+        Account account = directory.findAccount(customer, accountNumber);
+        BankMetrics.LOOKUP.record(start, account != null);
+        return account;
+    }
+
+    /**
+     * Finds one page of the customers whose last name starts with a prefix, ignoring
+     * case, ordered by last name and then by ID.
+     *
+     * @param prefix The start of the last name.
+     * @param offset The number of matching customers to skip.
+     * @param limit  The largest number of customers to return.
+     * @return The customers of the page; empty past the last match.
+     */
+    public List<Customer> findCustomersByLastName(String prefix, int offset, int limit) {
+        long start = System.nanoTime();
+        List<Customer> page = directory.findCustomersByLastName(prefix.trim(), offset, limit);
+        BankMetrics.LOOKUP.record(start, !page.isEmpty());
+        return page;
+    }
+
+    /**
+     * Counts the customers whose last name starts with a prefix, ignoring case, for
+     * paging through {@link #findCustomersByLastName(String, int, int)}.
+     *
+     * @param prefix The start of the last name.
+     * @return The number of matching customers.
+     */
+    public int countCustomersByLastName(String prefix) {
+        return directory.countCustomersByLastName(prefix.trim());
+    }
+
+    /**
+     * Finds the customers with a phone number, in any format.
+     *
+     * @param phoneNumber The phone number, such as {@code (915) 747-5042}.
+     * @return The customers with that number; empty if there are none.
+     */
+    public List<Customer> findCustomersByPhone(String phoneNumber) {
+        long start = System.nanoTime();
+        List<Customer> found = directory.findCustomersByPhone(phoneNumber);
+        BankMetrics.LOOKUP.record(start, !found.isEmpty());
+        return found;
+    }
+
+    /**
+     * Makes a balance inquiry.
+     *
+     * @param customerID    The ID of the customer.
+     * @param accountNumber The account number.
+     * @return The result, with the balance of the account.
+     */
+    public Result inquire(int customerID, int accountNumber) {
+        Customer customer = findCustomer(customerID);
+        if (customer == null) {
+            return failure(TransactionType.INQUIRY, Outcome.CUSTOMER_NOT_FOUND, customerID, null);
+        }
+        Account account = findAccount(customer, accountNumber);
+        if (account == null) {
+            return failure(TransactionType.INQUIRY, Outcome.ACCOUNT_NOT_FOUND, customerID, null);
+        }
+
+        return make(TransactionType.INQUIRY, customerID, customer, account, null, null, 0);
+    }
+
+    /**
+     * Deposits an amount, recording it before it is acknowledged.
+     *
+     * @param customerID    The ID of the customer.
+     * @param accountNumber The account number.
+     * @param amount        The amount, in cents.
+     * @return The result, with the new balance if the deposit was made.
+     */
+    public Result deposit(int customerID, int accountNumber, long amount) {
+        Customer customer = findCustomer(customerID);
+        if (customer == null) {
+            return failure(TransactionType.DEPOSIT, Outcome.CUSTOMER_NOT_FOUND, customerID, null);
+        }
+        Account account = findAccount(customer, accountNumber);
+        if (account == null) {
+            return failure(TransactionType.DEPOSIT, Outcome.ACCOUNT_NOT_FOUND, customerID, null);
+        }
+
+        return make(TransactionType.DEPOSIT, customerID, customer, account, null, null, amount);
+    }
+
+    /**
+     * Withdraws an amount, recording it before it is acknowledged.
+     *
+     * @param customerID    The ID of the customer.
+     * @param accountNumber The account number.
+     * @param amount        The amount, in cents.
+     * @return The result, with the new balance if the withdrawal was made.
+     */
+    public Result withdraw(int customerID, int accountNumber, long amount) {
+        Customer customer = findCustomer(customerID);
+        if (customer == null) {
+            return failure(TransactionType.WITHDRAW, Outcome.CUSTOMER_NOT_FOUND, customerID, null);
+        }
+        Account account = findAccount(customer, accountNumber);
+        if (account == null) {
+            return failure(TransactionType.WITHDRAW, Outcome.ACCOUNT_NOT_FOUND, customerID, null);
+        }
+
+        return make(TransactionType.WITHDRAW, customerID, customer, account, null, null, amount);
+    }
+
+    /**
+     * Transfers an amount between two accounts, recording it before it is acknowledged.
+     *
+     * @param customerID          The ID of the sender.
+     * @param accountNumber       The source account number.
+     * @param amount              The amount, in cents.
+     * @param targetCustomerID    The ID of the receiver.
+     * @param targetAccountNumber The target account number.
+     * @return The result, with the new balance of the source account if the transfer was made.
+     */
+    public Result transfer(int customerID, int accountNumber, long amount, int targetCustomerID,
+            int targetAccountNumber) {
+        Customer sender = findCustomer(customerID);
+        if (sender == null) {
+            return failure(TransactionType.TRANSFER, Outcome.CUSTOMER_NOT_FOUND, customerID, null);
+        }
+        Account source = findAccount(sender, accountNumber);
+        if (source == null) {
+            return failure(TransactionType.TRANSFER, Outcome.ACCOUNT_NOT_FOUND, customerID, null);
+        }
+        Customer receiver = findCustomer(targetCustomerID);
+        if (receiver == null) {
+            return failure(TransactionType.TRANSFER, Outcome.TARGET_CUSTOMER_NOT_FOUND, customerID, source);
+        }
+        Account target = findAccount(receiver, targetAccountNumber);
+        if (target == null) {
+            return failure(TransactionType.TRANSFER, Outcome.TARGET_ACCOUNT_NOT_FOUND, customerID, source);
+        }
+
+        return make(TransactionType.TRANSFER, customerID, sender, source, receiver, target, amount);
+    }
+
+    /**
+     * Pays an amount from a credit account into the receiver's first account, recording
+     * it before it is acknowledged.
+     *
+     * @param customerID          The ID of the payer.
+     * @param creditAccountNumber The payer's credit account number.
+     * @param amount              The amount, in cents.
+     * @param receiverID          The ID of the receiver.
+     * @return The result, with the new credit balance if the payment was made.
+     */
+    public Result pay(int customerID, int creditAccountNumber, long amount, int receiverID) {
+        Customer payer = findCustomer(customerID);
+        if (payer == null) {
+            return failure(TransactionType.PAY, Outcome.CUSTOMER_NOT_FOUND, customerID, null);
+        }
+        Account account = findAccount(payer, creditAccountNumber);
+        if (!(account instanceof Credit)) {
+            return failure(TransactionType.PAY, Outcome.ACCOUNT_NOT_FOUND, customerID, null);
+        }
+        Customer receiver = findCustomer(receiverID);
+        if (receiver == null) {
+            return failure(TransactionType.PAY, Outcome.TARGET_CUSTOMER_NOT_FOUND, customerID, account);
+        }
+        Account target = receiver.getPaymentAccount();
+        if (target == null) {
+            return failure(TransactionType.PAY, Outcome.TARGET_ACCOUNT_NOT_FOUND, customerID, account);
+        }
+
+        return make(TransactionType.PAY, customerID, payer, account, receiver, target, amount);
+    }
+
+    /**
+     * Makes many operations in order, sharing the lookups, locks, journal writes and
+     * log writes among them. The outcome of each is the same as if it had been made on
+     * its own right after the one before it.
+     *
+     * @param commands The operations, in order.
+     * @return The results, in the same order as the commands.
+     */
+    public Result[] submitBatch(List<Command> commands) {
+        int count = commands.size();
+        Result[] results = new Result[count];
+        if (count == 0) {
+            return results;
+        }
+        long start = System.nanoTime();
+
+        // Look up every customer and account in one pass
+        Customer[] customers = new Customer[count];
+        Account[] accounts = new Account[count];
+        Customer[] receivers = new Customer[count];
+        Account[] targets = new Account[count];
+        boolean allFound = true;
+        for (int i = 0; i < count; i++) {
+            Outcome missing = resolve(commands.get(i), i, customers, accounts, receivers, targets);
+            if (missing != null) {
+                Command command = commands.get(i);
+                results[i] = failure(command.type, missing, command.customerID, accounts[i]);
+                allFound = false;
+            }
+        }
+        long balanceStart = System.nanoTime();
+        BankMetrics.LOOKUP.record(start, allFound);
+
+        // Apply the changes in order, recording each in the journal before the next, under
+        // the locks of every account involved when locking or journaling
+        long[] balances = new long[count];
+        long[] targetBalances = new long[count];
+        int pending = 0;
+        for (int i = 0; i < count; i++) {
+            if (results[i] == null) {
+                pending++;
+            }
+        }
+        if (journal != null && pending > 0 && !reserve(pending, balanceStart)) {
+            // Nothing is made if the batch could not be recorded
+            for (int i = 0; i < count; i++) {
+                if (results[i] == null) {
+                    results[i] = failure(commands.get(i).type, Outcome.NOT_RECORDED,
+                            commands.get(i).customerID, accounts[i]);
+                }
+            }
+            pending = 0;
+        }
+        int[] stripes = null;
+        int locked = 0;
+        int made = 0;
+        try {
+            if (pending > 0 && (!Account.LOCK_FREE || journal != null)) {
+                stripes = new int[count * 2];
+                for (int i = 0; i < count; i++) {
+                    if (results[i] == null) {
+                        stripes[locked++] = accounts[i].getAccountNumber();
+                        if (targets[i] != null) {
+                            stripes[locked++] = targets[i].getAccountNumber();
+                        }
+                    }
+                }
+                locked = AccountLocks.lockAll(stripes, locked);
+            }
+            for (int i = 0; i < count; i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                Command command = commands.get(i);
+                balances[i] = applyRecorded(command.type, customers[i], accounts[i], receivers[i], targets[i],
+                        command.amount, targetBalances, i);
+                if (balances[i] != Account.REJECTED) {
+                    results[i] = new Result(command.type, Outcome.OK, command.customerID, accounts[i], balances[i]);
+                    made++;
+                } else {
+                    results[i] = failure(command.type, Outcome.REJECTED, command.customerID, accounts[i]);
+                }
+            }
+        } finally {
+            if (stripes != null) {
+                AccountLocks.unlockAll(stripes, locked);
+            }
+        }
+        BankMetrics.BALANCE.record(balanceStart, true);
+
+        if (made > 0) {
+            if (!forceJournal(balanceStart)) {
+                for (int i = 0; i < count; i++) {
+                    if (results[i].isOk()) {
+                        results[i] = new Result(results[i].type, Outcome.NOT_DURABLE, results[i].customerID,
+                                accounts[i], balances[i]);
+                    }
+                }
+            }
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                if (wasMade(results[i])) {
+                    Command command = commands.get(i);
+                    recordActivity(command.type, accounts[i], targets[i], command.amount, balances[i],
+                            targetBalances[i], now);
+                }
+            }
+            logBatch(commands, results, customers, accounts, receivers, targets, balances, targetBalances);
+        }
+
+        // Every operation waited for the whole batch
+        long nanos = System.nanoTime() - start;
+        for (int i = 0; i < count; i++) {
+            Result result = results[i];
+            if (result.outcome == Outcome.OK || result.outcome == Outcome.REJECTED
+                    || result.outcome == Outcome.NOT_RECORDED || result.outcome == Outcome.NOT_DURABLE) {
+                BankMetrics.of(result.type).recordNanos(nanos, result.outcome == Outcome.OK);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the latest balance changes of an account, newest first, from memory.
+     *
+     * @param customerID    The ID of the customer.
+     * @param accountNumber The account number.
+     * @param max           The largest number of changes to return.
+     * @return The changes, or {@code null} if the customer or the account was not found.
+     */
+    public List<RecentActivity.Entry> recentActivity(int customerID, int accountNumber, int max) {
+        Customer customer = findCustomer(customerID);
+        Account account = customer != null ? findAccount(customer, accountNumber) : null;
+        return account != null ? RecentActivity.ACCOUNTS.recent(account, max) : null;
+    }
+
+    /**
+     * Pays interest into every savings account at the rates of the
+     * {@code bank.interest.tiers} system property, or at the {@link Saving} rate if it is
+     * not set. The payments are recorded in the journal and one summary is logged.
+     * Nothing is paid if the directory does not hold every account, such as a
+     * {@link LazyDirectory}.
+     *
+     * @return The number of accounts paid and the total interest, or {@code null} if
+     *         the accrual failed or is not possible.
+     */
+    public InterestAccrual.Summary accrueInterest() {
+        if (!directory.isComplete()) {
+            System.err.println("Interest cannot be paid with a customer snapshot: only the customers in use are in memory.");
+            BankMetrics.of(TransactionType.INTEREST).recordNanos(0, false);
+            return null;
+        }
+        String tiers = System.getProperty("bank.interest.tiers");
+        InterestAccrual.Summary summary;
+        try {
+            InterestAccrual.RateSchedule schedule = tiers != null
+                    ? InterestAccrual.parseTiers(tiers)
+                    : InterestAccrual.flat(Saving.INTEREST_RATE_BASIS_POINTS);
+            summary = new InterestAccrual(AccountStore.ACCOUNTS, schedule, journal).accrue();
+            if (journal != null && journalSync) {
+                journal.force();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error accruing interest: " + e.getMessage());
+            BankMetrics.of(TransactionType.INTEREST).recordNanos(0, false);
+            return null;
+        }
+        BankMetrics.of(TransactionType.INTEREST).recordNanos(summary.getNanos(), true);
+        transactionLogger.logInterest(summary.getAccounts(), summary.getInterest());
+        return summary;
+    }
+
+    /**
+     * Looks up the customers and accounts of one command of a batch.
+     *
+     * @return The outcome of the first lookup that failed, or {@code null} if all were found.
+     */
+    private Outcome resolve(Command command, int i, Customer[] customers, Account[] accounts,
+            Customer[] receivers, Account[] targets) {
+        Customer customer = directory.findCustomer(command.customerID);
+        if (customer == null) {
+            return Outcome.CUSTOMER_NOT_FOUND;
+        }
+        Account account = directory.findAccount(customer, command.accountNumber);
+        if (account == null || (command.type == TransactionType.PAY && !(account instanceof Credit))) {
+            return Outcome.ACCOUNT_NOT_FOUND;
+        }
+        customers[i] = customer;
+        accounts[i] = account;
+        if (command.type == TransactionType.TRANSFER || command.type == TransactionType.PAY) {
+            Customer receiver = directory.findCustomer(command.targetCustomerID);
+            if (receiver == null) {
+                return Outcome.TARGET_CUSTOMER_NOT_FOUND;
+            }
+            Account target = command.type == TransactionType.PAY
+                    ? receiver.getPaymentAccount()
+                    : directory.findAccount(receiver, command.targetAccountNumber);
+            if (target == null) {
+                return Outcome.TARGET_ACCOUNT_NOT_FOUND;
+            }
+            receivers[i] = receiver;
+            targets[i] = target;
+        }
+        return null;
+    }
+
+    /**
+     * Logs the events of a batch's successful operations with one call to the logger.
+     */
+    private static void logBatch(List<Command> commands, Result[] results, Customer[] customers,
+            Account[] accounts, Customer[] receivers, Account[] targets, long[] balances,
+            long[] targetBalances) {
+        int count = results.length;
+        TransactionType[] types = new TransactionType[count];  // Null for the operations not made
+        long[] amounts = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (wasMade(results[i])) {
+                Command command = commands.get(i);
+                types[i] = command.type;
+                amounts[i] = command.amount;
+            }
+        }
+        transactionLogger.logEvents(types, customers, accounts, receivers, targets, amounts, balances,
+                targetBalances, count);
+    }
+
+    /**
+     * Makes one operation whose customers and accounts were found: makes the change and
+     * records it in the journal as one step, forces the journal if required, and only
+     * then records the activity, logs the event and acknowledges it.
+     */
+    private Result make(TransactionType type, int customerID, Customer customer, Account account,
+            Customer receiver, Account target, long amount) {
+        long start = System.nanoTime();
+        if (journal != null && !reserve(1, start)) {
+            BankMetrics.BALANCE.record(start, false);
+            BankMetrics.of(type).record(start, false);
+            return failure(type, Outcome.NOT_RECORDED, customerID, account);
+        }
+        long[] targetBalance = new long[1];
+        long balance = applyRecorded(type, customer, account, receiver, target, amount, targetBalance, 0);
+        boolean done = balance != Account.REJECTED;
+        BankMetrics.BALANCE.record(start, done);
+        if (!done) {
+            BankMetrics.of(type).record(start, false);
+            return failure(type, Outcome.REJECTED, customerID, account);
+        }
+        boolean durable = forceJournal(start);
+        recordActivity(type, account, target, amount, balance, targetBalance[0], System.currentTimeMillis());
+        transactionLogger.logEvent(type, customer, account, receiver, target, amount, balance, targetBalance[0]);
+        BankMetrics.of(type).record(start, durable);
+        return new Result(type, durable ? Outcome.OK : Outcome.NOT_DURABLE, customerID, account, balance);
+    }
+
+    /**
+     * Reserves room in the journal for the records of operations about to be made.
+     *
+     * @param records The number of records.
+     * @param start   The time the operations started, for the journal's metrics.
+     * @return {@code false} if the journal cannot take them, so they must not be made.
+     */
+    private boolean reserve(int records, long start) {
+        try {
+            journal.reserve(records);
+            return true;
+        } catch (IOException e) {
+            BankMetrics.JOURNAL.record(start, false);
+            System.err.println("Error writing to transaction journal: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Makes the change of one operation and, if journaling is enabled, appends its record
+     * into room already reserved while still holding the locks of its accounts, so no
+     * other thread sees the change before it is recorded and the records of every account
+     * are in the order of its changes. An inquiry holds the lock too, as its record
+     * carries the balance it read. The reservation is given back if the change is rejected.
+     *
+     * @return The balance the operation left in the account, or {@link Account#REJECTED}.
+     */
+    private long applyRecorded(TransactionType type, Customer customer, Account account, Customer receiver,
+            Account target, long amount, long[] targetBalances, int i) {
+        if (journal == null) {
+            return apply(type, account, target, amount, targetBalances, i);
+        }
+        int other = target != null ? target.getAccountNumber() : account.getAccountNumber();
+        AccountLocks.lockBoth(account.getAccountNumber(), other);
+        try {
+            long balance = apply(type, account, target, amount, targetBalances, i);
+            if (balance != Account.REJECTED) {
+                journal.appendReserved(type, customer.getId(), account.getAccountNumber(),
+                        receiver != null ? receiver.getId() : 0, target != null ? target.getAccountNumber() : 0,
+                        amount, balance, target != null ? targetBalances[i] : 0);
+            } else {
+                journal.cancel(1);
+            }
+            return balance;
+        } finally {
+            AccountLocks.unlockBoth(account.getAccountNumber(), other);
+        }
+    }
+
+    /**
+     * Makes the change of one operation on its account.
+     *
+     * @return The balance the operation left in the account, or {@link Account#REJECTED}.
+     */
+    private static long apply(TransactionType type, Account account, Account target, long amount,
+            long[] targetBalances, int i) {
+        switch (type) {
+            case INQUIRY:
+                return account.getBalance();
+            case DEPOSIT:
+                return account.tryDeposit(amount);
+            case WITHDRAW:
+                return account.tryWithdraw(amount, account.minimumBalance());
+            case TRANSFER:
+                return account.tryTransfer(target, amount, targetBalances, i);
+            default:
+                return ((Credit) account).tryPay(amount, target, targetBalances, i);
+        }
+    }
+
+    /**
+     * Forces the journal to disk if journaling is enabled and required before
+     * acknowledging, timing the journal work since the given start.
+     *
+     * @return {@code false} if the journal could not be forced.
+     */
+    private boolean forceJournal(long start) {
+        if (journal == null) {
+            return true;
+        }
+        try {
+            if (journalSync) {
+                journal.force();
+            }
+            BankMetrics.JOURNAL.record(start, true);
+            return true;
+        } catch (IOException e) {
+            BankMetrics.JOURNAL.record(start, false);
+            System.err.println("Error forcing transaction journal: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether an operation changed its account, even if the change may not be durable.
+     */
+    private static boolean wasMade(Result result) {
+        return result.outcome == Outcome.OK || result.outcome == Outcome.NOT_DURABLE;
+    }
+
+    /**
+     * Records a balance change in the {@link RecentActivity} of the accounts it changed:
+     * the amount leaves the account and, for transfers and payments, enters the target.
+     * Inquiries change nothing and are not recorded.
+     */
+    private static void recordActivity(TransactionType type, Account account, Account target, long amount,
+            long balance, long targetBalance, long timeMillis) {
+        switch (type) {
+            case DEPOSIT:
+                RecentActivity.ACCOUNTS.record(account, type, amount, 0, balance, timeMillis);
+                break;
+            case WITHDRAW:
+                RecentActivity.ACCOUNTS.record(account, type, -amount, 0, balance, timeMillis);
+                break;
+            case TRANSFER:
+            case PAY:
+                RecentActivity.ACCOUNTS.record(account, type, -amount, target.getAccountNumber(), balance,
+                        timeMillis);
+                RecentActivity.ACCOUNTS.record(target, type, amount, account.getAccountNumber(), targetBalance,
+                        timeMillis);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the result of an operation that was not made.
+     */
+    private static Result failure(TransactionType type, Outcome outcome, int customerID, Account account) {
+        return new Result(type, outcome, customerID, account, 0);
+    }
+}
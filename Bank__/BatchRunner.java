@@ -0,0 +1,391 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Executes a file of banking operations without the console menu.
+ *
+ * <p>
+ * The {@code BatchRunner} class streams an operations file and submits its operations
+ * to the {@link BankService} in batches of {@value #BATCH_SIZE}, so files of any size run
+ * in constant memory and share the cost of lookups, locks, journal and log writes. Each
+ * operation has the same checks, journal records and log messages as the matching menu
+ * option, and its outcome is written to a results file. A summary with the throughput
+ * is printed at the end.
+ * </p>
+ *
+ * <p>
+ * An operations file is either a CSV file or a {@link TransactionJournal} directory,
+ * whose records are executed as operations. CSV lines have the form:
+ * </p>
+ * <pre>
+ * inquiry,customerID,accountNumber
+ * deposit,customerID,accountNumber,amount
+ * withdraw,customerID,accountNumber,amount
+ * transfer,customerID,sourceAccountNumber,amount,targetCustomerID,targetAccountNumber
+ * pay,customerID,creditAccountNumber,amount,receiverCustomerID
+ * interest
+ * </pre>
+ * <p>
+ * Amounts are in dollars, such as {@code 150.25}. Blank lines, lines starting with
+ * {@code #} and a header line starting with {@code type} are skipped. An {@code interest}
+ * line pays interest into every savings account with {@link BankService#accrueInterest()},
+ * for example at the end of a day's operations.
+ * </p>
+ *
+ * <p>
+ * Every operation produces one results line, {@code line,type,status,detail}, where the
+ * status is {@code OK} with the new balance of the account, {@code FAILED} with the same
+ * message the menu would show, or {@code ERROR} if the line could not be parsed. The
+ * {@link BankServer} runs the lines its clients send through a {@code BatchRunner} too.
+ * </p>
+ *
+ * @see RunBank
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class BatchRunner {
+
+    /**
+     * The number of operations submitted to the {@link BankService} at once.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Where the results lines are written: the results file, or a {@link BankServer}
+     * connection.
+     */
+    private final Appendable results;
+
+    /**
+     * Whether {@code interest} lines may be run.
+     */
+    private final boolean interestAllowed;
+
+    /**
+     * Reusable builder for one results line.
+     */
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * The bounds of the fields of the current CSV line.
+     */
+    private final int[] fieldStart = new int[6];
+    private final int[] fieldEnd = new int[6];
+
+    /**
+     * The operations queued for the next batch, and their line numbers.
+     */
+    private final ArrayList<BankService.Command> pending = new ArrayList<>(BATCH_SIZE);
+    private final long[] pendingLines = new long[BATCH_SIZE];
+
+    // Counts of operations by outcome
+    private long succeeded;
+    private long failed;
+    private long errors;
+
+    /**
+     * Constructs a new {@code BatchRunner} writing to the given results.
+     *
+     * @param results         Where to write the results lines.
+     * @param interestAllowed Whether {@code interest} lines may be run; when not, they
+     *                        fail without paying any interest.
+     */
+    BatchRunner(Appendable results, boolean interestAllowed) {
+        this.results = results;
+        this.interestAllowed = interestAllowed;
+    }
+
+    /**
+     * Executes every operation in an operations file against the loaded bank.
+     *
+     * @param inputPath   The CSV operations file or journal directory.
+     * @param resultsPath The file to write one results line per operation to.
+     */
+    public static void run(String inputPath, String resultsPath) {
+        long start = System.nanoTime();
+        BatchRunner runner;
+        try (BufferedWriter results = new BufferedWriter(new FileWriter(resultsPath), 1 << 16)) {
+            results.write("line,type,status,detail\n");
+            runner = new BatchRunner(results, true);
+            if (new File(inputPath).isDirectory()) {
+                runner.runJournal(inputPath);
+            } else {
+                runner.runCsv(inputPath);
+            }
+            runner.flush();
+        } catch (IOException e) {
+            System.err.println("Error running batch file: " + e.getMessage());
+            return;
+        }
+
+        long total = runner.succeeded + runner.failed + runner.errors;
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Batch complete: %d operations (%d succeeded, %d failed, %d errors) in %.3f s, "
+                + "%.0f operations/s. Results written to %s%n", total, runner.succeeded, runner.failed,
+                runner.errors, seconds, total / Math.max(seconds, 1e-9), resultsPath);
+    }
+
+    /**
+     * Executes the operations of a CSV file.
+     */
+    private void runCsv(String inputPath) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(inputPath), 1 << 16)) {
+            String text;
+            long lineNumber = 0;
+            while ((text = reader.readLine()) != null) {
+                executeLine(++lineNumber, text);
+            }
+        }
+    }
+
+    /**
+     * Parses one CSV operations line and executes it, or queues it for the next batch;
+     * its results line is written once it has been executed. Call {@link #flush()} to
+     * execute the queued operations.
+     *
+     * @param lineNumber The number of the line, echoed in its results line.
+     * @param text       The line.
+     * @return {@code false} if the line was skipped as blank, a comment or a header, in
+     *         which case no results line is written.
+     * @throws IOException If the results line cannot be written.
+     */
+    boolean executeLine(long lineNumber, String text) throws IOException {
+        int fields = split(text);
+        if (fields == 0 || text.charAt(fieldStart[0]) == '#'
+                || (lineNumber == 1 && text.regionMatches(true, fieldStart[0], "type", 0, 4))) {
+            return false;  // Blank line, comment or header
+        }
+
+        TransactionType type = parseType(text, fieldStart[0], fieldEnd[0]);
+        int expected = type == null ? 0 : fieldCount(type);
+        if (type == null || fields < expected) {
+            error(lineNumber, text.substring(fieldStart[0], fieldEnd[0]),
+                    type == null ? "Unknown operation." : "Expected " + expected + " fields.");
+            return true;
+        }
+        try {
+            int customerID = expected > 1 ? Integer.parseInt(text, fieldStart[1], fieldEnd[1], 10) : 0;
+            int accountNumber = expected > 2 ? Integer.parseInt(text, fieldStart[2], fieldEnd[2], 10) : 0;
+            long amount = expected > 3 ? Money.parse(text, fieldStart[3], fieldEnd[3]) : 0;
+            int targetCustomerID = expected > 4 ? Integer.parseInt(text, fieldStart[4], fieldEnd[4], 10) : 0;
+            int targetAccountNumber = expected > 5 ? Integer.parseInt(text, fieldStart[5], fieldEnd[5], 10) : 0;
+            execute(lineNumber, type, customerID, accountNumber, amount, targetCustomerID, targetAccountNumber);
+        } catch (NumberFormatException e) {
+            error(lineNumber, name(type), "Invalid number: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Executes the records of a journal directory as operations, numbered by sequence.
+     */
+    private void runJournal(String directory) throws IOException {
+        JournalReader reader = new JournalReader(directory);
+        while (reader.next()) {
+            TransactionType type = reader.getType();
+            if (type == null) {
+                error(reader.getSequence(), "unknown", "Unknown operation.");
+                continue;
+            }
+            if (type == TransactionType.INTEREST) {
+                // One payment of a bulk accrual, not an operation that can be repeated alone
+                error(reader.getSequence(), name(type), "Interest payments cannot be run one by one.");
+                continue;
+            }
+            execute(reader.getSequence(), type, reader.getSourceCustomer(), reader.getSourceAccount(),
+                    reader.getAmount(), reader.getTargetCustomer(), reader.getTargetAccount());
+        }
+    }
+
+    /**
+     * Executes an operation that is not a customer operation, or queues a customer
+     * operation for the next batch.
+     */
+    private void execute(long lineNumber, TransactionType type, int customerID, int accountNumber,
+            long amount, int targetCustomerID, int targetAccountNumber) throws IOException {
+        if (type != TransactionType.INTEREST) {
+            pendingLines[pending.size()] = lineNumber;
+            pending.add(BankService.Command.of(type, customerID, accountNumber, amount,
+                    targetCustomerID, targetAccountNumber));
+            if (pending.size() == BATCH_SIZE) {
+                flush();
+            }
+            return;
+        }
+
+        // Interest sees every operation before it
+        flush();
+        InterestAccrual.Summary summary = interestAllowed ? RunBank.service.accrueInterest() : null;
+        if (!interestAllowed) {
+            failed(lineNumber, type, "Interest can only be paid from a batch file.");
+        } else if (summary == null) {
+            failed(lineNumber, type, "Interest accrual failed.");
+        } else {
+            succeeded++;
+            write(lineNumber, name(type), "OK", "$" + Money.toString(summary.getInterest())
+                    + " paid into " + summary.getAccounts() + " accounts");
+        }
+    }
+
+    /**
+     * Submits the queued operations as one batch and writes their results lines.
+     *
+     * @throws IOException If the results lines cannot be written.
+     */
+    void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        BankService.Result[] batch = RunBank.service.submitBatch(pending);
+        for (int i = 0; i < batch.length; i++) {
+            BankService.Result result = batch[i];
+            if (result.isOk()) {
+                ok(pendingLines[i], result.getType(), result.getBalance());
+            } else {
+                failed(pendingLines[i], result.getType(), result.getMessage());
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Writes the result of a successful operation.
+     */
+    private void ok(long lineNumber, TransactionType type, long balance) throws IOException {
+        succeeded++;
+        line.setLength(0);
+        line.append(lineNumber).append(',').append(name(type)).append(",OK,");
+        Money.append(line, balance).append('\n');
+        results.append(line);
+    }
+
+    /**
+     * Writes the result of an operation the bank rejected.
+     */
+    private void failed(long lineNumber, TransactionType type, String message) throws IOException {
+        failed++;
+        write(lineNumber, name(type), "FAILED", message);
+    }
+
+    /**
+     * Writes an {@code ERROR} result for a line that is refused without being parsed,
+     * such as a server request longer than it reads.
+     *
+     * @param lineNumber The number of the line.
+     * @param message    Why the line was refused.
+     * @throws IOException If the results line cannot be written.
+     */
+    void refuseLine(long lineNumber, String message) throws IOException {
+        error(lineNumber, "unknown", message);
+    }
+
+    /**
+     * Writes the result of a line that could not be parsed.
+     */
+    private void error(long lineNumber, String type, String message) throws IOException {
+        flush();  // Keep the results in line order
+        errors++;
+        write(lineNumber, type, "ERROR", message);
+    }
+
+    /**
+     * Writes one results line. Commas in the detail are replaced so the line stays
+     * four fields long.
+     */
+    private void write(long lineNumber, String type, String status, String detail) throws IOException {
+        line.setLength(0);
+        line.append(lineNumber).append(',').append(type.replace(',', ';')).append(',')
+                .append(status).append(',').append(detail.replace(',', ';')).append('\n');
+        results.append(line);
+    }
+
+    /**
+     * Splits a CSV line on commas into the field bounds, trimming spaces.
+     *
+     * @return The number of fields, or 0 for a blank line.
+     */
+    private int split(String text) {
+        int fields = 0;
+        int start = 0;
+        int length = text.length();
+        while (start <= length && fields < fieldStart.length) {
+            int end = text.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int s = start;
+            int e = end;
+            while (s < e && text.charAt(s) <= ' ') {
+                s++;
+            }
+            while (e > s && text.charAt(e - 1) <= ' ') {
+                e--;
+            }
+            fieldStart[fields] = s;
+            fieldEnd[fields] = e;
+            fields++;
+            start = end + 1;
+        }
+        return fields == 1 && fieldStart[0] == fieldEnd[0] ? 0 : fields;
+    }
+
+    /**
+     * Parses an operation name.
+     *
+     * @return The transaction type, or {@code null} if the name is unknown.
+     */
+    private static TransactionType parseType(String text, int start, int end) {
+        for (TransactionType type : TransactionType.values()) {
+            String name = name(type);
+            if (end - start == name.length() && text.regionMatches(true, start, name, 0, name.length())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of an operation as written in operations and results files.
+     */
+    private static String name(TransactionType type) {
+        switch (type) {
+            case INQUIRY:
+                return "inquiry";
+            case DEPOSIT:
+                return "deposit";
+            case WITHDRAW:
+                return "withdraw";
+            case TRANSFER:
+                return "transfer";
+            case INTEREST:
+                return "interest";
+            default:
+                return "pay";
+        }
+    }
+
+    /**
+     * Returns the number of CSV fields an operation needs, including its name.
+     */
+    private static int fieldCount(TransactionType type) {
+        switch (type) {
+            case INQUIRY:
+                return 3;
+            case DEPOSIT:
+            case WITHDRAW:
+                return 4;
+            case TRANSFER:
+                return 6;
+            case INTEREST:
+                return 1;
+            default:
+                return 5;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the accounts whose balances changed since they were last saved.
+ *
+ * <p>
+ * An {@link Account} reports itself here on its first change after being saved, so
+ * every changed account is queued exactly once no matter how many operations touch it.
+ * The {@link CsvCheckpointer} drains the queue to find the rows it has to rewrite,
+ * and may ask to be woken up once a given number of accounts have changed.
+ * </p>
+ *
+ * @see CsvCheckpointer
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class ChangeTracker {
+
+    /**
+     * The changed accounts, in the order they first changed.
+     */
+    private static final ConcurrentLinkedQueue<Account> CHANGED = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of accounts in the queue.
+     */
+    private static final AtomicInteger PENDING = new AtomicInteger();
+
+    /**
+     * The number of pending accounts that triggers the listener.
+     */
+    private static volatile int threshold = Integer.MAX_VALUE;
+
+    /**
+     * The action to run when the threshold is reached, or {@code null} for none.
+     */
+    private static volatile Runnable listener;
+
+    /**
+     * Prevents instantiation; this class only has static methods.
+     */
+    private ChangeTracker() {
+    }
+
+    /**
+     * Records an account that has changed since it was last saved.
+     * Called by {@link Account} on the first change after the account is saved.
+     *
+     * @param account The changed account.
+     */
+    static void accountChanged(Account account) {
+        CHANGED.add(account);
+        if (PENDING.incrementAndGet() == threshold) {
+            Runnable action = listener;
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Removes the account that has been waiting longest to be saved. The caller
+     * should clear the account's changed mark before reading its balance.
+     *
+     * @return The changed account, or {@code null} if no account is waiting.
+     */
+    static Account poll() {
+        Account account = CHANGED.poll();
+        if (account != null) {
+            PENDING.decrementAndGet();
+        }
+        return account;
+    }
+
+    /**
+     * Returns the number of changed accounts waiting to be saved.
+     *
+     * @return The number of pending accounts.
+     */
+    public static int pendingCount() {
+        return PENDING.get();
+    }
+
+    /**
+     * Registers an action to run, on the thread making the change, whenever the number
+     * of pending accounts reaches the given count. The action must be short; waking up
+     * another thread is the intended use.
+     *
+     * @param count  The number of pending accounts that triggers the action.
+     * @param action The action to run, or {@code null} to remove the current one.
+     */
+    public static void onPending(int count, Runnable action) {
+        listener = action;
+        threshold = action == null ? Integer.MAX_VALUE : Math.max(1, count);
+    }
+}
@@ -9,10 +9,10 @@ public class Checking extends Account {
      * Constructs a new Checking account with the specified account number and balance.
      *
      * @param accountNumber the unique identifier for the checking account
-     * @param balance the initial balance of the checking account
+     * @param balance the initial balance of the checking account, in cents
      */
-    public Checking(int accountNumber, double balance) {
-        super(accountNumber, balance);
+    public Checking(int accountNumber, long balance) {
+        super(accountNumber, AccountType.CHECKING, balance, 0);
     }
 
     /**
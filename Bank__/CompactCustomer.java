@@ -0,0 +1,350 @@
+/**
+ * A customer whose personal details are stored in packed, shared form.
+ *
+ * <p>
+ * A {@link PlainCustomer} keeps its five personal details as separate strings, which at
+ * tens of millions of customers is most of the heap. A {@code CompactCustomer} keeps
+ * them in four primitive fields instead, and has no string fields at all:
+ * </p>
+ * <ul>
+ *   <li>the first and last name as Latin-1 bytes in the shared {@link NameArena};</li>
+ *   <li>the address as a code in a shared {@link StringDictionary}, so customers at the
+ *       same address share one string;</li>
+ *   <li>the birth date packed into an {@code int}, for dates written like
+ *       {@code 5-Mar-39} or {@code 1939-03-05};</li>
+ *   <li>the phone number as its digits in a {@code long}, with a shared template
+ *       such as {@code (###) ###-####} for the punctuation.</li>
+ * </ul>
+ * <p>
+ * The getters decode the packed fields into exactly the strings the customer was
+ * created with, so a compact customer can be used anywhere a customer is. Dates and
+ * phone numbers in any other format are kept in a shared dictionary as they are.
+ * Compact customers are created by {@link RunBank} when the {@code bank.customer.compact}
+ * system property is {@code true}.
+ * </p>
+ *
+ * @see NameArena
+ * @see StringDictionary
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class CompactCustomer extends Customer {
+
+    /**
+     * The names of all compact customers.
+     */
+    static final NameArena NAMES = new NameArena();
+
+    /**
+     * The addresses of all compact customers.
+     */
+    static final StringDictionary ADDRESSES = new StringDictionary();
+
+    /**
+     * The phone number templates, and the dates and phone numbers that cannot be packed.
+     */
+    static final StringDictionary TEXT = new StringDictionary();
+
+    // The month abbreviations of d-MMM-yy dates
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep",
+        "Oct", "Nov", "Dec"};
+
+    // The tags of a packed birth date, above its year, month and day bits
+    private static final int DAY_MONTH_YEAR = 1 << 24;
+    private static final int ISO = 2 << 24;
+
+    /**
+     * The bits of a packed phone number that hold the digits; the bits above hold the
+     * template code plus one.
+     */
+    private static final int PHONE_DIGIT_BITS = 50;
+
+    /**
+     * The most digits a packed phone number can hold.
+     */
+    private static final int MAX_PHONE_DIGITS = 15;
+
+    /**
+     * The reference to the customer's names in {@link #NAMES}.
+     */
+    private final int names;
+
+    /**
+     * The code of the address in {@link #ADDRESSES}, or -1 if there is none.
+     */
+    private final int address;
+
+    /**
+     * The packed birth date, the negative code of its text in {@link #TEXT} minus one,
+     * or 0 if there is none.
+     */
+    private final int birthDate;
+
+    /**
+     * The packed phone number, the negative code of its text in {@link #TEXT} minus one,
+     * or 0 if there is none.
+     */
+    private final long phoneNumber;
+
+    /**
+     * Constructs a new {@code CompactCustomer} with names already in the arena.
+     */
+    private CompactCustomer(int id, int names, String birthDate, String address, String phoneNumber) {
+        super(id);
+        this.names = names;
+        this.address = address != null ? ADDRESSES.encode(address) : -1;
+        this.birthDate = packDate(birthDate);
+        this.phoneNumber = packPhone(phoneNumber);
+    }
+
+    /**
+     * Creates a compact customer with the specified ID and personal details.
+     *
+     * @param id          The unique ID of the customer.
+     * @param firstName   The first name of the customer.
+     * @param lastName    The last name of the customer.
+     * @param birthDate   The birth date of the customer.
+     * @param address     The address of the customer.
+     * @param phoneNumber The phone number of the customer.
+     * @return The customer, or {@code null} if a name cannot be stored in the
+     *         {@link NameArena}; such a customer is kept as a {@link PlainCustomer}.
+     */
+    public static CompactCustomer create(int id, String firstName, String lastName, String birthDate,
+            String address, String phoneNumber) {
+        int names = firstName != null && lastName != null ? NAMES.add(firstName, lastName) : -1;
+        return names >= 0 ? new CompactCustomer(id, names, birthDate, address, phoneNumber) : null;
+    }
+
+    @Override
+    public String getFirstName() {
+        return NAMES.firstName(names);
+    }
+
+    @Override
+    public String getLastName() {
+        return NAMES.lastName(names);
+    }
+
+    @Override
+    public String getBirthDate() {
+        return unpackDate(birthDate);
+    }
+
+    @Override
+    public String getAddress() {
+        return address >= 0 ? ADDRESSES.decode(address) : null;
+    }
+
+    @Override
+    public String getPhoneNumber() {
+        return unpackPhone(phoneNumber);
+    }
+
+    /**
+     * Writes the customer's full name to a log line straight from the arena.
+     *
+     * @param line The line to append to.
+     * @return The line.
+     */
+    LogLine appendFullName(LogLine line) {
+        return NAMES.appendFullName(names, line);
+    }
+
+    /**
+     * Compares the customer's last name with another compact customer's, ignoring case,
+     * straight from the arena.
+     *
+     * @param other The other customer.
+     * @return A negative number, zero or a positive number as this last name is before,
+     *         the same as or after the other.
+     */
+    int compareLastName(CompactCustomer other) {
+        return NAMES.compareLastNames(names, other.names);
+    }
+
+    /**
+     * Compares the customer's last name with a name, ignoring case, straight from the
+     * arena.
+     *
+     * @param name The name to compare with.
+     * @return A negative number, zero or a positive number as the last name is before,
+     *         the same as or after the name.
+     */
+    int compareLastName(String name) {
+        return NAMES.compareLastName(names, name);
+    }
+
+    /**
+     * Returns {@code true} if the customer's last name starts with a prefix, ignoring
+     * case, straight from the arena.
+     *
+     * @param prefix The prefix.
+     * @return {@code true} if the last name starts with the prefix.
+     */
+    boolean lastNameStartsWith(String prefix) {
+        return NAMES.lastNameStartsWith(names, prefix);
+    }
+
+    /**
+     * Packs a birth date written as {@code d-MMM-yy} or {@code yyyy-MM-dd}, or stores its
+     * text in the dictionary if it is in neither form.
+     */
+    static int packDate(String date) {
+        if (date == null) {
+            return 0;
+        }
+        int packed = packDayMonthYear(date);
+        if (packed == 0) {
+            packed = packIso(date);
+        }
+        return packed != 0 ? packed : -TEXT.encode(date) - 1;
+    }
+
+    /**
+     * Decodes a birth date packed by {@link #packDate}.
+     */
+    static String unpackDate(int packed) {
+        if (packed == 0) {
+            return null;
+        }
+        if (packed < 0) {
+            return TEXT.decode(-packed - 1);
+        }
+        int year = (packed >>> 9) & 0x3FFF;
+        int month = (packed >>> 5) & 0xF;
+        int day = packed & 0x1F;
+        StringBuilder text = new StringBuilder(10);
+        if ((packed & ISO) != 0) {
+            pad(text, year, 4).append('-');
+            pad(text, month, 2).append('-');
+            return pad(text, day, 2).toString();
+        }
+        text.append(day).append('-').append(MONTHS[month - 1]).append('-');
+        return pad(text, year, 2).toString();
+    }
+
+    /**
+     * Packs a date written exactly as {@code d-MMM-yy}, such as {@code 5-Mar-39}.
+     *
+     * @return The packed date, or 0 if it is not in that form.
+     */
+    private static int packDayMonthYear(String date) {
+        int dash = date.indexOf('-');
+        if (dash < 1 || dash > 2 || date.length() != dash + 7 || date.charAt(dash + 4) != '-') {
+            return 0;
+        }
+        int day = digits(date, 0, dash);
+        int year = digits(date, dash + 5, dash + 7);
+        if (day < 1 || day > 31 || date.charAt(0) == '0' || year < 0) {
+            return 0;
+        }
+        for (int month = 1; month <= 12; month++) {
+            if (date.regionMatches(dash + 1, MONTHS[month - 1], 0, 3)) {
+                return DAY_MONTH_YEAR | year << 9 | month << 5 | day;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Packs a date written exactly as {@code yyyy-MM-dd}, such as {@code 1939-03-05}.
+     *
+     * @return The packed date, or 0 if it is not in that form.
+     */
+    private static int packIso(String date) {
+        if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return 0;
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return 0;
+        }
+        return ISO | year << 9 | month << 5 | day;
+    }
+
+    /**
+     * Packs a phone number as its digits and the code of its template, or stores its
+     * text in the dictionary if it has too many digits or contains {@code #}.
+     */
+    static long packPhone(String phone) {
+        if (phone == null) {
+            return 0;
+        }
+        long digits = 0;
+        int count = 0;
+        char[] template = phone.toCharArray();
+        for (int i = 0; i < template.length; i++) {
+            char c = template[i];
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                template[i] = '#';
+                count++;
+            } else if (c == '#') {
+                count = MAX_PHONE_DIGITS + 1;  // Would be taken for a digit
+                break;
+            }
+        }
+        if (count <= MAX_PHONE_DIGITS) {
+            long code = TEXT.encode(new String(template)) + 1L;
+            if (code < 1L << (63 - PHONE_DIGIT_BITS)) {
+                return code << PHONE_DIGIT_BITS | digits;
+            }
+        }
+        return -TEXT.encode(phone) - 1L;
+    }
+
+    /**
+     * Decodes a phone number packed by {@link #packPhone}.
+     */
+    static String unpackPhone(long packed) {
+        if (packed == 0) {
+            return null;
+        }
+        if (packed < 0) {
+            return TEXT.decode((int) (-packed - 1));
+        }
+        char[] text = TEXT.decode((int) (packed >>> PHONE_DIGIT_BITS) - 1).toCharArray();
+        long digits = packed & ((1L << PHONE_DIGIT_BITS) - 1);
+
+        // Fill the template from the last digit back, so leading zeros come back too
+        for (int i = text.length - 1; i >= 0; i--) {
+            if (text[i] == '#') {
+                text[i] = (char) ('0' + digits % 10);
+                digits /= 10;
+            }
+        }
+        return new String(text);
+    }
+
+    /**
+     * Parses the ASCII digits between two positions.
+     *
+     * @return The number, or -1 if a character is not a digit.
+     */
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Appends a number padded with zeros to a width.
+     */
+    private static StringBuilder pad(StringBuilder text, int value, int width) {
+        for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+            if (value < limit) {
+                text.append('0');
+            }
+        }
+        return text.append(value);
+    }
+}
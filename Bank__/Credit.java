@@ -16,51 +16,41 @@
 public class Credit extends Account {
 
     /**
-     * The maximum credit limit for the account.
+     * The message shown when a payment is rejected.
      */
-    private double creditLimit;
-    
-    private double maxCredit;
+    static final String PAYMENT_FAILED = "Payment failed. Check the amount or credit limit.";
 
     /**
      * Constructs a new {@code Credit} account with the specified account number, 
      * credit limit, and initial balance.
      * 
      * @param accountNumber The unique number associated with this credit account.
-     * @param creditLimit   The maximum allowable negative balance for this account.
-     * @param balance       The initial balance of the credit account.
+     * @param creditLimit   The maximum allowable negative balance for this account, in cents.
+     * @param balance       The initial balance of the credit account, in cents.
      */
-    public Credit(int accountNumber, double creditLimit, double balance) {
-        super(accountNumber, balance);
-        this.creditLimit = creditLimit;
+    public Credit(int accountNumber, long creditLimit, long balance) {
+        super(accountNumber, AccountType.CREDIT, balance, creditLimit);
     }
+
     /**
-     * Gets the maximum credit limit of this account.
+     * Gets the maximum credit limit of this account, kept in the {@link AccountStore}
+     * next to its balance.
      *
-     * @return The maximum credit limit.
+     * @return The maximum credit limit, in cents.
      */
-    public double getMaxCredit() {
-        return maxCredit;
+    public long getMaxCredit() {
+        return AccountStore.ACCOUNTS.getCreditLimit(getSlot());
     }
 
     /**
-     * Withdraws a specified amount from the credit account, considering the credit limit.
-     * 
-     * <p>
-     * The withdrawal is allowed if the resulting balance does not exceed the negative 
-     * credit limit. Otherwise, an error message is displayed.
-     * </p>
-     * 
-     * @param amount The amount to be withdrawn. Must be greater than 0 and within the 
-     *               allowable credit limit.
+     * Returns the message shown when a withdrawal is rejected. Withdrawals are allowed
+     * as long as the resulting balance does not exceed the negative credit limit.
+     *
+     * @return The failure message.
      */
     @Override
-    public void withdraw(double amount) {
-        if (amount > 0 && balance - amount >= -creditLimit) {
-            balance -= amount;
-        } else {
-            System.out.println("Credit limit exceeded or invalid withdrawal amount.");
-        }
+    String withdrawalFailure() {
+        return "Credit limit exceeded or invalid withdrawal amount.";
     }
 
     /**
@@ -68,20 +58,43 @@ public class Credit extends Account {
      * 
      * <p>
      * The payment is allowed if the resulting balance does not exceed the negative 
-     * credit limit. The amount is deposited into the first account of the receiver.
+     * credit limit. The amount is deposited into the receiver's
+     * {@linkplain Customer#getPaymentAccount() payment account}.
+     * The payment is atomic in the same way as {@link Account#transfer}.
      * </p>
      * 
-     * @param amount   The amount to be paid. Must be greater than 0 and within the 
+     * @param amount   The amount to be paid, in cents. Must be greater than 0 and within the 
      *                 allowable credit limit.
      * @param receiver The customer receiving the payment.
+     * @return {@code true} if the payment was made; otherwise nothing was changed.
      */
-    public void pay(double amount, Customer receiver) {
-        if (amount > 0 && balance - amount >= -creditLimit) {
-            balance -= amount;
-            receiver.getAccounts().get(0).deposit(amount);  // Assume deposit to the first account
-        } else {
-            System.out.println("Payment failed. Check the amount or credit limit.");
-        }
+    public boolean pay(long amount, Customer receiver) {
+        return tryPay(amount, receiver.getPaymentAccount(), null, 0) != REJECTED;
+    }
+
+    /**
+     * Makes a payment into a given account, which may not be this account.
+     *
+     * @param amount        The amount to be paid, in cents.
+     * @param target        The receiving account.
+     * @param targetBalance Receives the new balance of the receiving account at {@code at},
+     *                      if the payment was made; may be {@code null}.
+     * @param at            The position in {@code targetBalance} to store it at.
+     * @return The new balance of this account, in cents, or {@link #REJECTED}.
+     */
+    final long tryPay(long amount, Account target, long[] targetBalance, int at) {
+        return target != null && target != this ? moveTo(target, amount, minimumBalance(), targetBalance, at)
+                : REJECTED;
+    }
+
+    /**
+     * Returns the lowest balance a withdrawal or payment may leave: the negative credit limit.
+     *
+     * @return The negative credit limit, in cents.
+     */
+    @Override
+    protected long minimumBalance() {
+        return -getMaxCredit();
     }
 
     /**
@@ -92,6 +105,6 @@ public class Credit extends Account {
      */
     @Override
     public String getAccountDetails() {
-        return "Credit Account - " + super.getAccountDetails() + ", Credit Limit: " + creditLimit;
+        return "Credit Account - " + super.getAccountDetails() + ", Credit Limit: " + Money.toString(getMaxCredit());
     }
 }
@@ -0,0 +1,465 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps a CSV copy of every customer up to date by rewriting only the rows that changed.
+ *
+ * <p>
+ * The first checkpoint writes the whole file and remembers where every row starts.
+ * Later checkpoints drain the {@link ChangeTracker} to find the customers whose
+ * accounts changed, render only their rows, and copy every unchanged run of rows
+ * straight from the previous file with {@link FileChannel#transferTo}, which the
+ * operating system performs without passing the bytes through the program. The work
+ * done in Java is therefore proportional to the number of changes, not to the
+ * number of customers.
+ * </p>
+ *
+ * <p>
+ * A checkpoint reads the live balances one account at a time, without locks, so it is
+ * fuzzy: a transfer running during the checkpoint may appear in one account and not yet
+ * in the other. The other account is marked changed when the transfer completes, so
+ * the next checkpoint writes it; an exact snapshot is what the
+ * {@link JournalCheckpointer} writes.
+ * </p>
+ *
+ * <p>
+ * Every checkpoint is written to a temporary file, forced to disk and then renamed
+ * over the previous file in one atomic step, so a crash at any moment leaves either
+ * the previous checkpoint or the new one, never a half-written file.
+ * </p>
+ *
+ * <p>
+ * {@link #start(long, int)} runs checkpoints on a background thread, on a timer and
+ * whenever a given number of accounts have changed. {@link #close()} stops the thread
+ * and writes the final checkpoint.
+ * </p>
+ *
+ * @see ChangeTracker
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class CsvCheckpointer {
+
+    /**
+     * The header row of the customer CSV file.
+     */
+    static final String HEADER = "Identification Number,First Name,Last Name,Date of Birth,Address,Phone Number,"
+            + "Checking Account Number,Checking Starting Balance,Savings Account Number,"
+            + "Savings Starting Balance,Credit Account Number,Credit Max,Credit Starting Balance\n";
+
+    /**
+     * The CSV file being kept up to date.
+     */
+    private final Path file;
+
+    /**
+     * The temporary file each checkpoint is written to before it replaces {@code file}.
+     */
+    private final Path temp;
+
+    /**
+     * The customers, one row each, in file order.
+     */
+    private final List<Customer> customers;
+
+    /**
+     * The directory used to find the owner of a changed account.
+     */
+    private final BankDirectory directory;
+
+    /**
+     * The byte position where each row starts in the current file, followed by the
+     * file size; {@code null} until the first full write or after a failed write.
+     */
+    private long[] rowStart;
+
+    /**
+     * The row of each customer by customer ID.
+     */
+    private IntHashIndex<Integer> rowOf;
+
+    /**
+     * Scratch list of the rows changed since the last checkpoint.
+     */
+    private int[] changedRows = new int[64];
+
+    /**
+     * Output buffer for rendered rows.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * Reusable builder for rendering one row.
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * The background thread, or {@code null} if {@link #start(long, int)} was not called.
+     */
+    private Thread thread;
+
+    /**
+     * Set when the background thread should stop.
+     */
+    private volatile boolean stopping;
+
+    /**
+     * Constructs a new {@code CsvCheckpointer}. Nothing is written until the first checkpoint.
+     *
+     * @param filePath  The path of the CSV file to keep up to date.
+     * @param customers The customers to save, one row each. Must not change size while
+     *                  checkpoints run, except that additions trigger a full rewrite.
+     * @param directory The directory used to find the owner of a changed account.
+     */
+    public CsvCheckpointer(String filePath, List<Customer> customers, BankDirectory directory) {
+        this.file = Paths.get(filePath).toAbsolutePath();
+        this.temp = Paths.get(file + ".tmp");
+        this.customers = customers;
+        this.directory = directory;
+    }
+
+    /**
+     * Starts writing checkpoints on a background thread. The first checkpoint is written
+     * right away; after that, one is written every interval, or sooner once the given
+     * number of accounts have changed. A shutdown hook writes the final checkpoint if the
+     * program ends without calling {@link #close()}.
+     *
+     * @param intervalMillis The longest time between checkpoints, in milliseconds.
+     * @param changedAccounts The number of changed accounts that triggers an early checkpoint.
+     */
+    public synchronized void start(long intervalMillis, int changedAccounts) {
+        if (thread != null) {
+            return;
+        }
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        thread = new Thread(() -> run(intervalNanos), "csv-checkpointer");
+        thread.setDaemon(true);
+        Thread worker = thread;
+        ChangeTracker.onPending(changedAccounts, () -> LockSupport.unpark(worker));
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                System.err.println("Error writing checkpoint: " + e.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * Stops the background thread, if any, and writes the final checkpoint. Only the
+     * changes since the last checkpoint are written. Calling this again only writes
+     * whatever changed in between.
+     *
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    public void close() throws IOException {
+        Thread worker;
+        synchronized (this) {
+            worker = thread;
+            stopping = true;
+        }
+        if (worker != null && worker != Thread.currentThread()) {
+            ChangeTracker.onPending(0, null);
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        checkpoint();
+    }
+
+    /**
+     * Writes a checkpoint if anything changed since the last one. The first checkpoint,
+     * and any checkpoint after a failed one, rewrites the whole file.
+     *
+     * @return {@code true} if the file was written.
+     * @throws IOException If the file cannot be written. The previous checkpoint is left intact.
+     */
+    public synchronized boolean checkpoint() throws IOException {
+        int count = drainChangedRows();
+        try {
+            if (count < 0 || rowStart == null || rowStart.length != customers.size() + 1
+                    || Files.notExists(file) || Files.size(file) != rowStart[rowStart.length - 1]) {
+                writeAll();
+                return true;
+            }
+            if (count == 0) {
+                return false;
+            }
+            writeChanged(count);
+            return true;
+        } catch (IOException e) {
+            rowStart = null;  // Offsets may be out of date; rewrite everything next time
+            throw e;
+        }
+    }
+
+    /**
+     * Runs checkpoints on the background thread until {@link #close()} is called.
+     *
+     * @param intervalNanos The longest time between checkpoints, in nanoseconds.
+     */
+    private void run(long intervalNanos) {
+        while (!stopping) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.err.println("Error writing checkpoint: " + e.getMessage());
+            }
+            LockSupport.parkNanos(this, intervalNanos);
+        }
+    }
+
+    /**
+     * Drains the {@link ChangeTracker} into a sorted list of distinct changed rows.
+     *
+     * @return The number of changed rows, or -1 if a changed account could not be
+     *         matched to a row and the whole file must be rewritten.
+     */
+    private int drainChangedRows() {
+        boolean unmatched = false;
+        int count = 0;
+        Account account;
+        while ((account = ChangeTracker.poll()) != null) {
+            account.clearChanged();  // Clear before the balance is read, so later changes are kept
+            Customer owner = directory.findOwner(account.getAccountNumber());
+            Integer row = owner == null || rowOf == null ? null : rowOf.get(owner.getId());
+
+            // Duplicate IDs or account numbers can point at the wrong row; rewrite everything then
+            if (row == null || row >= customers.size() || customers.get(row) != owner
+                    || !owner.getAccounts().contains(account)) {
+                unmatched = true;
+                continue;
+            }
+            if (count == changedRows.length) {
+                changedRows = Arrays.copyOf(changedRows, count * 2);
+            }
+            changedRows[count++] = row;
+        }
+        if (unmatched) {
+            return -1;
+        }
+
+        // Sort and remove duplicates: one customer may have several changed accounts
+        Arrays.sort(changedRows, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || changedRows[distinct - 1] != changedRows[i]) {
+                changedRows[distinct++] = changedRows[i];
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Writes every customer to the file and records where each row starts.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private void writeAll() throws IOException {
+        int n = customers.size();
+        long[] starts = new long[n + 1];
+        IntHashIndex<Integer> rows = new IntHashIndex<>(n);
+        try (FileChannel target = openTemp()) {
+            long position = write(target, HEADER.getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < n; i++) {
+                Customer customer = customers.get(i);
+                starts[i] = position;
+                position += write(target, render(customer));
+                rows.put(customer.getId(), i);
+            }
+            starts[n] = position;
+            flush(target);
+            target.force(true);
+        }
+        replace();
+        rowStart = starts;
+        rowOf = rows;
+    }
+
+    /**
+     * Rewrites the changed rows and copies everything else from the previous file.
+     *
+     * @param count The number of rows in {@code changedRows}.
+     * @throws IOException If the file cannot be written.
+     */
+    private void writeChanged(int count) throws IOException {
+        int n = rowStart.length - 1;
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                FileChannel target = openTemp()) {
+            long shift = 0;     // How far rows after the last changed row have moved
+            long position = 0;  // Everything before this position in the old file is written
+            int next = 0;       // The first row whose start has not been updated yet
+            for (int i = 0; i < count; i++) {
+                int row = changedRows[i];
+                long oldStart = rowStart[row];
+                long oldEnd = rowStart[row + 1];
+
+                // Copy the unchanged rows in between, then write the changed row
+                copy(source, position, oldStart, target);
+                shiftRows(next, row, shift);
+                byte[] bytes = render(customers.get(row));
+                write(target, bytes);
+                rowStart[row] = oldStart + shift;
+                shift += bytes.length - (oldEnd - oldStart);
+                position = oldEnd;
+                next = row + 1;
+            }
+            copy(source, position, rowStart[n], target);
+            shiftRows(next, n + 1, shift);
+            flush(target);
+            target.force(true);
+        }
+        replace();
+    }
+
+    /**
+     * Moves the start of a range of rows by the given number of bytes.
+     */
+    private void shiftRows(int from, int to, long shift) {
+        if (shift != 0) {
+            for (int i = from; i < to; i++) {
+                rowStart[i] += shift;
+            }
+        }
+    }
+
+    /**
+     * Opens the temporary file, empty, for writing.
+     */
+    private FileChannel openTemp() throws IOException {
+        buffer.clear();
+        return FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Atomically replaces the file with the temporary file, then forces the directory
+     * so the rename itself survives a crash.
+     */
+    private void replace() throws IOException {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel dir = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory; the rename is still atomic
+        }
+    }
+
+    /**
+     * Buffers bytes for writing to the target.
+     *
+     * @return The number of bytes written.
+     */
+    private int write(FileChannel target, byte[] bytes) throws IOException {
+        if (bytes.length > buffer.remaining()) {
+            flush(target);
+        }
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                target.write(large);
+            }
+        } else {
+            buffer.put(bytes);
+        }
+        return bytes.length;
+    }
+
+    /**
+     * Writes any buffered bytes to the target.
+     */
+    private void flush(FileChannel target) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Copies a range of the source file to the end of the target without reading it
+     * into the program.
+     */
+    private void copy(FileChannel source, long from, long to, FileChannel target) throws IOException {
+        if (from == to) {
+            return;
+        }
+        flush(target);
+        while (from < to) {
+            long copied = source.transferTo(from, to - from, target);
+            if (copied <= 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+            from += copied;
+        }
+    }
+
+    /**
+     * Renders one customer's row as UTF-8 bytes.
+     */
+    private byte[] render(Customer customer) {
+        line.setLength(0);
+        appendRow(line, customer);
+        return line.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a customer's CSV row, including the line break. Each account type is
+     * found with one pass over the customer's accounts.
+     *
+     * @param line     The builder to append to.
+     * @param customer The customer to render.
+     * @return The builder.
+     */
+    static StringBuilder appendRow(StringBuilder line, Customer customer) {
+        // Extract customer information
+        line.append(customer.getId()).append(",");
+        line.append(customer.getFirstName()).append(",");
+        line.append(customer.getLastName()).append(",");
+        line.append(customer.getBirthDate()).append(",");
+        line.append("\"").append(customer.getAddress()).append("\","); // Handle commas in addresses
+        line.append(customer.getPhoneNumber()).append(",");
+
+        // The first account of each type, from the customer's type slots
+        Account checking = customer.getAccount(AccountType.CHECKING);
+        Account savings = customer.getAccount(AccountType.SAVING);
+        Credit credit = (Credit) customer.getAccount(AccountType.CREDIT);
+
+        if (checking != null) {
+            line.append(checking.getAccountNumber()).append(",");
+            Money.append(line, checking.getBalance()).append(",");
+        } else {
+            line.append("0,0,"); // Default for missing account
+        }
+        if (savings != null) {
+            line.append(savings.getAccountNumber()).append(",");
+            Money.append(line, savings.getBalance()).append(",");
+        } else {
+            line.append("0,0,"); // Default for missing account
+        }
+        if (credit != null) {
+            line.append(credit.getAccountNumber()).append(",");
+            Money.append(line, credit.getMaxCredit()).append(",");
+            Money.append(line, credit.getBalance());
+        } else {
+            line.append("0,0,0"); // Default for missing account
+        }
+        return line.append("\n");
+    }
+}
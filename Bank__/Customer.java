@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Represents a customer, inheriting from the {@code Person} class.
@@ -9,6 +10,17 @@ import java.util.ArrayList;
  * and a list of accounts associated with the customer. It provides methods 
  * for managing accounts and retrieving customer information.
  * </p>
+ *
+ * <p>
+ * Besides the list, the first account of each {@link AccountType} is kept in a slot
+ * indexed by the type's ID, so finding a customer's checking or credit account is one
+ * array load.
+ * </p>
+ *
+ * <p>
+ * The personal details are stored by the subclasses: a {@link PlainCustomer} keeps them
+ * as strings and a {@link CompactCustomer} in packed form.
+ * </p>
  * 
  * @see Person
  * @see Account
@@ -16,7 +28,7 @@ import java.util.ArrayList;
  * @author [Jose Luis Hernandez]
  * @version 1.3
  */
-public class Customer extends Person {
+public abstract class Customer extends Person {
 
     /**
      * The unique ID of the customer.
@@ -29,19 +41,19 @@ public class Customer extends Person {
     private ArrayList<Account> accounts;
 
     /**
-     * Constructs a new {@code Customer} with the specified ID and personal details.
+     * The first account of each type, indexed by {@link AccountType#getId()}.
+     */
+    private Account[] accountsByType;
+
+    /**
+     * Constructs a new {@code Customer} with the specified ID and no accounts.
      * 
-     * @param id          The unique ID of the customer.
-     * @param firstName   The first name of the customer.
-     * @param lastName    The last name of the customer.
-     * @param birthDate   The birth date of the customer in the format YYYY-MM-DD.
-     * @param address     The address of the customer.
-     * @param phoneNumber The phone number of the customer.
+     * @param id The unique ID of the customer.
      */
-    public Customer(int id, String firstName, String lastName, String birthDate, String address, String phoneNumber) {
-        super(firstName, lastName, birthDate, address, phoneNumber);
+    protected Customer(int id) {
         this.id = id;
         this.accounts = new ArrayList<>();
+        this.accountsByType = new Account[AccountType.count()];
     }
 
     /**
@@ -60,6 +72,15 @@ public class Customer extends Person {
      */
     public void addAccount(Account account) {
         accounts.add(account);
+
+        // Keep the first account of each type in its slot
+        int id = account.getType().getId();
+        if (id >= accountsByType.length) {
+            accountsByType = Arrays.copyOf(accountsByType, Math.max(id + 1, AccountType.count()));
+        }
+        if (accountsByType[id] == null) {
+            accountsByType[id] = account;
+        }
     }
 
     /**
@@ -86,18 +107,40 @@ public class Customer extends Person {
         }
         return null;  // Account not found
     }
-        /**
+
+    /**
+     * Returns the customer's first account of a type.
+     *
+     * @param type The type of account to find, such as {@link AccountType#CREDIT}.
+     * @return The account if found, otherwise null.
+     */
+    public Account getAccount(AccountType type) {
+        int id = type.getId();
+        return id < accountsByType.length ? accountsByType[id] : null;
+    }
+
+    /**
      * Finds an account by type.
      *
-     * @param type The type of account to find (e.g., "Checking", "Saving", "Credit").
+     * @param type The type of account to find (e.g., "Checking", "Saving", "Credit"), ignoring case.
      * @return The account if found, otherwise null.
      */
     public Account getAccountByType(String type) {
-        for (Account account : accounts) {
-            if (account.getClass().getSimpleName().equalsIgnoreCase(type)) {
-                return account;
-            }
+        AccountType registered = AccountType.forName(type);
+        return registered != null ? getAccount(registered) : null;  // Unknown types have no accounts
+    }
+
+    /**
+     * Returns the account that receives payments made to this customer: the checking
+     * account, or the first account if the customer has no checking account.
+     *
+     * @return The receiving account, or null if the customer has no accounts.
+     */
+    public Account getPaymentAccount() {
+        Account checking = getAccount(AccountType.CHECKING);
+        if (checking != null) {
+            return checking;
         }
-        return null; // Account not found
+        return accounts.isEmpty() ? null : accounts.get(0);
     }
 }
@@ -0,0 +1,782 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An indexed binary file of every customer, from which single customers can be read
+ * without loading the others.
+ *
+ * <p>
+ * The file holds one record per customer, with the personal details and the checking,
+ * savings and credit account, followed by two sorted indexes: customer IDs with the
+ * position of their record, and account numbers with the customer that owns them.
+ * Opening the file only maps the indexes, so it takes the same time for any number of
+ * customers; finding a customer is a binary search of the mapped index and one read of
+ * its record. The balances sit at fixed positions in each record, so a changed balance
+ * is written back in place with {@link #writeBalance}.
+ * </p>
+ *
+ * <p>
+ * Two more indexes serve the searches of the {@link BankDirectory}. The customers
+ * sorted by last name, ignoring case, and then by ID, in the order of the
+ * {@link LastNameIndex}, make the customers whose last name starts with a prefix a
+ * contiguous run, found with two binary searches that read the last names of the
+ * records they probe. The normalized digits of the phone numbers, as the
+ * {@link PhoneIndex} computes them, sorted with their customers, find everyone with a
+ * number in one binary search of the mapped index, without reading any record.
+ * </p>
+ *
+ * <p>
+ * When the bank also keeps a {@link TransactionJournal}, the header records how far the
+ * balances in the file are known to be on the disk, as the {@link LedgerFile} does:
+ * the applied sequence is the journal sequence number from which the records must be
+ * replayed onto them with {@link JournalRecovery#replayBalances}, so recovery reads only
+ * the customers those records changed.
+ * </p>
+ *
+ * <p>
+ * File layout (all values big-endian):
+ * </p>
+ * <pre>
+ *  size  field
+ *     4  magic number "BCUS"
+ *     4  format version (3)
+ *     4  number of customers
+ *     4  number of accounts
+ *     8  position of the customer index
+ *     8  position of the account index
+ *     8  applied journal sequence, 0 if no journal record was applied
+ *     8  position of the last name index
+ *     8  position of the phone index
+ *     4  number of customers with a phone number
+ *     4  reserved, 0
+ *  per customer record:
+ *     4  customer ID
+ *    12  checking, savings and credit account numbers
+ *     8  credit limit in cents
+ *    24  checking, savings and credit balances in cents
+ *     -  first name, last name, birth date, address and phone number, each an
+ *        unsigned 2-byte UTF-8 length (0xFFFF for none) and the bytes
+ *  customer index, sorted by ID:
+ *    16  per customer: ID (4), record position (8) and record length (4)
+ *  account index, sorted by account number:
+ *     8  per account: account number (4) and owner (4), the owner's position in the
+ *        customer index times 4 plus 0, 1 or 2 for checking, savings or credit
+ *  last name index, sorted by last name ignoring case, then by ID:
+ *     4  per customer: position in the customer index
+ *  phone index, sorted by normalized digits, then in the order of the records:
+ *    12  per customer with digits in the phone number: the digits (8) and the
+ *        position in the customer index (4)
+ * </pre>
+ *
+ * <p>
+ * There is no checksum, since balances are rewritten in place; a snapshot is only
+ * replaced as a whole, atomically, by {@link #write}.
+ * </p>
+ *
+ * @see LazyDirectory
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class CustomerSnapshot {
+
+    /**
+     * The magic number at the start of every customer snapshot.
+     */
+    private static final int MAGIC = 0x42435553;  // "BCUS"
+
+    /**
+     * The current file format version.
+     */
+    private static final int VERSION = 3;
+
+    /**
+     * The position of the applied journal sequence in the header.
+     */
+    private static final int APPLIED_OFFSET = 32;
+
+    /**
+     * The size of the header, in bytes.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * The position of the balances within a record.
+     */
+    private static final int BALANCES = 24;
+
+    /**
+     * The size of a record before its personal details.
+     */
+    private static final int FIXED_SIZE = 48;
+
+    /**
+     * The length written for a missing personal detail.
+     */
+    private static final int NO_TEXT = 0xFFFF;
+
+    // The sizes of the index entries
+    private static final int CUSTOMER_ENTRY_SIZE = 16;
+    private static final int ACCOUNT_ENTRY_SIZE = 8;
+    private static final int NAME_ENTRY_SIZE = 4;
+    private static final int PHONE_ENTRY_SIZE = 12;
+
+    /**
+     * The open snapshot file, for reading records and writing balances.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The mapped customer index.
+     */
+    private final Index customers;
+
+    /**
+     * The mapped account index.
+     */
+    private final Index accounts;
+
+    /**
+     * The mapped last name index.
+     */
+    private final Index names;
+
+    /**
+     * The mapped phone index.
+     */
+    private final Index phones;
+
+    /**
+     * The journal sequence from which records must be replayed onto the balances of the
+     * file, as of the last {@link #setAppliedSequence}.
+     */
+    private volatile long appliedSequence;
+
+    /**
+     * Opens a snapshot file.
+     *
+     * @param path The path of the snapshot.
+     * @throws IOException If the file cannot be opened or is not a customer snapshot.
+     */
+    public CustomerSnapshot(String path) throws IOException {
+        this.channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Files of older versions may be shorter than this header
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.limit((int) Math.min(HEADER_SIZE, channel.size()));
+            readFully(header, 0);
+            if (header.limit() < 8 || header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a customer snapshot.");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(path + " is a customer snapshot of format version " + header.getInt(4)
+                        + ", not " + VERSION + "; write a new one from the CSV file.");
+            }
+            if (header.limit() < HEADER_SIZE) {
+                throw new IOException("Customer snapshot is truncated.");
+            }
+            int customerCount = header.getInt(8);
+            int accountCount = header.getInt(12);
+            long customerIndex = header.getLong(16);
+            long accountIndex = header.getLong(24);
+            long nameIndex = header.getLong(40);
+            long phoneIndex = header.getLong(48);
+            int phoneCount = header.getInt(56);
+            if (customerCount < 0 || accountCount < 0 || phoneCount < 0 || phoneCount > customerCount
+                    || accountIndex != customerIndex + (long) customerCount * CUSTOMER_ENTRY_SIZE
+                    || nameIndex != accountIndex + (long) accountCount * ACCOUNT_ENTRY_SIZE
+                    || phoneIndex != nameIndex + (long) customerCount * NAME_ENTRY_SIZE
+                    || channel.size() != phoneIndex + (long) phoneCount * PHONE_ENTRY_SIZE) {
+                throw new IOException(path + " is not a customer snapshot.");
+            }
+            this.appliedSequence = header.getLong(APPLIED_OFFSET);
+            this.customers = new Index(channel, customerIndex, customerCount, CUSTOMER_ENTRY_SIZE);
+            this.accounts = new Index(channel, accountIndex, accountCount, ACCOUNT_ENTRY_SIZE);
+            this.names = new Index(channel, nameIndex, customerCount, NAME_ENTRY_SIZE);
+            this.phones = new Index(channel, phoneIndex, phoneCount, PHONE_ENTRY_SIZE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of customers in the snapshot.
+     *
+     * @return The number of customers.
+     */
+    public int customerCount() {
+        return customers.count;
+    }
+
+    /**
+     * Returns the number of accounts in the snapshot.
+     *
+     * @return The number of accounts.
+     */
+    public int accountCount() {
+        return accounts.count;
+    }
+
+    /**
+     * Finds a customer by ID.
+     *
+     * @param customerID The ID of the customer.
+     * @return The customer's position in the customer index, or -1 if there is none.
+     */
+    public int findCustomer(int customerID) {
+        return customers.find(customerID);
+    }
+
+    /**
+     * Returns the ID of a customer.
+     *
+     * @param customer The customer's position in the customer index.
+     * @return The customer ID.
+     */
+    public int customerId(int customer) {
+        return customers.getInt(customer, 0);
+    }
+
+    /**
+     * Finds the owner of an account.
+     *
+     * @param accountNumber The account number.
+     * @return The owner's position in the customer index times 4, plus 0, 1 or 2 for a
+     *         checking, savings or credit account; -1 if the account is not in the snapshot.
+     */
+    public int findAccount(int accountNumber) {
+        int entry = accounts.find(accountNumber);
+        return entry < 0 ? -1 : accounts.getInt(entry, 4);
+    }
+
+    /**
+     * Finds one page of the customers whose last name starts with a prefix, ignoring
+     * case, ordered by last name and then by ID.
+     *
+     * @param prefix The start of the last name; an empty prefix matches every customer.
+     * @param offset The number of matching customers to skip.
+     * @param limit  The largest number of customers to return.
+     * @return The positions of the customers of the page in the customer index; empty
+     *         past the last match.
+     * @throws IOException If a record cannot be read.
+     */
+    public int[] findCustomersByLastName(String prefix, int offset, int limit) throws IOException {
+        int from = lowerBound(prefix);
+        int to = upperBound(prefix, from);
+        int start = (int) Math.min(to, (long) from + Math.max(0, offset));
+        int end = (int) Math.min(to, (long) start + Math.max(0, limit));
+        int[] page = new int[end - start];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = names.getInt(start + i, 0);
+        }
+        return page;
+    }
+
+    /**
+     * Counts the customers whose last name starts with a prefix, ignoring case.
+     *
+     * @param prefix The start of the last name.
+     * @return The number of matching customers.
+     * @throws IOException If a record cannot be read.
+     */
+    public int countCustomersByLastName(String prefix) throws IOException {
+        int from = lowerBound(prefix);
+        return upperBound(prefix, from) - from;
+    }
+
+    /**
+     * Finds the customers with a phone number, in any format.
+     *
+     * @param phoneNumber The phone number.
+     * @return The positions of the customers in the customer index, in the order of
+     *         their records; empty if there are none.
+     */
+    public int[] findCustomersByPhone(String phoneNumber) {
+        long digits = PhoneIndex.normalize(phoneNumber);
+        if (digits < 0) {
+            return new int[0];
+        }
+        int low = 0;
+        int high = phones.count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (phones.getLong(middle, 0) < digits) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = low;
+        while (end < phones.count && phones.getLong(end, 0) == digits) {
+            end++;
+        }
+        int[] found = new int[end - low];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = phones.getInt(low + i, 8);
+        }
+        return found;
+    }
+
+    /**
+     * Reads the record of a customer.
+     *
+     * @param customer The customer's position in the customer index.
+     * @return The record.
+     * @throws IOException If the record cannot be read.
+     */
+    public Record read(int customer) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(customers.getInt(customer, 12));
+        readFully(record, customers.getLong(customer, 4));
+        return new Record(record);
+    }
+
+    /**
+     * Writes a balance back into a customer's record.
+     *
+     * @param account The owner and kind of the account, as returned by {@link #findAccount}.
+     * @param balance The balance, in cents.
+     * @throws IOException If the balance cannot be written.
+     */
+    public void writeBalance(int account, long balance) throws IOException {
+        long position = customers.getLong(account >>> 2, 4) + BALANCES + 8 * (account & 3);
+        ByteBuffer value = ByteBuffer.allocate(8).putLong(0, balance);
+        while (value.hasRemaining()) {
+            channel.write(value, position + value.position());
+        }
+    }
+
+    /**
+     * Returns the index of the first entry of the last name index whose name is not
+     * before the prefix.
+     */
+    private int lowerBound(String prefix) throws IOException {
+        int low = 0;
+        int high = names.count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(lastName(middle), prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index just past the last entry of the last name index whose name starts
+     * with the prefix, searching from the first candidate.
+     */
+    private int upperBound(String prefix, int from) throws IOException {
+        int low = from;
+        int high = names.count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lastName(middle).regionMatches(true, 0, prefix, 0, prefix.length())) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Reads the last name of the customer at an entry of the last name index.
+     */
+    private String lastName(int entry) throws IOException {
+        String lastName = read(names.getInt(entry, 0)).lastName;
+        return lastName != null ? lastName : "";
+    }
+
+    /**
+     * Returns the journal sequence number from which the records must be replayed onto
+     * the balances of the file, as of the last completed {@link #setAppliedSequence}.
+     *
+     * @return The applied sequence; 0 if no journal record was applied.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Forces the written balances to disk, then records in the header that every journal
+     * record before a sequence number is applied to them. The caller reads the sequence
+     * before writing back the balances those records changed.
+     *
+     * @param sequence The journal's next sequence number, read before the write-back.
+     * @throws IOException If the file cannot be forced or written.
+     */
+    public void setAppliedSequence(long sequence) throws IOException {
+        channel.force(false);
+        if (sequence > appliedSequence) {
+            ByteBuffer value = ByteBuffer.allocate(8).putLong(0, sequence);
+            while (value.hasRemaining()) {
+                channel.write(value, APPLIED_OFFSET + value.position());
+            }
+            channel.force(false);
+            appliedSequence = sequence;
+        }
+    }
+
+    /**
+     * Forces the written balances to disk and closes the file.
+     *
+     * @throws IOException If the file cannot be forced or closed.
+     */
+    public void close() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes a snapshot of customers with a checking, a savings and a credit account,
+     * such as those loaded from the CSV file, replacing the file only once the new one
+     * is complete and on disk. With duplicate customer IDs or account numbers the last
+     * one wins, as in the {@link BankDirectory}.
+     *
+     * @param path            The path of the snapshot.
+     * @param customers       The customers.
+     * @param appliedSequence The journal sequence number from which the records are not
+     *                        applied to the balances of the customers, or 0 without a journal.
+     * @throws IOException If the snapshot cannot be written, or a personal detail is
+     *                     longer than 65534 bytes.
+     */
+    public static void write(String path, List<Customer> customers, long appliedSequence) throws IOException {
+        File target = new File(path);
+        File temp = new File(path + ".tmp");
+        int count = customers.size();
+        long[] recordStart = new long[count];
+        int[] recordLength = new int[count];
+        int[] accountNumbers = new int[count * 3];
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;      // Of the start of the buffer in the file
+            buffer.position(HEADER_SIZE);  // The header is written last
+
+            // The records, in the order of the list
+            for (int i = 0; i < count; i++) {
+                Customer customer = customers.get(i);
+                byte[][] text = {bytes(customer.getFirstName()), bytes(customer.getLastName()),
+                    bytes(customer.getBirthDate()), bytes(customer.getAddress()), bytes(customer.getPhoneNumber())};
+                int length = FIXED_SIZE;
+                for (byte[] bytes : text) {
+                    length += 2 + (bytes != null ? bytes.length : 0);
+                }
+                if (buffer.remaining() < length) {
+                    position += drain(channel, buffer);
+                }
+                recordStart[i] = position + buffer.position();
+                recordLength[i] = length;
+
+                Account checking = customer.getAccount(AccountType.CHECKING);
+                Account saving = customer.getAccount(AccountType.SAVING);
+                Account credit = customer.getAccount(AccountType.CREDIT);
+                accountNumbers[i * 3] = checking != null ? checking.getAccountNumber() : 0;
+                accountNumbers[i * 3 + 1] = saving != null ? saving.getAccountNumber() : 0;
+                accountNumbers[i * 3 + 2] = credit != null ? credit.getAccountNumber() : 0;
+                buffer.putInt(customer.getId())
+                        .putInt(accountNumbers[i * 3]).putInt(accountNumbers[i * 3 + 1]).putInt(accountNumbers[i * 3 + 2])
+                        .putLong(credit instanceof Credit ? ((Credit) credit).getMaxCredit() : 0)
+                        .putLong(checking != null ? checking.getBalance() : 0)
+                        .putLong(saving != null ? saving.getBalance() : 0)
+                        .putLong(credit != null ? credit.getBalance() : 0);
+                for (byte[] bytes : text) {
+                    buffer.putShort((short) (bytes != null ? bytes.length : NO_TEXT));
+                    if (bytes != null) {
+                        buffer.put(bytes);
+                    }
+                }
+            }
+
+            // The customer index: the last record of each ID, sorted by ID
+            long[] order = sortedLast(count, i -> customers.get(i).getId());
+            int[] ordinal = new int[count];
+            Arrays.fill(ordinal, -1);
+            long customerIndex = position + buffer.position();
+            for (int entry = 0; entry < order.length; entry++) {
+                int i = (int) order[entry];
+                ordinal[i] = entry;
+                if (buffer.remaining() < CUSTOMER_ENTRY_SIZE) {
+                    position += drain(channel, buffer);
+                }
+                buffer.putInt(customers.get(i).getId()).putLong(recordStart[i]).putInt(recordLength[i]);
+            }
+
+            // The account index: the last account of each number among the indexed customers
+            long[] accountOrder = sortedLast(count * 3,
+                    j -> ordinal[j / 3] >= 0 ? accountNumbers[j] : null);
+            long accountIndex = position + buffer.position();
+            for (long j : accountOrder) {
+                if (buffer.remaining() < ACCOUNT_ENTRY_SIZE) {
+                    position += drain(channel, buffer);
+                }
+                int i = (int) j / 3;
+                buffer.putInt(accountNumbers[(int) j]).putInt(ordinal[i] << 2 | (int) j % 3);
+            }
+
+            // The last name index: the indexed customers by last name, then by ID
+            int[] byName = new int[order.length];
+            for (int entry = 0; entry < order.length; entry++) {
+                byName[entry] = (int) order[entry];
+            }
+            sort(byName, (a, b) -> LastNameIndex.ORDER.compare(customers.get(a), customers.get(b)));
+            long nameIndex = position + buffer.position();
+            for (int i : byName) {
+                if (buffer.remaining() < NAME_ENTRY_SIZE) {
+                    position += drain(channel, buffer);
+                }
+                buffer.putInt(ordinal[i]);
+            }
+
+            // The phone index: the indexed customers with digits, by digits, then by record
+            long[] digits = new long[count];
+            int[] byPhone = new int[count];
+            int phoneCount = 0;
+            for (int i = 0; i < count; i++) {
+                digits[i] = ordinal[i] >= 0 ? PhoneIndex.normalize(customers.get(i).getPhoneNumber()) : -1;
+                if (digits[i] >= 0) {
+                    byPhone[phoneCount++] = i;
+                }
+            }
+            byPhone = Arrays.copyOf(byPhone, phoneCount);
+            sort(byPhone, (a, b) -> Long.compare(digits[a], digits[b]));
+            long phoneIndex = position + buffer.position();
+            for (int i : byPhone) {
+                if (buffer.remaining() < PHONE_ENTRY_SIZE) {
+                    position += drain(channel, buffer);
+                }
+                buffer.putLong(digits[i]).putInt(ordinal[i]);
+            }
+            drain(channel, buffer);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(order.length).putInt(accountOrder.length)
+                    .putLong(customerIndex).putLong(accountIndex).putLong(appliedSequence)
+                    .putLong(nameIndex).putLong(phoneIndex).putInt(phoneCount).putInt(0).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The record of one customer: the personal details, and the number and balance of
+     * the checking, savings and credit account, in that order.
+     */
+    public static final class Record {
+        final int id;
+        final String firstName;
+        final String lastName;
+        final String birthDate;
+        final String address;
+        final String phoneNumber;
+        final int[] accountNumbers = new int[3];
+        final long creditLimit;
+        final long[] balances = new long[3];
+
+        private Record(ByteBuffer record) {
+            id = record.getInt(0);
+            for (int i = 0; i < 3; i++) {
+                accountNumbers[i] = record.getInt(4 + 4 * i);
+                balances[i] = record.getLong(BALANCES + 8 * i);
+            }
+            creditLimit = record.getLong(16);
+            record.position(FIXED_SIZE);
+            firstName = getText(record);
+            lastName = getText(record);
+            birthDate = getText(record);
+            address = getText(record);
+            phoneNumber = getText(record);
+        }
+    }
+
+    /**
+     * A key of the items being indexed, or {@code null} for an item left out.
+     */
+    private interface Key {
+        Integer of(int item);
+    }
+
+    /**
+     * Sorts items by key, keeping only the last item of each key.
+     *
+     * @return The positions of the kept items, in key order.
+     */
+    private static long[] sortedLast(int count, Key key) {
+        // The key in the high half and the position in the low half sort by key, then position
+        long[] sorted = new long[count];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            Integer value = key.of(i);
+            if (value != null) {
+                sorted[kept++] = (long) value << 32 | i;
+            }
+        }
+        Arrays.sort(sorted, 0, kept);
+        int distinct = 0;
+        for (int i = 0; i < kept; i++) {
+            if (i + 1 < kept && sorted[i + 1] >> 32 == sorted[i] >> 32) {
+                continue;  // A later item has the same key
+            }
+            sorted[distinct++] = sorted[i] & 0xFFFFFFFFL;
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * An order of the items being indexed.
+     */
+    private interface Order {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Sorts items, keeping items that compare equal in their order, without boxing them.
+     */
+    private static void sort(int[] items, Order order) {
+        int[] from = items;
+        int[] to = new int[items.length];
+        for (int width = 1; width < items.length; width <<= 1) {
+            for (int low = 0; low < items.length; low += width << 1) {
+                int middle = Math.min(low + width, items.length);
+                int high = Math.min(low + (width << 1), items.length);
+                int i = low;
+                int j = middle;
+                for (int k = low; k < high; k++) {
+                    to[k] = j >= high || i < middle && order.compare(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                }
+            }
+            int[] merged = to;
+            to = from;
+            from = merged;
+        }
+        if (from != items) {
+            System.arraycopy(from, 0, items, 0, items.length);
+        }
+    }
+
+    /**
+     * Returns the UTF-8 bytes of a personal detail, or {@code null} if there is none.
+     */
+    private static byte[] bytes(String text) throws IOException {
+        if (text == null) {
+            return null;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NO_TEXT) {
+            throw new IOException("A customer detail is too long for the snapshot: " + bytes.length + " bytes.");
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a personal detail written by {@link #write}.
+     */
+    private static String getText(ByteBuffer record) {
+        int length = record.getShort() & 0xFFFF;
+        if (length == NO_TEXT) {
+            return null;
+        }
+        String text = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return text;
+    }
+
+    /**
+     * Writes the buffered bytes to the end of the channel.
+     *
+     * @return The number of bytes written.
+     */
+    private static int drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    /**
+     * Fills a buffer from a position of the file.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Customer snapshot is truncated.");
+            }
+        }
+    }
+
+    /**
+     * A mapped index of fixed-size entries sorted by the {@code int} at their start.
+     * Mapped in segments of whole entries, since one mapping is limited to 2 GB.
+     */
+    private static final class Index {
+
+        // The entries in one segment: 1 GB of entries
+        private static final int SEGMENT_BITS = 26;
+
+        final int count;
+        private final int entrySize;
+        private final MappedByteBuffer[] segments;
+
+        Index(FileChannel channel, long position, int count, int entrySize) throws IOException {
+            this.count = count;
+            this.entrySize = entrySize;
+            this.segments = new MappedByteBuffer[(int) (((long) count + (1 << SEGMENT_BITS) - 1) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long entries = Math.min(1 << SEGMENT_BITS, count - ((long) i << SEGMENT_BITS));
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position + ((long) i << SEGMENT_BITS) * entrySize, entries * entrySize);
+            }
+        }
+
+        int getInt(int entry, int field) {
+            return segments[entry >>> SEGMENT_BITS]
+                    .getInt((entry & ((1 << SEGMENT_BITS) - 1)) * entrySize + field);
+        }
+
+        long getLong(int entry, int field) {
+            return segments[entry >>> SEGMENT_BITS]
+                    .getLong((entry & ((1 << SEGMENT_BITS) - 1)) * entrySize + field);
+        }
+
+        /**
+         * Returns the entry whose key is the given one, or -1 if there is none.
+         */
+        int find(int key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int found = getInt(middle, 0);
+                if (found < key) {
+                    low = middle + 1;
+                } else if (found > key) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.Arrays;
+
+/**
+ * A hash index from primitive {@code int} keys to object values.
+ *
+ * <p>
+ * The {@code IntHashIndex} class stores keys and values in two parallel arrays and
+ * resolves collisions with open addressing (linear probing), so a lookup never boxes
+ * the key and never walks a chain of entry objects. A slot is occupied when its value
+ * is non-null, which means every {@code int} (including 0) is a valid key.
+ * </p>
+ *
+ * @param <V> The type of value stored in the index.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class IntHashIndex<V> {
+
+    /**
+     * The maximum fraction of slots that may be occupied before the table grows.
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * The largest table size, the largest power of two an array can have.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The keys of the index, one per slot.
+     */
+    private int[] keys;
+
+    /**
+     * The values of the index, parallel to {@code keys}. A null value marks a free slot.
+     */
+    private Object[] values;
+
+    /**
+     * The number of occupied slots.
+     */
+    private int size;
+
+    /**
+     * The number of occupied slots that triggers the next resize.
+     */
+    private int threshold;
+
+    /**
+     * Constructs a new {@code IntHashIndex} sized to hold the expected number of entries
+     * without resizing.
+     *
+     * @param expectedSize The number of entries the index is expected to hold.
+     */
+    public IntHashIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Constructs a new, empty {@code IntHashIndex} with a small default capacity.
+     */
+    public IntHashIndex() {
+        this(16);
+    }
+
+    /**
+     * Returns the value stored for the given key.
+     *
+     * @param key The key to look up.
+     * @return The value for the key, or {@code null} if the key is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        Object value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) {
+                return (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;  // Key not found
+    }
+
+    /**
+     * Returns {@code true} if the index holds a value for the given key.
+     *
+     * @param key The key to look up.
+     * @return {@code true} if the key is present.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Stores a value for the given key, replacing any previous value.
+     *
+     * @param key   The key to store.
+     * @param value The value to store. Must not be null.
+     * @return The previous value for the key, or {@code null} if there was none.
+     * @throws IllegalStateException If the key is new and the table is at its largest
+     *                               size and full.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values cannot be stored in the index.");
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        Object existing;
+        while ((existing = values[slot]) != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return (V) existing;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= threshold && keys.length == MAXIMUM_CAPACITY) {
+            // The table cannot double again, and filling it further would make probes endless
+            throw new IllegalStateException("The index is full: it cannot hold more than "
+                    + threshold + " entries.");
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the value stored for the given key. The entries after it in its run of
+     * occupied slots are shifted back, so no deleted marker is left behind.
+     *
+     * @param key The key to remove.
+     * @return The removed value, or {@code null} if the key was not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        Object existing;
+        while ((existing = values[slot]) != null) {
+            if (keys[slot] == key) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (existing == null) {
+            return null;  // Key not found
+        }
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry back unless its home lies after the free slot, cyclically
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[free] = null;
+        size--;
+        return (V) existing;
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Grows the table, if needed, so that it can hold the given number of entries
+     * without resizing again. Useful before a bulk load.
+     *
+     * @param expectedSize The number of entries the index is expected to hold.
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = tableSizeFor(expectedSize);
+        if (capacity > keys.length) {
+            resize(capacity);
+        }
+    }
+
+    /**
+     * Removes every entry from the index, keeping its current capacity.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Spreads the bits of a key so that sequential IDs and account numbers
+     * do not cluster into neighbouring slots.
+     *
+     * @param key The key to hash.
+     * @return The mixed hash of the key.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;  // Fibonacci hashing multiplier
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the power-of-two table size needed to hold the given number of entries.
+     *
+     * @param expectedSize The number of entries to hold.
+     * @return The table size.
+     */
+    private static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 2) / (double) LOAD_FACTOR);
+        if (needed > MAXIMUM_CAPACITY) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    /**
+     * Allocates empty key and value arrays of the given capacity.
+     *
+     * @param capacity The new table size. Must be a power of two.
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Rehashes every entry into a table of the given capacity.
+     *
+     * @param capacity The new table size. Must be a power of two.
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pays interest into every {@link Saving} account of the bank in one parallel pass.
+ *
+ * <p>
+ * The {@code InterestAccrual} class sweeps the type and balance columns of the
+ * {@link AccountStore} one page at a time, with one task per page on the common
+ * fork-join pool, and adds the interest of each savings account with a single atomic
+ * update through the account itself. Other operations keep running during an accrual:
+ * each account's interest is computed from its balance at the moment it is paid, and
+ * a concurrent deposit or withdrawal is either included or not, never lost.
+ * </p>
+ *
+ * <p>
+ * The rate of each account comes from a {@link RateSchedule}, which may be flat,
+ * tiered by balance or looked up per account. Instead of one log line per account, an
+ * accrual produces one summary line in the transaction log. When the binary journal is
+ * enabled, each payment is made and appended to it as a {@link TransactionType#INTEREST}
+ * record while holding the account's lock in {@link AccountLocks}, as every journaled
+ * change does, so recovery restores them like any other balance change. The pages are
+ * still paid in parallel.
+ * </p>
+ *
+ * <p>
+ * The sweep is not vectorized with the incubating Vector API. The module would have to
+ * be added with {@code --add-modules jdk.incubator.vector} to every launch of the bank,
+ * not only to its build, and each launch would print an incubator warning. The rate of
+ * an account comes from a schedule that may depend on the account itself, which does not
+ * map onto vector lanes, and every payment is an atomic update of its account, plus a
+ * journal record under its lock, which costs far more than the multiplication a vector
+ * would share. The column reads that pick out the accounts to pay are already a
+ * sequential scan of primitive arrays.
+ * </p>
+ *
+ * @see Saving
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class InterestAccrual {
+
+    /**
+     * The interest rate of an account, in basis points per accrual.
+     */
+    @FunctionalInterface
+    public interface RateSchedule {
+
+        /**
+         * Returns the interest rate of an account.
+         *
+         * @param accountNumber The account number.
+         * @param balance       The current balance, in cents.
+         * @return The rate in basis points; 0 pays no interest.
+         */
+        long basisPoints(int accountNumber, long balance);
+    }
+
+    /**
+     * The number of accounts paid and the total interest of one accrual.
+     */
+    public static final class Summary {
+        private final long accounts;
+        private final long interest;
+        private final long nanos;
+
+        Summary(long accounts, long interest, long nanos) {
+            this.accounts = accounts;
+            this.interest = interest;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the number of accounts that were paid interest.
+         *
+         * @return The number of accounts.
+         */
+        public long getAccounts() {
+            return accounts;
+        }
+
+        /**
+         * Returns the total interest paid.
+         *
+         * @return The total interest, in cents.
+         */
+        public long getInterest() {
+            return interest;
+        }
+
+        /**
+         * Returns the time the accrual took.
+         *
+         * @return The elapsed time, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    /**
+     * The store whose savings accounts are paid.
+     */
+    private final AccountStore store;
+
+    /**
+     * The rates to pay.
+     */
+    private final RateSchedule schedule;
+
+    /**
+     * The journal the payments are recorded in, or {@code null} for none.
+     */
+    private final TransactionJournal journal;
+
+    /**
+     * Constructs a new {@code InterestAccrual}.
+     *
+     * @param store    The store whose savings accounts are paid.
+     * @param schedule The rates to pay.
+     * @param journal  The journal to record the payments in, or {@code null} for none.
+     */
+    public InterestAccrual(AccountStore store, RateSchedule schedule, TransactionJournal journal) {
+        this.store = store;
+        this.schedule = schedule;
+        this.journal = journal;
+    }
+
+    /**
+     * Returns a schedule paying the same rate on every positive balance.
+     *
+     * @param basisPoints The rate in basis points.
+     * @return The schedule.
+     */
+    public static RateSchedule flat(long basisPoints) {
+        return (accountNumber, balance) -> balance > 0 ? basisPoints : 0;
+    }
+
+    /**
+     * Returns a schedule whose rate depends on the balance. Each tier starts at a
+     * balance and applies to the whole balance of an account in that tier; balances
+     * below the first tier, and balances that are not positive, are paid nothing.
+     *
+     * @param floors      The lowest balance of each tier in cents, in increasing order.
+     * @param basisPoints The rate of each tier in basis points, parallel to {@code floors}.
+     * @return The schedule.
+     */
+    public static RateSchedule tiered(long[] floors, long[] basisPoints) {
+        if (floors.length != basisPoints.length) {
+            throw new IllegalArgumentException("Tier floors and rates differ in length.");
+        }
+        for (int i = 1; i < floors.length; i++) {
+            if (floors[i] <= floors[i - 1]) {
+                throw new IllegalArgumentException("Tier floors must increase.");
+            }
+        }
+        long[] tierFloors = floors.clone();
+        long[] tierRates = basisPoints.clone();
+        return (accountNumber, balance) -> {
+            long rate = 0;
+            for (int i = 0; i < tierFloors.length && balance >= tierFloors[i]; i++) {
+                rate = tierRates[i];
+            }
+            return balance > 0 ? rate : 0;
+        };
+    }
+
+    /**
+     * Parses a tiered schedule written as comma-separated {@code balance:basisPoints}
+     * pairs, with balances in dollars, such as {@code 0:100,10000:150,100000:200}.
+     *
+     * @param tiers The tiers.
+     * @return The schedule.
+     * @throws IllegalArgumentException If the tiers cannot be parsed.
+     */
+    public static RateSchedule parseTiers(String tiers) {
+        String[] parts = tiers.split(",");
+        long[] floors = new long[parts.length];
+        long[] rates = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            int colon = parts[i].indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Invalid interest tier: " + parts[i]);
+            }
+            floors[i] = Money.parse(parts[i].substring(0, colon).trim());
+            rates[i] = Long.parseLong(parts[i].substring(colon + 1).trim());
+        }
+        return tiered(floors, rates);
+    }
+
+    /**
+     * Pays interest into every savings account in the store.
+     *
+     * @return The number of accounts paid and the total interest.
+     * @throws IOException If the payments cannot be written to the journal. The
+     *                     interest of the pages already processed stays paid.
+     */
+    public Summary accrue() throws IOException {
+        long start = System.nanoTime();
+        int pages = store.pageCount();
+        PageTask[] tasks = new PageTask[pages];
+        for (int page = 0; page < pages; page++) {
+            tasks[page] = new PageTask(page);
+            tasks[page].fork();
+        }
+
+        long accounts = 0;
+        long interest = 0;
+        IOException error = null;
+        for (PageTask task : tasks) {
+            PageTask.Result result = task.join();
+            accounts += result.accounts;
+            interest += result.interest;
+            if (error == null) {
+                error = result.error;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return new Summary(accounts, interest, System.nanoTime() - start);
+    }
+
+    /**
+     * Pays the interest of the savings accounts of one page of the store.
+     */
+    @SuppressWarnings("serial")
+    private final class PageTask extends RecursiveTask<PageTask.Result> {
+
+        /**
+         * The accounts paid, the interest and the journal error of one page.
+         */
+        final class Result {
+            long accounts;
+            long interest;
+            IOException error;
+        }
+
+        private final int page;
+
+        PageTask(int page) {
+            this.page = page;
+        }
+
+        @Override
+        protected Result compute() {
+            Result result = new Result();
+            Object types = store.typePage(page);
+            Object balances = store.balancePage(page);
+            Account[] accounts = store.accountPage(page);
+            int length = store.pageLength(page);
+
+            // Each payment is recorded before the account's lock is released, so no other
+            // change of the account can be seen, or recorded, before it
+            try {
+                for (int i = 0; i < length; i++) {
+                    // Read the columns first so that only savings accounts with money are visited
+                    if (AccountStore.getType(types, i) != AccountStore.SAVING
+                            || AccountStore.getBalancePlain(balances, i) <= 0) {
+                        continue;
+                    }
+                    Account account = accounts[i];
+                    if (account == null) {
+                        continue;  // Detached from its view by a LazyDirectory
+                    }
+                    int accountNumber = account.getAccountNumber();
+                    long interest;
+                    if (journal == null) {
+                        interest = account.addChange(
+                                balance -> Money.applyRate(balance, schedule.basisPoints(accountNumber, balance)));
+                    } else {
+                        journal.reserve(1);
+                        ReentrantLock lock = AccountLocks.lockFor(accountNumber);
+                        lock.lock();
+                        try {
+                            interest = account.addChange(
+                                    balance -> Money.applyRate(balance, schedule.basisPoints(accountNumber, balance)));
+                            if (interest != 0) {
+                                // Every journaled change holds the lock, so the balance is still this one's
+                                journal.appendReserved(TransactionType.INTEREST, 0, accountNumber, 0, 0, interest,
+                                        account.getBalance(), 0);
+                            } else {
+                                journal.cancel(1);
+                            }
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                    if (interest != 0) {
+                        result.accounts++;
+                        result.interest += interest;
+                    }
+                }
+            } catch (IOException e) {
+                result.error = e;  // The rest of the page is not paid
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes periodic {@link BalanceSnapshot}s of the {@link TransactionJournal}.
+ *
+ * <p>
+ * The {@code JournalCheckpointer} never reads the live accounts. It keeps its own copy
+ * of every balance as of one journal sequence number and moves that copy forward by
+ * applying the journal records written since, so each snapshot is exactly the
+ * starting balances plus the records before its sequence number, even while other
+ * threads keep changing the accounts without locks. Account numbers are kept sorted,
+ * so applying a record is a binary search and the cost of a snapshot is the number of
+ * new records plus one sequential write of all balances.
+ * </p>
+ *
+ * @see JournalRecovery
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class JournalCheckpointer {
+
+    /**
+     * The journal directory.
+     */
+    private final String directory;
+
+    /**
+     * The account numbers, sorted and distinct.
+     */
+    private final int[] accounts;
+
+    /**
+     * The balances in cents as of {@code sequence}, parallel to {@code accounts}.
+     */
+    private final long[] balances;
+
+    /**
+     * The sequence number of the first journal record not yet applied.
+     */
+    private long sequence;
+
+    /**
+     * The background thread, or {@code null} if {@link #start} was not called.
+     */
+    private Thread thread;
+
+    /**
+     * Set when the background thread should stop.
+     */
+    private volatile boolean stopping;
+
+    /**
+     * Constructs a new {@code JournalCheckpointer} from the current balances of the
+     * given customers, which must be the balances produced by every journal record
+     * before {@code sequence}, as they are right after {@link JournalRecovery#recover}.
+     *
+     * @param directory The journal directory.
+     * @param customers The customers whose accounts are snapshotted.
+     * @param sequence  The sequence number of the first journal record not yet applied.
+     */
+    public JournalCheckpointer(String directory, Collection<Customer> customers, long sequence) {
+        this.directory = directory;
+        this.sequence = sequence;
+
+        // Sort the accounts by number; with duplicate numbers the last one wins, as in the directory
+        ArrayList<Account> all = new ArrayList<>();
+        for (Customer customer : customers) {
+            all.addAll(customer.getAccounts());
+        }
+        all.sort(Comparator.comparingInt(Account::getAccountNumber));
+        int[] numbers = new int[all.size()];
+        long[] values = new long[all.size()];
+        int count = 0;
+        for (Account account : all) {
+            if (count > 0 && numbers[count - 1] == account.getAccountNumber()) {
+                count--;
+            }
+            numbers[count] = account.getAccountNumber();
+            values[count] = account.getBalance();
+            count++;
+        }
+        this.accounts = Arrays.copyOf(numbers, count);
+        this.balances = Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Starts writing snapshots on a background thread. Every interval, a snapshot is
+     * written if at least the given number of records were appended since the last one.
+     *
+     * @param journal        The journal being appended to.
+     * @param intervalMillis The time between checks, in milliseconds.
+     * @param minRecords     The number of new records that makes a snapshot worthwhile.
+     */
+    public synchronized void start(TransactionJournal journal, long intervalMillis, long minRecords) {
+        if (thread != null) {
+            return;
+        }
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        thread = new Thread(() -> {
+            while (!stopping) {
+                LockSupport.parkNanos(this, intervalNanos);
+                long end = journal.getNextSequence();
+                try {
+                    if (!stopping && end - getSequence() >= minRecords) {
+                        snapshot(end);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error writing journal snapshot: " + e.getMessage());
+                }
+            }
+        }, "journal-checkpointer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread, if any, and writes a final snapshot if any records
+     * were appended since the last one, so the next start replays nothing.
+     *
+     * @param journal The journal being appended to.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void close(TransactionJournal journal) throws IOException {
+        Thread worker;
+        synchronized (this) {
+            worker = thread;
+            stopping = true;
+        }
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long end = journal.getNextSequence();
+        if (end > getSequence()) {
+            snapshot(end);
+        }
+    }
+
+    /**
+     * Returns the sequence number of the first journal record not yet applied.
+     *
+     * @return The sequence number of the newest snapshot, or the starting sequence.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Applies the journal records up to the given sequence number and writes a snapshot.
+     * The records must already be complete in the journal.
+     *
+     * @param end The sequence number of the first record not to include.
+     * @return The number of records applied.
+     * @throws IOException If the journal cannot be read or the snapshot cannot be written.
+     */
+    public synchronized long snapshot(long end) throws IOException {
+        long applied = 0;
+        if (end > sequence) {
+            JournalReader reader = new JournalReader(directory, sequence);
+            while (sequence < end && reader.next()) {
+                TransactionType type = reader.getType();
+                if (type != null) {
+                    long amount = reader.getAmount();
+                    apply(reader.getSourceAccount(), type.sourceChange(amount));
+                    apply(reader.getTargetAccount(), type.targetChange(amount));
+                }
+                sequence = reader.getSequence() + 1;
+                applied++;
+            }
+        }
+        new BalanceSnapshot(sequence, accounts, balances).write(new File(directory));
+        return applied;
+    }
+
+    /**
+     * Applies one change to the copy of an account's balance. Unknown accounts are
+     * ignored, as they are by recovery.
+     */
+    private void apply(int accountNumber, long change) {
+        if (change != 0) {
+            int index = Arrays.binarySearch(accounts, accountNumber);
+            if (index >= 0) {
+                balances[index] += change;
+            }
+        }
+    }
+}
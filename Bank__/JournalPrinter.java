@@ -0,0 +1,158 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+/**
+ * Renders a binary {@link TransactionJournal} in the human-readable format
+ * used by {@code TransactionLog.txt}.
+ *
+ * <p>
+ * The journal stores only IDs, account numbers and amounts, so the customer file is
+ * loaded to resolve customer names and account types.
+ * </p>
+ *
+ * <pre>
+ * java JournalPrinter journal Bank_users.csv
+ * </pre>
+ *
+ * @see JournalReader
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class JournalPrinter {
+
+    /**
+     * Prints every record of a journal to standard output.
+     *
+     * @param args The journal directory, optionally followed by the customer CSV file
+     *             (defaults to {@code Bank_users.csv}).
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java JournalPrinter <journal directory> [customer CSV file]");
+            return;
+        }
+        RunBank.LoadCSV(args.length > 1 ? args[1] : "Bank_users.csv");
+
+        JournalReader reader = new JournalReader(args[0]);
+        StringBuilder line = new StringBuilder(256);
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out))) {
+            while (reader.next()) {
+                line.setLength(0);
+                render(reader, RunBank.directory, line);
+                out.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the log sentence for the reader's current record to a builder.
+     *
+     * @param record    The reader positioned on the record to render.
+     * @param directory The directory used to resolve names and account types.
+     * @param line      The builder to append to.
+     */
+    public static void render(JournalReader record, BankDirectory directory, StringBuilder line) {
+        Customer source = directory.findCustomer(record.getSourceCustomer());
+        Customer target = directory.findCustomer(record.getTargetCustomer());
+        int sourceAccount = record.getSourceAccount();
+        int targetAccount = record.getTargetAccount();
+
+        TransactionType type = record.getType();
+        if (type == null) {
+            line.append("Unknown journal record #").append(record.getSequence());
+            return;
+        }
+
+        switch (type) {
+            case INQUIRY:
+                appendName(line, source).append(" made a balance inquiry on ");
+                appendAccount(line, directory, sourceAccount).append(". ");
+                appendName(line, source).append("'s Balance for ");
+                appendAccount(line, directory, sourceAccount).append(": $");
+                Money.append(line, record.getSourceBalance());
+                break;
+            case DEPOSIT:
+                appendName(line, source).append(" deposited $");
+                Money.append(line, record.getAmount()).append(" to ");
+                appendAccount(line, directory, sourceAccount).append(". ");
+                appendName(line, source).append("'s New Balance for ");
+                appendAccount(line, directory, sourceAccount).append(": $");
+                Money.append(line, record.getSourceBalance());
+                break;
+            case WITHDRAW:
+                appendName(line, source).append(" withdrew $");
+                Money.append(line, record.getAmount()).append(" in cash from ");
+                appendAccount(line, directory, sourceAccount).append(". ");
+                appendName(line, source).append("'s Balance for ");
+                appendAccount(line, directory, sourceAccount).append(": $");
+                Money.append(line, record.getSourceBalance());
+                break;
+            case TRANSFER:
+                appendName(line, source).append(" transferred $");
+                Money.append(line, record.getAmount()).append(" from ");
+                appendAccount(line, directory, sourceAccount).append(" to ");
+                appendName(line, target).append("'s ");
+                appendAccount(line, directory, targetAccount).append(". ");
+                appendName(line, source).append("'s New Balance for ");
+                appendAccount(line, directory, sourceAccount).append(": $");
+                Money.append(line, record.getSourceBalance()).append(". ");
+                appendName(line, target).append("'s New Balance for ");
+                appendAccount(line, directory, targetAccount).append(": $");
+                Money.append(line, record.getTargetBalance());
+                break;
+            case PAY:
+                appendName(line, source).append(" paid ");
+                appendName(line, target).append(" $");
+                Money.append(line, record.getAmount()).append(" from ");
+                appendAccount(line, directory, sourceAccount).append(". ");
+                appendName(line, source).append("'s New Balance for ");
+                appendAccount(line, directory, sourceAccount).append(": $");
+                Money.append(line, record.getSourceBalance());
+                break;
+            case INTEREST:
+                source = directory.findOwner(sourceAccount);
+                line.append("Interest of $");
+                Money.append(line, record.getAmount()).append(" was paid to ");
+                appendName(line, source).append("'s ");
+                appendAccount(line, directory, sourceAccount).append(". ");
+                appendName(line, source).append("'s New Balance for ");
+                appendAccount(line, directory, sourceAccount).append(": $");
+                Money.append(line, record.getSourceBalance());
+                break;
+            default:
+                line.append("Unknown journal record #").append(record.getSequence());
+        }
+    }
+
+    /**
+     * Appends a customer's full name, or a placeholder if the customer is unknown.
+     *
+     * @param line     The builder to append to.
+     * @param customer The customer, or {@code null}.
+     * @return The builder.
+     */
+    private static StringBuilder appendName(StringBuilder line, Customer customer) {
+        if (customer == null) {
+            return line.append("Unknown customer");
+        }
+        return line.append(customer.getFirstName()).append(' ').append(customer.getLastName());
+    }
+
+    /**
+     * Appends an account in {@code Type-Number} form.
+     *
+     * @param line          The builder to append to.
+     * @param directory     The directory used to resolve the account type.
+     * @param accountNumber The account number.
+     * @return The builder.
+     */
+    private static StringBuilder appendAccount(StringBuilder line, BankDirectory directory, int accountNumber) {
+        Account account = directory.findAccount(accountNumber);
+        line.append(account != null ? account.getAccountType() : "Account");
+        return line.append('-').append(accountNumber);
+    }
+}
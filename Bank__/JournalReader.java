@@ -0,0 +1,206 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the records of a {@link TransactionJournal} sequentially.
+ *
+ * <p>
+ * The {@code JournalReader} class is a cursor: {@link #next()} advances to the next
+ * record and the getters read the fields of the current record straight out of the
+ * mapped segment, so walking the journal creates no objects per record.
+ * </p>
+ *
+ * <pre>
+ * JournalReader reader = new JournalReader("journal");
+ * while (reader.next()) {
+ *     System.out.println(reader.getType() + " " + reader.getAmount());
+ * }
+ * </pre>
+ *
+ * @see TransactionJournal
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class JournalReader {
+
+    /**
+     * The segment files of the journal, oldest first.
+     */
+    private final File[] segments;
+
+    /**
+     * The index of the segment currently mapped, or -1 before the first call to {@link #next()}.
+     */
+    private int segmentIndex = -1;
+
+    /**
+     * The mapping of the current segment.
+     */
+    private MappedByteBuffer segment;
+
+    /**
+     * The byte position of the current record within the current segment.
+     */
+    private int base = -TransactionJournal.RECORD_SIZE;
+
+    /**
+     * Opens a reader positioned before the first record of the journal.
+     *
+     * @param directory The journal directory.
+     */
+    public JournalReader(String directory) {
+        this.segments = TransactionJournal.listSegments(new File(directory));
+    }
+
+    /**
+     * Opens a reader positioned just before the record with the given sequence number,
+     * so the first call to {@link #next()} moves to that record. Earlier segments are
+     * never mapped.
+     *
+     * @param directory The journal directory.
+     * @param sequence  The sequence number of the first record to read.
+     * @throws IOException If the segment holding the record cannot be mapped.
+     */
+    public JournalReader(String directory, long sequence) throws IOException {
+        this(directory);
+        int index = segments.length - 1;
+        while (index > 0 && TransactionJournal.firstSequenceOf(segments[index]) > sequence) {
+            index--;
+        }
+        if (index < 0) {
+            return;  // The journal is empty
+        }
+        if (sequence <= TransactionJournal.firstSequenceOf(segments[index])) {
+            segmentIndex = index - 1;  // Start at the beginning of the segment
+            return;
+        }
+        segmentIndex = index;
+        try (RandomAccessFile raf = new RandomAccessFile(segments[index], "r")) {
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        long offset = (sequence - TransactionJournal.firstSequenceOf(segments[index])) * TransactionJournal.RECORD_SIZE;
+        base = (int) Math.min(offset, segment.capacity()) - TransactionJournal.RECORD_SIZE;
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return {@code true} if there is a current record, or {@code false} at the end of the journal.
+     * @throws IOException If a segment file cannot be mapped.
+     */
+    public boolean next() throws IOException {
+        int nextBase = base + TransactionJournal.RECORD_SIZE;
+        if (segment != null && nextBase < segment.capacity()) {
+            if (segment.getInt(nextBase + TransactionJournal.TYPE_OFFSET) != 0) {
+                base = nextBase;
+                return true;
+            }
+            return false;  // Reached the unused tail of the newest segment
+        }
+
+        // Move on to the next segment
+        if (segmentIndex + 1 >= segments.length) {
+            return false;
+        }
+        segmentIndex++;
+        try (RandomAccessFile raf = new RandomAccessFile(segments[segmentIndex], "r")) {
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        base = -TransactionJournal.RECORD_SIZE;
+        return next();
+    }
+
+    /**
+     * Returns the sequence number of the current record.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return segment.getLong(base + TransactionJournal.SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Returns the time the current record was written.
+     *
+     * @return The timestamp in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return segment.getLong(base + TransactionJournal.TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * Returns the transaction type of the current record.
+     *
+     * @return The transaction type.
+     */
+    public TransactionType getType() {
+        return TransactionType.fromCode(segment.getInt(base + TransactionJournal.TYPE_OFFSET));
+    }
+
+    /**
+     * Returns the ID of the customer who made the transaction.
+     *
+     * @return The source customer ID.
+     */
+    public int getSourceCustomer() {
+        return segment.getInt(base + TransactionJournal.SOURCE_CUSTOMER_OFFSET);
+    }
+
+    /**
+     * Returns the account number the transaction was made on.
+     *
+     * @return The source account number.
+     */
+    public int getSourceAccount() {
+        return segment.getInt(base + TransactionJournal.SOURCE_ACCOUNT_OFFSET);
+    }
+
+    /**
+     * Returns the ID of the receiving customer.
+     *
+     * @return The target customer ID, or 0 if the transaction has no target.
+     */
+    public int getTargetCustomer() {
+        return segment.getInt(base + TransactionJournal.TARGET_CUSTOMER_OFFSET);
+    }
+
+    /**
+     * Returns the receiving account number.
+     *
+     * @return The target account number, or 0 if the transaction has no target.
+     */
+    public int getTargetAccount() {
+        return segment.getInt(base + TransactionJournal.TARGET_ACCOUNT_OFFSET);
+    }
+
+    /**
+     * Returns the amount of the transaction.
+     *
+     * @return The amount in cents, or 0 for an inquiry.
+     */
+    public long getAmount() {
+        return segment.getLong(base + TransactionJournal.AMOUNT_OFFSET);
+    }
+
+    /**
+     * Returns the balance of the source account after the transaction.
+     *
+     * @return The source balance, in cents.
+     */
+    public long getSourceBalance() {
+        return segment.getLong(base + TransactionJournal.SOURCE_BALANCE_OFFSET);
+    }
+
+    /**
+     * Returns the balance of the target account after the transaction.
+     *
+     * @return The target balance in cents, or 0 if the transaction has no target.
+     */
+    public long getTargetBalance() {
+        return segment.getLong(base + TransactionJournal.TARGET_BALANCE_OFFSET);
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Restores account balances after a restart or a crash from the newest
+ * {@link BalanceSnapshot} and the tail of the {@link TransactionJournal}.
+ *
+ * <p>
+ * Every balance change is recorded in the journal before it is acknowledged, so the
+ * balances at any moment are the starting balances plus the changes of every journal
+ * record. A snapshot stores that sum up to one sequence number; recovery loads it and
+ * replays only the records after it, so the time taken depends on the length of the
+ * tail, not on the length of the history. Records are replayed as signed changes,
+ * which add up to the same balances in any order, and without re-checking limits,
+ * since each change was already checked when it was first made.
+ * </p>
+ *
+ * <p>
+ * Balances kept in a reopened {@link LedgerFile} are not rebuilt from a snapshot: they
+ * are already in the file, up to the journal sequence its header says was applied, and
+ * {@link #replayBalances} sets them from the records after it.
+ * </p>
+ *
+ * @see JournalCheckpointer
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class JournalRecovery {
+
+    /**
+     * Loads the newest snapshot into the accounts of a directory and replays the
+     * journal records after it. Must run before the accounts are used.
+     *
+     * @param journalDirectory The journal directory.
+     * @param directory        The directory of the accounts to restore.
+     * @return The number of journal records replayed.
+     * @throws IOException If the snapshot or the journal cannot be read.
+     */
+    public static long recover(String journalDirectory, BankDirectory directory) throws IOException {
+        long skipped = 0;
+
+        // Start from the newest snapshot, if there is one
+        long sequence = 0;
+        BalanceSnapshot snapshot = BalanceSnapshot.readLatest(new File(journalDirectory));
+        if (snapshot != null) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                Account account = directory.findAccount(snapshot.getAccount(i));
+                if (account != null) {
+                    account.restoreBalance(snapshot.getBalance(i));
+                } else {
+                    skipped++;
+                }
+            }
+            sequence = snapshot.getSequence();
+        }
+
+        // Replay the changes recorded after the snapshot
+        long replayed = 0;
+        JournalReader reader = new JournalReader(journalDirectory, sequence);
+        while (reader.next()) {
+            TransactionType type = reader.getType();
+            if (type == null) {
+                continue;
+            }
+            long amount = reader.getAmount();
+            skipped += replay(directory, reader.getSourceAccount(), type.sourceChange(amount));
+            skipped += replay(directory, reader.getTargetAccount(), type.targetChange(amount));
+            replayed++;
+        }
+
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " recovered balances for unknown accounts.");
+        }
+        return replayed;
+    }
+
+    /**
+     * Brings the balances of a reopened {@link LedgerFile} up to date with the journal
+     * records from a sequence number on, by setting every balance a record changed to the
+     * balance the record left. The records of an account are in the order of its changes,
+     * so the last one sets the balance it had at the crash; a record whose change the file
+     * already holds sets the same balance again, so starting earlier than needed is
+     * harmless. Must run before the accounts are used.
+     *
+     * @param journalDirectory The journal directory.
+     * @param directory        The directory of the accounts to restore.
+     * @param sequence         The sequence number of the first record to replay.
+     * @return The number of journal records replayed.
+     * @throws IOException If the journal cannot be read.
+     */
+    public static long replayBalances(String journalDirectory, BankDirectory directory, long sequence)
+            throws IOException {
+        long skipped = 0;
+        long replayed = 0;
+        JournalReader reader = new JournalReader(journalDirectory, sequence);
+        while (reader.next()) {
+            TransactionType type = reader.getType();
+            if (type == null) {
+                continue;
+            }
+            long amount = reader.getAmount();
+            if (type.sourceChange(amount) != 0) {
+                skipped += restore(directory, reader.getSourceAccount(), reader.getSourceBalance());
+            }
+            if (type.targetChange(amount) != 0) {
+                skipped += restore(directory, reader.getTargetAccount(), reader.getTargetBalance());
+            }
+            replayed++;
+        }
+
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " recovered balances for unknown accounts.");
+        }
+        return replayed;
+    }
+
+    /**
+     * Sets the balance of an account to the one a replayed record left.
+     *
+     * @return 1 if the account is unknown, otherwise 0.
+     */
+    private static int restore(BankDirectory directory, int accountNumber, long balance) {
+        Account account = directory.findAccount(accountNumber);
+        if (account == null) {
+            return 1;
+        }
+        account.restoreBalance(balance);
+        return 0;
+    }
+
+    /**
+     * Applies one replayed change to an account.
+     *
+     * @return 1 if the change could not be applied because the account is unknown, otherwise 0.
+     */
+    private static int replay(BankDirectory directory, int accountNumber, long change) {
+        if (change == 0) {
+            return 0;
+        }
+        Account account = directory.findAccount(accountNumber);
+        if (account == null) {
+            return 1;
+        }
+        account.replayChange(change);
+        return 0;
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A sorted index of customers by last name, for prefix searches.
+ *
+ * <p>
+ * The {@code LastNameIndex} class keeps the customers in one array sorted by last name,
+ * ignoring case, and then by ID. The customers whose last name starts with a prefix are
+ * a contiguous run of that array, found with two binary searches, so a page of results
+ * is sliced straight out of it: a search takes time in the size of the page and the
+ * logarithm of the number of customers, never a scan of all of them.
+ * </p>
+ *
+ * <p>
+ * Customers added one at a time are held in a small unsorted batch and merged into the
+ * sorted array before the next search, so a bulk load sorts once rather than inserting
+ * into the middle of the array for every customer. The index may be searched by any
+ * number of threads while customers are being added.
+ * </p>
+ *
+ * @see BankDirectory
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class LastNameIndex {
+
+    /**
+     * Orders customers by last name, ignoring case, and then by ID. The names of
+     * {@link CompactCustomer}s are compared in their arena rather than decoded, so
+     * sorting and searching allocate no strings. The {@link CustomerSnapshot} writes its
+     * index of last names in the same order.
+     */
+    static final Comparator<Customer> ORDER = (a, b) -> {
+        int byName = compareLastNames(a, b);
+        return byName != 0 ? byName : Integer.compare(a.getId(), b.getId());
+    };
+
+    /**
+     * The customers merged into the index, sorted; only the first {@link #size} are used.
+     */
+    private Customer[] sorted = new Customer[16];
+
+    /**
+     * The number of sorted customers.
+     */
+    private int size;
+
+    /**
+     * The customers added since the last merge, in the order they were added.
+     */
+    private Customer[] pending = new Customer[16];
+
+    /**
+     * The number of customers waiting to be merged.
+     */
+    private int pendingCount;
+
+    /**
+     * Adds a customer to the index.
+     *
+     * @param customer The customer to add.
+     */
+    public synchronized void add(Customer customer) {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = customer;
+    }
+
+    /**
+     * Grows the index, if needed, to hold the given number of customers without
+     * copying. Useful before a bulk load.
+     *
+     * @param expectedCustomers The number of customers the index is expected to hold.
+     */
+    public synchronized void ensureCapacity(int expectedCustomers) {
+        if (expectedCustomers - size > pending.length) {
+            pending = Arrays.copyOf(pending, expectedCustomers - size);
+        }
+    }
+
+    /**
+     * Sorts the customers added since the last merge into the index. Searches merge
+     * on their own; a bulk load calls this once at the end so the first search does
+     * not pay for the sort.
+     */
+    public synchronized void merge() {
+        if (pendingCount == 0) {
+            return;
+        }
+        Arrays.sort(pending, 0, pendingCount, ORDER);
+        Customer[] merged = new Customer[Math.max(16, size + pendingCount)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < size && j < pendingCount) {
+            merged[k++] = ORDER.compare(sorted[i], pending[j]) <= 0 ? sorted[i++] : pending[j++];
+        }
+        System.arraycopy(sorted, i, merged, k, size - i);
+        k += size - i;
+        System.arraycopy(pending, j, merged, k, pendingCount - j);
+        sorted = merged;
+        size += pendingCount;
+
+        // Keep a small batch for later additions, not the whole bulk load
+        pending = new Customer[16];
+        pendingCount = 0;
+    }
+
+    /**
+     * Returns one page of the customers whose last name starts with a prefix, ignoring
+     * case, ordered by last name and then by ID.
+     *
+     * @param prefix The start of the last name; an empty prefix matches every customer.
+     * @param offset The number of matching customers to skip.
+     * @param limit  The largest number of customers to return.
+     * @return The customers of the page; empty past the last match.
+     */
+    public synchronized List<Customer> search(String prefix, int offset, int limit) {
+        merge();
+        int from = lowerBound(prefix);
+        int to = upperBound(prefix, from);
+        int start = (int) Math.min(to, (long) from + Math.max(0, offset));
+        int end = (int) Math.min(to, (long) start + Math.max(0, limit));
+        ArrayList<Customer> page = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            page.add(sorted[i]);
+        }
+        return page;
+    }
+
+    /**
+     * Returns the number of customers whose last name starts with a prefix, ignoring case.
+     *
+     * @param prefix The start of the last name.
+     * @return The number of matching customers.
+     */
+    public synchronized int count(String prefix) {
+        merge();
+        int from = lowerBound(prefix);
+        return upperBound(prefix, from) - from;
+    }
+
+    /**
+     * Returns the number of customers in the index.
+     *
+     * @return The number of customers.
+     */
+    public synchronized int size() {
+        return size + pendingCount;
+    }
+
+    /**
+     * Compares the last names of two customers, ignoring case.
+     */
+    private static int compareLastNames(Customer a, Customer b) {
+        if (a instanceof CompactCustomer) {
+            return b instanceof CompactCustomer
+                    ? ((CompactCustomer) a).compareLastName((CompactCustomer) b)
+                    : ((CompactCustomer) a).compareLastName(b.getLastName());
+        }
+        return b instanceof CompactCustomer
+                ? -((CompactCustomer) b).compareLastName(a.getLastName())
+                : String.CASE_INSENSITIVE_ORDER.compare(a.getLastName(), b.getLastName());
+    }
+
+    /**
+     * Compares the last name of a customer with a name, ignoring case.
+     */
+    private static int compareLastName(Customer customer, String name) {
+        return customer instanceof CompactCustomer
+                ? ((CompactCustomer) customer).compareLastName(name)
+                : String.CASE_INSENSITIVE_ORDER.compare(customer.getLastName(), name);
+    }
+
+    /**
+     * Returns {@code true} if the last name of a customer starts with a prefix, ignoring case.
+     */
+    private static boolean lastNameStartsWith(Customer customer, String prefix) {
+        return customer instanceof CompactCustomer
+                ? ((CompactCustomer) customer).lastNameStartsWith(prefix)
+                : customer.getLastName().regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    /**
+     * Returns the index of the first customer whose last name is not before the prefix.
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareLastName(sorted[mid], prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index just past the last customer whose last name starts with the
+     * prefix, searching from the first candidate.
+     */
+    private int upperBound(String prefix, int from) {
+        int low = from;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lastNameStartsWith(sorted[mid], prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
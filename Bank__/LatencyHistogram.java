@@ -0,0 +1,192 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A histogram of latencies in nanoseconds with fixed log-linear buckets.
+ *
+ * <p>
+ * Each power of two is split into {@value #SUB_BUCKETS} equal buckets, so every
+ * recorded value is counted in a bucket no wider than one sixteenth of its value and
+ * percentiles are accurate to about 6%, from single nanoseconds up to about 18 minutes;
+ * longer values are counted in the last bucket. The bucket of a value is found with a
+ * few shifts, without searching.
+ * </p>
+ *
+ * <p>
+ * Like a {@link StripedCounter}, the histogram keeps one set of buckets per stripe and
+ * each thread records into the set picked by its identity hash code with atomic adds,
+ * so recording never allocates, never takes a lock and rarely contends. Reading merges
+ * the stripes; percentiles read while values are being recorded may miss the newest.
+ * </p>
+ *
+ * @see OperationMetrics
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of bits of a value, below its highest one bit, that select its bucket.
+     */
+    private static final int SUB_BITS = 4;
+
+    /**
+     * The number of buckets each power of two is split into.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * The highest power of two with its own buckets: 2^40 nanoseconds is about 18 minutes.
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * The number of buckets.
+     */
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    // Positions of the totals after the buckets of a stripe
+    private static final int SUM = BUCKETS;
+    private static final int MAX = BUCKETS + 1;
+
+    /**
+     * The number of elements of one stripe, rounded up to whole cache lines.
+     */
+    private static final int STRIPE_LENGTH = (BUCKETS + 2 + 7) & ~7;
+
+    /**
+     * Atomic access to the counts.
+     */
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * The counts of every stripe: the buckets, then the sum and the maximum.
+     */
+    private final long[] counts = new long[StripedCounter.STRIPES * STRIPE_LENGTH];
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency, in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int base = StripedCounter.stripe() * STRIPE_LENGTH;
+        COUNTS.getAndAdd(counts, base + bucketOf(value), 1L);
+        COUNTS.getAndAdd(counts, base + SUM, value);
+        long max;
+        while (value > (max = (long) COUNTS.getVolatile(counts, base + MAX))
+                && !COUNTS.weakCompareAndSet(counts, base + MAX, max, value)) {
+            // Retry until the maximum is at least this value
+        }
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value The value, not negative.
+     * @return The bucket number.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the highest value counted in a bucket.
+     *
+     * @param bucket The bucket number.
+     * @return The highest value of the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Returns a merged copy of the counts of every stripe: the buckets, then the sum and
+     * the maximum.
+     *
+     * @return The merged counts.
+     */
+    long[] snapshot() {
+        long[] merged = new long[BUCKETS + 2];
+        for (int base = 0; base < counts.length; base += STRIPE_LENGTH) {
+            for (int i = 0; i < BUCKETS + 1; i++) {
+                merged[i] += (long) COUNTS.getVolatile(counts, base + i);
+            }
+            merged[MAX] = Math.max(merged[MAX], (long) COUNTS.getVolatile(counts, base + MAX));
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the number of values recorded in a snapshot.
+     *
+     * @param snapshot A snapshot taken with {@link #snapshot()}.
+     * @return The number of values.
+     */
+    static long count(long[] snapshot) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += snapshot[i];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values in a snapshot.
+     *
+     * @param snapshot A snapshot taken with {@link #snapshot()}.
+     * @return The mean in nanoseconds, or 0 if no values were recorded.
+     */
+    static long mean(long[] snapshot) {
+        long count = count(snapshot);
+        return count == 0 ? 0 : snapshot[SUM] / count;
+    }
+
+    /**
+     * Returns the largest value in a snapshot.
+     *
+     * @param snapshot A snapshot taken with {@link #snapshot()}.
+     * @return The maximum in nanoseconds, or 0 if no values were recorded.
+     */
+    static long max(long[] snapshot) {
+        return snapshot[MAX];
+    }
+
+    /**
+     * Returns the value below which a given fraction of the values in a snapshot fall.
+     *
+     * @param snapshot A snapshot taken with {@link #snapshot()}.
+     * @param fraction The fraction, such as 0.99 for the 99th percentile.
+     * @return The percentile in nanoseconds, or 0 if no values were recorded.
+     */
+    static long percentile(long[] snapshot, double fraction) {
+        long count = count(snapshot);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), snapshot[MAX]);
+            }
+        }
+        return snapshot[MAX];
+    }
+}
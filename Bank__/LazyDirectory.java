@@ -0,0 +1,652 @@
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link BankDirectory} that reads customers from a {@link CustomerSnapshot} when
+ * they are first looked up, instead of loading them all at startup.
+ *
+ * <p>
+ * Opening a snapshot only maps its indexes, so the bank is ready in milliseconds
+ * whatever its size. A customer is read and created the first time it is found by ID
+ * or by one of its account numbers, and kept in a cache of the most recently used
+ * customers. When the cache is full, the customer used longest ago is dropped; if any
+ * of its balances changed since they were last saved, they are first written back
+ * into its record. The heap therefore holds the personal details of at most the
+ * cached customers, however many the snapshot has.
+ * </p>
+ *
+ * <p>
+ * An {@link Account} is a small view of its slot in the {@link AccountStore}, and the
+ * directory only keeps a weak reference to it. While a view is still in use, a customer
+ * read again gets the same view, so no change is ever lost to an old one. Once its
+ * customer has left the cache and nothing else uses it, the view is garbage collected;
+ * its balance, still in its slot, is then written back and the slot is freed for the
+ * next account read, so the store too holds at most the accounts in use. The recent
+ * activity of a freed account is forgotten. Changed balances are also written back in
+ * the background, through the {@link ChangeTracker}, and on {@link #close()}.
+ * </p>
+ *
+ * <p>
+ * With a {@link TransactionJournal}, each of those write-backs also records in the
+ * snapshot's header the journal sequence number read before it, once the balances are
+ * on the disk. After a crash only the records from that sequence on are replayed, with
+ * {@link JournalRecovery#replayBalances}, reading just the customers they changed, so
+ * recovery does not grow with the number of customers either.
+ * </p>
+ *
+ * <p>
+ * No file is read or written while a monitor is held, so lookups on virtual threads do
+ * not pin their carriers. The cache and the index of account views are guarded by one
+ * {@link ReentrantLock}, held only to look up and update them. Reading a customer's
+ * record and writing back its balances happen under one of a fixed set of striped
+ * locks, chosen by the customer's position in the snapshot, so that a customer is read
+ * once however many threads look it up and an older balance never overwrites a newer
+ * one, while other customers are read in parallel. A thread holding a customer's lock
+ * may take the cache lock, never the other way round.
+ * </p>
+ *
+ * <p>
+ * Searches by last name and phone number use the sorted indexes of the snapshot, which
+ * give the positions of the matching customers; only those customers are then read, as
+ * a lookup by ID would, so a page of results costs the same however many customers the
+ * snapshot holds. New customers cannot be added.
+ * </p>
+ *
+ * @see CustomerSnapshot
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class LazyDirectory extends BankDirectory {
+
+    /**
+     * The number of customer locks. A power of two.
+     */
+    private static final int CUSTOMER_LOCKS = 64;
+
+    /**
+     * The snapshot the customers are read from and their balances written back to.
+     */
+    private final CustomerSnapshot snapshot;
+
+    /**
+     * The most recently used customers, by ID, least recently used first. Guarded by
+     * {@link #cacheLock}.
+     */
+    private final LinkedHashMap<Integer, Customer> cache;
+
+    /**
+     * A weak reference to the view of an account, remembering the slot that holds its
+     * balance once the view is collected.
+     */
+    private static final class View extends WeakReference<Account> {
+        final int accountNumber;
+        final int slot;
+
+        View(Account account, ReferenceQueue<Account> queue) {
+            super(account, queue);
+            this.accountNumber = account.getAccountNumber();
+            this.slot = account.getSlot();
+        }
+    }
+
+    /**
+     * The views of the accounts whose slots are still in use, by account number.
+     * Guarded by {@link #cacheLock}.
+     */
+    private final IntHashIndex<View> accounts = new IntHashIndex<>();
+
+    /**
+     * The views that were garbage collected and whose slots are not freed yet.
+     */
+    private final ReferenceQueue<Account> collected = new ReferenceQueue<>();
+
+    /**
+     * Guards the cache and the index of accounts.
+     */
+    private final ReentrantLock cacheLock = new ReentrantLock();
+
+    /**
+     * The striped locks under which customer records are read and balances written back,
+     * by customer position in the snapshot.
+     */
+    private final ReentrantLock[] customerLocks = new ReentrantLock[CUSTOMER_LOCKS];
+
+    /**
+     * The largest number of customers kept in the cache.
+     */
+    private final int capacity;
+
+    /**
+     * The background thread writing back changed balances, or {@code null} if
+     * {@link #start} was not called.
+     */
+    private Thread thread;
+
+    /**
+     * Set when the background thread should stop.
+     */
+    private volatile boolean stopping;
+
+    /**
+     * Returns the next sequence number of the journal whose records are applied to the
+     * balances, or {@code null} if there is none.
+     */
+    private volatile LongSupplier journalSequence;
+
+    /**
+     * Constructs a new {@code LazyDirectory} over a snapshot.
+     *
+     * @param snapshot The snapshot holding the customers.
+     * @param capacity The largest number of customers kept in memory.
+     */
+    public LazyDirectory(CustomerSnapshot snapshot, int capacity) {
+        this.snapshot = snapshot;
+        this.capacity = Math.max(1, capacity);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        for (int i = 0; i < CUSTOMER_LOCKS; i++) {
+            customerLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Rejects the customer: the customers are those of the snapshot, which is written
+     * whole from a loaded bank and cannot take more.
+     *
+     * @param customer The customer to add.
+     * @throws IllegalStateException Always.
+     */
+    @Override
+    public void addCustomer(Customer customer) {
+        throw new IllegalStateException("Customer " + customer.getId()
+                + " cannot be added: customers are read from the snapshot.");
+    }
+
+    /**
+     * Finds a customer by ID, reading it from the snapshot if it is not in memory.
+     *
+     * @param customerID The ID of the customer.
+     * @return The customer if found, otherwise null.
+     */
+    @Override
+    public Customer findCustomer(int customerID) {
+        Customer customer = cached(customerID);
+        if (customer != null) {
+            return customer;
+        }
+        int found = snapshot.findCustomer(customerID);
+        return found >= 0 ? read(found) : null;
+    }
+
+    /**
+     * Finds the customer who owns an account, reading it from the snapshot if it is not
+     * in memory.
+     *
+     * @param accountNumber The account number to look up.
+     * @return The owning customer if found, otherwise null.
+     */
+    @Override
+    public Customer findOwner(int accountNumber) {
+        int found = snapshot.findAccount(accountNumber);
+        if (found < 0) {
+            return null;
+        }
+        Customer customer = cached(snapshot.customerId(found >>> 2));
+        return customer != null ? customer : read(found >>> 2);
+    }
+
+    @Override
+    public Account findAccount(int accountNumber) {
+        return findOwner(accountNumber) != null ? viewOf(accountNumber) : null;
+    }
+
+    @Override
+    public Account findAccount(Customer owner, int accountNumber) {
+        Customer found = findOwner(accountNumber);
+        if (found == null || found.getId() != owner.getId()) {
+            return null;  // Account not found or owned by someone else
+        }
+        return viewOf(accountNumber);
+    }
+
+    /**
+     * Finds one page of the customers whose last name starts with a prefix, ignoring
+     * case, through the last name index of the snapshot, reading the customers of the
+     * page that are not in memory.
+     *
+     * @param prefix The start of the last name; an empty prefix matches every customer.
+     * @param offset The number of matching customers to skip.
+     * @param limit  The largest number of customers to return.
+     * @return The customers of the page, ordered by last name and then by ID; empty past
+     *         the last match, or if the snapshot cannot be read.
+     */
+    @Override
+    public List<Customer> findCustomersByLastName(String prefix, int offset, int limit) {
+        try {
+            return customersAt(snapshot.findCustomersByLastName(prefix, offset, limit));
+        } catch (IOException e) {
+            System.err.println("Error reading customer snapshot: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Counts the customers whose last name starts with a prefix, ignoring case, through
+     * the last name index of the snapshot.
+     *
+     * @param prefix The start of the last name.
+     * @return The number of matching customers; 0 if the snapshot cannot be read.
+     */
+    @Override
+    public int countCustomersByLastName(String prefix) {
+        try {
+            return snapshot.countCustomersByLastName(prefix);
+        } catch (IOException e) {
+            System.err.println("Error reading customer snapshot: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Finds the customers with a phone number through the phone index of the snapshot,
+     * reading those that are not in memory.
+     *
+     * @param phoneNumber The phone number in any format.
+     * @return The customers, in the order they were added; empty if there are none.
+     */
+    @Override
+    public List<Customer> findCustomersByPhone(String phoneNumber) {
+        return customersAt(snapshot.findCustomersByPhone(phoneNumber));
+    }
+
+    @Override
+    public int customerCount() {
+        return snapshot.customerCount();
+    }
+
+    @Override
+    public int accountCount() {
+        return snapshot.accountCount();
+    }
+
+    /**
+     * Returns {@code false}: only the customers in use, and their accounts, are in memory.
+     *
+     * @return {@code false}.
+     */
+    @Override
+    public boolean isComplete() {
+        return false;
+    }
+
+    /**
+     * Returns the number of customers in memory.
+     *
+     * @return The number of cached customers.
+     */
+    public int cachedCount() {
+        cacheLock.lock();
+        try {
+            return cache.size();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the journal sequence number from which the records must be replayed onto
+     * the balances of the snapshot, as of its last write-back with a journal.
+     *
+     * @return The applied sequence; 0 if no journal record was applied.
+     */
+    public long getAppliedSequence() {
+        return snapshot.getAppliedSequence();
+    }
+
+    /**
+     * Starts recording the applied sequence of a journal in the snapshot at every
+     * write-back. Call it once the journal has been replayed onto the balances.
+     *
+     * @param nextSequence Returns the journal's next sequence number.
+     */
+    public void trackJournal(LongSupplier nextSequence) {
+        this.journalSequence = nextSequence;
+    }
+
+    /**
+     * Starts writing back changed balances on a background thread, every interval, or
+     * sooner once the given number of accounts have changed.
+     *
+     * @param intervalMillis  The longest time between write-backs, in milliseconds.
+     * @param changedAccounts The number of changed accounts that triggers an early write-back.
+     */
+    public synchronized void start(long intervalMillis, int changedAccounts) {
+        if (thread != null) {
+            return;
+        }
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        thread = new Thread(() -> {
+            while (!stopping) {
+                checkpoint();
+                releaseCollected();
+                LockSupport.parkNanos(this, intervalNanos);
+            }
+        }, "snapshot-writer");
+        thread.setDaemon(true);
+        Thread worker = thread;
+        ChangeTracker.onPending(changedAccounts, () -> LockSupport.unpark(worker));
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread, if any, writes back every changed balance and closes
+     * the snapshot.
+     *
+     * @throws IOException If the snapshot cannot be closed.
+     */
+    public void close() throws IOException {
+        Thread worker;
+        synchronized (this) {
+            worker = thread;
+            stopping = true;
+        }
+        if (worker != null) {
+            ChangeTracker.onPending(0, null);
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        checkpoint();
+        releaseCollected();
+        snapshot.close();
+    }
+
+    /**
+     * Writes back every changed balance and, with a journal, records the journal's next
+     * sequence number as read before, once the balances are on the disk. A journal record
+     * is appended after its change is made and marked, so every record before that
+     * sequence changed an account that this write-back saves.
+     */
+    private void checkpoint() {
+        LongSupplier journal = journalSequence;
+        long sequence = journal != null ? journal.getAsLong() : 0;  // Read before the balances are written
+        writeBackChanges();
+        if (journal != null) {
+            try {
+                snapshot.setAppliedSequence(sequence);
+            } catch (IOException e) {
+                System.err.println("Error writing customer snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes back the balance of every account changed since it was last saved.
+     */
+    private void writeBackChanges() {
+        Account account;
+        while ((account = ChangeTracker.poll()) != null) {
+            writeBack(account);
+        }
+    }
+
+    /**
+     * Writes back the balances of the views garbage collected so far and frees their
+     * slots. Takes the owner's lock of each, so must not be called with one held.
+     */
+    private void releaseCollected() {
+        View view;
+        while ((view = (View) collected.poll()) != null) {
+            int found = snapshot.findAccount(view.accountNumber);
+            if (found < 0) {
+                continue;
+            }
+            ReentrantLock lock = customerLock(found >>> 2);
+            lock.lock();
+            try {
+                if (indexed(view)) {  // Not released already by a read of its customer
+                    release(view, found);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns whether a view is still the one indexed for its account.
+     */
+    private boolean indexed(View view) {
+        cacheLock.lock();
+        try {
+            return accounts.get(view.accountNumber) == view;
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the balance left in the slot of a collected view into its record, drops the
+     * view from the index and frees the slot. Must be called with the lock of the
+     * account's owner held.
+     *
+     * @param found The position of the account in the snapshot.
+     * @return The balance written back, in cents.
+     */
+    private long release(View view, int found) {
+        long balance = AccountStore.ACCOUNTS.getBalance(view.slot);
+        try {
+            snapshot.writeBalance(found, balance);
+        } catch (IOException e) {
+            System.err.println("Error writing customer snapshot: " + e.getMessage());
+        }
+        cacheLock.lock();
+        try {
+            accounts.remove(view.accountNumber);
+        } finally {
+            cacheLock.unlock();
+        }
+        AccountStore.ACCOUNTS.free(view.slot);
+        return balance;
+    }
+
+    /**
+     * Returns the customers at positions in the snapshot, reading those that are not in
+     * memory, and leaving out any whose record cannot be read.
+     */
+    private List<Customer> customersAt(int[] found) {
+        ArrayList<Customer> customers = new ArrayList<>(found.length);
+        for (int position : found) {
+            Customer customer = cached(snapshot.customerId(position));
+            if (customer == null) {
+                customer = read(position);
+            }
+            if (customer != null) {
+                customers.add(customer);
+            }
+        }
+        return customers;
+    }
+
+    /**
+     * Returns a cached customer, marking it as the most recently used.
+     */
+    private Customer cached(int customerID) {
+        cacheLock.lock();
+        try {
+            return cache.get(customerID);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the view of an account read so far, or null if there is none or it was
+     * garbage collected.
+     */
+    private Account viewOf(int accountNumber) {
+        View view = indexedView(accountNumber);
+        return view != null ? view.get() : null;
+    }
+
+    /**
+     * Returns the indexed view of an account, whether or not it was garbage collected.
+     */
+    private View indexedView(int accountNumber) {
+        cacheLock.lock();
+        try {
+            return accounts.get(accountNumber);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the lock of a customer, by its position in the snapshot.
+     */
+    private ReentrantLock customerLock(int found) {
+        return customerLocks[found & (CUSTOMER_LOCKS - 1)];
+    }
+
+    /**
+     * Reads a customer from the snapshot under its lock, gives it its accounts and caches
+     * it, then drops the least recently used customer if the cache is full.
+     *
+     * @return The customer, or null if its record cannot be read.
+     */
+    private Customer read(int found) {
+        releaseCollected();
+        Customer customer;
+        ReentrantLock lock = customerLock(found);
+        lock.lock();
+        try {
+            customer = load(found);
+        } finally {
+            lock.unlock();
+        }
+        if (customer != null) {
+            writeBackEldest();
+        }
+        return customer;
+    }
+
+    /**
+     * Drops the least recently used customers while the cache is over capacity, writing
+     * back their changed balances once the cache lock is released.
+     */
+    private void writeBackEldest() {
+        while (true) {
+            Customer eldest;
+            cacheLock.lock();
+            try {
+                if (cache.size() <= capacity) {
+                    return;
+                }
+                Iterator<Customer> iterator = cache.values().iterator();
+                eldest = iterator.next();
+                iterator.remove();
+            } finally {
+                cacheLock.unlock();
+            }
+            writeBack(eldest);
+        }
+    }
+
+    /**
+     * Reads a customer from the snapshot, unless another thread did while this one waited
+     * for the customer's lock. Must be called with that lock held.
+     *
+     * @return The customer, or null if its record cannot be read.
+     */
+    private Customer load(int found) {
+        Customer customer = cached(snapshot.customerId(found));
+        if (customer != null) {
+            return customer;
+        }
+        CustomerSnapshot.Record record;
+        try {
+            record = snapshot.read(found);
+        } catch (IOException e) {
+            System.err.println("Error reading customer snapshot: " + e.getMessage());
+            return null;
+        }
+        customer = RunBank.createCustomer(record.id, record.firstName, record.lastName,
+                record.birthDate, record.address, record.phoneNumber);
+        View[] created = new View[3];
+        for (int i = 0; i < 3; i++) {
+            // Only this thread can add the accounts of this customer
+            int accountNumber = record.accountNumbers[i];
+            View view = indexedView(accountNumber);
+            Account account = view != null ? view.get() : null;
+            if (account == null) {
+                long balance = record.balances[i];
+                if (view != null) {
+                    // Collected but not released yet: its slot may hold a newer balance
+                    balance = release(view, (found << 2) + i);
+                }
+                account = i == 0 ? new Checking(accountNumber, balance)
+                        : i == 1 ? new Saving(accountNumber, balance)
+                        : new Credit(accountNumber, record.creditLimit, balance);
+                AccountStore.ACCOUNTS.detach(account.getSlot());
+                created[i] = new View(account, collected);
+            }
+            customer.addAccount(account);
+        }
+        cacheLock.lock();
+        try {
+            for (View view : created) {
+                if (view != null) {
+                    accounts.put(view.accountNumber, view);
+                }
+            }
+            cache.put(record.id, customer);
+        } finally {
+            cacheLock.unlock();
+        }
+        return customer;
+    }
+
+    /**
+     * Writes back the changed balances of a customer leaving the cache.
+     */
+    private void writeBack(Customer customer) {
+        for (Account account : customer.getAccounts()) {
+            if (account.isChanged()) {
+                writeBack(account);
+            }
+        }
+    }
+
+    /**
+     * Writes an account's balance into its record, if the account is in the snapshot,
+     * under the lock of its owner so that an older balance never overwrites a newer one.
+     */
+    private void writeBack(Account account) {
+        int found = snapshot.findAccount(account.getAccountNumber());
+        if (found < 0) {
+            return;
+        }
+        ReentrantLock lock = customerLock(found >>> 2);
+        lock.lock();
+        try {
+            account.clearChanged();  // Clear before the balance is read, so later changes are kept
+            snapshot.writeBalance(found, account.getBalance());
+        } catch (IOException e) {
+            System.err.println("Error writing customer snapshot: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
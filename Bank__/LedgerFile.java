@@ -0,0 +1,317 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * A fixed-layout binary file holding the ledger pages of the {@link AccountStore},
+ * mapped into memory so that every balance change is written straight to the file.
+ *
+ * <p>
+ * The file starts with a {@value #HEADER_SIZE}-byte header, followed by the store's
+ * pages back to back, each laid out as the off-heap page of the store: the balance
+ * column, the credit limit column, the account number column and the type column. The
+ * balance of slot {@code s} is therefore always the eight little-endian bytes at
+ * </p>
+ *
+ * <pre>
+ * HEADER_SIZE + (s &gt;&gt;&gt; PAGE_BITS) * pageBytes + (s &amp; PAGE_MASK) * 8
+ * </pre>
+ *
+ * <p>
+ * Opening the file only maps its pages; nothing is read until an account is used, so
+ * startup does not grow with the number of accounts beyond one pass over the number and
+ * type columns, and there is no separate step to save the balances. A slot is in use
+ * when its type tag is not {@link AccountStore#OTHER}; the tag is written last when an
+ * account is added.
+ * </p>
+ *
+ * <p>
+ * Changes reach the file in memory as soon as they are made, and survive a crash of the
+ * process. When they are forced to the disk, and so survive a power failure, is set by
+ * the {@link ForcePolicy}.
+ * </p>
+ *
+ * <p>
+ * When the bank also keeps a {@link TransactionJournal}, the header records how far the
+ * file is known to be on the disk: before each full force the journal's next sequence
+ * number is read, and once every page has been forced it is written to the header as
+ * the applied sequence. Every record below it changed a balance before the force, so
+ * on the next start only the records from the applied sequence on have to be replayed,
+ * with {@link JournalRecovery#replayBalances}, whatever happened to the unforced pages.
+ * </p>
+ *
+ * @see AccountStore
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class LedgerFile {
+
+    /**
+     * When the mapped pages are forced to the disk.
+     */
+    public enum ForcePolicy {
+        /** Never force the pages; the operating system decides when data reaches disk. */
+        NONE,
+        /** Force the pages at most once per configured interval, and when the file is closed. */
+        INTERVAL,
+        /** Force the page of a balance after every change of that balance. */
+        CHANGE
+    }
+
+    /**
+     * The size of the header, which keeps the pages aligned to the disk's pages.
+     */
+    static final int HEADER_SIZE = 4096;
+
+    /**
+     * The byte order of every value in the file.
+     */
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * The magic number at the start of the file, {@code "BLDG"}.
+     */
+    private static final int MAGIC = 0x42_4C_44_47;
+
+    /**
+     * The version of the layout.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The position in the header of the applied journal sequence. Files written before
+     * it was kept hold 0 there, which replays the whole journal.
+     */
+    private static final int APPLIED_OFFSET = 16;
+
+    /**
+     * The open channel to the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The size of one page in the file, in bytes.
+     */
+    private final int pageBytes;
+
+    /**
+     * The mapped pages, by page number.
+     */
+    private final ArrayList<MappedByteBuffer> pages = new ArrayList<>();
+
+    /**
+     * When the pages are forced to the disk.
+     */
+    private volatile ForcePolicy policy = ForcePolicy.NONE;
+
+    /**
+     * The journal sequence number below which every record is reflected in the forced
+     * pages, as last written to the header.
+     */
+    private volatile long appliedSequence;
+
+    /**
+     * Returns the journal's next sequence number, or {@code null} if no journal is tracked.
+     */
+    private volatile LongSupplier journalSequence;
+
+    /**
+     * The background thread forcing the pages, or {@code null} if there is none.
+     */
+    private Thread thread;
+
+    /**
+     * Set when the background thread should stop.
+     */
+    private volatile boolean stopping;
+
+    /**
+     * Opens a ledger file, creating it if it does not exist.
+     *
+     * @param path      The path of the file.
+     * @param pageSlots The number of slots in one page.
+     * @param pageBytes The size of one page, in bytes.
+     * @throws IOException If the file cannot be opened, or holds pages of another layout.
+     */
+    public LedgerFile(String path, int pageSlots, int pageBytes) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.pageBytes = pageBytes;
+        try {
+            ByteBuffer header = ByteBuffer.allocate(APPLIED_OFFSET + 8).order(ORDER);
+            if (channel.size() < HEADER_SIZE) {
+                // The whole header, zero-padded, so that the pages start at HEADER_SIZE
+                ByteBuffer created = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+                created.putInt(MAGIC).putInt(VERSION).putInt(pageSlots).putInt(pageBytes).putLong(0).clear();
+                while (created.hasRemaining()) {
+                    channel.write(created, created.position());
+                }
+                channel.truncate(HEADER_SIZE);
+            } else {
+                channel.read(header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != pageSlots
+                        || header.getInt() != pageBytes) {
+                    throw new IOException(path + " is not a ledger file of this layout.");
+                }
+                appliedSequence = header.getLong();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the journal sequence number from which the records must be replayed onto
+     * the balances of the file, as of the last completed force.
+     *
+     * @return The applied sequence; 0 for a new file.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Starts recording the applied sequence of a journal in the header at every full
+     * force, and makes {@link #close()} force the pages whatever the policy. Call it once
+     * the journal has been replayed onto the balances.
+     *
+     * @param nextSequence Returns the journal's next sequence number.
+     */
+    public void trackJournal(LongSupplier nextSequence) {
+        this.journalSequence = nextSequence;
+    }
+
+    /**
+     * Returns the number of whole pages in the file.
+     *
+     * @return The number of pages.
+     * @throws IOException If the size of the file cannot be read.
+     */
+    public int pageCount() throws IOException {
+        return (int) ((channel.size() - HEADER_SIZE) / pageBytes);
+    }
+
+    /**
+     * Maps a page of the file, growing the file if the page is new. A new page reads
+     * as zeros, so all its slots are unused.
+     *
+     * @param page The page number.
+     * @return The page, in the byte order of the file.
+     * @throws IOException If the page cannot be mapped.
+     */
+    public synchronized ByteBuffer map(int page) throws IOException {
+        while (pages.size() <= page) {
+            pages.add(null);
+        }
+        MappedByteBuffer mapped = pages.get(page);
+        if (mapped == null) {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + (long) page * pageBytes, pageBytes);
+            mapped.order(ORDER);
+            pages.set(page, mapped);
+        }
+        return mapped;
+    }
+
+    /**
+     * Sets when the pages are forced to the disk, and starts the background thread the
+     * {@link ForcePolicy#INTERVAL} policy needs.
+     *
+     * @param policy         The force policy.
+     * @param intervalMillis The time between forces with {@link ForcePolicy#INTERVAL}, in milliseconds.
+     */
+    public synchronized void start(ForcePolicy policy, long intervalMillis) {
+        this.policy = policy;
+        if (policy != ForcePolicy.INTERVAL || thread != null) {
+            return;
+        }
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        thread = new Thread(() -> {
+            while (!stopping) {
+                LockSupport.parkNanos(this, intervalNanos);
+                force();
+            }
+        }, "ledger-force");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Called after a balance in a page of this file has changed; forces that part of
+     * the page with the {@link ForcePolicy#CHANGE} policy.
+     *
+     * @param page  A page returned by {@link #map}.
+     * @param index The position of the balance's slot within the page.
+     */
+    void balanceWritten(ByteBuffer page, int index) {
+        if (policy == ForcePolicy.CHANGE) {
+            ((MappedByteBuffer) page).force(index << 3, 8);
+        }
+    }
+
+    /**
+     * Forces every mapped page to the disk, then records the applied sequence of the
+     * tracked journal, if any, in the header.
+     */
+    public void force() {
+        LongSupplier journal = journalSequence;
+        long sequence = journal != null ? journal.getAsLong() : 0;  // Read before the pages are forced
+        MappedByteBuffer[] mapped;
+        synchronized (this) {
+            mapped = pages.toArray(new MappedByteBuffer[0]);
+        }
+        try {
+            for (MappedByteBuffer page : mapped) {
+                if (page != null) {
+                    page.force();
+                }
+            }
+            if (sequence > appliedSequence) {
+                ByteBuffer value = ByteBuffer.allocate(8).order(ORDER).putLong(sequence).flip();
+                channel.write(value, APPLIED_OFFSET);
+                channel.force(false);
+                appliedSequence = sequence;
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error forcing ledger file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the background thread, if any, forces every page unless the policy is
+     * {@link ForcePolicy#NONE} and no journal is tracked, and closes the file. The pages stay mapped, and
+     * readable, until they are garbage collected.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    public void close() throws IOException {
+        Thread worker;
+        synchronized (this) {
+            worker = thread;
+            stopping = true;
+        }
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (policy != ForcePolicy.NONE || journalSequence != null) {
+            force();
+        }
+        channel.close();
+    }
+}
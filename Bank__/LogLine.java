@@ -0,0 +1,344 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A reusable buffer that renders transaction log lines as UTF-8 bytes.
+ *
+ * <p>
+ * A transaction is logged as a structured event: its {@link TransactionType}, the
+ * customers and accounts involved, the amount and the balances it left. The
+ * {@code LogLine} class turns an event into the sentence written to
+ * {@code TransactionLog.txt}, such as:
+ * </p>
+ * <pre>
+ * Mickey Mouse deposited $50.00 to Checking-67890. Mickey Mouse's New Balance for Checking-67890: $200.00
+ * </pre>
+ * <p>
+ * Names are encoded straight from the customer's strings, and numbers and amounts are
+ * written as ASCII digits, so rendering creates no strings or other garbage. The buffer
+ * only grows when a line is longer than any before it, and is otherwise reused for
+ * every line. A {@code LogLine} is not thread-safe; each writer owns one.
+ * </p>
+ *
+ * @see transactionLogger
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class LogLine {
+
+    /**
+     * The line separator written after each line, as bytes.
+     */
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    // The fixed parts of the sentences, as ASCII bytes
+    private static final byte[] MADE_INQUIRY_ON = ascii(" made a balance inquiry on ");
+    private static final byte[] BALANCE_FOR = ascii("'s Balance for ");
+    private static final byte[] NEW_BALANCE_FOR = ascii("'s New Balance for ");
+    private static final byte[] COLON_DOLLAR = ascii(": $");
+    private static final byte[] PERIOD = ascii(". ");
+    private static final byte[] DEPOSITED = ascii(" deposited $");
+    private static final byte[] TO = ascii(" to ");
+    private static final byte[] WITHDREW = ascii(" withdrew $");
+    private static final byte[] IN_CASH_FROM = ascii(" in cash from ");
+    private static final byte[] TRANSFERRED = ascii(" transferred $");
+    private static final byte[] FROM = ascii(" from ");
+    private static final byte[] POSSESSIVE = ascii("'s ");
+    private static final byte[] PAID = ascii(" paid ");
+    private static final byte[] DOLLAR = ascii(" $");
+    private static final byte[] INTEREST_OF = ascii("Interest of $");
+    private static final byte[] WAS_PAID_INTO = ascii(" was paid into ");
+    private static final byte[] SAVINGS_ACCOUNTS = ascii(" savings accounts.");
+
+    /**
+     * The rendered bytes; only the first {@link #length} are part of the line.
+     */
+    private byte[] bytes;
+
+    /**
+     * The number of bytes rendered so far.
+     */
+    private int length;
+
+    /**
+     * Constructs an empty {@code LogLine}.
+     *
+     * @param capacity The initial capacity in bytes.
+     */
+    public LogLine(int capacity) {
+        bytes = new byte[Math.max(64, capacity)];
+    }
+
+    /**
+     * Returns the array holding the rendered bytes. Only the first {@link #length()}
+     * bytes are part of the line, and the array may be replaced as the line grows.
+     *
+     * @return The array.
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of bytes rendered since the last {@link #reset()}.
+     *
+     * @return The length in bytes.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Discards the rendered bytes, keeping the buffer.
+     */
+    public void reset() {
+        length = 0;
+    }
+
+    /**
+     * Renders the log sentence of a transaction.
+     *
+     * <p>
+     * An {@code INTEREST} event is the summary of a whole accrual, which names no customer
+     * or account: the amount is the total interest paid and the balance is the number
+     * of accounts it was paid into.
+     * </p>
+     *
+     * @param type          The type of the transaction.
+     * @param customer      The customer who made it.
+     * @param account       The customer's account.
+     * @param receiver      The receiving customer of a transfer or payment, or {@code null}.
+     * @param target        The receiving account of a transfer, or {@code null}.
+     * @param amount        The amount, in cents.
+     * @param balance       The balance it left in the customer's account, in cents.
+     * @param targetBalance The balance it left in the receiving account, in cents.
+     * @return This line.
+     */
+    public LogLine appendEvent(TransactionType type, Customer customer, Account account, Customer receiver,
+            Account target, long amount, long balance, long targetBalance) {
+        switch (type) {
+            case INQUIRY:
+                appendName(customer).append(MADE_INQUIRY_ON);
+                appendAccount(account).append(PERIOD);
+                appendName(customer).append(BALANCE_FOR);
+                appendAccount(account).append(COLON_DOLLAR);
+                return appendMoney(balance);
+            case DEPOSIT:
+                appendName(customer).append(DEPOSITED);
+                appendMoney(amount).append(TO);
+                appendAccount(account).append(PERIOD);
+                appendName(customer).append(NEW_BALANCE_FOR);
+                appendAccount(account).append(COLON_DOLLAR);
+                return appendMoney(balance);
+            case WITHDRAW:
+                appendName(customer).append(WITHDREW);
+                appendMoney(amount).append(IN_CASH_FROM);
+                appendAccount(account).append(PERIOD);
+                appendName(customer).append(BALANCE_FOR);
+                appendAccount(account).append(COLON_DOLLAR);
+                return appendMoney(balance);
+            case TRANSFER:
+                appendName(customer).append(TRANSFERRED);
+                appendMoney(amount).append(FROM);
+                appendAccount(account).append(TO);
+                appendName(receiver).append(POSSESSIVE);
+                appendAccount(target).append(PERIOD);
+                appendName(customer).append(NEW_BALANCE_FOR);
+                appendAccount(account).append(COLON_DOLLAR);
+                appendMoney(balance).append(PERIOD);
+                appendName(receiver).append(NEW_BALANCE_FOR);
+                appendAccount(target).append(COLON_DOLLAR);
+                return appendMoney(targetBalance);
+            case PAY:
+                appendName(customer).append(PAID);
+                appendName(receiver).append(DOLLAR);
+                appendMoney(amount).append(FROM);
+                appendAccount(account).append(PERIOD);
+                appendName(customer).append(NEW_BALANCE_FOR);
+                appendAccount(account).append(COLON_DOLLAR);
+                return appendMoney(balance);
+            case INTEREST:
+                append(INTEREST_OF).appendMoney(amount).append(WAS_PAID_INTO);
+                return append(balance).append(SAVINGS_ACCOUNTS);
+            default:
+                throw new IllegalArgumentException("No log sentence for " + type);
+        }
+    }
+
+    /**
+     * Appends the line separator.
+     *
+     * @return This line.
+     */
+    public LogLine appendLineSeparator() {
+        ensureCapacity(LINE_SEPARATOR.length);
+        System.arraycopy(LINE_SEPARATOR, 0, bytes, length, LINE_SEPARATOR.length);
+        length += LINE_SEPARATOR.length;
+        return this;
+    }
+
+    /**
+     * Appends text encoded as UTF-8. Unpaired surrogates are written as {@code ?}.
+     *
+     * @param text The text to append.
+     * @return This line.
+     */
+    public LogLine append(String text) {
+        int count = text.length();
+        ensureCapacity(count);
+        // Names and the sentences are almost always ASCII: one byte per char
+        int i = 0;
+        for (; i < count; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            bytes[length + i] = (byte) c;
+        }
+        length += i;
+        for (; i < count; i++) {
+            char c = text.charAt(i);
+            ensureCapacity(4);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < count
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[length++] = '?';
+            } else {
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends text stored as Latin-1 bytes, encoding it as UTF-8.
+     *
+     * @param latin1 The array holding the text.
+     * @param offset The position of the first byte.
+     * @param count  The number of bytes.
+     * @return This line.
+     */
+    LogLine appendLatin1(byte[] latin1, int offset, int count) {
+        ensureCapacity(count * 2);
+        for (int i = offset, end = offset + count; i < end; i++) {
+            int c = latin1[i] & 0xFF;
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else {
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends a whole number as ASCII digits.
+     *
+     * @param value The number.
+     * @return This line.
+     */
+    public LogLine append(int value) {
+        return append((long) value);
+    }
+
+    /**
+     * Appends a whole number as ASCII digits.
+     *
+     * @param value The number.
+     * @return This line.
+     */
+    public LogLine append(long value) {
+        ensureCapacity(20);
+        // Work with the magnitude as a negative number so Long.MIN_VALUE is handled
+        long negative = value < 0 ? value : -value;
+        int digits = 1;
+        for (long v = negative / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        if (value < 0) {
+            bytes[length++] = '-';
+        }
+        int pos = length + digits;
+        length = pos;
+        do {
+            bytes[--pos] = (byte) ('0' - (negative % 10));
+            negative /= 10;
+        } while (negative != 0);
+        return this;
+    }
+
+    /**
+     * Appends an amount with two decimal places, such as {@code 857.56}.
+     *
+     * @param cents The amount in cents.
+     * @return This line.
+     */
+    public LogLine appendMoney(long cents) {
+        ensureCapacity(Money.MAX_FORMATTED_LENGTH);
+        length = Money.format(cents, bytes, length);
+        return this;
+    }
+
+    /**
+     * Appends bytes that are already encoded.
+     */
+    private LogLine append(byte[] encoded) {
+        ensureCapacity(encoded.length);
+        System.arraycopy(encoded, 0, bytes, length, encoded.length);
+        length += encoded.length;
+        return this;
+    }
+
+    /**
+     * Appends a customer's full name.
+     */
+    private LogLine appendName(Customer customer) {
+        if (customer instanceof CompactCustomer) {
+            return ((CompactCustomer) customer).appendFullName(this);  // Straight from the name arena
+        }
+        append(customer.getFirstName());
+        ensureCapacity(1);
+        bytes[length++] = ' ';
+        return append(customer.getLastName());
+    }
+
+    /**
+     * Appends an account in {@code Type-Number} form.
+     */
+    private LogLine appendAccount(Account account) {
+        append(account.getType().getEncodedName());
+        ensureCapacity(1);
+        bytes[length++] = '-';
+        return append(account.getAccountNumber());
+    }
+
+    /**
+     * Returns the bytes of an ASCII string.
+     */
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Makes room for at least {@code needed} more bytes.
+     */
+    private void ensureCapacity(int needed) {
+        if (length + needed > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(length + needed, bytes.length * 2));
+        }
+    }
+}
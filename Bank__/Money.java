@@ -0,0 +1,379 @@
+/**
+ * Fixed-point money arithmetic on amounts held as a {@code long} number of cents.
+ *
+ * <p>
+ * Every balance, limit and amount in the bank is a whole number of cents, so sums and
+ * comparisons are exact and cost a single integer instruction. The {@code Money} class
+ * provides the overflow-checked arithmetic, the exact decimal parsing and the
+ * formatting used wherever an amount crosses into or out of text.
+ * </p>
+ *
+ * <p>
+ * Parsing and formatting work directly on characters and bytes and do not create
+ * intermediate objects. {@link #parseLegacy(CharSequence)} additionally accepts the
+ * {@code double} text that older versions wrote to the CSV files (for example
+ * {@code 1.0E7} or {@code 1.7899999999999998}) and rounds it to the nearest cent.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class Money {
+
+    /**
+     * The number of cents in one dollar.
+     */
+    public static final long CENTS_PER_DOLLAR = 100;
+
+    /**
+     * The largest number of bytes {@link #format(long, byte[], int)} can write.
+     */
+    public static final int MAX_FORMATTED_LENGTH = 21;
+
+    /**
+     * Prevents instantiation; this class only has static methods.
+     */
+    private Money() {
+    }
+
+    /**
+     * Adds two amounts.
+     *
+     * @param a The first amount in cents.
+     * @param b The second amount in cents.
+     * @return The sum in cents.
+     * @throws ArithmeticException If the sum overflows a {@code long}.
+     */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Subtracts one amount from another.
+     *
+     * @param a The amount to subtract from, in cents.
+     * @param b The amount to subtract, in cents.
+     * @return The difference in cents.
+     * @throws ArithmeticException If the difference overflows a {@code long}.
+     */
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Applies a rate given in basis points (1/100 of a percent) to an amount,
+     * rounding half away from zero to the nearest cent.
+     *
+     * @param cents       The amount in cents.
+     * @param basisPoints The rate in basis points; 200 is 2%.
+     * @return The rate applied to the amount, in cents.
+     * @throws ArithmeticException If the intermediate product overflows a {@code long}.
+     */
+    public static long applyRate(long cents, long basisPoints) {
+        long product = Math.multiplyExact(cents, basisPoints);
+        long half = product >= 0 ? 5_000 : -5_000;
+        return (product + half) / 10_000;
+    }
+
+    /**
+     * Converts a whole number of dollars to cents.
+     *
+     * @param dollars The number of dollars.
+     * @return The amount in cents.
+     * @throws ArithmeticException If the result overflows a {@code long}.
+     */
+    public static long ofDollars(long dollars) {
+        return Math.multiplyExact(dollars, CENTS_PER_DOLLAR);
+    }
+
+    /**
+     * Parses an exact decimal amount such as {@code 857.56}, {@code -786.93} or {@code 7985}.
+     *
+     * @param text The text to parse.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the text is not a decimal number with at most two
+     *                               fractional digits, or does not fit in a {@code long}.
+     */
+    public static long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses an exact decimal amount from a range of characters.
+     *
+     * @param text  The characters to parse.
+     * @param start The index of the first character.
+     * @param end   The index after the last character.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the range is not a decimal number with at most two
+     *                               fractional digits, or does not fit in a {@code long}.
+     */
+    public static long parse(CharSequence text, int start, int end) {
+        boolean negative = false;
+        int i = start;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        // Accumulate the value as a negative number so Long.MIN_VALUE is reachable
+        long value = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9' || fractionDigits == 2) {
+                throw invalid(text, start, end);
+            }
+            value = accumulate(value, c - '0', text, start, end);
+            digits++;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0) {
+            throw invalid(text, start, end);
+        }
+        for (int f = Math.max(fractionDigits, 0); f < 2; f++) {
+            value = accumulate(value, 0, text, start, end);
+        }
+        return negate(value, negative, text, start, end);
+    }
+
+    /**
+     * Parses an exact decimal amount from a range of ASCII bytes.
+     *
+     * @param bytes The bytes to parse.
+     * @param start The index of the first byte.
+     * @param end   The index after the last byte.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the range is not a decimal number with at most two
+     *                               fractional digits, or does not fit in a {@code long}.
+     */
+    public static long parse(byte[] bytes, int start, int end) {
+        boolean negative = false;
+        int i = start;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (b < '0' || b > '9' || fractionDigits == 2) {
+                throw invalid(bytes, start, end);
+            }
+            value = accumulate(value, b - '0', bytes, start, end);
+            digits++;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0) {
+            throw invalid(bytes, start, end);
+        }
+        for (int f = Math.max(fractionDigits, 0); f < 2; f++) {
+            value = accumulate(value, 0, bytes, start, end);
+        }
+        return negate(value, negative, bytes, start, end);
+    }
+
+    /**
+     * Parses an amount as written in older CSV files. Exact decimal text is parsed
+     * exactly; anything else that {@link Double#parseDouble} accepts is rounded to the
+     * nearest cent.
+     *
+     * @param text The text to parse.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the text is not a number or is out of range.
+     */
+    public static long parseLegacy(CharSequence text) {
+        try {
+            return parse(text);
+        } catch (NumberFormatException e) {
+            return fromDouble(Double.parseDouble(text.toString()));
+        }
+    }
+
+    /**
+     * Parses an amount as written in older CSV files from a range of ASCII bytes.
+     * Exact decimal text is parsed without creating any objects; anything else that
+     * {@link Double#parseDouble} accepts is rounded to the nearest cent.
+     *
+     * @param bytes The bytes to parse.
+     * @param start The index of the first byte.
+     * @param end   The index after the last byte.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the bytes are not a number or are out of range.
+     */
+    public static long parseLegacy(byte[] bytes, int start, int end) {
+        try {
+            return parse(bytes, start, end);
+        } catch (NumberFormatException e) {
+            String text = new String(bytes, start, end - start, java.nio.charset.StandardCharsets.US_ASCII);
+            return fromDouble(Double.parseDouble(text));
+        }
+    }
+
+    /**
+     * Converts a {@code double} dollar amount to cents, rounding to the nearest cent.
+     *
+     * @param dollars The amount in dollars.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the amount is not finite or does not fit in a {@code long}.
+     */
+    public static long fromDouble(double dollars) {
+        double cents = Math.rint(dollars * CENTS_PER_DOLLAR);
+        if (Double.isNaN(cents) || cents >= 0x1p63 || cents < -0x1p63) {
+            throw new NumberFormatException("Amount out of range: " + dollars);
+        }
+        return (long) cents;
+    }
+
+    /**
+     * Converts an amount in cents to a {@code double} number of dollars,
+     * for callers that still work in floating point.
+     *
+     * @param cents The amount in cents.
+     * @return The amount in dollars.
+     */
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_DOLLAR;
+    }
+
+    /**
+     * Appends an amount with two decimal places, such as {@code 857.56} or {@code -786.93}.
+     *
+     * @param sb    The builder to append to.
+     * @param cents The amount in cents.
+     * @return The builder.
+     */
+    public static StringBuilder append(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+        }
+        // Work with the magnitude as a negative number so Long.MIN_VALUE is handled
+        long negative = cents < 0 ? cents : -cents;
+        sb.append(-(negative / CENTS_PER_DOLLAR));
+        long fraction = -(negative % CENTS_PER_DOLLAR);
+        sb.append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+        return sb;
+    }
+
+    /**
+     * Writes an amount with two decimal places as ASCII bytes.
+     *
+     * @param cents  The amount in cents.
+     * @param dst    The array to write into. Must have room for
+     *               {@value #MAX_FORMATTED_LENGTH} bytes at {@code offset}.
+     * @param offset The index of the first byte to write.
+     * @return The index after the last byte written.
+     */
+    public static int format(long cents, byte[] dst, int offset) {
+        long negative = cents < 0 ? cents : -cents;
+        int digits = 3;  // At least "0.00"
+        for (long v = negative / 1000; v != 0; v /= 10) {
+            digits++;
+        }
+        int end = offset + (cents < 0 ? 1 : 0) + digits + 1;
+        int pos = end;
+
+        long v = negative;
+        dst[--pos] = (byte) ('0' - (v % 10));
+        v /= 10;
+        dst[--pos] = (byte) ('0' - (v % 10));
+        v /= 10;
+        dst[--pos] = '.';
+        do {
+            dst[--pos] = (byte) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (cents < 0) {
+            dst[--pos] = '-';
+        }
+        return end;
+    }
+
+    /**
+     * Returns an amount with two decimal places, such as {@code 857.56}.
+     * Intended for display; hot paths should use {@link #append} or {@link #format}.
+     *
+     * @param cents The amount in cents.
+     * @return The formatted amount.
+     */
+    public static String toString(long cents) {
+        return append(new StringBuilder(MAX_FORMATTED_LENGTH), cents).toString();
+    }
+
+    /**
+     * Adds one digit to a negative accumulator, checking for overflow.
+     */
+    private static long accumulate(long value, int digit, CharSequence text, int start, int end) {
+        if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + digit) {
+            throw invalid(text, start, end);
+        }
+        return value * 10 - digit;
+    }
+
+    /**
+     * Adds one digit to a negative accumulator, checking for overflow.
+     */
+    private static long accumulate(long value, int digit, byte[] bytes, int start, int end) {
+        if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + digit) {
+            throw invalid(bytes, start, end);
+        }
+        return value * 10 - digit;
+    }
+
+    /**
+     * Turns a negative accumulator into the final signed value, checking for overflow.
+     */
+    private static long negate(long value, boolean negative, CharSequence text, int start, int end) {
+        if (negative) {
+            return value;
+        }
+        if (value == Long.MIN_VALUE) {
+            throw invalid(text, start, end);
+        }
+        return -value;
+    }
+
+    /**
+     * Turns a negative accumulator into the final signed value, checking for overflow.
+     */
+    private static long negate(long value, boolean negative, byte[] bytes, int start, int end) {
+        if (negative) {
+            return value;
+        }
+        if (value == Long.MIN_VALUE) {
+            throw invalid(bytes, start, end);
+        }
+        return -value;
+    }
+
+    /**
+     * Builds the exception for text that is not a valid amount.
+     */
+    private static NumberFormatException invalid(CharSequence text, int start, int end) {
+        return new NumberFormatException("Invalid amount: " + text.subSequence(start, end));
+    }
+
+    /**
+     * Builds the exception for bytes that are not a valid amount.
+     */
+    private static NumberFormatException invalid(byte[] bytes, int start, int end) {
+        return new NumberFormatException("Invalid amount: "
+                + new String(bytes, start, end - start, java.nio.charset.StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,295 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A shared arena holding the first and last names of customers as Latin-1 bytes.
+ *
+ * <p>
+ * The {@code NameArena} class packs each customer's two names back to back into large
+ * byte chunks, each name preceded by its length in one byte, and hands out an
+ * {@code int} reference to the pair. A name then costs its length plus one byte,
+ * instead of a {@code String} and its array, and the names of millions of customers
+ * are a few 1 MB arrays for the garbage collector instead of millions of objects. Names are
+ * decoded into strings only when asked for, and can be written to a {@link LogLine}
+ * without decoding.
+ * </p>
+ *
+ * <p>
+ * Only names of at most 255 characters, all in Latin-1, fit; {@link #add} reports the
+ * others so the caller can keep them as strings. Names may be added from many threads
+ * at once: each pair claims its bytes with a compare-and-set and never crosses a chunk.
+ * </p>
+ *
+ * @see CompactCustomer
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class NameArena {
+
+    /**
+     * The number of bits of a reference that select the position within a chunk.
+     */
+    private static final int CHUNK_BITS = 20;
+
+    /**
+     * The number of bytes in one chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * The longest name that fits, so its length fits in one byte.
+     */
+    private static final int MAX_NAME_LENGTH = 255;
+
+    /**
+     * The separator between the first and last name, as Latin-1 bytes.
+     */
+    private static final byte[] SPACE = {' '};
+
+    /**
+     * The chunks, allocated as they are first used. Replaced by a larger copy when the
+     * array is full; existing chunks never move.
+     */
+    private volatile byte[][] chunks = new byte[16][];
+
+    /**
+     * The position of the next free byte, across all chunks.
+     */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Adds a pair of names.
+     *
+     * @param firstName The first name.
+     * @param lastName  The last name.
+     * @return The reference to the pair, or -1 if a name is not Latin-1, is too long,
+     *         or the arena is full.
+     */
+    public int add(String firstName, String lastName) {
+        if (!fits(firstName) || !fits(lastName)) {
+            return -1;
+        }
+        int size = 2 + firstName.length() + lastName.length();
+
+        // Claim the bytes, skipping to the next chunk if the pair would cross its end
+        long observed;
+        long start;
+        do {
+            observed = next.get();
+            start = observed;
+            long room = CHUNK_SIZE - (start & (CHUNK_SIZE - 1));
+            if (room < size) {
+                start += room;
+            }
+            if (start + size > Integer.MAX_VALUE) {
+                return -1;
+            }
+        } while (!next.compareAndSet(observed, start + size));
+
+        int ref = (int) start;
+        byte[] chunk = chunkFor(ref >>> CHUNK_BITS);
+        int offset = ref & (CHUNK_SIZE - 1);
+        offset = put(chunk, offset, firstName);
+        put(chunk, offset, lastName);
+        return ref;
+    }
+
+    /**
+     * Returns the first name of a pair.
+     *
+     * @param ref The reference returned by {@link #add}.
+     * @return The first name.
+     */
+    public String firstName(int ref) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = ref & (CHUNK_SIZE - 1);
+        return new String(chunk, offset + 1, chunk[offset] & 0xFF, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the last name of a pair.
+     *
+     * @param ref The reference returned by {@link #add}.
+     * @return The last name.
+     */
+    public String lastName(int ref) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = ref & (CHUNK_SIZE - 1);
+        offset = lastNameOffset(chunk, offset);
+        return new String(chunk, offset + 1, chunk[offset] & 0xFF, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Compares the last names of two pairs, ignoring case, in the order of
+     * {@link String#CASE_INSENSITIVE_ORDER}, without decoding them.
+     *
+     * @param ref      The reference to one pair.
+     * @param otherRef The reference to the other pair.
+     * @return A negative number, zero or a positive number as the first last name is
+     *         before, the same as or after the second.
+     */
+    public int compareLastNames(int ref, int otherRef) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = lastNameOffset(chunk, ref & (CHUNK_SIZE - 1));
+        byte[] otherChunk = chunks[otherRef >>> CHUNK_BITS];
+        int otherOffset = lastNameOffset(otherChunk, otherRef & (CHUNK_SIZE - 1));
+        int length = chunk[offset] & 0xFF;
+        int otherLength = otherChunk[otherOffset] & 0xFF;
+        for (int i = 1; i <= Math.min(length, otherLength); i++) {
+            int difference = compareIgnoringCase((char) (chunk[offset + i] & 0xFF),
+                    (char) (otherChunk[otherOffset + i] & 0xFF));
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - otherLength;
+    }
+
+    /**
+     * Compares the last name of a pair with a name, ignoring case, in the order of
+     * {@link String#CASE_INSENSITIVE_ORDER}, without decoding it.
+     *
+     * @param ref  The reference to the pair.
+     * @param name The name to compare with.
+     * @return A negative number, zero or a positive number as the last name is before,
+     *         the same as or after the name.
+     */
+    public int compareLastName(int ref, String name) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = lastNameOffset(chunk, ref & (CHUNK_SIZE - 1));
+        int length = chunk[offset] & 0xFF;
+        for (int i = 0; i < Math.min(length, name.length()); i++) {
+            int difference = compareIgnoringCase((char) (chunk[offset + 1 + i] & 0xFF), name.charAt(i));
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - name.length();
+    }
+
+    /**
+     * Returns {@code true} if the last name of a pair starts with a prefix, ignoring
+     * case as {@link String#regionMatches(boolean, int, String, int, int)} does.
+     *
+     * @param ref    The reference to the pair.
+     * @param prefix The prefix.
+     * @return {@code true} if the last name starts with the prefix.
+     */
+    public boolean lastNameStartsWith(int ref, String prefix) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = lastNameOffset(chunk, ref & (CHUNK_SIZE - 1));
+        if ((chunk[offset] & 0xFF) < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (compareIgnoringCase((char) (chunk[offset + 1 + i] & 0xFF), prefix.charAt(i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the full name of a pair, first name, space and last name, to a log line
+     * without decoding it.
+     *
+     * @param ref  The reference returned by {@link #add}.
+     * @param line The line to append to.
+     * @return The line.
+     */
+    LogLine appendFullName(int ref, LogLine line) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = ref & (CHUNK_SIZE - 1);
+        int length = chunk[offset] & 0xFF;
+        line.appendLatin1(chunk, offset + 1, length);
+        line.appendLatin1(SPACE, 0, 1);
+        offset += 1 + length;
+        return line.appendLatin1(chunk, offset + 1, chunk[offset] & 0xFF);
+    }
+
+    /**
+     * Returns the offset of the length byte of the last name of the pair at an offset.
+     */
+    private static int lastNameOffset(byte[] chunk, int offset) {
+        return offset + 1 + (chunk[offset] & 0xFF);
+    }
+
+    /**
+     * Compares two characters ignoring case, folding them the way
+     * {@link String#CASE_INSENSITIVE_ORDER} does, so names in the arena sort exactly like
+     * names kept as strings.
+     */
+    private static int compareIgnoringCase(char a, char b) {
+        if (a != b) {
+            a = Character.toUpperCase(a);
+            b = Character.toUpperCase(b);
+            if (a != b) {
+                a = Character.toLowerCase(a);
+                b = Character.toLowerCase(b);
+                if (a != b) {
+                    return a - b;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of bytes in use, including the unused ends of chunks.
+     *
+     * @return The size in bytes.
+     */
+    public long size() {
+        return next.get();
+    }
+
+    /**
+     * Returns a chunk, allocating it if it does not exist yet.
+     */
+    private byte[] chunkFor(int number) {
+        byte[][] current = chunks;
+        if (number < current.length && current[number] != null) {
+            return current[number];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (number >= current.length) {
+                current = Arrays.copyOf(current, Math.max(number + 1, current.length * 2));
+            }
+            if (current[number] == null) {
+                current[number] = new byte[CHUNK_SIZE];
+            }
+            chunks = current;
+            return current[number];
+        }
+    }
+
+    /**
+     * Writes a name preceded by its length and returns the offset after it.
+     */
+    private static int put(byte[] chunk, int offset, String name) {
+        int length = name.length();
+        chunk[offset++] = (byte) length;
+        for (int i = 0; i < length; i++) {
+            chunk[offset++] = (byte) name.charAt(i);
+        }
+        return offset;
+    }
+
+    /**
+     * Returns {@code true} if a name can be stored in the arena.
+     */
+    private static boolean fits(String name) {
+        if (name.length() > MAX_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+
+/**
+ * The pages of the {@link AccountStore} kept outside the Java heap in memory segments,
+ * for {@code -Dbank.ledger=offheap}.
+ *
+ * <p>
+ * Each page is one native {@link MemorySegment} of {@link AccountStore#LEDGER_PAGE_BYTES}
+ * bytes, laid out like a page of the {@link LedgerFile}: the balance column, the credit
+ * limit column, the account number column and the type column. Balances are read and
+ * updated atomically through a {@link VarHandle} over the balance column, so the
+ * accounts work exactly as they do on the heap, while the collector never has to scan
+ * or copy the columns. Pages are allocated from an automatic {@link Arena} and freed
+ * once their store is no longer reachable.
+ * </p>
+ *
+ * <p>
+ * The Foreign Function and Memory API is a preview in Java 21, so this is the only class
+ * that uses it; it is compiled with {@code --enable-preview} and loaded only when the
+ * off-heap ledger is asked for, and the JVM must then run with {@code --enable-preview}
+ * too. The store passes the pages around as plain objects so that none of its other
+ * classes depend on the preview.
+ * </p>
+ *
+ * @see AccountStore
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+final class OffHeapLedger {
+
+    /**
+     * Atomic access to the balance column, indexed by position within the page.
+     */
+    private static final VarHandle BALANCES = ValueLayout.JAVA_LONG.arrayElementVarHandle();
+
+    private OffHeapLedger() {
+    }
+
+    /**
+     * Allocates an empty page, with every slot free.
+     *
+     * @return The page, a {@code MemorySegment}.
+     */
+    static Object allocatePage() {
+        return Arena.ofAuto().allocate(AccountStore.LEDGER_PAGE_BYTES, Long.BYTES);
+    }
+
+    /**
+     * Fills a slot of a page for a new account, writing the type tag last.
+     *
+     * @param page          The page.
+     * @param index         The position of the slot within the page.
+     * @param accountNumber The account number.
+     * @param type          The type tag of the account.
+     * @param balance       The starting balance, in cents.
+     * @param creditLimit   The credit limit in cents, or 0 for accounts without credit.
+     */
+    static void add(Object page, int index, int accountNumber, byte type, long balance, long creditLimit) {
+        MemorySegment ledger = (MemorySegment) page;
+        ledger.set(ValueLayout.JAVA_INT, AccountStore.LEDGER_NUMBERS + ((long) index << 2), accountNumber);
+        ledger.set(ValueLayout.JAVA_LONG, AccountStore.LEDGER_LIMITS + ((long) index << 3), creditLimit);
+        BALANCES.setVolatile(ledger, (long) index, balance);
+        ledger.set(ValueLayout.JAVA_BYTE, AccountStore.LEDGER_TYPES + index, type);
+    }
+
+    /**
+     * Clears a slot of a page, marking it free.
+     *
+     * @param page  The page.
+     * @param index The position of the slot within the page.
+     */
+    static void free(Object page, int index) {
+        MemorySegment ledger = (MemorySegment) page;
+        ledger.set(ValueLayout.JAVA_BYTE, AccountStore.LEDGER_TYPES + index, AccountStore.OTHER);
+        ledger.set(ValueLayout.JAVA_INT, AccountStore.LEDGER_NUMBERS + ((long) index << 2), 0);
+        ledger.set(ValueLayout.JAVA_LONG, AccountStore.LEDGER_LIMITS + ((long) index << 3), 0L);
+        BALANCES.setVolatile(ledger, (long) index, 0L);
+    }
+
+    /**
+     * Reads a balance with volatile semantics.
+     */
+    static long getBalance(Object page, int index) {
+        return (long) BALANCES.getVolatile((MemorySegment) page, (long) index);
+    }
+
+    /**
+     * Reads a balance without ordering, for scans.
+     */
+    static long getBalancePlain(Object page, int index) {
+        return ((MemorySegment) page).getAtIndex(ValueLayout.JAVA_LONG, index);
+    }
+
+    /**
+     * Sets a balance if it still holds the expected value; may fail spuriously.
+     */
+    static boolean weakCompareAndSetBalance(Object page, int index, long expected, long next) {
+        return BALANCES.weakCompareAndSet((MemorySegment) page, (long) index, expected, next);
+    }
+
+    /**
+     * Sets a balance with volatile semantics.
+     */
+    static void setBalance(Object page, int index, long value) {
+        BALANCES.setVolatile((MemorySegment) page, (long) index, value);
+    }
+
+    /**
+     * Atomically adds an amount to a balance, returning the balance before.
+     */
+    static long getAndAddBalance(Object page, int index, long delta) {
+        return (long) BALANCES.getAndAdd((MemorySegment) page, (long) index, delta);
+    }
+
+    /**
+     * Reads a type tag.
+     */
+    static byte getType(Object page, int index) {
+        return ((MemorySegment) page).get(ValueLayout.JAVA_BYTE, AccountStore.LEDGER_TYPES + index);
+    }
+
+    /**
+     * Reads an account number.
+     */
+    static int getAccountNumber(Object page, int index) {
+        return ((MemorySegment) page).get(ValueLayout.JAVA_INT, AccountStore.LEDGER_NUMBERS + ((long) index << 2));
+    }
+
+    /**
+     * Reads a credit limit.
+     */
+    static long getCreditLimit(Object page, int index) {
+        return ((MemorySegment) page).get(ValueLayout.JAVA_LONG, AccountStore.LEDGER_LIMITS + ((long) index << 3));
+    }
+
+    /**
+     * Returns the sum of the first {@code length} balances of a page.
+     */
+    static long totalBalance(Object page, int length) {
+        MemorySegment ledger = (MemorySegment) page;
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            total += ledger.getAtIndex(ValueLayout.JAVA_LONG, i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sum of the balances of one type among the first {@code length} slots of a page.
+     */
+    static long totalBalance(Object page, int length, byte type) {
+        MemorySegment ledger = (MemorySegment) page;
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            total += ledger.get(ValueLayout.JAVA_BYTE, AccountStore.LEDGER_TYPES + i) == type
+                    ? ledger.getAtIndex(ValueLayout.JAVA_LONG, i) : 0;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * The latencies and outcome counts of one kind of operation.
+ *
+ * <p>
+ * An {@code OperationMetrics} pairs a {@link LatencyHistogram} with two
+ * {@link StripedCounter}s, one for operations that succeeded and one for operations
+ * that failed. Recording an operation is a handful of atomic adds and never allocates,
+ * so it can be done on every operation. The metrics are published through JMX as an
+ * {@link OperationMetricsMBean} and written to the text dump of {@link BankMetrics}.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class OperationMetrics implements OperationMetricsMBean {
+
+    /**
+     * The name of the operation, such as {@code deposit}.
+     */
+    private final String name;
+
+    /**
+     * The latencies of every operation, successful or not.
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    // Outcome counts
+    private final StripedCounter succeeded = new StripedCounter();
+    private final StripedCounter failed = new StripedCounter();
+
+    /**
+     * Constructs a new {@code OperationMetrics}.
+     *
+     * @param name The name of the operation.
+     */
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the operation.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one operation that started at the given time and has just ended.
+     *
+     * @param startNanos The {@link System#nanoTime()} at which the operation started.
+     * @param success    {@code true} if the operation succeeded.
+     */
+    public void record(long startNanos, boolean success) {
+        latency.record(System.nanoTime() - startNanos);
+        (success ? succeeded : failed).increment();
+    }
+
+    /**
+     * Records one operation that took the given time.
+     *
+     * @param nanos   The latency, in nanoseconds.
+     * @param success {@code true} if the operation succeeded.
+     */
+    public void recordNanos(long nanos, boolean success) {
+        latency.record(nanos);
+        (success ? succeeded : failed).increment();
+    }
+
+    @Override
+    public long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getMeanNanos() {
+        return LatencyHistogram.mean(latency.snapshot());
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return LatencyHistogram.percentile(latency.snapshot(), 0.50);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return LatencyHistogram.percentile(latency.snapshot(), 0.99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+        return LatencyHistogram.percentile(latency.snapshot(), 0.999);
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return LatencyHistogram.max(latency.snapshot());
+    }
+
+    /**
+     * Appends one line of the text dump: the name, the counts and the latencies in
+     * microseconds, all from one snapshot of the histogram.
+     *
+     * @param line The builder to append to.
+     * @return The builder.
+     */
+    StringBuilder appendSummary(StringBuilder line) {
+        long[] snapshot = latency.snapshot();
+        line.append(String.format("%-12s %12d %10d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                name, getSucceeded(), getFailed(),
+                LatencyHistogram.mean(snapshot) / 1e3,
+                LatencyHistogram.percentile(snapshot, 0.50) / 1e3,
+                LatencyHistogram.percentile(snapshot, 0.99) / 1e3,
+                LatencyHistogram.percentile(snapshot, 0.999) / 1e3,
+                LatencyHistogram.max(snapshot) / 1e3));
+        return line;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * The JMX management interface of an {@link OperationMetrics}.
+ *
+ * <p>
+ * Latencies are reported in nanoseconds and cover every operation since the bank
+ * started.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public interface OperationMetricsMBean {
+
+    /**
+     * Returns the number of operations that succeeded.
+     *
+     * @return The number of successful operations.
+     */
+    long getSucceeded();
+
+    /**
+     * Returns the number of operations that failed.
+     *
+     * @return The number of failed operations.
+     */
+    long getFailed();
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return The mean, in nanoseconds.
+     */
+    long getMeanNanos();
+
+    /**
+     * Returns the median latency.
+     *
+     * @return The 50th percentile, in nanoseconds.
+     */
+    long getP50Nanos();
+
+    /**
+     * Returns the 99th percentile latency.
+     *
+     * @return The 99th percentile, in nanoseconds.
+     */
+    long getP99Nanos();
+
+    /**
+     * Returns the 99.9th percentile latency.
+     *
+     * @return The 99.9th percentile, in nanoseconds.
+     */
+    long getP999Nanos();
+
+    /**
+     * Returns the highest latency.
+     *
+     * @return The maximum, in nanoseconds.
+     */
+    long getMaxNanos();
+}
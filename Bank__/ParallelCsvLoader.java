@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads very large customer CSV files in parallel.
+ *
+ * <p>
+ * The {@code ParallelCsvLoader} class memory-maps the file and splits it into chunks
+ * that end on a newline outside quotes, so a quoted address containing commas (or
+ * even a line break) is never cut in half. The quote state at every chunk boundary is
+ * found by counting quotes in each chunk in parallel first. The chunks are then parsed
+ * in parallel on the common fork-join pool, straight from the mapped bytes: numbers are
+ * parsed from bytes without creating intermediate {@code String}s, and only the
+ * customer's name, birth date, address and phone number become strings.
+ * </p>
+ *
+ * <p>
+ * The result is the same as {@link RunBank#LoadCSV(String)}'s line-by-line parser:
+ * customers come back in file order, quote characters are removed, fields are
+ * trimmed, and invalid numbers fall back to 0 with the same warning messages.
+ * Warnings are printed in file order once all chunks are parsed.
+ * </p>
+ *
+ * @see RunBank#LoadCSV(String)
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class ParallelCsvLoader {
+
+    /**
+     * The number of fields in a customer row.
+     */
+    private static final int FIELDS = 13;
+
+    /**
+     * The preferred size of one chunk of the file, in bytes.
+     */
+    private static final long CHUNK_SIZE = 16L << 20;
+
+    /**
+     * The size of the window mapped while searching for the end of a row.
+     */
+    private static final int SCAN_WINDOW = 64 * 1024;
+
+    /**
+     * Loads every customer in a CSV file, skipping the header row.
+     *
+     * @param filePath The path to the CSV file.
+     * @return The customers in file order, each with checking, savings and credit accounts.
+     * @throws IOException If the file cannot be read.
+     */
+    public static ArrayList<Customer> load(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = endOfRow(channel, 0, size, false);  // Skip the header line
+
+            // Cut the data into roughly equal chunks, at least one per core
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            long dataSize = size - dataStart;
+            long chunkCount = Math.max(1, (dataSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            if (dataSize > SCAN_WINDOW) {
+                chunkCount = Math.max(chunkCount, parallelism);
+            }
+            int chunks = (int) chunkCount;
+            long[] bounds = new long[chunks + 1];
+            for (int i = 0; i <= chunks; i++) {
+                bounds[i] = dataStart + dataSize * i / chunks;
+            }
+
+            // Count quotes in every chunk in parallel to know the quote state at each boundary
+            QuoteParityTask[] parityTasks = new QuoteParityTask[chunks];
+            for (int i = 0; i < chunks; i++) {
+                parityTasks[i] = new QuoteParityTask(channel, bounds[i], bounds[i + 1]);
+                parityTasks[i].fork();
+            }
+            boolean inQuotes = false;
+            for (int i = 1; i < chunks; i++) {
+                inQuotes ^= parityTasks[i - 1].join();
+                // Move the boundary forward to the end of the row it falls in
+                bounds[i] = Math.max(bounds[i - 1], endOfRow(channel, bounds[i], size, inQuotes));
+            }
+            parityTasks[chunks - 1].join();
+
+            // Parse the chunks in parallel, then merge them in file order
+            ParseTask[] parseTasks = new ParseTask[chunks];
+            for (int i = 0; i < chunks; i++) {
+                parseTasks[i] = new ParseTask(channel, bounds[i], Math.max(bounds[i], bounds[i + 1]));
+                parseTasks[i].fork();
+            }
+            ArrayList<Customer> customers = new ArrayList<>();
+            for (ParseTask task : parseTasks) {
+                ParseTask.Result result = task.join();
+                if (result.error != null) {
+                    throw result.error;
+                }
+                customers.addAll(result.customers);
+                if (result.warnings.length() > 0) {
+                    System.out.print(result.warnings);
+                }
+            }
+            return customers;
+        }
+    }
+
+    /**
+     * Finds the end of the row that contains the given position.
+     *
+     * @param channel  The open file.
+     * @param from     The position to start scanning at.
+     * @param size     The size of the file.
+     * @param inQuotes Whether {@code from} lies inside a quoted field.
+     * @return The position just after the first newline outside quotes, or the file size.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private static long endOfRow(FileChannel channel, long from, long size, boolean inQuotes)
+            throws IOException {
+        long position = from;
+        while (position < size) {
+            int length = (int) Math.min(SCAN_WINDOW, size - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i < length; i++) {
+                byte b = window.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    return position + i + 1;
+                }
+            }
+            position += length;
+        }
+        return size;
+    }
+
+    /**
+     * Counts the quote characters in one chunk of the file.
+     */
+    @SuppressWarnings("serial")
+    private static final class QuoteParityTask extends RecursiveTask<Boolean> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        QuoteParityTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns {@code true} if the chunk holds an odd number of quotes.
+         */
+        @Override
+        protected Boolean compute() {
+            if (end <= start) {
+                return false;
+            }
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                int length = (int) (end - start);
+                int quotes = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buffer.get(i) == '"') {
+                        quotes++;
+                    }
+                }
+                return (quotes & 1) != 0;
+            } catch (IOException e) {
+                return false;  // The parse pass maps the same range and reports the error
+            }
+        }
+    }
+
+    /**
+     * Parses the customer rows of one chunk of the file.
+     */
+    @SuppressWarnings("serial")
+    private static final class ParseTask extends RecursiveTask<ParseTask.Result> {
+
+        /**
+         * The customers, warnings and error produced by one chunk.
+         */
+        static final class Result {
+            final ArrayList<Customer> customers = new ArrayList<>();
+            final StringBuilder warnings = new StringBuilder();
+            IOException error;
+        }
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        // Per-task scratch space: the current row with quotes removed, and its field bounds
+        private byte[] row = new byte[256];
+        private final int[] fieldStart = new int[FIELDS];
+        private final int[] fieldEnd = new int[FIELDS];
+        private int separators;
+
+        ParseTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Result compute() {
+            Result result = new Result();
+            if (end <= start) {
+                return result;
+            }
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                result.error = e;
+                return result;
+            }
+
+            int length = (int) (end - start);
+            int position = 0;
+            while (position < length) {
+                position = readRow(buffer, position, length);
+                if (separators > 0) {  // Skip blank lines
+                    result.customers.add(toCustomer(result.warnings));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Copies one row into the scratch buffer without its quote characters and
+         * records where each field starts and ends.
+         *
+         * @return The position just after the row.
+         */
+        private int readRow(MappedByteBuffer buffer, int position, int length) {
+            int n = 0;
+            int field = 0;
+            boolean inQuotes = false;
+            fieldStart[0] = 0;
+            while (position < length) {
+                byte b = buffer.get(position++);
+                if (b == '"') {
+                    inQuotes = !inQuotes;  // Quotes only toggle the state, as in parseCSVLine
+                } else if (b == '\n' && !inQuotes) {
+                    break;
+                } else if (b == ',' && !inQuotes) {
+                    if (field < FIELDS) {
+                        fieldEnd[field] = n;
+                    }
+                    field++;
+                    if (field < FIELDS) {
+                        fieldStart[field] = n;
+                    }
+                } else if (field < FIELDS) {
+                    if (n == row.length) {
+                        row = Arrays.copyOf(row, n * 2);
+                    }
+                    row[n++] = b;
+                }
+            }
+            if (field < FIELDS) {
+                fieldEnd[field] = n;
+            }
+            separators = field;
+
+            // Missing fields are empty; trim every field the way String.trim() does
+            for (int f = 0; f < FIELDS; f++) {
+                if (f > field) {
+                    fieldStart[f] = n;
+                    fieldEnd[f] = n;
+                    continue;
+                }
+                while (fieldStart[f] < fieldEnd[f] && (row[fieldStart[f]] & 0xFF) <= ' ') {
+                    fieldStart[f]++;
+                }
+                while (fieldEnd[f] > fieldStart[f] && (row[fieldEnd[f] - 1] & 0xFF) <= ' ') {
+                    fieldEnd[f]--;
+                }
+            }
+            return position;
+        }
+
+        /**
+         * Builds the customer described by the current row.
+         */
+        private Customer toCustomer(StringBuilder warnings) {
+            return RunBank.createCustomer(
+                    parseInt(0, warnings),
+                    text(1), text(2), text(3), text(4), text(5),
+                    parseInt(6, warnings), parseMoney(7, warnings),
+                    parseInt(8, warnings), parseMoney(9, warnings),
+                    parseInt(10, warnings), parseMoney(11, warnings), parseMoney(12, warnings));
+        }
+
+        /**
+         * Decodes a text field.
+         */
+        private String text(int field) {
+            int s = fieldStart[field];
+            return new String(row, s, fieldEnd[field] - s, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parses an integer field directly from bytes, with the same rules and the
+         * same fallback to 0 as {@code Integer.parseInt} in {@code RunBank.parseInt}.
+         */
+        private int parseInt(int field, StringBuilder warnings) {
+            int i = fieldStart[field];
+            int e = fieldEnd[field];
+            boolean negative = false;
+            if (i < e && (row[i] == '-' || row[i] == '+')) {
+                negative = row[i] == '-';
+                i++;
+            }
+            long value = 0;
+            boolean valid = i < e;
+            for (; i < e && valid; i++) {
+                int digit = row[i] - '0';
+                value = value * 10 + digit;
+                valid = digit >= 0 && digit <= 9 && value <= (long) Integer.MAX_VALUE + 1;
+            }
+            if (valid && (negative || value <= Integer.MAX_VALUE)) {
+                return (int) (negative ? -value : value);
+            }
+            warnings.append("Error parsing integer: ").append(text(field)).append(". Using default: 0\n");
+            return 0;
+        }
+
+        /**
+         * Parses a money field directly from bytes, falling back to the legacy
+         * {@code double} format and then to 0 like {@code RunBank.parseMoney}.
+         */
+        private long parseMoney(int field, StringBuilder warnings) {
+            try {
+                return Money.parseLegacy(row, fieldStart[field], fieldEnd[field]);
+            } catch (NumberFormatException ex) {
+                warnings.append("Error parsing amount: ").append(text(field)).append(". Using default: 0.00\n");
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A hash index of customers by phone number.
+ *
+ * <p>
+ * The {@code PhoneIndex} class reduces a phone number to its digits, so
+ * {@code (915) 747-5042}, {@code 915-747-5042} and {@code +1 915 747 5042} are the same
+ * number while {@code 0915 747 5042} is not, and keeps the customers of each number in an {@link IntHashIndex}. A lookup
+ * is one probe whatever the number of customers. Several customers may share a number,
+ * such as members of one household, so each number holds a short chain of customers;
+ * numbers whose keys collide share the chain and are told apart by their digits.
+ * </p>
+ *
+ * @see BankDirectory
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class PhoneIndex {
+
+    /**
+     * The most digits kept of a number, so that it fits in a {@code long}.
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * The powers of ten up to 10<sup>{@value #MAX_DIGITS}</sup>, which mark how many digits a
+     * normalized number has.
+     */
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_DIGITS; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * One customer with a number, linked to the next customer under the same key.
+     */
+    private static final class Entry {
+        final long digits;
+        final Customer customer;
+        final Entry next;
+
+        Entry(long digits, Customer customer, Entry next) {
+            this.digits = digits;
+            this.customer = customer;
+            this.next = next;
+        }
+    }
+
+    /**
+     * The chains of customers, keyed by the folded digits of their numbers.
+     */
+    private final IntHashIndex<Entry> entries;
+
+    /**
+     * Constructs a new {@code PhoneIndex} sized for the expected number of customers.
+     *
+     * @param expectedCustomers The number of customers the index is expected to hold.
+     */
+    public PhoneIndex(int expectedCustomers) {
+        this.entries = new IntHashIndex<>(expectedCustomers);
+    }
+
+    /**
+     * Reduces a phone number to its digits as a number. A leading country code of 1
+     * on an eleven-digit number is dropped, and only the last {@value #MAX_DIGITS}
+     * digits of a longer number are kept. The digits are preceded by a 1, so that
+     * leading zeros count: {@code 0123} becomes 10123 and {@code 123} becomes 1123.
+     *
+     * @param phoneNumber The phone number in any format.
+     * @return The digits preceded by a 1, or -1 if the number has none.
+     */
+    public static long normalize(String phoneNumber) {
+        if (phoneNumber == null) {
+            return -1;
+        }
+        long digits = 0;
+        int count = 0;
+        char first = 0;
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (count == 0) {
+                    first = c;
+                }
+                if (count >= MAX_DIGITS) {
+                    digits %= 100_000_000_000_000_000L;  // Drop the oldest digit to keep the last 18
+                }
+                digits = digits * 10 + (c - '0');
+                count++;
+            }
+        }
+        if (count == 0) {
+            return -1;
+        }
+        if (count == 11 && first == '1') {
+            digits -= 10_000_000_000L;
+            count--;
+        }
+        return POWERS_OF_TEN[Math.min(count, MAX_DIGITS)] + digits;
+    }
+
+    /**
+     * Adds a customer under the customer's phone number. Customers without digits in
+     * their number are not indexed.
+     *
+     * @param customer The customer to add.
+     */
+    public synchronized void add(Customer customer) {
+        long digits = normalize(customer.getPhoneNumber());
+        if (digits < 0) {
+            return;
+        }
+        int key = key(digits);
+        entries.put(key, new Entry(digits, customer, entries.get(key)));
+    }
+
+    /**
+     * Grows the index, if needed, to hold the given number of customers without
+     * resizing. Useful before a bulk load.
+     *
+     * @param expectedCustomers The number of customers the index is expected to hold.
+     */
+    public synchronized void ensureCapacity(int expectedCustomers) {
+        entries.ensureCapacity(expectedCustomers);
+    }
+
+    /**
+     * Finds the customers with a phone number.
+     *
+     * @param phoneNumber The phone number in any format.
+     * @return The customers, in the order they were added; empty if there are none.
+     */
+    public synchronized List<Customer> find(String phoneNumber) {
+        ArrayList<Customer> found = new ArrayList<>(1);
+        long digits = normalize(phoneNumber);
+        if (digits < 0) {
+            return found;
+        }
+        for (Entry entry = entries.get(key(digits)); entry != null; entry = entry.next) {
+            if (entry.digits == digits) {
+                found.add(entry.customer);
+            }
+        }
+        // The chain holds the newest customer first
+        Collections.reverse(found);
+        return found;
+    }
+
+    /**
+     * Folds the digits of a number into an index key.
+     */
+    private static int key(long digits) {
+        return (int) (digits ^ (digits >>> 32));
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * A customer whose personal details are kept as strings.
+ *
+ * <p>
+ * The {@code PlainCustomer} class stores the five details of a {@link Person} exactly as
+ * they were given, one string each. It is the customer {@link RunBank} creates by
+ * default; with {@code bank.customer.compact=true} it creates a {@link CompactCustomer}
+ * instead, and falls back to a {@code PlainCustomer} only for names that cannot be packed.
+ * </p>
+ *
+ * @see CompactCustomer
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class PlainCustomer extends Customer {
+
+    /**
+     * The first name of the customer.
+     */
+    private final String firstName;
+
+    /**
+     * The last name of the customer.
+     */
+    private final String lastName;
+
+    /**
+     * The birth date of the customer.
+     */
+    private final String birthDate;
+
+    /**
+     * The address of the customer.
+     */
+    private final String address;
+
+    /**
+     * The phone number of the customer.
+     */
+    private final String phoneNumber;
+
+    /**
+     * Constructs a new {@code PlainCustomer} with the specified ID and personal details.
+     *
+     * @param id          The unique ID of the customer.
+     * @param firstName   The first name of the customer.
+     * @param lastName    The last name of the customer.
+     * @param birthDate   The birth date of the customer.
+     * @param address     The address of the customer.
+     * @param phoneNumber The phone number of the customer.
+     */
+    public PlainCustomer(int id, String firstName, String lastName, String birthDate, String address,
+            String phoneNumber) {
+        super(id);
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.birthDate = birthDate;
+        this.address = address;
+        this.phoneNumber = phoneNumber;
+    }
+
+    @Override
+    public String getFirstName() {
+        return firstName;
+    }
+
+    @Override
+    public String getLastName() {
+        return lastName;
+    }
+
+    @Override
+    public String getBirthDate() {
+        return birthDate;
+    }
+
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+}
@@ -0,0 +1,300 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last few transactions of every account, kept in memory.
+ *
+ * <p>
+ * The {@code RecentActivity} class keeps a fixed-size ring of the latest balance changes
+ * of each account: when it was made, its type, the signed amount (negative for money
+ * leaving the account), the account on the other side of a transfer or payment, and
+ * the balance it left. Like the {@link AccountStore}, the rings live in shared primitive
+ * columns indexed by the account's slot rather than in objects per account, so
+ * recording a change allocates nothing and "what were my recent transactions" is
+ * answered from memory in microseconds, without reading the log.
+ * </p>
+ *
+ * <p>
+ * The number of entries per account is set with {@code bank.activity.entries} (16 by
+ * default, 0 to turn recording off) and the memory of all rings together is capped by
+ * {@code bank.activity.budgetMB} (64 by default). The rings are allocated in pages of
+ * {@value #SLOTS_PER_PAGE} accounts as they are first used; accounts whose slot lies
+ * beyond the budget are not tracked.
+ * </p>
+ *
+ * <p>
+ * Any number of threads may record and read at once. Each entry carries a stamp with
+ * the position it was written at: a writer claims an entry by swapping the stamp of the
+ * previous round for a busy marker, writes the fields and then publishes the new stamp,
+ * and a reader only keeps an entry whose stamp was the same before and after reading
+ * it, so it never sees half of an entry.
+ * </p>
+ *
+ * @see BankService
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class RecentActivity {
+
+    /**
+     * The number of accounts in one page of rings.
+     */
+    static final int SLOTS_PER_PAGE = 1024;
+
+    /**
+     * The bytes one entry takes: stamp, time, amount and balance (8 each), counterparty (4) and type (1).
+     */
+    static final int ENTRY_BYTES = 37;
+
+    /**
+     * The ring entries and counts of every account.
+     */
+    static final RecentActivity ACCOUNTS = new RecentActivity(Integer.getInteger("bank.activity.entries", 16),
+            Long.getLong("bank.activity.budgetMB", 64) << 20);
+
+    /**
+     * Atomic access to the elements of the stamp and count columns.
+     */
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * The rings of {@value #SLOTS_PER_PAGE} accounts, one column per field. The entries of
+     * the account at index {@code i} of the page run from {@code i * entries} to
+     * {@code (i + 1) * entries}.
+     */
+    private static final class Page {
+        final long[] counts;
+        final long[] stamps;
+        final long[] times;
+        final long[] amounts;
+        final long[] balances;
+        final int[] counterparties;
+        final byte[] types;
+
+        Page(int entries) {
+            int size = SLOTS_PER_PAGE * entries;
+            counts = new long[SLOTS_PER_PAGE];
+            stamps = new long[size];
+            times = new long[size];
+            amounts = new long[size];
+            balances = new long[size];
+            counterparties = new int[size];
+            types = new byte[size];
+        }
+    }
+
+    /**
+     * One recorded balance change.
+     */
+    public static final class Entry {
+        private final long timeMillis;
+        private final TransactionType type;
+        private final long amount;
+        private final int counterparty;
+        private final long balance;
+
+        Entry(long timeMillis, TransactionType type, long amount, int counterparty, long balance) {
+            this.timeMillis = timeMillis;
+            this.type = type;
+            this.amount = amount;
+            this.counterparty = counterparty;
+            this.balance = balance;
+        }
+
+        /**
+         * Returns the time the change was recorded.
+         *
+         * @return The time in epoch milliseconds.
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * Returns the type of the transaction.
+         *
+         * @return The type.
+         */
+        public TransactionType getType() {
+            return type;
+        }
+
+        /**
+         * Returns the amount, negative if it left the account.
+         *
+         * @return The amount, in cents.
+         */
+        public long getAmount() {
+            return amount;
+        }
+
+        /**
+         * Returns the account on the other side of a transfer or payment.
+         *
+         * @return The account number, or 0 for deposits and withdrawals.
+         */
+        public int getCounterparty() {
+            return counterparty;
+        }
+
+        /**
+         * Returns the balance the change left in the account.
+         *
+         * @return The balance, in cents.
+         */
+        public long getBalance() {
+            return balance;
+        }
+    }
+
+    /**
+     * The number of entries in the ring of each account.
+     */
+    private final int entries;
+
+    /**
+     * The pages, allocated when first used.
+     */
+    private final AtomicReferenceArray<Page> pages;
+
+    /**
+     * Constructs a new {@code RecentActivity}.
+     *
+     * @param entries     The number of entries per account; 0 or less records nothing.
+     * @param budgetBytes The most memory all rings may take together.
+     */
+    RecentActivity(int entries, long budgetBytes) {
+        this.entries = Math.max(0, entries);
+        long pageBytes = (long) SLOTS_PER_PAGE * Math.max(1, this.entries) * ENTRY_BYTES;
+        long pageCount = this.entries > 0 ? budgetBytes / pageBytes : 0;
+        this.pages = new AtomicReferenceArray<>((int) Math.min(Integer.MAX_VALUE, pageCount));
+    }
+
+    /**
+     * Returns the number of entries kept per account.
+     *
+     * @return The number of entries, 0 if recording is turned off.
+     */
+    public int getEntriesPerAccount() {
+        return entries;
+    }
+
+    /**
+     * Returns the number of accounts whose slots fit in the memory budget.
+     *
+     * @return The number of accounts that can be tracked.
+     */
+    public long getCapacity() {
+        return (long) pages.length() * SLOTS_PER_PAGE;
+    }
+
+    /**
+     * Records a balance change of an account. Does nothing if the account is beyond the
+     * memory budget.
+     *
+     * @param account      The account.
+     * @param type         The type of the transaction.
+     * @param amount       The signed amount, in cents: negative if it left the account.
+     * @param counterparty The account on the other side, or 0.
+     * @param balance      The balance it left, in cents.
+     * @param timeMillis   The time of the change, in epoch milliseconds.
+     */
+    void record(Account account, TransactionType type, long amount, int counterparty, long balance,
+            long timeMillis) {
+        Page page = pageOf(account.getSlot(), true);
+        if (page == null) {
+            return;
+        }
+        int index = account.getSlot() % SLOTS_PER_PAGE;
+        long position = (long) LONGS.getAndAdd(page.counts, index, 1L);
+        int entry = index * entries + (int) (position % entries);
+
+        // Wait for the writer of the previous round of this entry, then mark it busy
+        long previous = position >= entries ? position - entries + 1 : 0;
+        while (!LONGS.compareAndSet(page.stamps, entry, previous, -(position + 1))) {
+            Thread.onSpinWait();
+        }
+        page.times[entry] = timeMillis;
+        page.types[entry] = (byte) type.getCode();
+        page.amounts[entry] = amount;
+        page.counterparties[entry] = counterparty;
+        page.balances[entry] = balance;
+        LONGS.setRelease(page.stamps, entry, position + 1);
+    }
+
+    /**
+     * Forgets the changes recorded in a slot, before the slot is given to another
+     * account. No thread may record or read the slot meanwhile.
+     *
+     * @param slot The slot number.
+     */
+    void forget(int slot) {
+        Page page = pageOf(slot, false);
+        if (page == null) {
+            return;
+        }
+        int index = slot % SLOTS_PER_PAGE;
+        for (int entry = index * entries; entry < (index + 1) * entries; entry++) {
+            LONGS.setRelease(page.stamps, entry, 0L);
+        }
+        LONGS.setRelease(page.counts, index, 0L);
+    }
+
+    /**
+     * Returns the latest recorded changes of an account, newest first.
+     *
+     * @param account The account.
+     * @param max     The largest number of changes to return.
+     * @return The changes; empty if none were recorded or the account is not tracked.
+     */
+    public List<Entry> recent(Account account, int max) {
+        ArrayList<Entry> result = new ArrayList<>(Math.max(0, Math.min(max, entries)));
+        Page page = pageOf(account.getSlot(), false);
+        if (page == null) {
+            return result;
+        }
+        int index = account.getSlot() % SLOTS_PER_PAGE;
+        long count = (long) LONGS.getAcquire(page.counts, index);
+        long oldest = Math.max(0, count - entries);
+        for (long position = count - 1; position >= oldest && result.size() < max; position--) {
+            int entry = index * entries + (int) (position % entries);
+            long stamp = (long) LONGS.getAcquire(page.stamps, entry);
+            if (stamp != position + 1) {
+                continue;  // Still being written, or already overwritten by a newer change
+            }
+            long timeMillis = page.times[entry];
+            byte code = page.types[entry];
+            long amount = page.amounts[entry];
+            int counterparty = page.counterparties[entry];
+            long balance = page.balances[entry];
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getVolatile(page.stamps, entry) == stamp) {
+                result.add(new Entry(timeMillis, TransactionType.fromCode(code), amount, counterparty, balance));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the page holding a slot, allocating it if asked to.
+     *
+     * @return The page, or {@code null} if the slot is beyond the budget or the page
+     *         is not allocated.
+     */
+    private Page pageOf(int slot, boolean allocate) {
+        int number = slot / SLOTS_PER_PAGE;
+        if (number >= pages.length()) {
+            return null;
+        }
+        Page page = pages.get(number);
+        if (page == null && allocate) {
+            pages.compareAndSet(number, null, new Page(entries));
+            page = pages.get(number);
+        }
+        return page;
+    }
+}
@@ -1,32 +1,160 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
  * Main class for the banking system simulation.
  * Provides a menu for various banking operations such as balance inquiry,
  * deposit, withdrawal, transfer, and payment.
+ * The operations themselves are made by a {@link BankService}; the menu only
+ * reads the input and prints the results.
  */
 public class RunBank {
 
     // ArrayList to store customers
     static ArrayList<Customer> customerList = new ArrayList<>();
 
+    // Directory indexing customers by ID and accounts by account number
+    static BankDirectory directory = new BankDirectory();
+
+    // Binary transaction journal, or null when journaling is disabled
+    static TransactionJournal journal;
+
+    // The banking operations; replaced by one that journals when the journal is opened
+    static BankService service = new BankService(directory, null, false);
+
+    // Writes periodic balance snapshots of the journal, or null when journaling is disabled
+    static JournalCheckpointer journalCheckpointer;
+
+    // Force each journal record to disk before the change is acknowledged
+    private static final boolean JOURNAL_SYNC = Boolean.getBoolean("bank.journal.sync");
+
+    // Keeps Updated_Bank_users.csv up to date with the accounts that changed
+    static CsvCheckpointer checkpointer;
+
+    // The memory-mapped file holding the balances, or null unless -Dbank.ledger=mapped
+    static LedgerFile ledgerFile;
+
+    // The indexed customer snapshot read on demand and saved on exit, or null if none is used
+    private static final String CUSTOMER_SNAPSHOT = System.getProperty("bank.customer.snapshot");
+
+    // Reads customers from the snapshot as they are looked up, or null when they are loaded from the CSV file
+    static LazyDirectory lazyDirectory;
+
+    // CSV files at least this large are loaded by the ParallelCsvLoader
+    private static final long PARALLEL_CSV_THRESHOLD = 4L << 20;
+
+    // Store customers' personal details packed and shared; see CompactCustomer
+    private static final boolean COMPACT_CUSTOMERS = Boolean.getBoolean("bank.customer.compact");
+
+    // The number of recent balance changes shown after a balance inquiry
+    private static final int RECENT_ACTIVITY_SHOWN = 5;
+
     /**
      * Main method to run the banking system.
      * It initializes the customer data from a CSV file and presents a menu
      * for the user to perform various banking operations.
      *
-     * @param args Command-line arguments (not used).
+     * <p>
+     * Setting the {@code bank.log.durability} system property to {@code none},
+     * {@code interval} or {@code batch} enables the asynchronous transaction logger;
+     * {@code bank.log.fsyncMillis} and {@code bank.log.capacity} tune it.
+     * Setting {@code bank.journal.dir} also records every transaction in a binary
+     * {@link TransactionJournal} in that directory.
+     * </p>
+     *
+     * <p>
+     * The journal is a write-ahead log: every balance change is recorded before it is
+     * acknowledged, and on startup the balances are recovered from the newest
+     * {@link BalanceSnapshot} plus the journal records after it. Snapshots are written
+     * every {@code bank.snapshot.millis} milliseconds (1000 by default) once
+     * {@code bank.snapshot.records} records (100000 by default) have been appended, and on
+     * exit. Setting {@code bank.journal.sync} to {@code true} also forces each record to
+     * disk, so acknowledged changes survive a power failure and not only a crash.
+     * </p>
+     *
+     * <p>
+     * Changed balances are saved to {@code Updated_Bank_users.csv} in the background by a
+     * {@link CsvCheckpointer}, every {@code bank.checkpoint.millis} milliseconds (5000 by
+     * default) or once {@code bank.checkpoint.changes} accounts have changed (1000 by
+     * default). Setting {@code bank.checkpoint.millis} to 0 saves only on exit.
+     * </p>
+     *
+     * <p>
+     * Setting {@code bank.ledger} to {@code mapped} keeps the account columns in a
+     * {@link LedgerFile}, {@code bank.ledger.file} ({@code Bank_accounts.ledger} by
+     * default), mapped into memory so that every balance change is written through to
+     * it. On the next start the accounts in the CSV file take their balances from the
+     * ledger file instead, and only the journal records after the sequence its header
+     * says was forced are replayed onto them. {@code bank.ledger.force} sets
+     * when changes are forced to disk: {@code none}, {@code interval} (every
+     * {@code bank.ledger.forceMillis} milliseconds, 1000 by default, and on exit; the
+     * default) or {@code change}. Setting it to {@code offheap} instead keeps the
+     * columns in native memory outside the heap, with nothing written to a file; the
+     * JVM must then run with {@code --enable-preview}.
+     * </p>
+     *
+     * <p>
+     * Setting {@code bank.customer.snapshot} to a file name reads the customers from
+     * that {@link CustomerSnapshot} instead of the CSV file, each one only when it is
+     * first looked up, through a {@link LazyDirectory} holding at most
+     * {@code bank.customer.cache} customers (100000 by default). Changed balances are
+     * written back into the snapshot instead of {@code Updated_Bank_users.csv}, on the
+     * checkpoint schedule above and on exit. If the file does not exist yet, the
+     * customers are loaded from the CSV file as usual and the snapshot is written on
+     * exit. With the journal, the snapshot takes the place of its balance snapshots: each
+     * write-back records the journal sequence it covers, and on startup only the records
+     * after it are replayed, reading just the customers they changed.
+     * </p>
+     *
+     * <p>
+     * Latencies and counts of every operation are published through JMX by
+     * {@link BankMetrics}; setting {@code bank.metrics.millis} also writes them every that
+     * many milliseconds to {@code bank.metrics.file} ({@code BankMetrics.txt} by default).
+     * </p>
+     *
+     * <p>
+     * Running {@code java RunBank --batch <operations> [results]} executes an operations
+     * file with the {@link BatchRunner} instead of showing the menu, and
+     * {@code java RunBank --serve [port]} serves banking sessions over TCP with a
+     * {@link BankServer} until the process is interrupted.
+     * </p>
+     *
+     * @param args Command-line arguments: empty for the menu, {@code --batch} followed
+     *             by the operations file and optionally the results file, or
+     *             {@code --serve} optionally followed by the port.
      */
     public static void main(String[] args) {
 
-        // Parse the CSV file and create customer and account objects
-        LoadCSV("Bank_users.csv");
+        // Run an operations file without the menu, e.g. java RunBank --batch operations.csv
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            startup();
+            BatchRunner.run(args[1], args.length > 2 ? args[2] : args[1] + ".results.csv");
+            shutdown();
+            return;
+        }
+
+        // Serve banking sessions over TCP instead of the menu, e.g. java RunBank --serve 7070
+        if (args.length >= 1 && args[0].equals("--serve")) {
+            int port = args.length > 1 ? parsePort(args[1]) : BankServer.DEFAULT_PORT;
+            if (port < 0) {
+                System.err.println("Invalid port: " + args[1]);
+                System.err.println("Usage: java RunBank --serve [port], with a port from 0 to 65535");
+                return;
+            }
+            startup();
+            serve(port);
+            shutdown();
+            return;
+        }
+
+        startup();
 
         Scanner scanner = new Scanner(System.in);
 
@@ -64,7 +192,7 @@ public class RunBank {
                 case 6:
                     System.out.println("Exiting the system.");
                     scanner.close();
-                    saveToCSV("Updated_Bank_users.csv");
+                    shutdown();
                     return;
                 default:
                     System.out.println("Invalid choice, please try again.");
@@ -72,13 +200,296 @@ public class RunBank {
         }
     }
 
+    /**
+     * Lists the names of enum constants in lower case, as they are given in system
+     * properties.
+     *
+     * @param constants The constants.
+     * @return The names, such as {@code [batch, sync]}.
+     */
+    private static String lowerCaseNames(Enum<?>[] constants) {
+        List<String> names = new ArrayList<>(constants.length);
+        for (Enum<?> constant : constants) {
+            names.add(constant.name().toLowerCase());
+        }
+        return names.toString();
+    }
+
+    /**
+     * Parses the port of {@code --serve}.
+     *
+     * @param text The port as given on the command line.
+     * @return The port, or -1 if it is not a number from 0 to 65535.
+     */
+    private static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text.trim());
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Runs a {@link BankServer} until the process is interrupted, for example with
+     * Ctrl+C. The interrupt stops the server, and the process exits once
+     * {@link #shutdown()} has saved everything.
+     *
+     * @param port The port to listen on.
+     */
+    private static void serve(int port) {
+        BankServer server;
+        try {
+            server = new BankServer(port);
+        } catch (IOException e) {
+            System.err.println("Error starting bank server: " + e.getMessage());
+            return;
+        }
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                // Keep the process alive until the main thread has saved the data
+                mainThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "server-shutdown"));
+        server.serve();
+    }
+
+    /**
+     * Loads the customers and starts the logger, the journal and the checkpointers
+     * according to the system properties described in {@link #main(String[])}.
+     * Shared by the interactive menu and the {@link BatchRunner}.
+     */
+    static void startup() {
+        // Map the balances from a ledger file if requested, e.g. -Dbank.ledger=mapped;
+        // accounts already in the file keep the balance they have there
+        int ledgerAccounts = 0;
+        if (AccountStore.MAPPED) {
+            try {
+                ledgerFile = new LedgerFile(System.getProperty("bank.ledger.file", "Bank_accounts.ledger"),
+                        AccountStore.PAGE_SIZE, AccountStore.LEDGER_PAGE_BYTES);
+                ledgerAccounts = AccountStore.ACCOUNTS.openLedger(ledgerFile);
+            } catch (IOException e) {
+                System.err.println("Error opening ledger file, balances are kept in memory: " + e.getMessage());
+                ledgerFile = null;
+            }
+        }
+
+        // Read the customers on demand from a snapshot if there is one,
+        // e.g. -Dbank.customer.snapshot=Bank_users.snapshot
+        if (CUSTOMER_SNAPSHOT != null && new File(CUSTOMER_SNAPSHOT).isFile()) {
+            try {
+                lazyDirectory = new LazyDirectory(new CustomerSnapshot(CUSTOMER_SNAPSHOT),
+                        Integer.getInteger("bank.customer.cache", 100000));
+                directory = lazyDirectory;
+                service = new BankService(directory, null, false);
+            } catch (IOException e) {
+                System.err.println("Error opening customer snapshot: " + e.getMessage());
+            }
+        }
+
+        // Otherwise parse the CSV file and create customer and account objects
+        if (lazyDirectory == null) {
+            LoadCSV("Bank_users.csv");
+        }
+
+        if (ledgerFile != null) {
+            // Accounts read from a snapshot later still take over their slots
+            if (lazyDirectory == null) {
+                AccountStore.ACCOUNTS.releasePersisted();
+            }
+            if (ledgerAccounts > 0) {
+                System.out.println("Mapped " + ledgerAccounts + " account balances from the ledger file.");
+            }
+            String force = System.getProperty("bank.ledger.force", "interval");
+            LedgerFile.ForcePolicy policy = LedgerFile.ForcePolicy.INTERVAL;
+            try {
+                policy = LedgerFile.ForcePolicy.valueOf(force.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid ledger force policy: " + force + "; expected one of "
+                        + lowerCaseNames(LedgerFile.ForcePolicy.values()) + ". Using interval.");
+            }
+            ledgerFile.start(policy, Long.getLong("bank.ledger.forceMillis", 1000));
+        }
+
+        // Switch the transaction log to group-commit mode if requested,
+        // e.g. -Dbank.log.durability=batch
+        String logDurability = System.getProperty("bank.log.durability");
+        if (logDurability != null) {
+            AsyncLogWriter.Durability durability = null;
+            try {
+                durability = AsyncLogWriter.Durability.valueOf(logDurability.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid log durability: " + logDurability + "; expected one of "
+                        + lowerCaseNames(AsyncLogWriter.Durability.values())
+                        + ". The transaction log is written synchronously.");
+            }
+            if (durability != null) {
+                transactionLogger.startAsync(durability,
+                        Long.getLong("bank.log.fsyncMillis", 1000),
+                        Integer.getInteger("bank.log.capacity", 8192));
+            }
+        }
+
+        // Open the binary transaction journal if requested, e.g. -Dbank.journal.dir=journal,
+        // and recover the balances from its newest snapshot and the records after it
+        String journalDir = System.getProperty("bank.journal.dir");
+        if (journalDir != null) {
+            try {
+                journal = new TransactionJournal(journalDir);
+
+                // A customer snapshot and a reopened ledger file hold the changes up to the
+                // sequence in their header, so only the customers changed after it are read
+                long replayed;
+                if (lazyDirectory != null || ledgerAccounts > 0) {
+                    long applied = lazyDirectory != null ? lazyDirectory.getAppliedSequence() : Long.MAX_VALUE;
+                    if (ledgerAccounts > 0) {
+                        applied = Math.min(applied, ledgerFile.getAppliedSequence());
+                    }
+                    replayed = JournalRecovery.replayBalances(journalDir, directory, applied);
+                } else {
+                    replayed = JournalRecovery.recover(journalDir, directory);
+                }
+                if (replayed > 0) {
+                    System.out.println("Recovered " + replayed + " journal records.");
+                }
+                if (ledgerFile != null) {
+                    ledgerFile.trackJournal(journal::getNextSequence);
+                }
+                if (lazyDirectory != null) {
+                    lazyDirectory.trackJournal(journal::getNextSequence);
+                } else {
+                    journalCheckpointer = new JournalCheckpointer(journalDir, customerList,
+                            journal.getNextSequence());
+                    journalCheckpointer.start(journal, Long.getLong("bank.snapshot.millis", 1000),
+                            Long.getLong("bank.snapshot.records", 100000));
+                }
+            } catch (IOException e) {
+                System.err.println("Error opening transaction journal: " + e.getMessage());
+                journal = null;
+            }
+            service = new BankService(directory, journal, JOURNAL_SYNC);
+        }
+
+        // Save changed balances in the background, e.g. -Dbank.checkpoint.millis=5000,
+        // into the snapshot if the customers come from one
+        long checkpointMillis = Long.getLong("bank.checkpoint.millis", 5000);
+        int checkpointChanges = Integer.getInteger("bank.checkpoint.changes", 1000);
+        if (lazyDirectory != null) {
+            if (checkpointMillis > 0) {
+                lazyDirectory.start(checkpointMillis, checkpointChanges);
+            }
+        } else {
+            checkpointer = new CsvCheckpointer("Updated_Bank_users.csv", customerList, directory);
+            if (checkpointMillis > 0) {
+                checkpointer.start(checkpointMillis, checkpointChanges);
+            }
+        }
+
+        // Publish the metrics through JMX, and dump them to a file if requested,
+        // e.g. -Dbank.metrics.millis=10000
+        BankMetrics.registerMBeans();
+        long metricsMillis = Long.getLong("bank.metrics.millis", 0);
+        if (metricsMillis > 0) {
+            BankMetrics.startDump(System.getProperty("bank.metrics.file", "BankMetrics.txt"), metricsMillis);
+        }
+    }
+
+    /**
+     * Writes the final checkpoint and snapshot and stops the logger, the journal and the ledger file.
+     * Shared by the interactive menu and the {@link BatchRunner}.
+     */
+    static void shutdown() {
+        // Write the changes since the last checkpoint, and the snapshot for the next start
+        if (lazyDirectory != null) {
+            try {
+                lazyDirectory.close();
+                System.out.println("Data saved to customer snapshot successfully.");
+            } catch (IOException e) {
+                System.err.println("Error writing customer snapshot: " + e.getMessage());
+            }
+        } else {
+            try {
+                checkpointer.close();
+                System.out.println("Data saved to CSV successfully.");
+            } catch (IOException e) {
+                System.err.println("Error writing to CSV file: " + e.getMessage());
+            }
+            if (CUSTOMER_SNAPSHOT != null) {
+                try {
+                    CustomerSnapshot.write(CUSTOMER_SNAPSHOT, customerList,
+                            journal != null ? journal.getNextSequence() : 0);
+                } catch (IOException e) {
+                    System.err.println("Error writing customer snapshot: " + e.getMessage());
+                }
+            }
+        }
+        transactionLogger.shutdown();
+        if (journal != null) {
+            if (journalCheckpointer != null) {
+                try {
+                    journalCheckpointer.close(journal);
+                } catch (IOException e) {
+                    System.err.println("Error writing journal snapshot: " + e.getMessage());
+                }
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing transaction journal: " + e.getMessage());
+            }
+        }
+        if (ledgerFile != null) {
+            try {
+                ledgerFile.close();
+            } catch (IOException e) {
+                System.err.println("Error closing ledger file: " + e.getMessage());
+            }
+        }
+        BankMetrics.stopDump();
+    }
+
     /**
      * Parses a CSV file and creates Customer and Account objects.
      * Populates the customer list with created objects.
      *
+     * <p>
+     * Files of 4 MB or more are memory-mapped and parsed in parallel by the
+     * {@link ParallelCsvLoader}; smaller files are read line by line. Setting the
+     * {@code bank.csv.loader} system property to {@code parallel} or {@code sequential}
+     * forces one or the other. Either way, the directory's name and phone indexes are
+     * built once the file has been read.
+     * </p>
+     *
      * @param filePath The path to the CSV file.
      */
     public static void LoadCSV(String filePath) {
+        String loader = System.getProperty("bank.csv.loader", "");
+        boolean parallel = loader.equalsIgnoreCase("parallel")
+                || (!loader.equalsIgnoreCase("sequential") && new File(filePath).length() >= PARALLEL_CSV_THRESHOLD);
+        if (parallel) {
+            try {
+                ArrayList<Customer> loaded = ParallelCsvLoader.load(filePath);
+
+                // Presize the list and the directory, then add the customers in file order
+                customerList.ensureCapacity(customerList.size() + loaded.size());
+                directory.ensureCapacity(directory.customerCount() + loaded.size());
+                customerList.addAll(loaded);
+                for (Customer customer : loaded) {
+                    directory.addCustomer(customer);
+                }
+                directory.buildSearchIndexes();
+            } catch (IOException e) {
+                System.err.println("Error reading CSV file: " + e.getMessage());
+            } catch (IllegalStateException e) {
+                System.err.println("Error loading customers: " + e.getMessage());
+            }
+            return;
+        }
+
         String line;
 
         try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
@@ -100,32 +511,85 @@ public class RunBank {
 
                 // Convert account data from the CSV fields
                 int checkingAccountNumber = parseInt(values[6].trim(), 0);
-                double checkingStartingBalance = parseDouble(values[7].trim(), 0.0);
+                long checkingStartingBalance = parseMoney(values[7].trim(), 0);
                 int savingsAccountNumber = parseInt(values[8].trim(), 0);
-                double savingsStartingBalance = parseDouble(values[9].trim(), 0.0);
+                long savingsStartingBalance = parseMoney(values[9].trim(), 0);
                 int creditAccountNumber = parseInt(values[10].trim(), 0);
-                double creditMax = parseDouble(values[11].trim(), 0.0);
-                double creditStartingBalance = parseDouble(values[12].trim(), 0.0);
+                long creditMax = parseMoney(values[11].trim(), 0);
+                long creditStartingBalance = parseMoney(values[12].trim(), 0);
 
-                // Create the customer object
-                Customer customer = new Customer(identificationNumber, firstName, lastName, birthDate, address, phoneNumber);
+                // Create the customer and account objects
+                Customer customer = createCustomer(identificationNumber, firstName, lastName, birthDate,
+                        address, phoneNumber, checkingAccountNumber, checkingStartingBalance,
+                        savingsAccountNumber, savingsStartingBalance, creditAccountNumber, creditMax,
+                        creditStartingBalance);
 
-                // Create account objects for the customer
-                Account checking = new Checking(checkingAccountNumber, checkingStartingBalance);
-                Account savings = new Saving(savingsAccountNumber, savingsStartingBalance);
-                Account credit = new Credit(creditAccountNumber, creditMax, creditStartingBalance);
-
-                // Add accounts to the customer
-                customer.addAccount(checking);
-                customer.addAccount(savings);
-                customer.addAccount(credit);
-
-                // Add the customer to the list
+                // Add the customer to the list and the directory
                 customerList.add(customer);
+                directory.addCustomer(customer);
             }
         } catch (IOException e) {
             System.err.println("Error reading CSV file: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            System.err.println("Error loading customers: " + e.getMessage());
+            return;
         }
+
+        // Sort the loaded customers into the last-name index once
+        directory.buildSearchIndexes();
+    }
+
+    /**
+     * Creates a customer with a checking, a savings and a credit account. With
+     * {@code -Dbank.customer.compact=true} the customer is a {@link CompactCustomer}
+     * unless its names cannot be packed.
+     *
+     * @param id                    The ID of the customer.
+     * @param firstName             The first name of the customer.
+     * @param lastName              The last name of the customer.
+     * @param birthDate             The birth date of the customer.
+     * @param address               The address of the customer.
+     * @param phoneNumber           The phone number of the customer.
+     * @param checkingAccountNumber The checking account number.
+     * @param checkingBalance       The checking balance, in cents.
+     * @param savingsAccountNumber  The savings account number.
+     * @param savingsBalance        The savings balance, in cents.
+     * @param creditAccountNumber   The credit account number.
+     * @param creditMax             The credit limit, in cents.
+     * @param creditBalance         The credit balance, in cents.
+     * @return The new customer.
+     */
+    static Customer createCustomer(int id, String firstName, String lastName, String birthDate,
+            String address, String phoneNumber, int checkingAccountNumber, long checkingBalance,
+            int savingsAccountNumber, long savingsBalance, int creditAccountNumber, long creditMax,
+            long creditBalance) {
+        Customer customer = createCustomer(id, firstName, lastName, birthDate, address, phoneNumber);
+
+        // Add accounts to the customer
+        customer.addAccount(new Checking(checkingAccountNumber, checkingBalance));
+        customer.addAccount(new Saving(savingsAccountNumber, savingsBalance));
+        customer.addAccount(new Credit(creditAccountNumber, creditMax, creditBalance));
+        return customer;
+    }
+
+    /**
+     * Creates a customer without accounts: a {@link CompactCustomer} with
+     * {@code -Dbank.customer.compact=true}, unless its names cannot be packed.
+     *
+     * @param id          The ID of the customer.
+     * @param firstName   The first name of the customer.
+     * @param lastName    The last name of the customer.
+     * @param birthDate   The birth date of the customer.
+     * @param address     The address of the customer.
+     * @param phoneNumber The phone number of the customer.
+     * @return The new customer.
+     */
+    static Customer createCustomer(int id, String firstName, String lastName, String birthDate,
+            String address, String phoneNumber) {
+        Customer customer = COMPACT_CUSTOMERS
+                ? CompactCustomer.create(id, firstName, lastName, birthDate, address, phoneNumber)
+                : null;
+        return customer != null ? customer : new PlainCustomer(id, firstName, lastName, birthDate, address, phoneNumber);
     }
 
     /**
@@ -149,18 +613,11 @@ public class RunBank {
             scanner.nextLine();
 
             // Find the account by number
-            Account account = customer.getAccountByNumber(accountNumber);
+            Account account = findAccountByNumber(customer, accountNumber);
             if (account != null) {
                 System.out.println(account.getAccountDetails() + "\n");
-
-                String logMessage = customer.getFirstName() + " " + customer.getLastName() 
-                + " made a balance inquiry on " + account.getAccountType() 
-                + "-" + account.getAccountNumber() + ". " + customer.getFirstName() 
-                + " " + customer.getLastName() + "'s Balance for " 
-                + account.getAccountType() + "-" + account.getAccountNumber() + ": $" 
-                + account.getBalance();
-                transactionLogger.log(logMessage);
-
+                service.inquire(customerID, accountNumber);
+                printRecentActivity(service.recentActivity(customerID, accountNumber, RECENT_ACTIVITY_SHOWN));
             } else {
                 System.out.println("Account not found.");
             }
@@ -169,6 +626,31 @@ public class RunBank {
         }
     }
 
+    /**
+     * Prints the latest balance changes of an account, newest first, if there are any.
+     *
+     * @param entries The changes, or {@code null}.
+     */
+    private static void printRecentActivity(List<RecentActivity.Entry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        System.out.println("Recent activity:");
+        StringBuilder line = new StringBuilder(80);
+        for (RecentActivity.Entry entry : entries) {
+            String type = entry.getType().name();
+            line.setLength(0);
+            line.append("  ").append(type.charAt(0)).append(type.substring(1).toLowerCase()).append(" $");
+            Money.append(line, entry.getAmount());
+            if (entry.getCounterparty() != 0) {
+                line.append(", account ").append(entry.getCounterparty());
+            }
+            line.append(". Balance: $");
+            Money.append(line, entry.getBalance());
+            System.out.println(line);
+        }
+    }
+
     /**
      * Handles money deposit for a customer.
      *
@@ -187,26 +669,18 @@ public class RunBank {
             scanner.nextLine();
 
             // Find the account by number
-            Account account = customer.getAccountByNumber(accountNumber);
+            Account account = findAccountByNumber(customer, accountNumber);
             if (account != null) {
                 System.out.println("Enter deposit amount: ");
-                double amount = scanner.nextDouble();
-                scanner.nextLine();
-
-                // Perform deposit operation
-                account.deposit(amount);
-                System.out.println("Deposit successful. New balance: " + account.getBalance());
-
-                String logMessage = customer.getFirstName() + " " + customer.getLastName() 
-                + " deposited $" + amount + " to " + account.getAccountType() + "-" 
-                + account.getAccountNumber() + ". " + customer.getFirstName() 
-                + " " + customer.getLastName() + "'s New Balance for " 
-                + account.getAccountType() + "-" + account.getAccountNumber() + ": $" 
-                + account.getBalance();
-                transactionLogger.log(logMessage);  
-
-
+                long amount = readAmount(scanner);
 
+                // Perform deposit operation, recorded before it is acknowledged
+                BankService.Result result = service.deposit(customerID, accountNumber, amount);
+                if (result.isOk()) {
+                    System.out.println("Deposit successful. New balance: " + Money.toString(result.getBalance()));
+                } else {
+                    System.out.println(result.getMessage());
+                }
             } else {
                 System.out.println("Account not found.");
             }
@@ -216,18 +690,25 @@ public class RunBank {
     }
 
     /**
-     * Finds a customer by ID in the customer list.
+     * Finds a customer by ID in the customer directory.
      *
      * @param customerID The ID of the customer.
      * @return The customer object if found, otherwise null.
      */
-    private static Customer findCustomerById(int customerID) {
-        for (Customer customer : customerList) {
-            if (customer.getId() == customerID) {
-                return customer;
-            }
-        }
-        return null;  // Customer not found
+    static Customer findCustomerById(int customerID) {
+        return service.findCustomer(customerID);
+    }
+
+    /**
+     * Finds an account by number in the customer directory, only if it
+     * belongs to the given customer.
+     *
+     * @param customer      The customer who must own the account.
+     * @param accountNumber The account number to look up.
+     * @return The account object if found, otherwise null.
+     */
+    static Account findAccountByNumber(Customer customer, int accountNumber) {
+        return service.findAccount(customer, accountNumber);
     }
 
     /**
@@ -247,28 +728,46 @@ public class RunBank {
     }
 
     /**
-     * Parses a string to a double, returns a default value if parsing fails.
+     * Parses a dollar amount to cents, returns a default value if parsing fails.
+     * Amounts written by older versions as {@code double} text are rounded to the nearest cent.
      *
      * @param value The string to parse.
-     * @param defaultValue The default value to return in case of error.
-     * @return The parsed double or the default value.
+     * @param defaultValue The default value in cents to return in case of error.
+     * @return The parsed amount in cents or the default value.
      */
-    private static double parseDouble(String value, double defaultValue) {
+    private static long parseMoney(String value, long defaultValue) {
         try {
-            return Double.parseDouble(value);
+            return Money.parseLegacy(value);
         } catch (NumberFormatException e) {
-            System.out.println("Error parsing double: " + value + ". Using default: " + defaultValue);
+            System.out.println("Error parsing amount: " + value + ". Using default: " + Money.toString(defaultValue));
             return defaultValue;
         }
     }
 
+    /**
+     * Reads a dollar amount entered by the user.
+     *
+     * @param scanner The scanner object for user input.
+     * @return The amount in cents, or 0 if the input is not a valid amount.
+     */
+    private static long readAmount(Scanner scanner) {
+        String input = scanner.next();
+        scanner.nextLine();
+        try {
+            return Money.parse(input);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid amount: " + input);
+            return 0;
+        }
+    }
+
     /**
      * Parses a CSV line handling commas inside quotes.
      *
      * @param line The CSV line to parse.
      * @return An array of tokens from the CSV line.
      */
-    private static String[] parseCSVLine(String line) {
+    static String[] parseCSVLine(String line) {
         boolean inQuotes = false;
         StringBuilder sb = new StringBuilder();
         String[] tokens = new String[13];  // Adjust the size based on expected fields
@@ -315,27 +814,17 @@ public class RunBank {
             scanner.nextLine();
     
             // Find the account by number
-            Account account = customer.getAccountByNumber(accountNumber);
+            Account account = findAccountByNumber(customer, accountNumber);
             if (account != null) {
                 System.out.println("Enter withdrawal amount: ");
-                double amount = scanner.nextDouble();
-                scanner.nextLine();
+                long amount = readAmount(scanner);
     
-                // Check if withdrawal is possible
-                if (amount > account.getBalance()) {
-                    System.out.println("Insufficient funds. Withdrawal amount exceeds current balance.");
+                // Check and withdraw the amount in one atomic step, recorded before it is acknowledged
+                BankService.Result result = service.withdraw(customerID, accountNumber, amount);
+                if (result.isOk()) {
+                    System.out.println("Withdrawal successful. New balance: " + Money.toString(result.getBalance()));
                 } else {
-                    // Attempt to withdraw the amount
-                    account.withdraw(amount);
-                    System.out.println("Withdrawal successful. New balance: " + account.getBalance());
-    
-                    String logMessage = customer.getFirstName() + " " + customer.getLastName() 
-                    + " withdrew $" + amount + " in cash from " + account.getAccountType() 
-                    + "-" + account.getAccountNumber() + ". " 
-                    + customer.getFirstName() + " " + customer.getLastName() 
-                    + "'s Balance for " + account.getAccountType() 
-                    + "-" + account.getAccountNumber() + ": $" + account.getBalance();
-                    transactionLogger.log(logMessage);
+                    System.out.println(result.getMessage());
                 }
             } else {
                 System.out.println("Account not found.");
@@ -364,7 +853,7 @@ public class RunBank {
             scanner.nextLine();
     
             // Find the sender's source account
-            Account sourceAccount = sender.getAccountByNumber(sourceAccountNumber);
+            Account sourceAccount = findAccountByNumber(sender, sourceAccountNumber);
             if (sourceAccount != null) {
                 System.out.println("Enter target customer ID: ");
                 int targetCustomerID = scanner.nextInt();
@@ -378,32 +867,18 @@ public class RunBank {
                     scanner.nextLine();
     
                     // Find the receiver's target account
-                    Account targetAccount = receiver.getAccountByNumber(targetAccountNumber);
+                    Account targetAccount = findAccountByNumber(receiver, targetAccountNumber);
                     if (targetAccount != null) {
                         System.out.println("Enter transfer amount: ");
-                        double amount = scanner.nextDouble();
-                        scanner.nextLine();
+                        long amount = readAmount(scanner);
     
-                        // Check if transfer is possible
-                        if (amount > sourceAccount.getBalance()) {
-                            System.out.println("Insufficient funds. Transfer amount exceeds current balance.");
+                        // Check and transfer the amount in one atomic step, recorded before it is acknowledged
+                        BankService.Result result = service.transfer(customerID, sourceAccountNumber, amount,
+                                targetCustomerID, targetAccountNumber);
+                        if (result.isOk()) {
+                            System.out.println("Transfer successful. New balance: " + Money.toString(result.getBalance()));
                         } else {
-                            // Attempt to transfer the amount
-                            sourceAccount.transfer(targetAccount, amount);
-                            System.out.println("Transfer successful. New balance: " + sourceAccount.getBalance());
-    
-                            String logMessage = sender.getFirstName() + " " + sender.getLastName() 
-                            + " transferred $" + amount + " from " + sourceAccount.getAccountType() 
-                            + "-" + sourceAccount.getAccountNumber() + " to " 
-                            + receiver.getFirstName() + " " + receiver.getLastName() 
-                            + "'s " + targetAccount.getAccountType() + "-" + targetAccount.getAccountNumber() + ". "
-                            + sender.getFirstName() + " " + sender.getLastName() + "'s New Balance for " 
-                            + sourceAccount.getAccountType() + "-" + sourceAccount.getAccountNumber() + ": $" 
-                            + sourceAccount.getBalance() + ". " + receiver.getFirstName() 
-                            + " " + receiver.getLastName() + "'s New Balance for " 
-                            + targetAccount.getAccountType() + "-" + targetAccount.getAccountNumber() + ": $" 
-                            + targetAccount.getBalance();
-                            transactionLogger.log(logMessage);
+                            System.out.println(result.getMessage());
                         }
                     } else {
                         System.out.println("Target account not found.");
@@ -438,7 +913,7 @@ public class RunBank {
             scanner.nextLine();
 
             // Find the payer's credit account
-            Account creditAccount = payer.getAccountByNumber(accountNumber);
+            Account creditAccount = findAccountByNumber(payer, accountNumber);
             if (creditAccount != null && creditAccount instanceof Credit) {
                 System.out.println("Enter receiver's customer ID: ");
                 int receiverID = scanner.nextInt();
@@ -448,21 +923,15 @@ public class RunBank {
                 Customer receiver = findCustomerById(receiverID);
                 if (receiver != null) {
                     System.out.println("Enter payment amount: ");
-                    double amount = scanner.nextDouble();
-                    scanner.nextLine();
+                    long amount = readAmount(scanner);
 
-                    // Attempt to make the payment
-                    ((Credit) creditAccount).pay(amount, receiver);
-                    System.out.println("Payment successful. New credit balance: " + creditAccount.getBalance());
-
-                    String logMessage = payer.getFirstName() + " " + payer.getLastName() 
-                    + " paid " + receiver.getFirstName() + " " + receiver.getLastName() 
-                    + " $" + amount + " from " + creditAccount.getAccountType() 
-                    + "-" + creditAccount.getAccountNumber() + ". " 
-                    + payer.getFirstName() + " " + payer.getLastName() 
-                    + "'s New Balance for " + creditAccount.getAccountType() 
-                    + "-" + creditAccount.getAccountNumber() + ": $" + creditAccount.getBalance();
-                    transactionLogger.log(logMessage);
+                    // Attempt to make the payment, recorded before it is acknowledged
+                    BankService.Result result = service.pay(customerID, accountNumber, amount, receiverID);
+                    if (result.isOk()) {
+                        System.out.println("Payment successful. New credit balance: " + Money.toString(result.getBalance()));
+                    } else {
+                        System.out.println(result.getMessage());
+                    }
                 } else {
                     System.out.println("Receiver not found.");
                 }
@@ -473,70 +942,27 @@ public class RunBank {
             System.out.println("Payer not found.");
         }
     }
-        /**
- * Saves the current customer and account information to a CSV file.
- *
- * @param filePath The path to save the CSV file.
- */
+    /**
+     * Saves the current customer and account information to a CSV file.
+     * The whole file is rewritten; see {@link CsvCheckpointer} for incremental saves.
+     *
+     * @param filePath The path to save the CSV file.
+     */
     public static void saveToCSV(String filePath) {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath))) {
             // Write the CSV header
-            bw.write("Identification Number,First Name,Last Name,Date of Birth,Address,Phone Number,"
-                    + "Checking Account Number,Checking Starting Balance,Savings Account Number,"
-                    + "Savings Starting Balance,Credit Account Number,Credit Max,Credit Starting Balance\n");
+            bw.write(CsvCheckpointer.HEADER);
 
             // Write each customer's information
+            StringBuilder line = new StringBuilder();
             for (Customer customer : customerList) {
-                StringBuilder line = new StringBuilder();
-
-                // Extract customer information
-                line.append(customer.getId()).append(",");
-                line.append(customer.getFirstName()).append(",");
-                line.append(customer.getLastName()).append(",");
-                line.append(customer.getBirthDate()).append(",");
-                line.append("\"").append(customer.getAddress()).append("\","); // Handle commas in addresses
-                line.append(customer.getPhoneNumber()).append(",");
-
-                // Extract checking account information
-                Account checking = customer.getAccountByType("Checking");
-                if (checking != null) {
-                    line.append(checking.getAccountNumber()).append(",");
-                    line.append(checking.getBalance()).append(",");
-                } else {
-                    line.append("0,0,"); // Default for missing account
-                }
-
-                // Extract savings account information
-                Account savings = customer.getAccountByType("Saving");
-                if (savings != null) {
-                    line.append(savings.getAccountNumber()).append(",");
-                    line.append(savings.getBalance()).append(",");
-                } else {
-                    line.append("0,0,"); // Default for missing account
-                }
-
-                // Extract credit account information
-                Account credit = customer.getAccountByType("Credit");
-                if (credit != null && credit instanceof Credit) {
-                    Credit creditAccount = (Credit) credit;
-                    line.append(creditAccount.getAccountNumber()).append(",");
-                    line.append(creditAccount.getMaxCredit()).append(",");
-                    line.append(creditAccount.getBalance()).append(",");
-                } else {
-                    line.append("0,0,0,"); // Default for missing account
-                }
-
-                // Write the line to the file
-                bw.write(line.toString() + "\n");
+                line.setLength(0);
+                bw.append(CsvCheckpointer.appendRow(line, customer));
             }
 
             System.out.println("Data saved to CSV successfully.");
         } catch (IOException e) {
             System.err.println("Error writing to CSV file: " + e.getMessage());
         }
-
     }
 }
-
-
-
@@ -14,20 +14,20 @@
 public class Saving extends Account {
 
     /**
-     * The interest rate applied to the savings account. 
-     * This is a constant value set to 2% (0.02).
+     * The interest rate applied to the savings account, in basis points. 
+     * This is a constant value set to 2% (200 basis points).
      */
-    private static final double INTEREST_RATE = 0.02; // Example interest rate
+    static final long INTEREST_RATE_BASIS_POINTS = 200; // Example interest rate
 
     /**
      * Constructs a new {@code Saving} account with the specified account number
      * and initial balance.
      * 
      * @param accountNumber The unique number associated with this account.
-     * @param balance       The initial balance of the account.
+     * @param balance       The initial balance of the account, in cents.
      */
-    public Saving(int accountNumber, double balance) {
-        super(accountNumber, balance);
+    public Saving(int accountNumber, long balance) {
+        super(accountNumber, AccountType.SAVING, balance, 0);
     }
 
     /**
@@ -35,11 +35,11 @@ public class Saving extends Account {
      * 
      * <p>
      * The interest is calculated based on the current balance and the interest rate,
-     * and then added to the balance.
+     * rounded to the nearest cent, and then added to the balance.
      * </p>
      */
     public void addInterest() {
-        balance += balance * INTEREST_RATE;
+        updateBalance(current -> Money.add(current, Money.applyRate(current, INTEREST_RATE_BASIS_POINTS)));
     }
 
     /**
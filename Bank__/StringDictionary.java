@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary that stores each distinct string once and refers to it by a small
+ * {@code int} code.
+ *
+ * <p>
+ * The {@code StringDictionary} class is used for customer fields that repeat across
+ * many rows, such as addresses: every customer with the same address keeps the same
+ * code, and the string itself is kept once for all of them. Decoding is one array load
+ * and returns the shared string, so it allocates nothing. Strings may be added from
+ * many threads at once; codes are handed out in the order strings are first seen.
+ * </p>
+ *
+ * @see CompactCustomer
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class StringDictionary {
+
+    /**
+     * The code of each string.
+     */
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+    /**
+     * The strings, indexed by code; only the first {@link #size} are used. Replaced by a
+     * larger copy when full.
+     */
+    private volatile String[] strings = new String[64];
+
+    /**
+     * The number of strings in the dictionary.
+     */
+    private int size;
+
+    /**
+     * Returns the code of a string, adding the string if it is new.
+     *
+     * @param text The string. Must not be null.
+     * @return The code.
+     */
+    public int encode(String text) {
+        Integer code = codes.get(text);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(text);
+            if (code != null) {
+                return code;
+            }
+            if (size == strings.length) {
+                strings = Arrays.copyOf(strings, size * 2);
+            }
+            strings[size] = text;
+            codes.put(text, size);  // Publishes the string with its code
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the string of a code.
+     *
+     * @param code A code returned by {@link #encode}.
+     * @return The shared string.
+     */
+    public String decode(int code) {
+        return strings[code];
+    }
+
+    /**
+     * Returns the number of distinct strings in the dictionary.
+     *
+     * @return The number of strings.
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
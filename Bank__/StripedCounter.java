@@ -0,0 +1,83 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A counter that many threads can add to without contending on one memory location.
+ *
+ * <p>
+ * The {@code StripedCounter} class keeps one cell per stripe, each on its own cache
+ * line, and each thread adds to the cell picked by its identity hash code with a single
+ * atomic add. Reading the counter sums the cells, so adding is cheap and reading is
+ * comparatively expensive, which suits statistics that are updated on every operation
+ * and read now and then. Adding never allocates and never takes a lock.
+ * </p>
+ *
+ * @see LatencyHistogram
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public final class StripedCounter {
+
+    /**
+     * The number of stripes: the number of cores rounded up to a power of two, at most 64.
+     */
+    static final int STRIPES = Math.min(64, Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+    /**
+     * The distance between two cells, in {@code long}s, so that each sits on its own
+     * 64-byte cache line.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * Atomic access to the cells.
+     */
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * The cells, one every {@link #PADDING} elements.
+     */
+    private final long[] cells = new long[STRIPES * PADDING];
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds a value to the counter.
+     *
+     * @param value The value to add.
+     */
+    public void add(long value) {
+        CELLS.getAndAdd(cells, stripe() * PADDING, value);
+    }
+
+    /**
+     * Returns the sum of every value added so far. Values added while the sum is being
+     * computed may or may not be included.
+     *
+     * @return The sum.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length; i += PADDING) {
+            sum += (long) CELLS.getVolatile(cells, i);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the stripe of the calling thread.
+     *
+     * @return A stripe number from 0 to {@link #STRIPES} minus one.
+     */
+    static int stripe() {
+        int hash = System.identityHashCode(Thread.currentThread());
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
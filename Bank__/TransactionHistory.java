@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Answers history queries on an account from the transaction log.
+ *
+ * <p>
+ * The {@code TransactionHistory} class looks up the log lines of an account in a
+ * {@link TransactionLogIndex} and reads only those lines, each with one positional read
+ * at its offset, so the time a query takes depends on the number of lines it returns
+ * and not on the size of the log. While the bank is running, {@link transactionLogger#history()}
+ * returns the history of the live log. The history of a log can also be printed:
+ * </p>
+ *
+ * <pre>
+ * java TransactionHistory 1048 50
+ * java TransactionHistory 1048 --from 2026-10-01T00:00:00Z --to 2026-10-02T00:00:00Z
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class TransactionHistory {
+
+    /**
+     * One log line of an account.
+     */
+    public static final class Entry {
+        private final long offset;
+        private final long timeMillis;
+        private final String text;
+
+        Entry(long offset, long timeMillis, String text) {
+            this.offset = offset;
+            this.timeMillis = timeMillis;
+            this.text = text;
+        }
+
+        /**
+         * Returns the offset of the line in the log file.
+         *
+         * @return The offset in bytes.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the time the line was written, or the time the log was last modified
+         * for lines indexed after the fact.
+         *
+         * @return The time in epoch milliseconds.
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * Returns the text of the line.
+         *
+         * @return The line, without its line separator.
+         */
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * The path of the log file.
+     */
+    private final String logFile;
+
+    /**
+     * The index of the log file.
+     */
+    private final TransactionLogIndex index;
+
+    /**
+     * Constructs a new {@code TransactionHistory}.
+     *
+     * @param logFile The path of the log file.
+     * @param index   The index of the log file.
+     */
+    public TransactionHistory(String logFile, TransactionLogIndex index) {
+        this.logFile = logFile;
+        this.index = index;
+    }
+
+    /**
+     * Prints the last lines of an account, or its lines in a time range.
+     *
+     * @param args The account number, followed by either the number of lines (default
+     *             50) or {@code --from} and {@code --to} instants, and optionally
+     *             {@code --log} with the log file (default {@code TransactionLog.txt}).
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java TransactionHistory <account number> [count | --from <instant> --to <instant>]"
+                    + " [--log TransactionLog.txt]");
+            return;
+        }
+        int accountNumber;
+        int count = 50;
+        Instant from = null;
+        Instant to = null;
+        String log = transactionLogger.LOG_FILE;
+        try {
+            accountNumber = Integer.parseInt(args[0]);
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--from":
+                        from = Instant.parse(args[++i]);
+                        break;
+                    case "--to":
+                        to = Instant.parse(args[++i]);
+                        break;
+                    case "--log":
+                        log = args[++i];
+                        break;
+                    default:
+                        count = Integer.parseInt(args[i]);
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            return;
+        }
+
+        try {
+            // Read-only, so the index file of a running bank is left alone
+            TransactionLogIndex index = new TransactionLogIndex(log, log + transactionLogger.INDEX_SUFFIX, false);
+            TransactionHistory history = new TransactionHistory(log, index);
+            List<Entry> entries = from != null || to != null
+                    ? history.between(accountNumber, from != null ? from.toEpochMilli() : Long.MIN_VALUE,
+                            to != null ? to.toEpochMilli() : Long.MAX_VALUE)
+                    : history.last(accountNumber, count);
+            for (Entry entry : entries) {
+                System.out.println(Instant.ofEpochMilli(entry.getTimeMillis()) + " " + entry.getText());
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading transaction log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the last lines of an account.
+     *
+     * @param accountNumber The account number.
+     * @param count         The largest number of lines to return.
+     * @return The lines, oldest first.
+     * @throws IOException If the log cannot be read.
+     */
+    public List<Entry> last(int accountNumber, int count) throws IOException {
+        return read(index.last(accountNumber, count));
+    }
+
+    /**
+     * Returns the lines of an account written in a time range.
+     *
+     * @param accountNumber The account number.
+     * @param fromMillis    The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis      The end of the range in epoch milliseconds, exclusive.
+     * @return The lines, oldest first.
+     * @throws IOException If the log cannot be read.
+     */
+    public List<Entry> between(int accountNumber, long fromMillis, long toMillis) throws IOException {
+        return read(index.between(accountNumber, fromMillis, toMillis));
+    }
+
+    /**
+     * Reads the lines at the offsets of some postings.
+     */
+    private List<Entry> read(TransactionLogIndex.Postings postings) throws IOException {
+        ArrayList<Entry> entries = new ArrayList<>(postings.size);
+        if (postings.size == 0) {
+            return entries;
+        }
+        try (FileChannel file = FileChannel.open(Paths.get(logFile), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            for (int i = 0; i < postings.size; i++) {
+                String text = readLine(file, postings.offsets[i], buffer);
+                entries.add(new Entry(postings.offsets[i], postings.times[i], text));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the line starting at an offset, reading again with a larger buffer if the
+     * line does not fit.
+     */
+    private static String readLine(FileChannel file, long offset, ByteBuffer buffer) throws IOException {
+        byte[] bytes = buffer.array();
+        int length = 0;
+        while (true) {
+            buffer.clear().position(length);
+            int read = file.read(buffer, offset + length);
+            if (read <= 0) {
+                break;  // The last line of the file
+            }
+            int end = length + read;
+            for (int i = length; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    int stop = i > 0 && bytes[i - 1] == '\r' ? i - 1 : i;
+                    return new String(bytes, 0, stop, StandardCharsets.UTF_8);
+                }
+            }
+            length = end;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+                buffer = ByteBuffer.wrap(bytes);
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
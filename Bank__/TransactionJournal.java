@@ -0,0 +1,504 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A binary journal of transactions made of fixed-width records.
+ *
+ * <p>
+ * Records are appended through a {@link MappedByteBuffer} over segment files that are
+ * pre-allocated in a journal directory. Every record is {@value #RECORD_SIZE} bytes, so
+ * the position of a record is computed rather than searched for, and reading one back
+ * is a handful of absolute loads with no text parsing. Segment files are named after
+ * the sequence number of their first record and are read back by {@link JournalReader}.
+ * </p>
+ *
+ * <p>
+ * Recovery replays the records in sequence order, so the records of one account must be
+ * in the order its balance changed. A caller makes sure of that by holding the account's
+ * lock in {@link AccountLocks} from before a change becomes visible until its record is
+ * appended. Changes of different accounts are made and recorded in parallel: only the
+ * stores of one record are made under the journal's own lock, which also keeps every
+ * record before {@link #getNextSequence()} complete. So that appending after a change
+ * cannot fail, the caller first {@linkplain #reserve(int) reserves} room, which maps the
+ * segments the reserved records need, and then appends with
+ * {@link #appendReserved appendReserved}. A full segment is forced once by the next
+ * reservation or {@link #force()}.
+ * </p>
+ *
+ * <p>
+ * Record layout (all values big-endian):
+ * </p>
+ * <pre>
+ *  offset  size  field
+ *       0     8  sequence number
+ *       8     8  timestamp, milliseconds since the epoch
+ *      16     4  transaction type code (0 marks an unused record)
+ *      20     4  source customer ID
+ *      24     4  source account number
+ *      28     4  target customer ID
+ *      32     4  target account number
+ *      36     4  reserved
+ *      40     8  amount in cents
+ *      48     8  source balance after the transaction, in cents
+ *      56     8  target balance after the transaction, in cents
+ * </pre>
+ *
+ * @see JournalReader
+ * @see TransactionType
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class TransactionJournal {
+
+    /**
+     * The size of one record in bytes.
+     */
+    public static final int RECORD_SIZE = 64;
+
+    /**
+     * The default number of records in one segment file (64 MB per segment).
+     */
+    public static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 20;
+
+    /**
+     * The file name suffix of a segment file.
+     */
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    // Field offsets within a record
+    static final int SEQUENCE_OFFSET = 0;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int TYPE_OFFSET = 16;
+    static final int SOURCE_CUSTOMER_OFFSET = 20;
+    static final int SOURCE_ACCOUNT_OFFSET = 24;
+    static final int TARGET_CUSTOMER_OFFSET = 28;
+    static final int TARGET_ACCOUNT_OFFSET = 32;
+    static final int AMOUNT_OFFSET = 40;
+    static final int SOURCE_BALANCE_OFFSET = 48;
+    static final int TARGET_BALANCE_OFFSET = 56;
+
+    /**
+     * Guards the segments, the position, the sequence counter and the reservations.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Held while full segments are forced, so that a force returns only once every
+     * segment filled before it is on disk.
+     */
+    private final ReentrantLock forceLock = new ReentrantLock();
+
+    /**
+     * The directory holding the segment files.
+     */
+    private final File directory;
+
+    /**
+     * The number of records in one segment file.
+     */
+    private final int recordsPerSegment;
+
+    /**
+     * The mapping of the segment currently being appended to.
+     */
+    private MappedByteBuffer segment;
+
+    /**
+     * The byte position of the next record within the current segment.
+     */
+    private int position;
+
+    /**
+     * The sequence number that the next appended record will receive.
+     */
+    private long nextSequence;
+
+    /**
+     * The segments mapped for reserved records, after the current one, oldest first.
+     */
+    private final ArrayDeque<MappedByteBuffer> spares = new ArrayDeque<>();
+
+    /**
+     * The sequence number after the last record of the newest mapped segment.
+     */
+    private long mappedEnd;
+
+    /**
+     * The number of records reserved and not yet appended or cancelled.
+     */
+    private long reserved;
+
+    /**
+     * The segments that filled up and have not been forced yet, oldest first.
+     */
+    private final ArrayDeque<MappedByteBuffer> filled = new ArrayDeque<>();
+
+    /**
+     * Opens the journal in the given directory with the default segment size,
+     * creating the directory if needed.
+     *
+     * @param directory The journal directory.
+     * @throws IOException If the directory or a segment file cannot be opened.
+     */
+    public TransactionJournal(String directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT);
+    }
+
+    /**
+     * Opens the journal in the given directory, creating the directory if needed.
+     * Appending continues after the last record already present.
+     *
+     * @param directory         The journal directory.
+     * @param recordsPerSegment The number of records in each newly created segment.
+     * @throws IOException If the directory or a segment file cannot be opened.
+     */
+    public TransactionJournal(String directory, int recordsPerSegment) throws IOException {
+        if (recordsPerSegment <= 0 || (long) recordsPerSegment * RECORD_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid number of records per segment: " + recordsPerSegment);
+        }
+        this.directory = new File(directory);
+        this.recordsPerSegment = recordsPerSegment;
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+
+        File[] segments = listSegments(this.directory);
+        int last = segments.length - 1;
+        while (last > 0 && isEmpty(segments[last])) {
+            // A segment mapped ahead for reservations that were never appended
+            if (!segments[last].delete()) {
+                throw new IOException("Cannot delete unused journal segment " + segments[last]);
+            }
+            last--;
+        }
+        if (last < 0) {
+            segment = mapSegment(0, recordsPerSegment);
+            mappedEnd = recordsPerSegment;
+        } else {
+            // Resume after the last used record of the newest segment
+            long firstSequence = firstSequenceOf(segments[last]);
+            int capacity = (int) (segments[last].length() / RECORD_SIZE);
+            segment = mapSegment(firstSequence, capacity);
+            int used = countUsedRecords(segment, capacity);
+            position = used * RECORD_SIZE;
+            nextSequence = firstSequence + used;
+            mappedEnd = firstSequence + capacity;
+        }
+    }
+
+    /**
+     * Reserves room for records that will be appended with {@link #appendReserved}, mapping
+     * new segments if the mapped ones cannot hold them. A caller reserves before making
+     * a change, so that appending the change's record afterwards cannot fail, and cancels
+     * the reservation with {@link #cancel(int)} if the change is not made. Also forces any
+     * segment that filled up since the last force.
+     *
+     * @param records The number of records to reserve.
+     * @throws IOException If a full segment cannot be forced or a new segment file cannot
+     *                     be created; nothing is reserved.
+     */
+    public void reserve(int records) throws IOException {
+        boolean anyFilled;
+        lock.lock();
+        try {
+            anyFilled = !filled.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+        if (anyFilled) {
+            forceLock.lock();
+            try {
+                forceFilled();
+            } finally {
+                forceLock.unlock();
+            }
+        }
+
+        lock.lock();
+        try {
+            while (mappedEnd - nextSequence < reserved + records) {
+                spares.addLast(mapSegment(mappedEnd, recordsPerSegment));
+                mappedEnd += recordsPerSegment;
+            }
+            reserved += records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back reserved room that will not be used, because the change was not made.
+     *
+     * @param records The number of records not to append.
+     */
+    public void cancel(int records) {
+        lock.lock();
+        try {
+            reserved -= records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends one transaction record to the journal, reserving room for it first.
+     *
+     * @param type           The type of the transaction.
+     * @param sourceCustomer The ID of the customer who made the transaction.
+     * @param sourceAccount  The account number the transaction was made on.
+     * @param targetCustomer The ID of the receiving customer, or 0 if there is none.
+     * @param targetAccount  The receiving account number, or 0 if there is none.
+     * @param amount         The amount of the transaction in cents, or 0 for an inquiry.
+     * @param sourceBalance  The balance of the source account after the transaction, in cents.
+     * @param targetBalance  The balance of the target account after the transaction, in cents.
+     * @return The sequence number assigned to the record.
+     * @throws IOException If room cannot be reserved; nothing is appended.
+     * @see #reserve(int)
+     */
+    public long append(TransactionType type, int sourceCustomer, int sourceAccount,
+            int targetCustomer, int targetAccount, long amount, long sourceBalance,
+            long targetBalance) throws IOException {
+        reserve(1);
+        return appendReserved(type, sourceCustomer, sourceAccount, targetCustomer, targetAccount, amount,
+                sourceBalance, targetBalance);
+    }
+
+    /**
+     * Appends one transaction record into room reserved with {@link #reserve(int)},
+     * moving on to the next mapped segment if the current one is full. Cannot fail.
+     *
+     * @param type           The type of the transaction.
+     * @param sourceCustomer The ID of the customer who made the transaction.
+     * @param sourceAccount  The account number the transaction was made on.
+     * @param targetCustomer The ID of the receiving customer, or 0 if there is none.
+     * @param targetAccount  The receiving account number, or 0 if there is none.
+     * @param amount         The amount of the transaction in cents, or 0 for an inquiry.
+     * @param sourceBalance  The balance of the source account after the transaction, in cents.
+     * @param targetBalance  The balance of the target account after the transaction, in cents.
+     * @return The sequence number assigned to the record.
+     * @throws IllegalStateException If no record is reserved.
+     */
+    public long appendReserved(TransactionType type, int sourceCustomer, int sourceAccount,
+            int targetCustomer, int targetAccount, long amount, long sourceBalance,
+            long targetBalance) {
+        lock.lock();
+        try {
+            if (reserved <= 0) {
+                throw new IllegalStateException("No journal record was reserved.");
+            }
+            reserved--;
+            if (position == segment.capacity()) {
+                filled.addLast(segment);  // Forced by the next reservation or force
+                segment = spares.pollFirst();
+                position = 0;
+            }
+
+            long sequence = nextSequence++;
+            int base = position;
+            MappedByteBuffer buf = segment;
+            buf.putLong(base + SEQUENCE_OFFSET, sequence);
+            buf.putLong(base + TIMESTAMP_OFFSET, System.currentTimeMillis());
+            buf.putInt(base + SOURCE_CUSTOMER_OFFSET, sourceCustomer);
+            buf.putInt(base + SOURCE_ACCOUNT_OFFSET, sourceAccount);
+            buf.putInt(base + TARGET_CUSTOMER_OFFSET, targetCustomer);
+            buf.putInt(base + TARGET_ACCOUNT_OFFSET, targetAccount);
+            buf.putLong(base + AMOUNT_OFFSET, amount);
+            buf.putLong(base + SOURCE_BALANCE_OFFSET, sourceBalance);
+            buf.putLong(base + TARGET_BALANCE_OFFSET, targetBalance);
+            // The type is written last; a non-zero type marks the record as complete
+            buf.putInt(base + TYPE_OFFSET, type.getCode());
+            position = base + RECORD_SIZE;
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the sequence number that the next appended record will receive.
+     *
+     * @return The next sequence number.
+     */
+    public long getNextSequence() {
+        lock.lock();
+        try {
+            return nextSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces every appended record to disk: the segments that filled up since the last
+     * force, and the current one. The journal's lock is only taken to find them.
+     *
+     * @throws IOException If a segment cannot be forced.
+     */
+    public void force() throws IOException {
+        forceLock.lock();
+        try {
+            MappedByteBuffer current;
+            lock.lock();
+            try {
+                current = segment;
+            } finally {
+                lock.unlock();
+            }
+            // Every segment filled before the current one was taken is queued by now
+            forceFilled();
+            force(current);
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the segments that filled up, oldest first, taking each off the queue once
+     * it is on disk. Must be called with the force lock held.
+     *
+     * @throws IOException If a segment cannot be forced; it stays queued.
+     */
+    private void forceFilled() throws IOException {
+        while (true) {
+            MappedByteBuffer full;
+            lock.lock();
+            try {
+                full = filled.peekFirst();
+            } finally {
+                lock.unlock();
+            }
+            if (full == null) {
+                return;
+            }
+            force(full);
+            lock.lock();
+            try {
+                filled.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Forces the journal to disk. The journal should not be appended to afterwards.
+     *
+     * @throws IOException If the journal cannot be forced.
+     */
+    public void close() throws IOException {
+        force();
+    }
+
+    /**
+     * Forces a mapped segment, reporting a failure as an {@link IOException}.
+     */
+    private static void force(MappedByteBuffer segment) throws IOException {
+        try {
+            segment.force();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Creates (if needed) and maps the segment file that starts at the given sequence.
+     *
+     * @param firstSequence The sequence number of the first record in the segment.
+     * @param records       The number of records the segment holds.
+     * @return The mapped segment.
+     * @throws IOException If the segment file cannot be created or mapped.
+     */
+    private MappedByteBuffer mapSegment(long firstSequence, int records) throws IOException {
+        File file = new File(directory, segmentName(firstSequence));
+        long length = (long) records * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < length) {
+                raf.setLength(length);  // Pre-allocate the whole segment
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    /**
+     * Returns whether a segment file holds no complete record.
+     *
+     * @param segmentFile The segment file.
+     * @return {@code true} if its first record is unused.
+     * @throws IOException If the file cannot be read.
+     */
+    private static boolean isEmpty(File segmentFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFile, "r")) {
+            if (raf.length() < RECORD_SIZE) {
+                return true;
+            }
+            raf.seek(TYPE_OFFSET);
+            return raf.readInt() == 0;
+        }
+    }
+
+    /**
+     * Counts the complete records at the start of a segment. Records are written in
+     * order, so the used records form a prefix that can be found by binary search.
+     *
+     * @param buf      The mapped segment.
+     * @param capacity The number of records the segment holds.
+     * @return The number of complete records.
+     */
+    private static int countUsedRecords(MappedByteBuffer buf, int capacity) {
+        int low = 0;
+        int high = capacity;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buf.getInt(mid * RECORD_SIZE + TYPE_OFFSET) != 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the file name of the segment starting at the given sequence number.
+     *
+     * @param firstSequence The sequence number of the first record in the segment.
+     * @return The segment file name.
+     */
+    static String segmentName(long firstSequence) {
+        return String.format("%020d%s", firstSequence, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Returns the sequence number of the first record in a segment file.
+     *
+     * @param segmentFile The segment file.
+     * @return The sequence number encoded in the file name.
+     */
+    static long firstSequenceOf(File segmentFile) {
+        String name = segmentFile.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Lists the segment files of a journal directory in sequence order.
+     *
+     * @param directory The journal directory.
+     * @return The segment files, oldest first.
+     */
+    static File[] listSegments(File directory) {
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);  // Zero-padded names sort in sequence order
+        return segments;
+    }
+}
@@ -0,0 +1,453 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A persistent index from account numbers to the lines of the transaction log that
+ * name them.
+ *
+ * <p>
+ * For every account the index keeps the file offset of each log line about it and the
+ * time the line was written, in the order they were written, so the last lines of an
+ * account or its lines in a time range are found without reading the rest of the log;
+ * {@link TransactionHistory} then reads just those lines. Both log writers add the
+ * accounts of the lines they have just written, and every addition is also appended to
+ * an index file next to the log, so the index survives restarts.
+ * </p>
+ *
+ * <p>
+ * When the index is opened, it is checked against the log. Lines written after the last
+ * indexed one, for example by a process that stopped between writing the log and the
+ * index, are scanned for account references ({@code Checking-1048}) and indexed with
+ * the log's modification time. If the index file is missing, or points past the end of
+ * the log because the log was replaced, it is rebuilt from the whole log.
+ * </p>
+ *
+ * <p>
+ * File layout (all values big-endian):
+ * </p>
+ * <pre>
+ *  size  field
+ *     4  magic number "TLIX"
+ *     4  format version (1)
+ *    20  per entry: log offset (8), time in epoch milliseconds (8), account number (4)
+ * </pre>
+ *
+ * @see transactionLogger
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class TransactionLogIndex {
+
+    /**
+     * The magic number at the start of every index file.
+     */
+    private static final int MAGIC = 0x544C4958;  // "TLIX"
+
+    /**
+     * The current file format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The size of one entry in bytes.
+     */
+    private static final int ENTRY_SIZE = 20;
+
+    /**
+     * An account reference in a log sentence, such as {@code Checking-1048}.
+     */
+    private static final Pattern ACCOUNT_REFERENCE = Pattern.compile("\\b(?:Checking|Saving|Credit)-(\\d+)");
+
+    /**
+     * The lines of one account, oldest first.
+     */
+    static final class Postings {
+        long[] offsets;
+        long[] times;
+        int size;
+
+        Postings(int capacity) {
+            offsets = new long[capacity];
+            times = new long[capacity];
+        }
+
+        void add(long offset, long time) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            offsets[size] = offset;
+            times[size] = time;
+            size++;
+        }
+
+        /**
+         * Returns a copy of the postings from {@code from} (inclusive) to {@code to} (exclusive).
+         */
+        Postings copy(int from, int to) {
+            Postings copy = new Postings(Math.max(1, to - from));
+            System.arraycopy(offsets, from, copy.offsets, 0, to - from);
+            System.arraycopy(times, from, copy.times, 0, to - from);
+            copy.size = to - from;
+            return copy;
+        }
+    }
+
+    /**
+     * The accounts of the lines a writer has written but not yet added to the index,
+     * with their offsets relative to the start of the write. Each writer owns one and
+     * reuses it, so staging allocates nothing once it has grown.
+     */
+    static final class Pending {
+        private int[] accounts = new int[256];
+        private long[] offsets = new long[256];
+        private int size;
+
+        /**
+         * Stages the accounts named by the sentence of one event: the account, and the
+         * receiving account of a transfer.
+         *
+         * @param type   The type of the event.
+         * @param offset The offset of its line from the start of the write.
+         */
+        void addEvent(TransactionType type, long offset, Account account, Account target) {
+            if (account == null) {
+                return;  // The summary of an interest accrual names no account
+            }
+            add(account.getAccountNumber(), offset);
+            if (type == TransactionType.TRANSFER && target.getAccountNumber() != account.getAccountNumber()) {
+                add(target.getAccountNumber(), offset);
+            }
+        }
+
+        void add(int accountNumber, long offset) {
+            if (size == accounts.length) {
+                accounts = Arrays.copyOf(accounts, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            accounts[size] = accountNumber;
+            offsets[size] = offset;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * The lines of each account.
+     */
+    private final IntHashIndex<Postings> accounts = new IntHashIndex<>();
+
+    /**
+     * The index file, or {@code null} if the index is only kept in memory.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The reusable buffer entries are encoded into before they are written.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE * 256);
+
+    /**
+     * The offset of the last indexed line, or -1 if no line has been indexed.
+     */
+    private long lastOffset = -1;
+
+    /**
+     * The time of the last indexed line. Times never go backwards, so each account's
+     * lines are ordered by time as well as by offset.
+     */
+    private long lastTime;
+
+    /**
+     * The number of entries in the index.
+     */
+    private long entries;
+
+    /**
+     * Opens the index of a log file, bringing it up to date with the log.
+     *
+     * @param logFile   The path of the transaction log.
+     * @param indexFile The path of the index file.
+     * @param writable  Whether new lines are added to the index file, or only to the
+     *                  index in memory, for reading the index of a log that another
+     *                  process is writing.
+     * @throws IOException If the log or the index cannot be read.
+     */
+    public TransactionLogIndex(String logFile, String indexFile, boolean writable) throws IOException {
+        File log = new File(logFile);
+        File index = new File(indexFile);
+        long validLength = load(index, log.length());
+        if (validLength < 0) {
+            // Missing, damaged, or pointing past the end of a replaced log: rebuild it
+            accounts.clear();
+            lastOffset = -1;
+            lastTime = 0;
+            entries = 0;
+            validLength = 0;
+        }
+
+        if (writable) {
+            channel = FileChannel.open(index.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (validLength == 0) {
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                validLength = HEADER_SIZE;
+            }
+            channel.truncate(validLength);  // Drop a torn last entry
+            channel.position(validLength);
+        } else {
+            channel = null;
+        }
+        catchUp(log);
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     *
+     * @return The number of entries.
+     */
+    public synchronized long size() {
+        return entries;
+    }
+
+    /**
+     * Adds the lines of one write to the index and clears them from the pending list.
+     *
+     * @param pending The staged accounts and offsets of the write.
+     * @param base    The file offset the write started at.
+     */
+    synchronized void commit(Pending pending, long base) {
+        commit(pending, base, Math.max(lastTime, System.currentTimeMillis()));
+    }
+
+    /**
+     * Adds the lines of one write to the index as written at the given time.
+     */
+    private void commit(Pending pending, long base, long time) {
+        for (int i = 0; i < pending.size; i++) {
+            add(pending.accounts[i], base + pending.offsets[i], time);
+        }
+        if (channel != null) {
+            writeBuffer();
+        }
+        pending.clear();
+    }
+
+    /**
+     * Returns the last lines of an account.
+     *
+     * @param accountNumber The account number.
+     * @param count         The largest number of lines to return.
+     * @return A copy of the postings of the lines, oldest first.
+     */
+    synchronized Postings last(int accountNumber, int count) {
+        Postings postings = accounts.get(accountNumber);
+        if (postings == null) {
+            return new Postings(1);
+        }
+        return postings.copy(Math.max(0, postings.size - Math.max(0, count)), postings.size);
+    }
+
+    /**
+     * Returns the lines of an account written in a time range.
+     *
+     * @param accountNumber The account number.
+     * @param fromMillis    The start of the range in epoch milliseconds, inclusive.
+     * @param toMillis      The end of the range in epoch milliseconds, exclusive.
+     * @return A copy of the postings of the lines, oldest first.
+     */
+    synchronized Postings between(int accountNumber, long fromMillis, long toMillis) {
+        Postings postings = accounts.get(accountNumber);
+        if (postings == null || fromMillis >= toMillis) {
+            return new Postings(1);
+        }
+        return postings.copy(firstAtOrAfter(postings, fromMillis), firstAtOrAfter(postings, toMillis));
+    }
+
+    /**
+     * Returns the index of the first line written at or after a time.
+     */
+    private static int firstAtOrAfter(Postings postings, long time) {
+        int low = 0;
+        int high = postings.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (postings.times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Adds one entry to the index in memory and, if it is writable, to the buffer of
+     * entries to write to the index file.
+     */
+    private void add(int accountNumber, long offset, long time) {
+        Postings postings = accounts.get(accountNumber);
+        if (postings == null) {
+            postings = new Postings(4);
+            accounts.put(accountNumber, postings);
+        }
+        postings.add(offset, time);
+        lastOffset = Math.max(lastOffset, offset);
+        lastTime = time;
+        entries++;
+
+        if (channel != null) {
+            if (buffer.remaining() < ENTRY_SIZE) {
+                writeBuffer();
+            }
+            buffer.putLong(offset).putLong(time).putInt(accountNumber);
+        }
+    }
+
+    /**
+     * Writes the encoded entries to the index file.
+     */
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing transaction log index: " + e.getMessage());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Loads the entries of the index file into memory.
+     *
+     * @param index     The index file.
+     * @param logLength The length of the log.
+     * @return The length of the valid part of the index file, or -1 if it has to be rebuilt.
+     */
+    private long load(File index, long logLength) throws IOException {
+        if (!index.exists() || index.length() < HEADER_SIZE) {
+            return -1;
+        }
+        try (InputStream in = new BufferedInputStream(Channels.newInputStream(
+                FileChannel.open(index.toPath(), StandardOpenOption.READ)), 1 << 16)) {
+            byte[] entry = new byte[ENTRY_SIZE];
+            ByteBuffer view = ByteBuffer.wrap(entry);
+            if (in.readNBytes(entry, 0, HEADER_SIZE) != HEADER_SIZE || view.getInt(0) != MAGIC
+                    || view.getInt(4) != VERSION) {
+                return -1;
+            }
+            long length = HEADER_SIZE;
+            while (in.readNBytes(entry, 0, ENTRY_SIZE) == ENTRY_SIZE) {
+                long offset = view.getLong(0);
+                if (offset < 0 || offset >= logLength) {
+                    return -1;
+                }
+                Postings postings = accounts.get(view.getInt(16));
+                if (postings == null) {
+                    postings = new Postings(4);
+                    accounts.put(view.getInt(16), postings);
+                }
+                postings.add(offset, view.getLong(8));
+                lastOffset = Math.max(lastOffset, offset);
+                lastTime = Math.max(lastTime, view.getLong(8));
+                entries++;
+                length += ENTRY_SIZE;
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Indexes the lines of the log after the last indexed one, as written at the log's
+     * modification time.
+     */
+    private void catchUp(File log) throws IOException {
+        if (!log.exists()) {
+            return;
+        }
+        Pending pending = new Pending();
+        try (FileChannel file = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            long position = Math.max(0, lastOffset);
+            boolean skip = lastOffset >= 0;  // The last indexed line is already in the index
+            ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+            byte[] line = new byte[512];
+            int length = 0;
+            long lineStart = position;
+            while (file.read(chunk, position) > 0) {
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    byte b = chunk.get();
+                    position++;
+                    if (b != '\n') {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = b;
+                        continue;
+                    }
+                    if (!skip) {
+                        indexLine(line, length, lineStart, pending);
+                    }
+                    skip = false;
+                    length = 0;
+                    lineStart = position;
+                }
+                chunk.clear();
+            }
+        }
+        synchronized (this) {
+            commit(pending, 0, Math.max(lastTime, log.lastModified()));
+        }
+    }
+
+    /**
+     * Stages every distinct account referenced by one line.
+     */
+    private static void indexLine(byte[] line, int length, long lineStart, Pending pending) {
+        // Each byte as one char: only the ASCII account references need to survive
+        String text = new String(line, 0, length, StandardCharsets.ISO_8859_1);
+        Matcher matcher = ACCOUNT_REFERENCE.matcher(text);
+        int first = pending.size;
+        while (matcher.find()) {
+            int accountNumber;
+            try {
+                accountNumber = Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException e) {
+                continue;  // Too long to be an account number
+            }
+            boolean seen = false;
+            for (int i = first; i < pending.size && !seen; i++) {
+                seen = pending.accounts[i] == accountNumber;
+            }
+            if (!seen) {
+                pending.add(accountNumber, lineStart);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * The kinds of transaction a customer can perform at the bank.
+ *
+ * <p>
+ * Each type has a small, stable numeric code that is used wherever a transaction
+ * is stored in binary form, such as the {@link TransactionJournal}. Each type also
+ * knows how it changes the balances of its source and target accounts, which is
+ * what crash recovery replays.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public enum TransactionType {
+
+    /** A balance inquiry on one account. */
+    INQUIRY(1, 0, 0),
+
+    /** A deposit into one account. */
+    DEPOSIT(2, 1, 0),
+
+    /** A cash withdrawal from one account. */
+    WITHDRAW(3, -1, 0),
+
+    /** A transfer between two accounts. */
+    TRANSFER(4, -1, 1),
+
+    /** A payment from a credit account to another customer. */
+    PAY(5, -1, 1),
+
+    /** Interest paid into one savings account by a bulk accrual. */
+    INTEREST(6, 1, 0);
+
+    /**
+     * Transaction types indexed by their code.
+     */
+    private static final TransactionType[] BY_CODE = new TransactionType[7];
+
+    static {
+        for (TransactionType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    /**
+     * The numeric code stored for this transaction type.
+     */
+    private final int code;
+
+    /**
+     * The sign of the amount applied to the source account: 1, -1 or 0.
+     */
+    private final int sourceSign;
+
+    /**
+     * The sign of the amount applied to the target account: 1, -1 or 0.
+     */
+    private final int targetSign;
+
+    /**
+     * Constructs a transaction type with the given code.
+     *
+     * @param code       The numeric code for the type. Must be greater than 0.
+     * @param sourceSign The sign of the amount applied to the source account.
+     * @param targetSign The sign of the amount applied to the target account.
+     */
+    TransactionType(int code, int sourceSign, int targetSign) {
+        this.code = code;
+        this.sourceSign = sourceSign;
+        this.targetSign = targetSign;
+    }
+
+    /**
+     * Returns the numeric code stored for this transaction type.
+     *
+     * @return The code of the transaction type.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns how a transaction of this type changes the balance of its source account.
+     *
+     * @param amount The amount of the transaction, in cents.
+     * @return The signed change to the source balance, in cents.
+     */
+    public long sourceChange(long amount) {
+        return sourceSign * amount;
+    }
+
+    /**
+     * Returns how a transaction of this type changes the balance of its target account.
+     *
+     * @param amount The amount of the transaction, in cents.
+     * @return The signed change to the target balance in cents, or 0 if the type has no target.
+     */
+    public long targetChange(long amount) {
+        return targetSign * amount;
+    }
+
+    /**
+     * Returns the transaction type with the given code.
+     *
+     * @param code The numeric code to look up.
+     * @return The matching transaction type, or {@code null} if the code is unknown.
+     */
+    public static TransactionType fromCode(int code) {
+        if (code <= 0 || code >= BY_CODE.length) {
+            return null;
+        }
+        return BY_CODE[code];
+    }
+}
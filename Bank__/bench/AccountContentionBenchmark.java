@@ -0,0 +1,193 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of single-account operations under contention.
+ *
+ * <p>
+ * Each thread runs a mix of deposits, withdrawals and balance inquiries against a
+ * small shared set of accounts. The run is repeated at 1, 4, 16 and 64 threads for
+ * the bank's {@link Checking} account (in whichever mode {@code bank.concurrency}
+ * selects) and for a baseline account whose methods are {@code synchronized}.
+ * </p>
+ *
+ * <pre>
+ * java -cp out AccountContentionBenchmark [accounts] [seconds per run]
+ * java -Dbank.concurrency=locked -cp out AccountContentionBenchmark
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class AccountContentionBenchmark {
+
+    /**
+     * The thread counts each implementation is measured at.
+     */
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    /**
+     * The starting balance of every account, in cents. Large enough that
+     * withdrawals rarely fail.
+     */
+    private static final long STARTING_BALANCE = Money.ofDollars(1_000_000_000L);
+
+    /**
+     * The operations the benchmark drives, implemented by each candidate account.
+     */
+    private interface Target {
+        boolean deposit(long amount);
+
+        boolean withdraw(long amount);
+
+        long getBalance();
+    }
+
+    /**
+     * The baseline: a balance guarded by the account's monitor.
+     */
+    private static final class SynchronizedAccount implements Target {
+        private long balance = STARTING_BALANCE;
+
+        @Override
+        public synchronized boolean deposit(long amount) {
+            if (amount > 0 && balance <= Long.MAX_VALUE - amount) {
+                balance += amount;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized boolean withdraw(long amount) {
+            if (amount > 0 && amount <= balance) {
+                balance -= amount;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized long getBalance() {
+            return balance;
+        }
+    }
+
+    /**
+     * Adapts the bank's own account class to the benchmark.
+     */
+    private static final class BankAccount implements Target {
+        private final Checking account;
+
+        BankAccount(int accountNumber) {
+            this.account = new Checking(accountNumber, STARTING_BALANCE);
+        }
+
+        @Override
+        public boolean deposit(long amount) {
+            return account.deposit(amount);
+        }
+
+        @Override
+        public boolean withdraw(long amount) {
+            return account.withdraw(amount);
+        }
+
+        @Override
+        public long getBalance() {
+            return account.getBalance();
+        }
+    }
+
+    /**
+     * Runs the benchmark and prints one line per implementation and thread count.
+     *
+     * @param args The number of shared accounts (default 8) and the seconds per
+     *             measurement (default 2).
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        String mode = Account.LOCK_FREE ? "lock-free CAS" : "striped locks";
+
+        System.out.printf("%-24s %8s %16s%n", "implementation", "threads", "ops/sec");
+        for (int threads : THREAD_COUNTS) {
+            Target[] baseline = new Target[accounts];
+            Target[] bank = new Target[accounts];
+            for (int i = 0; i < accounts; i++) {
+                baseline[i] = new SynchronizedAccount();
+                bank[i] = new BankAccount(1000 + i);
+            }
+            run("warm-up", bank, threads, 1);
+            run("warm-up", baseline, threads, 1);
+            report("synchronized", threads, run("synchronized", baseline, threads, seconds));
+            report(mode, threads, run(mode, bank, threads, seconds));
+        }
+    }
+
+    /**
+     * Runs the operation mix on the given accounts for a fixed time.
+     *
+     * @param name     The name of the implementation, used for thread names.
+     * @param targets  The shared accounts.
+     * @param threads  The number of worker threads.
+     * @param seconds  The length of the measurement.
+     * @return The operations completed per second.
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     */
+    private static double run(String name, Target[] targets, int threads, int seconds)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                long sink = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while ((count & 1023) != 0 || System.nanoTime() < deadline[0]) {
+                    Target target = targets[random.nextInt(targets.length)];
+                    int op = random.nextInt(10);
+                    if (op < 5) {
+                        target.deposit(1 + random.nextInt(10_000));
+                    } else if (op < 9) {
+                        target.withdraw(1 + random.nextInt(10_000));
+                    } else {
+                        sink += target.getBalance();
+                    }
+                    count++;
+                }
+                operations.add(count + (sink == 42 ? 1 : 0));
+            }, name + "-" + t);
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        deadline[0] = begin + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    /**
+     * Prints one result line.
+     *
+     * @param name      The implementation name.
+     * @param threads   The number of threads.
+     * @param opsPerSec The measured throughput.
+     */
+    private static void report(String name, int threads, double opsPerSec) {
+        System.out.printf("%-24s %8d %,16.0f%n", name, threads, opsPerSec);
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+
+/**
+ * Compares bank-wide scans over the account objects with scans over the
+ * {@link AccountStore} columns.
+ *
+ * <p>
+ * The benchmark creates customers with a checking, a savings and a credit account
+ * each, then totals every balance and the savings balances twice: once by walking
+ * every customer's list of accounts, as the bank did before the store existed, and
+ * once by sweeping the store's balance and type columns. Both must give the same
+ * totals.
+ * </p>
+ *
+ * <pre>
+ * java -Xmx8g -cp out AccountScanBenchmark [customers] [rounds]
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class AccountScanBenchmark {
+
+    public static void main(String[] args) {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        ArrayList<Customer> bank = new ArrayList<>(customers);
+        for (int i = 0; i < customers; i++) {
+            bank.add(RunBank.createCustomer(i + 1, "First", "Last", "1-Jan-00", "Address", "Phone",
+                    i + 1, i % 100_000, 100_000_000 + i, i % 7_000, 200_000_000 + i, 500_000, -(i % 3_000)));
+        }
+        AccountStore store = AccountStore.ACCOUNTS;
+        int accounts = store.size();
+        System.out.printf("%,d customers, %,d accounts%n", customers, accounts);
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            long objectTotal = 0;
+            long objectSavings = 0;
+            for (Customer customer : bank) {
+                for (Account account : customer.getAccounts()) {
+                    long balance = account.getBalance();
+                    objectTotal += balance;
+                    if (account instanceof Saving) {
+                        objectSavings += balance;
+                    }
+                }
+            }
+            long objectNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long storeTotal = store.totalBalance();
+            long storeSavings = store.totalBalance(AccountStore.SAVING);
+            long storeNanos = System.nanoTime() - start;
+
+            if (objectTotal != storeTotal || objectSavings != storeSavings) {
+                throw new IllegalStateException("Totals differ: " + objectTotal + "/" + objectSavings
+                        + " != " + storeTotal + "/" + storeSavings);
+            }
+            report("objects", accounts, objectNanos);
+            report("store columns", accounts, storeNanos);
+        }
+    }
+
+    /**
+     * Prints the time taken and the rate of one pass of both totals.
+     */
+    private static void report(String layout, int accounts, long nanos) {
+        System.out.printf("%-14s %,10.1f ms %,14.0f accounts/s%n", layout, nanos / 1e6, accounts / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,274 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives load against a running {@link BankServer} and reports the sustained
+ * throughput and the latency percentiles.
+ *
+ * <p>
+ * Each active connection runs on its own virtual thread in a closed loop: it sends a
+ * random operation on a random customer from the customers file, waits for the reply
+ * and sends the next. The mix is 40% inquiries, 20% deposits, 20% withdrawals, 15%
+ * transfers and 5% payments, all of $1.00. With {@code --pipeline} each connection sends
+ * that many requests before reading their replies, and every request's latency runs from
+ * sending the group to reading its reply. Idle connections are opened before the run
+ * and held open without sending anything, to load the server with sessions that cost
+ * it memory but no work.
+ * </p>
+ *
+ * <p>
+ * Latencies are recorded in a {@link LatencyHistogram} after a warm-up, and every
+ * reply is counted as {@code OK}, {@code FAILED} (such as a withdrawal that would
+ * overdraw) or {@code ERROR}. Many thousands of connections need a higher open-files
+ * limit, for example {@code ulimit -n 100000}, on both the server and the driver.
+ * </p>
+ *
+ * <pre>
+ * java RunBank --serve 7070
+ * java -cp out BankLoadDriver [--host localhost] [--port 7070] [--users Bank_users.csv]
+ *      [--connections 64] [--idle 0] [--pipeline 1] [--warmup 2] [--seconds 10]
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class BankLoadDriver {
+
+    /**
+     * The accounts of one customer, from the customers file.
+     */
+    private static final class Customer {
+        final int id;
+        final int checking;
+        final int saving;
+        final int credit;
+
+        Customer(int id, int checking, int saving, int credit) {
+            this.id = id;
+            this.checking = checking;
+            this.saving = saving;
+            this.credit = credit;
+        }
+    }
+
+    // Reply counts during the measurement
+    private static final StripedCounter OK = new StripedCounter();
+    private static final StripedCounter FAILED = new StripedCounter();
+    private static final StripedCounter ERROR = new StripedCounter();
+
+    /**
+     * The latency of every reply during the measurement.
+     */
+    private static final LatencyHistogram LATENCY = new LatencyHistogram();
+
+    /**
+     * Set once the warm-up is over.
+     */
+    private static volatile boolean measuring;
+
+    /**
+     * Set when the connections should stop sending.
+     */
+    private static volatile boolean stopping;
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = BankServer.DEFAULT_PORT;
+        String users = "Bank_users.csv";
+        int connections = 64;
+        int idle = 0;
+        int pipeline = 1;
+        double warmup = 2;
+        double seconds = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--host":
+                    host = args[i + 1];
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--users":
+                    users = args[i + 1];
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--idle":
+                    idle = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--pipeline":
+                    pipeline = Math.max(1, Integer.parseInt(args[i + 1]));
+                    break;
+                case "--warmup":
+                    warmup = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--seconds":
+                    seconds = Double.parseDouble(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        Customer[] customers = loadCustomers(users);
+        if (customers.length < 2) {
+            System.err.println("The customers file needs at least two customers: " + users);
+            return;
+        }
+
+        // Open the idle connections first, so the server holds them during the whole run
+        ArrayList<Socket> idleSockets = new ArrayList<>(idle);
+        for (int i = 0; i < idle; i++) {
+            idleSockets.add(new Socket(host, port));
+        }
+        System.out.printf("Opened %,d idle connections.%n", idle);
+
+        String serverHost = host;
+        int serverPort = port;
+        int depth = pipeline;
+        ExecutorService drivers = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < connections; i++) {
+            long seed = i;
+            drivers.execute(() -> drive(serverHost, serverPort, customers, depth, new SplittableRandom(seed)));
+        }
+
+        Thread.sleep((long) (warmup * 1000));
+        measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep((long) (seconds * 1000));
+        long[] latencies = LATENCY.snapshot();
+        long ok = OK.sum();
+        long failed = FAILED.sum();
+        long errors = ERROR.sum();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        stopping = true;
+        drivers.shutdown();
+        drivers.awaitTermination(10, TimeUnit.SECONDS);
+        for (Socket socket : idleSockets) {
+            socket.close();
+        }
+
+        long total = ok + failed + errors;
+        System.out.printf("%,d connections (%,d idle), pipeline %d, %.1f s%n", connections, idle, pipeline, elapsed);
+        System.out.printf("%,d operations: %,d OK, %,d FAILED, %,d ERROR%n", total, ok, failed, errors);
+        System.out.printf("Throughput: %,.0f operations/s%n", total / elapsed);
+        System.out.printf("Latency us: mean %.1f, p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                LatencyHistogram.mean(latencies) / 1e3,
+                LatencyHistogram.percentile(latencies, 0.50) / 1e3,
+                LatencyHistogram.percentile(latencies, 0.99) / 1e3,
+                LatencyHistogram.percentile(latencies, 0.999) / 1e3,
+                LatencyHistogram.max(latencies) / 1e3);
+    }
+
+    /**
+     * Runs one connection's closed loop until the measurement is over.
+     */
+    private static void drive(String host, int port, Customer[] customers, int pipeline, SplittableRandom random) {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] input = new byte[4096];
+            int position = 0;
+            int limit = 0;
+            StringBuilder requests = new StringBuilder(128 * pipeline);
+
+            while (!stopping) {
+                requests.setLength(0);
+                for (int i = 0; i < pipeline; i++) {
+                    appendRequest(requests, customers, random);
+                }
+                long sent = System.nanoTime();
+                out.write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+
+                // Read one reply per request; the status is the third field
+                for (int i = 0; i < pipeline; i++) {
+                    int commas = 0;
+                    char status = 0;
+                    while (true) {
+                        if (position == limit) {
+                            limit = in.read(input);
+                            position = 0;
+                            if (limit < 0) {
+                                return;
+                            }
+                        }
+                        byte b = input[position++];
+                        if (b == '\n') {
+                            break;
+                        }
+                        if (b == ',') {
+                            commas++;
+                        } else if (commas == 2 && status == 0) {
+                            status = (char) b;
+                        }
+                    }
+                    if (measuring && !stopping) {
+                        LATENCY.record(System.nanoTime() - sent);
+                        (status == 'O' ? OK : status == 'F' ? FAILED : ERROR).increment();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!stopping) {
+                System.err.println("Connection error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Appends one random operation line.
+     */
+    private static void appendRequest(StringBuilder requests, Customer[] customers, SplittableRandom random) {
+        Customer customer = customers[random.nextInt(customers.length)];
+        int roll = random.nextInt(100);
+        if (roll < 40) {
+            requests.append("inquiry,").append(customer.id).append(',')
+                    .append(random.nextBoolean() ? customer.checking : customer.saving);
+        } else if (roll < 60) {
+            requests.append("deposit,").append(customer.id).append(',').append(customer.checking).append(",1.00");
+        } else if (roll < 80) {
+            requests.append("withdraw,").append(customer.id).append(',').append(customer.checking).append(",1.00");
+        } else if (roll < 95) {
+            Customer receiver = customers[random.nextInt(customers.length)];
+            requests.append("transfer,").append(customer.id).append(',').append(customer.checking)
+                    .append(",1.00,").append(receiver.id).append(',').append(receiver.checking);
+        } else {
+            Customer receiver = customers[random.nextInt(customers.length)];
+            requests.append("pay,").append(customer.id).append(',').append(customer.credit)
+                    .append(",1.00,").append(receiver.id);
+        }
+        requests.append('\n');
+    }
+
+    /**
+     * Reads the customer IDs and account numbers of a customers file.
+     */
+    private static Customer[] loadCustomers(String path) throws IOException {
+        ArrayList<Customer> customers = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line = reader.readLine();  // Header
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = RunBank.parseCSVLine(line);
+                customers.add(new Customer(Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[6].trim()),
+                        Integer.parseInt(fields[8].trim()), Integer.parseInt(fields[10].trim())));
+            }
+        }
+        return customers.toArray(new Customer[0]);
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Compares making operations one call at a time through the {@link BankService} with
+ * submitting them in batches of several sizes.
+ *
+ * <p>
+ * The benchmark creates customers with a checking, a savings and a credit account each,
+ * generates a random mix of 30% inquiries, 20% deposits, 20% withdrawals, 20% transfers
+ * and 10% payments, and runs the same operations per call and with
+ * {@link BankService#submitBatch(List)}, each once to warm up and once measured. The log
+ * is written asynchronously without syncing. The journal mode is {@code none},
+ * {@code mapped} (records are written to the memory-mapped journal) or {@code sync}
+ * (records are also forced to disk before the operation is acknowledged: once per call,
+ * or once per batch). Run it from a scratch directory, since it appends to
+ * {@code TransactionLog.txt}; run it with {@code -Dbank.concurrency=locked} to measure
+ * the striped locks.
+ * </p>
+ *
+ * <pre>
+ * java -cp out BankServiceBenchmark [customers] [operations] [batch sizes] [none|mapped|sync]
+ * java -cp out BankServiceBenchmark 100000 2000000 1,16,256 mapped
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class BankServiceBenchmark {
+
+    /**
+     * The starting balance of every account, in cents. Large enough that withdrawals,
+     * transfers and payments rarely fail.
+     */
+    private static final long STARTING_BALANCE = Money.ofDollars(1_000_000_000L);
+
+    public static void main(String[] args) throws IOException {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int[] sizes = Arrays.stream((args.length > 2 ? args[2] : "1,16,256").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        String journalMode = args.length > 3 ? args[3] : "mapped";
+        int sampleOps = journalMode.equals("sync") ? Math.min(operations, 20_000) : operations;
+
+        BankDirectory directory = new BankDirectory(customers);
+        for (int i = 0; i < customers; i++) {
+            directory.addCustomer(RunBank.createCustomer(i + 1, "First", "Last", "1-Jan-00", "Address", "Phone",
+                    accountNumber(i, 0), STARTING_BALANCE, accountNumber(i, 1), STARTING_BALANCE,
+                    accountNumber(i, 2), STARTING_BALANCE, STARTING_BALANCE));
+        }
+        List<BankService.Command> commands = generate(customers, sampleOps);
+        transactionLogger.startAsync(AsyncLogWriter.Durability.NONE, 1000, 65536);
+
+        File dir = Files.createTempDirectory("service-benchmark").toFile();
+        TransactionJournal journal = journalMode.equals("none") ? null : new TransactionJournal(dir.getPath());
+        BankService service = new BankService(directory, journal, journalMode.equals("sync"));
+        System.out.printf("%,d customers, %,d operations, journal %s, %s%n", customers, sampleOps, journalMode,
+                Account.LOCK_FREE ? "lock-free" : "locked");
+        System.out.printf("%-16s %14s %14s %10s%n", "mode", "ns/op", "ops/s", "speedup");
+        try {
+            double perCall = 0;
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                for (BankService.Command command : commands) {
+                    call(service, command);
+                }
+                perCall = report("per call", sampleOps, System.nanoTime() - start, 0, round == 1);
+            }
+            for (int size : sizes) {
+                for (int round = 0; round < 2; round++) {
+                    long start = System.nanoTime();
+                    for (int from = 0; from < sampleOps; from += size) {
+                        service.submitBatch(commands.subList(from, Math.min(sampleOps, from + size)));
+                    }
+                    report("batch of " + size, sampleOps, System.nanoTime() - start, perCall, round == 1);
+                }
+            }
+        } finally {
+            transactionLogger.shutdown();
+            if (journal != null) {
+                journal.close();
+            }
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Makes one operation with the matching per-call method.
+     */
+    private static void call(BankService service, BankService.Command command) {
+        switch (command.type) {
+            case INQUIRY:
+                service.inquire(command.customerID, command.accountNumber);
+                break;
+            case DEPOSIT:
+                service.deposit(command.customerID, command.accountNumber, command.amount);
+                break;
+            case WITHDRAW:
+                service.withdraw(command.customerID, command.accountNumber, command.amount);
+                break;
+            case TRANSFER:
+                service.transfer(command.customerID, command.accountNumber, command.amount,
+                        command.targetCustomerID, command.targetAccountNumber);
+                break;
+            default:
+                service.pay(command.customerID, command.accountNumber, command.amount, command.targetCustomerID);
+        }
+    }
+
+    /**
+     * Generates a random mix of operations between the customers' accounts.
+     */
+    private static List<BankService.Command> generate(int customers, int count) {
+        SplittableRandom random = new SplittableRandom(42);
+        ArrayList<BankService.Command> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int customer = random.nextInt(customers);
+            int other = random.nextInt(customers);
+            long amount = 1 + random.nextInt(10_000);
+            int roll = random.nextInt(10);
+            if (roll < 3) {
+                commands.add(BankService.Command.inquiry(customer + 1, accountNumber(customer, random.nextInt(3))));
+            } else if (roll < 5) {
+                commands.add(BankService.Command.deposit(customer + 1, accountNumber(customer, 0), amount));
+            } else if (roll < 7) {
+                commands.add(BankService.Command.withdraw(customer + 1, accountNumber(customer, 1), amount));
+            } else if (roll < 9) {
+                commands.add(BankService.Command.transfer(customer + 1, accountNumber(customer, 0), amount,
+                        other + 1, accountNumber(other, 1)));
+            } else {
+                commands.add(BankService.Command.pay(customer + 1, accountNumber(customer, 2), amount, other + 1));
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Returns the account number of one of a customer's three accounts.
+     */
+    private static int accountNumber(int customer, int kind) {
+        return kind * 10_000_000 + customer + 1;
+    }
+
+    /**
+     * Prints one measured round and returns its time per operation.
+     */
+    private static double report(String mode, int operations, long nanos, double baseline, boolean print) {
+        double perOp = (double) nanos / operations;
+        if (print) {
+            System.out.printf("%-16s %,14.1f %,14.0f %10s%n", mode, perOp, operations / (nanos / 1e9),
+                    baseline > 0 ? String.format("%.2fx", baseline / perOp) : "");
+        }
+        return perOp;
+    }
+}
@@ -0,0 +1,111 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.SplittableRandom;
+
+/**
+ * Reports the heap taken by customers stored as plain {@link Customer} objects and as
+ * {@link CompactCustomer} objects.
+ *
+ * <p>
+ * The benchmark generates customers shaped like the rows of {@code Bank_users.csv}: a
+ * first and last name, one of a small set of shared addresses, a {@code d-MMM-yy} birth
+ * date and a {@code (915) 747-5042} style phone number. Every field is a new string, as
+ * if it had just been parsed. It creates all customers in one form, without accounts,
+ * and measures the heap they keep alive after a full collection, then does the same in
+ * the other form and checks that every getter of the compact customers returns what
+ * the plain customers hold.
+ * </p>
+ *
+ * <pre>
+ * java -Xmx8g -cp out CustomerFootprintBenchmark [customers] [distinct addresses]
+ * java -Xmx8g -cp out CustomerFootprintBenchmark 5000000 1000
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class CustomerFootprintBenchmark {
+
+    private static final String[] FIRST_NAMES = {"Daniel", "Derek", "Maria", "Jose", "Ana", "Luis", "Sofia",
+        "Carlos", "Elena", "Miguel", "Lucia", "Jorge", "Isabel", "Pedro", "Carmen", "Mickey"};
+
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep",
+        "Oct", "Nov", "Dec"};
+
+    public static void main(String[] args) {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int addresses = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        long before = usedAfterGc(memory);
+        Customer[] plain = new Customer[customers];
+        generate(plain, addresses, false);
+        long plainBytes = usedAfterGc(memory) - before;
+
+        before = usedAfterGc(memory);
+        Customer[] compact = new Customer[customers];
+        generate(compact, addresses, true);
+        long compactBytes = usedAfterGc(memory) - before;
+
+        for (int i = 0; i < customers; i++) {
+            Customer a = plain[i];
+            Customer b = compact[i];
+            if (!a.getFirstName().equals(b.getFirstName()) || !a.getLastName().equals(b.getLastName())
+                    || !a.getBirthDate().equals(b.getBirthDate()) || !a.getAddress().equals(b.getAddress())
+                    || !a.getPhoneNumber().equals(b.getPhoneNumber())) {
+                throw new IllegalStateException("Customer " + a.getId() + " differs in compact form.");
+            }
+        }
+
+        System.out.printf("%,d customers without accounts, %,d distinct addresses%n", customers, addresses);
+        System.out.printf("%-10s %14s %14s%n", "form", "heap MB", "bytes/customer");
+        System.out.printf("%-10s %,14.1f %,14.1f%n", "plain", plainBytes / 1048576.0, (double) plainBytes / customers);
+        System.out.printf("%-10s %,14.1f %,14.1f%n", "compact", compactBytes / 1048576.0,
+                (double) compactBytes / customers);
+        System.out.printf("Name arena %,.1f MB, %,d addresses, %,d templates and unpacked values%n",
+                CompactCustomer.NAMES.size() / 1048576.0, CompactCustomer.ADDRESSES.size(),
+                CompactCustomer.TEXT.size());
+    }
+
+    /**
+     * Fills an array with generated customers, the same ones every time.
+     */
+    private static void generate(Customer[] customers, int addresses, boolean compact) {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < customers.length; i++) {
+            String firstName = new String(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            String lastName = lastName(random);
+            String birthDate = (1 + random.nextInt(28)) + "-" + MONTHS[random.nextInt(12)] + "-"
+                    + String.format("%02d", random.nextInt(100));
+            String address = (500 + random.nextInt(addresses)) + " W. University Ave, El Paso, TX 79968";
+            String phone = String.format("(915) %03d-%04d", random.nextInt(1000), random.nextInt(10_000));
+            Customer customer = compact
+                    ? CompactCustomer.create(i + 1, firstName, lastName, birthDate, address, phone)
+                    : null;
+            customers[i] = customer != null ? customer
+                    : new PlainCustomer(i + 1, firstName, lastName, birthDate, address, phone);
+        }
+    }
+
+    /**
+     * Returns a random capitalized last name of 4 to 10 letters.
+     */
+    private static String lastName(SplittableRandom random) {
+        char[] name = new char[4 + random.nextInt(7)];
+        name[0] = (char) ('A' + random.nextInt(26));
+        for (int i = 1; i < name.length; i++) {
+            name[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(name);
+    }
+
+    /**
+     * Returns the heap in use after a full collection.
+     */
+    private static long usedAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the bank's hot paths at several data sizes and thread counts, and writes
+ * the results to a CSV file that can be compared between releases.
+ *
+ * <p>
+ * For each number of customers, the benchmark generates a customer file, then measures
+ * {@code LoadCSV}, {@code parseCSVLine}, {@code findCustomerById}, {@code Account.transfer},
+ * {@code Credit.pay}, {@code transactionLogger.log}, {@code transactionLogger.logEvent}
+ * and {@code saveToCSV}. The lookups, transfers, payments and log writes are also run
+ * from several threads at once. Every
+ * measurement is preceded by a warm-up of the same length and reports the time per
+ * operation and, like JMH's {@code -prof gc}, the bytes allocated per operation, counted
+ * on every thread that ran it.
+ * </p>
+ *
+ * <p>
+ * Results are written as {@code benchmark,customers,threads,operations,ns_per_op,ops_per_sec,bytes_per_op}
+ * rows. Running with {@code --compare} prints the change between two result files.
+ * Run it from a scratch directory: the log benchmarks append to {@code TransactionLog.txt}
+ * in the working directory, synchronously unless {@code -Dbank.log.durability} selects
+ * the asynchronous writer as for {@link RunBank}. Every load adds its accounts to the {@link AccountStore}, so
+ * the largest sizes need a large heap.
+ * </p>
+ *
+ * <pre>
+ * java -Xmx4g -cp out HotPathBenchmark [--sizes 1000,100000,1000000] [--threads 1,4]
+ *      [--seconds 1] [--out hotpath-results.csv]
+ * java -cp out HotPathBenchmark --compare old-results.csv new-results.csv
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class HotPathBenchmark {
+
+    /**
+     * The header of a results file.
+     */
+    private static final String HEADER = "benchmark,customers,threads,operations,ns_per_op,ops_per_sec,bytes_per_op";
+
+    /**
+     * The starting balance of every generated account, in cents. Large enough that
+     * transfers and payments of a cent never fail.
+     */
+    private static final long STARTING_BALANCE = Money.ofDollars(1_000_000_000L);
+
+    /**
+     * Allocation counters of the running threads.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Standard output, kept while the measured code's own messages are discarded.
+     */
+    private static final PrintStream OUT = System.out;
+
+    /**
+     * One measured operation.
+     */
+    private interface Operation {
+
+        /**
+         * Runs the operation once.
+         *
+         * @param random The calling thread's random numbers.
+         */
+        void run(SplittableRandom random) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--compare")) {
+            compare(args[1], args[2]);
+            return;
+        }
+
+        int[] sizes = {1_000, 100_000, 1_000_000};
+        int[] threadCounts = {1, 4};
+        double seconds = 1;
+        String out = "hotpath-results.csv";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = parseList(args[i + 1]);
+                    break;
+                case "--threads":
+                    threadCounts = parseList(args[i + 1]);
+                    break;
+                case "--seconds":
+                    seconds = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--out":
+                    out = args[i + 1];
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        long nanos = (long) (seconds * 1e9);
+
+        String logDurability = System.getProperty("bank.log.durability");
+        if (logDurability != null) {
+            transactionLogger.startAsync(AsyncLogWriter.Durability.valueOf(logDurability.toUpperCase()),
+                    Long.getLong("bank.log.fsyncMillis", 1000), Integer.getInteger("bank.log.capacity", 8192));
+        }
+
+        File dir = Files.createTempDirectory("hotpath-benchmark").toFile();
+        ArrayList<String> results = new ArrayList<>();
+        OUT.printf("%-28s %12s %8s %14s %14s %14s%n", "benchmark", "customers", "threads", "ns/op", "ops/s", "bytes/op");
+        try {
+            for (int size : sizes) {
+                File fixture = new File(dir, "customers-" + size + ".csv");
+                generate(fixture, size);
+                runAll(fixture, size, threadCounts, nanos, new File(dir, "saved.csv"), results);
+            }
+        } finally {
+            transactionLogger.shutdown();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(out))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (String row : results) {
+                writer.write(row);
+                writer.newLine();
+            }
+        }
+        OUT.println("Results written to " + out);
+    }
+
+    /**
+     * Measures every hot path for one customer file.
+     */
+    private static void runAll(File fixture, int size, int[] threadCounts, long nanos, File saved,
+            ArrayList<String> results) throws Exception {
+        // Loading, one whole file per operation
+        results.add(measure("LoadCSV", size, 1, nanos, random -> {
+            RunBank.customerList = new ArrayList<>();
+            RunBank.directory = new BankDirectory();
+            RunBank.service = new BankService(RunBank.directory, null, false);  // findCustomerById looks here
+            RunBank.LoadCSV(fixture.getPath());
+        }));
+
+        // Parsing, one line per operation
+        ArrayList<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fixture))) {
+            reader.readLine();
+            String line;
+            while (lines.size() < 10_000 && (line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        results.add(measure("parseCSVLine", size, 1, nanos,
+                random -> RunBank.parseCSVLine(lines.get(random.nextInt(lines.size())))));
+
+        // The remaining paths work on the customers of the last load
+        ArrayList<Customer> customers = RunBank.customerList;
+        for (int threads : threadCounts) {
+            results.add(measure("findCustomerById", size, threads, nanos,
+                    random -> RunBank.findCustomerById(1 + random.nextInt(size))));
+            results.add(measure("Account.transfer", size, threads, nanos, random -> {
+                Account source = customers.get(random.nextInt(size)).getAccounts().get(0);
+                Account target = customers.get(random.nextInt(size)).getAccounts().get(1);
+                source.transfer(target, 1);
+            }));
+            results.add(measure("Credit.pay", size, threads, nanos, random -> {
+                Credit credit = (Credit) customers.get(random.nextInt(size)).getAccounts().get(2);
+                credit.pay(1, customers.get(random.nextInt(size)));
+            }));
+            results.add(measure("transactionLogger.log", size, threads, nanos, random -> transactionLogger.log(
+                    "Benchmark Customer deposited $1.00 to Checking-1. Benchmark Customer's New Balance for Checking-1: $2.00")));
+            results.add(measure("transactionLogger.logEvent", size, threads, nanos, random -> {
+                Customer customer = customers.get(random.nextInt(size));
+                Account account = customer.getAccounts().get(0);
+                transactionLogger.logEvent(TransactionType.DEPOSIT, customer, account, null, null, 100,
+                        account.getBalance(), 0);
+            }));
+        }
+
+        // Saving, one whole file per operation
+        results.add(measure("saveToCSV", size, 1, nanos, random -> RunBank.saveToCSV(saved.getPath())));
+    }
+
+    /**
+     * Warms up and then measures one operation on a number of threads, each running it
+     * in a loop for the given time.
+     *
+     * @return The results row.
+     */
+    private static String measure(String name, int size, int threads, long nanos, Operation operation)
+            throws InterruptedException {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));  // Discard the paths' own messages
+        try {
+            run(threads, nanos, operation, new long[2]);  // Warm-up
+            long[] totals = new long[2];  // Operations and allocated bytes
+            long start = System.nanoTime();
+            run(threads, nanos, operation, totals);
+            long elapsed = System.nanoTime() - start;
+
+            double nsPerOp = (double) elapsed * threads / totals[0];
+            double opsPerSec = totals[0] / (elapsed / 1e9);
+            double bytesPerOp = (double) totals[1] / totals[0];
+            OUT.printf("%-28s %,12d %8d %,14.1f %,14.0f %,14.1f%n", name, size, threads, nsPerOp, opsPerSec, bytesPerOp);
+            return String.format("%s,%d,%d,%d,%.1f,%.0f,%.1f", name, size, threads, totals[0], nsPerOp, opsPerSec,
+                    bytesPerOp);
+        } finally {
+            System.setOut(OUT);
+        }
+    }
+
+    /**
+     * Runs an operation on a number of threads until the time is up, adding the number
+     * of operations and the bytes allocated to the totals.
+     */
+    private static void run(int threads, long nanos, Operation operation, long[] totals) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers[t] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                ready.countDown();
+                try {
+                    go.await();
+                    long allocated = THREADS.getCurrentThreadAllocatedBytes();
+                    long deadline = System.nanoTime() + nanos;
+                    long operations = 0;
+                    do {
+                        operation.run(random);
+                        operations++;
+                    } while (System.nanoTime() < deadline);
+                    allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+                    synchronized (totals) {
+                        totals[0] += operations;
+                        totals[1] += allocated;
+                    }
+                } catch (Exception e) {
+                    System.err.println("Benchmark operation failed: " + e);
+                }
+            });
+            workers[t].start();
+        }
+        ready.await();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Writes a customer file with the given number of customers.
+     */
+    private static void generate(File file, int customers) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder line = new StringBuilder(256);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            writer.write(CsvCheckpointer.HEADER);
+            for (int id = 1; id <= customers; id++) {
+                line.setLength(0);
+                line.append(id).append(",First").append(id).append(",Last").append(random.nextInt(1000))
+                        .append(",1-Jan-80,\"").append(random.nextInt(10_000)).append(" Main St, El Paso, TX 79968\",")
+                        .append("(915) 555-").append(1000 + random.nextInt(9000)).append(',');
+                line.append(id).append(',');
+                Money.append(line, STARTING_BALANCE).append(',');
+                line.append(200_000_000 + id).append(',');
+                Money.append(line, STARTING_BALANCE).append(',');
+                line.append(400_000_000 + id).append(',');
+                Money.append(line, STARTING_BALANCE).append(',');
+                Money.append(line, 0).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    /**
+     * Prints the change of every result present in both files.
+     */
+    private static void compare(String oldPath, String newPath) throws IOException {
+        Map<String, String[]> before = read(oldPath);
+        Map<String, String[]> after = read(newPath);
+        System.out.printf("%-28s %12s %8s %14s %14s %9s %12s %12s%n", "benchmark", "customers", "threads",
+                "old ns/op", "new ns/op", "change", "old bytes", "new bytes");
+        for (Map.Entry<String, String[]> entry : after.entrySet()) {
+            String[] previous = before.get(entry.getKey());
+            if (previous == null) {
+                continue;
+            }
+            String[] current = entry.getValue();
+            double oldNs = Double.parseDouble(previous[4]);
+            double newNs = Double.parseDouble(current[4]);
+            System.out.printf("%-28s %,12d %8s %,14.1f %,14.1f %+8.1f%% %,12.1f %,12.1f%n", current[0],
+                    Long.parseLong(current[1]), current[2], oldNs, newNs, (newNs - oldNs) * 100 / oldNs,
+                    Double.parseDouble(previous[6]), Double.parseDouble(current[6]));
+        }
+    }
+
+    /**
+     * Reads a results file, keyed by benchmark, customers and threads.
+     */
+    private static Map<String, String[]> read(String path) throws IOException {
+        Map<String, String[]> rows = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line = reader.readLine();  // Skip the header
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length == 7) {
+                    rows.put(fields[0] + "," + fields[1] + "," + fields[2], fields);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Parses a comma-separated list of numbers.
+     */
+    private static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
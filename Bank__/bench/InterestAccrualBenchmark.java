@@ -0,0 +1,94 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures bulk interest accrual over a large number of savings accounts while
+ * deposits keep running.
+ *
+ * <p>
+ * The benchmark creates the accounts, then runs a number of accruals, half of them
+ * recording every payment in a temporary journal. A background thread makes random
+ * deposits throughout. After each accrual, the total of all balances must equal the
+ * previous total plus the interest paid plus the deposits made, so no concurrent
+ * change was lost.
+ * </p>
+ *
+ * <pre>
+ * java -Xmx4g -cp out InterestAccrualBenchmark [accounts] [rounds]
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class InterestAccrualBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        Saving[] accounts = new Saving[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new Saving(i + 1, Money.ofDollars(1 + i % 20_000));
+        }
+        AccountStore store = AccountStore.ACCOUNTS;
+        System.out.printf("%,d savings accounts, %d cores%n", count, Runtime.getRuntime().availableProcessors());
+
+        InterestAccrual.RateSchedule schedule = InterestAccrual.parseTiers("0:1,1000:2,10000:3");
+        File dir = Files.createTempDirectory("accrual-benchmark").toFile();
+        TransactionJournal journal = new TransactionJournal(dir.getPath());
+        try {
+            for (int round = 0; round < rounds; round++) {
+                boolean journaled = round % 2 == 1;
+                long before = store.totalBalance();
+
+                // Deposit into random accounts while the accrual runs
+                long seed = round;
+                AtomicBoolean stop = new AtomicBoolean();
+                long[] deposited = new long[2];
+                Thread depositor = new Thread(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    while (!stop.get()) {
+                        if (accounts[random.nextInt(count)].tryDeposit(100) != Account.REJECTED) {
+                            deposited[0] += 100;
+                            deposited[1]++;
+                        }
+                    }
+                });
+                depositor.start();
+
+                InterestAccrual accrual = new InterestAccrual(store, schedule, journaled ? journal : null);
+                InterestAccrual.Summary summary = accrual.accrue();
+                stop.set(true);
+                depositor.join();
+
+                long after = store.totalBalance();
+                if (after != before + summary.getInterest() + deposited[0]) {
+                    throw new IllegalStateException("Balances do not add up: " + after + " != " + before
+                            + " + " + summary.getInterest() + " + " + deposited[0]);
+                }
+                System.out.printf("%-12s %,12d accounts paid %,10.1f ms %,14.0f accounts/s, %,d concurrent deposits%n",
+                        journaled ? "journaled" : "in memory", summary.getAccounts(), summary.getNanos() / 1e6,
+                        summary.getAccounts() / (summary.getNanos() / 1e9), deposited[1]);
+            }
+        } finally {
+            journal.close();
+            deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * Deletes the temporary journal directory.
+     */
+    private static void deleteDirectory(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(dir.toPath());
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Compares the heap, the memory outside it and the garbage collection pauses of the
+ * three account ledgers: on the heap, mapped from a {@link LedgerFile}, and in the
+ * native memory segments of the {@link OffHeapLedger}.
+ *
+ * <p>
+ * The ledger is fixed when {@link AccountStore} is loaded, so the benchmark runs each
+ * one in a JVM of its own, started with the heap options it was given itself. Each run
+ * creates the accounts, as a bank would after loading its customers, and reports the
+ * heap and the memory outside it they keep alive. It then times a full collection with
+ * every account live, and runs random transfers between the accounts while allocating
+ * short-lived garbage, as request handling does, recording every collection the garbage
+ * causes. The mapped ledger is written to a temporary file, forced as
+ * {@code bank.ledger.force} says. The results are printed as a table, and as CSV lines
+ * starting with {@code csv,} for scripts:
+ * </p>
+ *
+ * <pre>
+ * java -Xmx8g --enable-preview -cp out LedgerBenchmark [accounts] [transfers]
+ * java -Xmx8g --enable-preview -cp out LedgerBenchmark 10000000 20000000 | grep ^csv
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class LedgerBenchmark {
+
+    /**
+     * The ledgers compared, as values of {@code bank.ledger}.
+     */
+    private static final String[] LEDGERS = {"heap", "mapped", "offheap"};
+
+    /**
+     * The columns of a result line.
+     */
+    private static final String HEADER = "ledger,accounts,heap_bytes_per_account,native_bytes_per_account,"
+            + "full_gc_ms,transfers_per_s,collections,gc_total_ms,gc_max_pause_ms";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--run")) {
+            run(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        String accounts = args.length > 0 ? args[0] : "10000000";
+        String transfers = args.length > 1 ? args[1] : "20000000";
+
+        List<String> results = new ArrayList<>();
+        for (String ledger : LEDGERS) {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                if (!option.startsWith("-Dbank.ledger=") && !option.equals("--enable-preview")) {
+                    command.add(option);
+                }
+            }
+            command.add("--enable-preview");
+            command.add("-Dbank.ledger=" + ledger);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("LedgerBenchmark");
+            command.add("--run");
+            command.add(accounts);
+            command.add(transfers);
+
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            String result = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.startsWith(ledger + ",")) {
+                        result = line;
+                    }
+                }
+            }
+            if (process.waitFor() != 0 || result == null) {
+                System.err.println("The " + ledger + " run failed.");
+                continue;
+            }
+            results.add(result);
+        }
+
+        System.out.printf("%-8s %12s %12s %10s %12s %6s %10s %10s%n", "ledger", "heap B/acct", "native B/acct",
+                "full GC ms", "transfers/s", "GCs", "GC ms", "max pause");
+        for (String result : results) {
+            String[] f = result.split(",");
+            System.out.printf("%-8s %12s %12s %10s %,12d %6s %10s %10s%n", f[0], f[2], f[3], f[4],
+                    Long.parseLong(f[5]), f[6], f[7], f[8]);
+        }
+        System.out.println("csv," + HEADER);
+        for (String result : results) {
+            System.out.println("csv," + result);
+        }
+    }
+
+    /**
+     * Measures the ledger this JVM was started with and prints one result line.
+     */
+    private static void run(int count, int transfers) throws IOException {
+        String ledger = AccountStore.OFF_HEAP ? "offheap" : AccountStore.MAPPED ? "mapped" : "heap";
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        LedgerFile ledgerFile = null;
+        if (AccountStore.MAPPED) {
+            File file = File.createTempFile("ledger", ".bin");
+            file.deleteOnExit();
+            ledgerFile = new LedgerFile(file.getPath(), AccountStore.PAGE_SIZE, AccountStore.LEDGER_PAGE_BYTES);
+            AccountStore.ACCOUNTS.openLedger(ledgerFile);
+            LedgerFile.ForcePolicy policy = LedgerFile.ForcePolicy.valueOf(
+                    System.getProperty("bank.ledger.force", "interval").toUpperCase());
+            ledgerFile.start(policy, Long.getLong("bank.ledger.forceMillis", 1000));
+        }
+
+        long heapBefore = usedAfterGc(memory);
+        long nativeBefore = nativeMemoryUsed();
+        Account[] accounts = new Account[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new Checking(i + 1, Money.ofDollars(1_000));
+        }
+        long heap = usedAfterGc(memory) - heapBefore;
+        // Mapped pages are not counted by the JVM, but take the same bytes per page as segments
+        long offHeap = AccountStore.MAPPED
+                ? (long) AccountStore.ACCOUNTS.pageCount() * AccountStore.LEDGER_PAGE_BYTES
+                : nativeMemoryUsed() - nativeBefore;
+
+        long start = System.nanoTime();
+        System.gc();
+        double fullGcMillis = (System.nanoTime() - start) / 1e6;
+
+        // Transfers, with a little garbage per operation like a request would make
+        AtomicLong collections = new AtomicLong();
+        AtomicLong gcMillis = new AtomicLong();
+        AtomicLong maxPause = new AtomicLong();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    long duration = GarbageCollectionNotificationInfo
+                            .from((CompositeData) notification.getUserData()).getGcInfo().getDuration();
+                    collections.incrementAndGet();
+                    gcMillis.addAndGet(duration);
+                    maxPause.accumulateAndGet(duration, Math::max);
+                }
+            }, null, null);
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        byte[][] garbage = new byte[1024][];
+        start = System.nanoTime();
+        for (int i = 0; i < transfers; i++) {
+            Account source = accounts[random.nextInt(count)];
+            Account target = accounts[random.nextInt(count)];
+            if (source.transfer(target, 1 + random.nextInt(10_000))) {
+                garbage[i & 1023] = new byte[64];
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (ledgerFile != null) {
+            ledgerFile.close();
+        }
+        if (AccountStore.ACCOUNTS.totalBalance() != (long) count * Money.ofDollars(1_000)) {
+            throw new IllegalStateException("Transfers did not preserve the total balance.");
+        }
+
+        System.out.printf("%s,%d,%.1f,%.1f,%.1f,%.0f,%d,%d,%d%n", ledger, count, (double) heap / count,
+                (double) offHeap / count, fullGcMillis, transfers / seconds, collections.get(), gcMillis.get(),
+                maxPause.get());
+    }
+
+    /**
+     * Returns the heap in use after a full collection.
+     */
+    private static long usedAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Returns the memory used by direct buffers and native memory segments.
+     */
+    private static long nativeMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
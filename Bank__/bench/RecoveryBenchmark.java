@@ -0,0 +1,157 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Measures crash recovery from the transaction journal with and without snapshots.
+ *
+ * <p>
+ * The benchmark writes a journal of random deposits, withdrawals and transfers, then
+ * recovers a fresh copy of the bank three times: by replaying the whole journal, from a
+ * snapshot followed by a short tail, and from a snapshot at the very end. All three
+ * must produce the same balances. The time of a full replay grows with the length of
+ * the history, while recovery from a snapshot depends only on the tail and the number
+ * of accounts.
+ * </p>
+ *
+ * <pre>
+ * java -cp out RecoveryBenchmark [records] [customers] [tail records]
+ * </pre>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class RecoveryBenchmark {
+
+    /**
+     * The starting balance of every account, in cents.
+     */
+    private static final long STARTING_BALANCE = Money.ofDollars(1_000);
+
+    public static void main(String[] args) throws IOException {
+        long records = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        long tail = args.length > 2 ? Long.parseLong(args[2]) : 100_000L;
+        File dir = Files.createTempDirectory("recovery-benchmark").toFile();
+        try {
+            System.out.printf("%,d journal records over %,d customers in %s%n", records, customers, dir);
+
+            // Write the journal
+            long start = System.nanoTime();
+            writeJournal(dir.getPath(), records, customers);
+            report("write journal", records, System.nanoTime() - start);
+
+            // Replay everything
+            ArrayList<Customer> full = newCustomers(customers);
+            start = System.nanoTime();
+            JournalRecovery.recover(dir.getPath(), newDirectory(full));
+            report("recover, full replay", records, System.nanoTime() - start);
+
+            // Snapshot before the tail, then recover from it
+            start = System.nanoTime();
+            new JournalCheckpointer(dir.getPath(), newCustomers(customers), 0).snapshot(records - tail);
+            report("snapshot at " + (records - tail), records - tail, System.nanoTime() - start);
+            ArrayList<Customer> fromTail = newCustomers(customers);
+            start = System.nanoTime();
+            long replayed = JournalRecovery.recover(dir.getPath(), newDirectory(fromTail));
+            report("recover, snapshot + tail", replayed, System.nanoTime() - start);
+            verify(full, fromTail);
+
+            // Snapshot at the end, then recover from it
+            JournalCheckpointer checkpointer = new JournalCheckpointer(dir.getPath(), newCustomers(customers), 0);
+            checkpointer.snapshot(records);
+            ArrayList<Customer> fromEnd = newCustomers(customers);
+            start = System.nanoTime();
+            replayed = JournalRecovery.recover(dir.getPath(), newDirectory(fromEnd));
+            report("recover, snapshot only", replayed, System.nanoTime() - start);
+            verify(full, fromEnd);
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Appends random deposits, withdrawals and transfers between the customers' accounts.
+     */
+    private static void writeJournal(String dir, long records, int customers) throws IOException {
+        TransactionJournal journal = new TransactionJournal(dir);
+        SplittableRandom random = new SplittableRandom(42);
+        for (long i = 0; i < records; i++) {
+            int source = accountNumber(random.nextInt(customers), random.nextInt(3));
+            long amount = 1 + random.nextInt(10_000);
+            int kind = random.nextInt(3);
+            if (kind == 0) {
+                journal.append(TransactionType.DEPOSIT, 0, source, 0, 0, amount, 0, 0);
+            } else if (kind == 1) {
+                journal.append(TransactionType.WITHDRAW, 0, source, 0, 0, amount, 0, 0);
+            } else {
+                int target = accountNumber(random.nextInt(customers), random.nextInt(3));
+                journal.append(TransactionType.TRANSFER, 0, source, 0, target, amount, 0, 0);
+            }
+        }
+        journal.close();
+    }
+
+    /**
+     * Returns the account number of one of a customer's three accounts.
+     */
+    private static int accountNumber(int customer, int kind) {
+        return kind * 10_000_000 + customer + 1;
+    }
+
+    /**
+     * Creates customers with a checking, a savings and a credit account each,
+     * all at the starting balance.
+     */
+    private static ArrayList<Customer> newCustomers(int count) {
+        ArrayList<Customer> customers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            customers.add(RunBank.createCustomer(i + 1, "First", "Last", "1-Jan-00", "Address", "Phone",
+                    accountNumber(i, 0), STARTING_BALANCE, accountNumber(i, 1), STARTING_BALANCE,
+                    accountNumber(i, 2), STARTING_BALANCE, 0));
+        }
+        return customers;
+    }
+
+    /**
+     * Indexes the given customers.
+     */
+    private static BankDirectory newDirectory(ArrayList<Customer> customers) {
+        BankDirectory directory = new BankDirectory(customers.size());
+        for (Customer customer : customers) {
+            directory.addCustomer(customer);
+        }
+        return directory;
+    }
+
+    /**
+     * Fails if two recoveries produced different balances.
+     */
+    private static void verify(ArrayList<Customer> expected, ArrayList<Customer> actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            for (int a = 0; a < 3; a++) {
+                long e = expected.get(i).getAccounts().get(a).getBalance();
+                long b = actual.get(i).getAccounts().get(a).getBalance();
+                if (e != b) {
+                    throw new IllegalStateException("Balance mismatch for customer " + (i + 1) + ": " + e + " != " + b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the time taken and the rate for one step.
+     */
+    private static void report(String step, long records, long nanos) {
+        System.out.printf("%-32s %,12d records %,10.1f ms %,14.0f records/s%n",
+                step, records, nanos / 1e6, records / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,105 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that concurrent transfers and payments neither create nor lose money and
+ * never overdraw an account. Run once per concurrency mode: the build runs it again
+ * with {@code -Dbank.concurrency=locked}.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class AccountTransferTest {
+
+    private static final int ACCOUNTS = 16;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 50_000;
+    private static final long STARTING_BALANCE = Money.ofDollars(100);
+
+    @Test
+    void transfersKeepTheTotal() throws InterruptedException {
+        ArrayList<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(i % 2 == 0 ? new Checking(900_000 + i, STARTING_BALANCE)
+                    : new Saving(900_000 + i, STARTING_BALANCE));
+        }
+        AtomicLong made = new AtomicLong();
+        run(thread -> {
+            SplittableRandom random = new SplittableRandom(thread);
+            for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                Account source = accounts.get(random.nextInt(ACCOUNTS));
+                Account target = accounts.get(random.nextInt(ACCOUNTS));
+                if (source.transfer(target, random.nextLong(1, STARTING_BALANCE))) {
+                    made.incrementAndGet();
+                }
+            }
+        });
+
+        long total = 0;
+        for (Account account : accounts) {
+            assertTrue(account.getBalance() >= 0, "Account " + account.getAccountNumber() + " overdrawn");
+            total += account.getBalance();
+        }
+        assertEquals(ACCOUNTS * STARTING_BALANCE, total);
+        assertTrue(made.get() > 0);
+    }
+
+    @Test
+    void paymentsKeepTheTotalWithinTheCreditLimit() throws InterruptedException {
+        long limit = Money.ofDollars(50);
+        ArrayList<Credit> cards = new ArrayList<>();
+        ArrayList<Account> receivers = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            cards.add(new Credit(910_000 + i, limit, 0));
+            receivers.add(new Checking(920_000 + i, 0));
+        }
+        run(thread -> {
+            SplittableRandom random = new SplittableRandom(thread);
+            for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                cards.get(random.nextInt(ACCOUNTS)).tryPay(random.nextLong(1, Money.ofDollars(5)),
+                        receivers.get(random.nextInt(ACCOUNTS)), null, 0);
+            }
+        });
+
+        long total = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Credit card = cards.get(i);
+            assertEquals(limit, card.getMaxCredit());
+            assertTrue(card.getBalance() >= -limit, "Card " + card.getAccountNumber() + " over its limit");
+            total += card.getBalance() + receivers.get(i).getBalance();
+        }
+        assertEquals(0, total);
+    }
+
+    /**
+     * Runs a task on several threads at once and waits for all of them.
+     */
+    private static void run(IntConsumer task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.accept(thread);
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
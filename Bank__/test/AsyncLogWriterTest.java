@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that the {@link AsyncLogWriter} writes every queued message once and in order,
+ * renders events as a {@link LogLine} does, and lets go of a written event's customers.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class AsyncLogWriterTest {
+
+    private static final int THREADS = 8;
+    private static final int MESSAGES_PER_THREAD = 2_000;
+
+    @TempDir
+    Path dir;
+
+    private final Customer alice = RunBank.createCustomer(1, "Alice", "Ames", "1-Jan-80", "Address", "Phone",
+            810_000, Money.ofDollars(100), 810_001, Money.ofDollars(50), 810_002, Money.ofDollars(500), 0);
+    private final Customer bob = RunBank.createCustomer(2, "Bob", "Burns", "2-Feb-81", "Address", "Phone",
+            820_000, Money.ofDollars(10), 820_001, 0, 820_002, Money.ofDollars(500), 0);
+
+    @Test
+    void writesTextAndEventsInTheOrderTheyWereQueued() throws IOException {
+        Path file = dir.resolve("log.txt");
+        // A ring of three slots wraps around many times
+        AsyncLogWriter writer = new AsyncLogWriter(file.toString(), null, 3, AsyncLogWriter.Durability.NONE, 1000);
+        LogLine expected = new LogLine(256);
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        Account checking = alice.getAccount(AccountType.CHECKING);
+        Account target = bob.getAccount(AccountType.SAVING);
+        for (int i = 0; i < 300; i++) {
+            expected.reset();
+            if (i % 3 == 0) {
+                assertTrue(writer.append("Note " + i + " €"));
+                expected.append("Note " + i + " €");
+            } else {
+                TransactionType type = i % 3 == 1 ? TransactionType.DEPOSIT : TransactionType.TRANSFER;
+                assertTrue(writer.appendEvent(type, alice, checking, bob, target, i, 1_000 + i, 2_000 + i));
+                expected.appendEvent(type, alice, checking, bob, target, i, 1_000 + i, 2_000 + i);
+            }
+            expected.appendLineSeparator();
+            all.write(expected.array(), 0, expected.length());
+        }
+        writer.close();
+        assertEquals(all.toString(StandardCharsets.UTF_8), Files.readString(file));
+        assertFalse(writer.append("After close"), "A closed writer refuses messages");
+    }
+
+    @Test
+    void writesEveryCallersMessagesOnceAndInOrder() throws IOException, InterruptedException {
+        Path file = dir.resolve("log.txt");
+        AsyncLogWriter writer = new AsyncLogWriter(file.toString(), null, 64, AsyncLogWriter.Durability.BATCH, 1000);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < MESSAGES_PER_THREAD; i++) {
+                    assertTrue(writer.append(thread + " " + i));
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        int[] next = new int[THREADS];
+        List<String> lines = Files.readAllLines(file);
+        for (String line : lines) {
+            String[] fields = line.split(" ");
+            int thread = Integer.parseInt(fields[0]);
+            assertEquals(next[thread]++, Integer.parseInt(fields[1]), "Thread " + thread);
+        }
+        assertEquals(THREADS * MESSAGES_PER_THREAD, lines.size());
+    }
+
+    @Test
+    void letsGoOfTheCustomersOfWrittenEvents() throws IOException, InterruptedException {
+        Path file = dir.resolve("log.txt");
+        AsyncLogWriter writer = new AsyncLogWriter(file.toString(), null, 16, AsyncLogWriter.Durability.BATCH, 1000);
+        WeakReference<Customer> dropped = queueForDroppedCustomer(writer);
+
+        // The writer is still open and its ring still holds the slot
+        ArrayList<byte[]> garbage = new ArrayList<>();
+        for (int i = 0; i < 50 && dropped.get() != null; i++) {
+            System.gc();
+            garbage.add(new byte[1 << 16]);
+            Thread.sleep(10);
+        }
+        assertNull(dropped.get(), "The ring still holds the customer of a written event");
+        writer.close();
+    }
+
+    /**
+     * Logs an inquiry by a customer that nothing else refers to, once the call returns.
+     */
+    private WeakReference<Customer> queueForDroppedCustomer(AsyncLogWriter writer) {
+        Customer customer = RunBank.createCustomer(3, "Carol", "Cole", "3-Mar-82", "Address", "Phone");
+        assertTrue(writer.appendEvent(TransactionType.INQUIRY, customer, alice.getAccount(AccountType.CHECKING),
+                null, null, 0, 0, 0));
+        return new WeakReference<>(customer);
+    }
+}
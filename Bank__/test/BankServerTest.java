@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a {@link BankServer} answers pipelined requests in order, refuses requests
+ * it should not run and serves many clients at once without losing a deposit.
+ *
+ * <p>
+ * The server runs against the bank of {@link RunBank}, to which each test adds its own
+ * customers.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class BankServerTest {
+
+    private static final int CLIENTS = 50;
+
+    private static final int DEPOSITS = 20;
+
+    private BankServer server;
+    private Thread serving;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new BankServer(0);
+        serving = new Thread(server::serve);
+        serving.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        server.close();
+        serving.join();
+    }
+
+    @Test
+    void answersPipelinedRequestsInOrder() throws IOException {
+        addCustomer(1_400_001, 14_000_010, 14_000_011);
+        addCustomer(1_400_002, 14_000_020, 14_000_021);
+
+        List<String> replies = exchange(String.join("\n",
+                "deposit,1400001,14000010,150.25",
+                "# A comment gets no reply",
+                "transfer,1400001,14000010,50,1400002,14000021",
+                "deposit," + "9".repeat(300),
+                "withdraw,1400002,14000021,5000",
+                "inquiry,1400002,14000021",
+                "interest",
+                "quit",
+                "deposit,1400001,14000010,1"));
+
+        assertEquals(List.of(
+                "1,deposit,OK,1150.25",
+                "3,transfer,OK,1100.25",
+                "4,unknown,ERROR,Request longer than 256 characters.",
+                "5,withdraw,FAILED,Invalid withdrawal amount.",
+                "6,inquiry,OK,1050.00",
+                "7,interest,FAILED,Interest can only be paid from a batch file."), replies);
+        assertEquals(Money.ofDollars(1_100) + 25, RunBank.directory.findAccount(14_000_010).getBalance(),
+                "Requests after quit are not run");
+    }
+
+    @Test
+    void losesNoDepositOfConcurrentClients() throws Exception {
+        addCustomer(1_400_101, 14_001_010, 14_001_011);
+
+        StringBuilder session = new StringBuilder();
+        for (int i = 0; i < DEPOSITS; i++) {
+            session.append("deposit,1400101,14001010,1.00\n");
+        }
+        session.append("quit");
+        List<Future<List<String>>> clients = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(8)) {
+            for (int c = 0; c < CLIENTS; c++) {
+                clients.add(pool.submit(() -> exchange(session.toString())));
+            }
+        }
+        for (Future<List<String>> client : clients) {
+            List<String> replies = client.get();
+            assertEquals(DEPOSITS, replies.size());
+            for (int i = 0; i < DEPOSITS; i++) {
+                assertEquals((i + 1) + ",deposit,OK", replies.get(i).substring(0, replies.get(i).lastIndexOf(',')));
+            }
+        }
+        assertEquals(Money.ofDollars(1_000 + CLIENTS * DEPOSITS),
+                RunBank.directory.findAccount(14_001_010).getBalance());
+    }
+
+    /**
+     * Sends the requests on a new connection and reads every reply until the server
+     * closes it.
+     */
+    private List<String> exchange(String requests) throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write((requests + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            List<String> replies = new ArrayList<>();
+            String reply;
+            while ((reply = in.readLine()) != null) {
+                replies.add(reply);
+            }
+            return replies;
+        }
+    }
+
+    private static void addCustomer(int id, int checking, int saving) {
+        RunBank.directory.addCustomer(RunBank.createCustomer(id, "First", "Last", "1-Jan-00", "Address", "Phone",
+                checking, Money.ofDollars(1_000), saving, Money.ofDollars(1_000), id * 10 + 2, Money.ofDollars(1_000),
+                0));
+    }
+}
@@ -0,0 +1,201 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that {@link BankService#submitBatch} gives each command the outcome it would
+ * have had if made on its own, records every change in the journal and makes nothing
+ * when the batch cannot be recorded.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class BankServiceTest {
+
+    private static final int CUSTOMERS = 20;
+
+    private static final long STARTING_BALANCE = Money.ofDollars(1_000);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void batchesHaveTheOutcomesOfSingleOperations() {
+        ArrayList<Customer> batched = newCustomers();
+        ArrayList<Customer> single = newCustomers();
+        BankService batchService = new BankService(newDirectory(batched), null, false);
+        BankService singleService = new BankService(newDirectory(single), null, false);
+
+        SplittableRandom random = new SplittableRandom(7);
+        for (int batch = 0; batch < 200; batch++) {
+            List<BankService.Command> commands = randomCommands(random, 1 + random.nextInt(40));
+            BankService.Result[] results = batchService.submitBatch(commands);
+            assertEquals(commands.size(), results.length);
+            for (int i = 0; i < commands.size(); i++) {
+                BankService.Result expected = makeOne(singleService, commands.get(i));
+                String where = "Batch " + batch + ", command " + i;
+                assertEquals(expected.getType(), results[i].getType(), where);
+                assertEquals(expected.getOutcome(), results[i].getOutcome(), where);
+                assertEquals(expected.getMessage(), results[i].getMessage(), where);
+                if (expected.isOk()) {
+                    assertEquals(expected.getBalance(), results[i].getBalance(), where);
+                }
+            }
+        }
+        assertSameBalances(single, batched);
+    }
+
+    @Test
+    void recordsEveryChangeOfABatch() throws IOException {
+        String journalDir = dir.resolve("journal").toString();
+        TransactionJournal journal = new TransactionJournal(journalDir, 16);
+        ArrayList<Customer> live = newCustomers();
+        BankService service = new BankService(newDirectory(live), journal, true);
+
+        SplittableRandom random = new SplittableRandom(11);
+        int made = 0;
+        for (int batch = 0; batch < 50; batch++) {
+            for (BankService.Result result : service.submitBatch(randomCommands(random, 1 + random.nextInt(40)))) {
+                if (result.isOk()) {
+                    made++;
+                }
+            }
+        }
+        assertEquals(made, journal.getNextSequence(), "One record per change, none for a refused command");
+        journal.close();
+
+        ArrayList<Customer> restored = newCustomers();
+        assertEquals(made, JournalRecovery.recover(journalDir, newDirectory(restored)));
+        assertSameBalances(live, restored);
+    }
+
+    @Test
+    void makesNothingWhenTheBatchCannotBeRecorded() throws IOException {
+        File journalDir = dir.resolve("journal").toFile();
+        TransactionJournal journal = new TransactionJournal(journalDir.getPath(), 4);
+        ArrayList<Customer> customers = newCustomers();
+        BankService service = new BankService(newDirectory(customers), journal, false);
+
+        // The batch needs new segments, which cannot be created once the directory is gone
+        for (File segment : journalDir.listFiles()) {
+            assertTrue(segment.delete());
+        }
+        assertTrue(journalDir.delete());
+        List<BankService.Command> commands = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            commands.add(BankService.Command.deposit(id, checking(id), Money.ofDollars(5)));
+        }
+        commands.add(BankService.Command.deposit(CUSTOMERS + 1, checking(1), Money.ofDollars(5)));
+
+        BankService.Result[] results = service.submitBatch(commands);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(BankService.Outcome.NOT_RECORDED, results[i].getOutcome());
+        }
+        assertEquals(BankService.Outcome.CUSTOMER_NOT_FOUND, results[10].getOutcome());
+        for (Customer customer : customers) {
+            assertEquals(STARTING_BALANCE, customer.getAccounts().get(0).getBalance());
+        }
+    }
+
+    /**
+     * Returns random commands of every type, some of which name a customer or account
+     * that does not exist or an amount that is refused.
+     */
+    private static List<BankService.Command> randomCommands(SplittableRandom random, int count) {
+        List<BankService.Command> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int customer = random.nextInt(CUSTOMERS + 2);  // 0 and CUSTOMERS + 1 do not exist
+            int other = 1 + random.nextInt(CUSTOMERS);
+            int account = random.nextInt(8) == 0 ? checking(other) : checking(customer);
+            long amount = random.nextLong(-Money.ofDollars(10), Money.ofDollars(900));
+            switch (random.nextInt(5)) {
+                case 0:
+                    commands.add(BankService.Command.deposit(customer, account, amount));
+                    break;
+                case 1:
+                    commands.add(BankService.Command.withdraw(customer, saving(customer), amount));
+                    break;
+                case 2:
+                    commands.add(BankService.Command.transfer(customer, account, amount, other,
+                            random.nextBoolean() ? saving(other) : checking(other)));
+                    break;
+                case 3:
+                    commands.add(BankService.Command.pay(customer, credit(customer), amount, other));
+                    break;
+                default:
+                    commands.add(BankService.Command.inquiry(customer, account));
+                    break;
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Makes one command through the single-operation methods of the service.
+     */
+    private static BankService.Result makeOne(BankService service, BankService.Command command) {
+        switch (command.type) {
+            case DEPOSIT:
+                return service.deposit(command.customerID, command.accountNumber, command.amount);
+            case WITHDRAW:
+                return service.withdraw(command.customerID, command.accountNumber, command.amount);
+            case TRANSFER:
+                return service.transfer(command.customerID, command.accountNumber, command.amount,
+                        command.targetCustomerID, command.targetAccountNumber);
+            case PAY:
+                return service.pay(command.customerID, command.accountNumber, command.amount,
+                        command.targetCustomerID);
+            default:
+                return service.inquire(command.customerID, command.accountNumber);
+        }
+    }
+
+    private static void assertSameBalances(ArrayList<Customer> expected, ArrayList<Customer> actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            List<Account> accounts = expected.get(i).getAccounts();
+            for (int a = 0; a < accounts.size(); a++) {
+                Account account = accounts.get(a);
+                assertEquals(account.getBalance(), actual.get(i).getAccounts().get(a).getBalance(),
+                        "Account " + account.getAccountNumber());
+            }
+        }
+    }
+
+    private static ArrayList<Customer> newCustomers() {
+        ArrayList<Customer> customers = new ArrayList<>();
+        for (int id = 1; id <= CUSTOMERS; id++) {
+            customers.add(RunBank.createCustomer(id, "First", "Last", "1-Jan-00", "Address", "Phone",
+                    checking(id), STARTING_BALANCE, saving(id), STARTING_BALANCE, credit(id), STARTING_BALANCE, 0));
+        }
+        return customers;
+    }
+
+    private static BankDirectory newDirectory(ArrayList<Customer> customers) {
+        BankDirectory directory = new BankDirectory(customers.size());
+        for (Customer customer : customers) {
+            directory.addCustomer(customer);
+        }
+        return directory;
+    }
+
+    private static int checking(int customer) {
+        return 1_500_000 + customer * 10;
+    }
+
+    private static int saving(int customer) {
+        return 1_500_000 + customer * 10 + 1;
+    }
+
+    private static int credit(int customer) {
+        return 1_500_000 + customer * 10 + 2;
+    }
+}
@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a {@link CompactCustomer} gives back exactly the details it was created
+ * with while holding no strings of its own, and that the {@link NameArena} keeps names
+ * added from many threads apart and compares them like strings.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class CompactCustomerTest {
+
+    @Test
+    void givesBackTheDetailsItWasCreatedWith() {
+        String[][] details = {
+            {"Mickey", "Mouse", "5-Mar-39", "1 Disney Way", "(915) 747-5042"},
+            {"José", "Hernández", "1939-03-05", "500 W. University Ave", "915-747-0042"},
+            {"Ann", "O'Neil", "March 5, 1939", "500 W. University Ave", "0044 20 7946 0958"},
+            {"Bo", "", "29-Feb-00", null, "+1 (800) 555-0199 ext. 12"},
+            {"Li", "Wu", null, "Somewhere", "call #5"},
+            {"Al", "Ng", "05-Mar-39", "Elsewhere", "1234567890123456789"},
+            {"Ed", "Ox", "1939-13-05", "Elsewhere", null},
+        };
+        for (int i = 0; i < details.length; i++) {
+            String[] d = details[i];
+            CompactCustomer customer = CompactCustomer.create(1_800_000 + i, d[0], d[1], d[2], d[3], d[4]);
+            assertNotNull(customer, d[1]);
+            assertEquals(1_800_000 + i, customer.getId());
+            assertEquals(d[0], customer.getFirstName());
+            assertEquals(d[1], customer.getLastName());
+            assertEquals(d[2], customer.getBirthDate(), "Birth date of " + d[0]);
+            assertEquals(d[3], customer.getAddress());
+            assertEquals(d[4], customer.getPhoneNumber(), "Phone number of " + d[0]);
+        }
+    }
+
+    @Test
+    void sharesOneStringPerAddress() {
+        CompactCustomer first = CompactCustomer.create(1_800_100, "A", "B", null,
+                new String("1 Shared Street"), null);
+        CompactCustomer second = CompactCustomer.create(1_800_101, "C", "D", null,
+                new String("1 Shared Street"), null);
+        assertSame(first.getAddress(), second.getAddress());
+    }
+
+    @Test
+    void refusesNamesTheArenaCannotHold() {
+        assertNull(CompactCustomer.create(1_800_200, "Zoë", "Ω-Smith", null, null, null), "Not Latin-1");
+        assertNull(CompactCustomer.create(1_800_201, "A", "x".repeat(256), null, null, null), "Too long");
+        assertNotNull(CompactCustomer.create(1_800_202, "A", "x".repeat(255), null, null, null));
+    }
+
+    @Test
+    void holdsNoStringFields() {
+        for (Class<?> type = CompactCustomer.class; type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (!java.lang.reflect.Modifier.isStatic(field.getModifiers())) {
+                    assertTrue(field.getType() != String.class, type.getName() + "." + field.getName());
+                }
+            }
+        }
+    }
+
+    @Test
+    void keepsNamesAddedConcurrentlyApart() throws Exception {
+        NameArena arena = new NameArena();
+        int threads = 4;
+        int names = 60_000;  // Enough to fill several chunks
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    int[] refs = new int[names];
+                    for (int i = 0; i < names; i++) {
+                        refs[i] = arena.add("First" + thread + "-" + i, "Last".repeat(i % 8) + thread + "-" + i);
+                    }
+                    for (int i = 0; i < names; i++) {
+                        if (!arena.firstName(refs[i]).equals("First" + thread + "-" + i)
+                                || !arena.lastName(refs[i]).equals("Last".repeat(i % 8) + thread + "-" + i)) {
+                            return "Name " + i + " of thread " + thread;
+                        }
+                    }
+                    return null;
+                }));
+            }
+        }
+        for (Future<String> result : results) {
+            assertNull(result.get());
+        }
+        assertTrue(arena.size() > 2 << 20, "Spans several chunks");
+    }
+
+    @Test
+    void comparesLastNamesLikeStrings() {
+        String[] names = {"Smith", "smith", "SMITHERS", "Núñez", "NUÑEZ", "nuñes", "", "Å", "å", "a", "ÿ", "µ",
+            "Straße", "STRASSE", "o'brien", "O'Brien", "Zeta"};
+        NameArena arena = new NameArena();
+        int[] refs = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            refs[i] = arena.add("F", names[i]);
+        }
+        SplittableRandom random = new SplittableRandom(4);
+        for (int i = 0; i < names.length; i++) {
+            for (int j = 0; j < names.length; j++) {
+                int expected = Integer.signum(String.CASE_INSENSITIVE_ORDER.compare(names[i], names[j]));
+                assertEquals(expected, Integer.signum(arena.compareLastNames(refs[i], refs[j])),
+                        names[i] + " and " + names[j]);
+                assertEquals(expected, Integer.signum(arena.compareLastName(refs[i], names[j])),
+                        names[i] + " and " + names[j]);
+                String prefix = names[j].substring(0, random.nextInt(names[j].length() + 1));
+                assertEquals(names[i].regionMatches(true, 0, prefix, 0, prefix.length()),
+                        arena.lastNameStartsWith(refs[i], prefix), names[i] + " starts with " + prefix);
+            }
+        }
+    }
+}
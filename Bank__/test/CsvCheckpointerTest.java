@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that the {@link CsvCheckpointer} keeps its row offsets right when changed rows
+ * grow or shrink, so that every incremental checkpoint matches a full rewrite.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class CsvCheckpointerTest {
+
+    private static final int CUSTOMERS = 200;
+
+    @TempDir
+    Path dir;
+
+    private final ArrayList<Customer> customers = new ArrayList<>();
+    private BankDirectory directory;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Other tests share the tracker; start from no pending changes
+        Account pending;
+        while ((pending = ChangeTracker.poll()) != null) {
+            pending.clearChanged();
+        }
+        directory = new BankDirectory(CUSTOMERS);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            int number = 700_000 + i * 3;
+            Customer customer = RunBank.createCustomer(i + 1, "First" + i, "Last" + i, "1-Jan-00",
+                    i + " Main St, El Paso, TX", "(915) 555-" + (1000 + i), number, Money.ofDollars(i),
+                    number + 1, 5, number + 2, Money.ofDollars(500), -Money.ofDollars(i % 7));
+            customers.add(customer);
+            directory.addCustomer(customer);
+        }
+        file = dir.resolve("Updated_Bank_users.csv");
+    }
+
+    @Test
+    void firstCheckpointWritesEveryRow() throws IOException {
+        CsvCheckpointer checkpointer = new CsvCheckpointer(file.toString(), customers, directory);
+        assertTrue(checkpointer.checkpoint());
+        assertEquals(expected(), read());
+        assertFalse(checkpointer.checkpoint(), "Nothing changed since the last checkpoint");
+    }
+
+    @Test
+    void rowsThatGrowOrShrinkKeepTheRestInPlace() throws IOException {
+        CsvCheckpointer checkpointer = new CsvCheckpointer(file.toString(), customers, directory);
+        checkpointer.checkpoint();
+        SplittableRandom random = new SplittableRandom(13);
+        for (int round = 0; round < 20; round++) {
+            int changes = 1 + random.nextInt(10);
+            for (int c = 0; c < changes; c++) {
+                // Include the first and last rows, whose offsets bound the file
+                int row = c == 0 ? (round % 2 == 0 ? 0 : CUSTOMERS - 1) : random.nextInt(CUSTOMERS);
+                Account checking = customers.get(row).getAccount(AccountType.CHECKING);
+                if (random.nextBoolean()) {
+                    checking.deposit(random.nextLong(1, Money.ofDollars(10_000_000)));
+                } else {
+                    checking.withdraw(checking.getBalance());  // Shrinks the row to 0.00
+                }
+            }
+            assertTrue(checkpointer.checkpoint());
+            assertEquals(expected(), read(), "Round " + round);
+        }
+    }
+
+    @Test
+    void unchangedRowsAreCopiedFromThePreviousFile() throws IOException {
+        CsvCheckpointer checkpointer = new CsvCheckpointer(file.toString(), customers, directory);
+        checkpointer.checkpoint();
+
+        // Mark an unchanged row without changing the file's size; a full rewrite would undo it
+        String marked = read().replace("First150,", "Fixed150,");
+        Files.write(file, marked.getBytes(StandardCharsets.UTF_8));
+        customers.get(10).getAccount(AccountType.SAVING).deposit(Money.ofDollars(123_456));
+        customers.get(190).getAccount(AccountType.SAVING).withdraw(5);
+
+        assertTrue(checkpointer.checkpoint());
+        assertEquals(expected().replace("First150,", "Fixed150,"), read());
+    }
+
+    /**
+     * Returns the file a full rewrite would produce.
+     */
+    private String expected() {
+        StringBuilder all = new StringBuilder(CsvCheckpointer.HEADER);
+        for (Customer customer : customers) {
+            CsvCheckpointer.appendRow(all, customer);
+        }
+        return all.toString();
+    }
+
+    private String read() throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
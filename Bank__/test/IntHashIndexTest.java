@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the {@link IntHashIndex} finds every key it holds through growth and
+ * removals, as a {@link HashMap} would.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class IntHashIndexTest {
+
+    @Test
+    void storesEveryIntIncludingZeroAndNegatives() {
+        IntHashIndex<String> index = new IntHashIndex<>(2);
+        for (int key : new int[] {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 42}) {
+            assertNull(index.put(key, "v" + key));
+        }
+        assertEquals(5, index.size());
+        assertEquals("v0", index.get(0));
+        assertEquals("v-2147483648", index.get(Integer.MIN_VALUE));
+        assertEquals("v42", index.put(42, "answer"));
+        assertEquals("answer", index.get(42));
+        assertEquals(5, index.size());
+        assertFalse(index.containsKey(7));
+        assertThrows(IllegalArgumentException.class, () -> index.put(7, null));
+    }
+
+    @Test
+    void matchesAHashMapThroughGrowthAndRemovals() {
+        IntHashIndex<Integer> index = new IntHashIndex<>();
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range, so that runs of colliding slots form and are shifted back
+            int key = random.nextInt(20_000) * 16;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), index.remove(key), "Remove " + key);
+            } else {
+                assertEquals(expected.put(key, i), index.put(key, i), "Put " + key);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        for (int key = 0; key < 20_000 * 16; key += 16) {
+            assertEquals(expected.get(key), index.get(key), "Get " + key);
+        }
+    }
+
+    @Test
+    void keepsItsEntriesWhenCapacityIsEnsuredOrCleared() {
+        IntHashIndex<String> index = new IntHashIndex<>();
+        for (int key = 0; key < 100; key++) {
+            index.put(key, "v" + key);
+        }
+        index.ensureCapacity(1_000_000);
+        for (int key = 0; key < 100; key++) {
+            assertEquals("v" + key, index.get(key));
+        }
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.get(5) == null && index.remove(5) == null);
+    }
+}
@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that an {@link InterestAccrual} pays each savings account the rate of its
+ * schedule, loses no concurrent deposit and records every payment in the journal.
+ *
+ * <p>
+ * The accrual sweeps every account in the store, including those of other tests, so
+ * each test's schedule only pays the accounts it created.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class InterestAccrualTest {
+
+    private static final int ACCOUNTS = 3_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void paysEachSavingsAccountTheRateOfItsTier() throws IOException {
+        int first = 1_300_000;
+        ArrayList<Account> savings = new ArrayList<>();
+        ArrayList<Account> checking = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            savings.add(new Saving(first + i, Money.ofDollars(i * 50L)));  // The first one is empty
+            checking.add(new Checking(first + ACCOUNTS + i, Money.ofDollars(1_000)));
+        }
+        InterestAccrual.RateSchedule tiers = InterestAccrual.parseTiers("0:100,10000:150,100000:200");
+        InterestAccrual.Summary summary = new InterestAccrual(AccountStore.ACCOUNTS,
+                only(first, 2 * ACCOUNTS, tiers), null).accrue();
+
+        long interest = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            long before = Money.ofDollars(i * 50L);
+            long rate = before >= Money.ofDollars(100_000) ? 200 : before >= Money.ofDollars(10_000) ? 150 : 100;
+            long paid = Money.applyRate(before, rate);
+            assertEquals(before + paid, savings.get(i).getBalance(), "Account " + (first + i));
+            assertEquals(Money.ofDollars(1_000), checking.get(i).getBalance(), "Checking accounts are not paid");
+            interest += paid;
+        }
+        assertEquals(ACCOUNTS - 1, summary.getAccounts());
+        assertEquals(interest, summary.getInterest());
+    }
+
+    @Test
+    void losesNoDepositMadeDuringTheAccrual() throws IOException, InterruptedException {
+        int first = 1_310_000;
+        ArrayList<Account> savings = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            savings.add(new Saving(first + i, Money.ofDollars(1_000)));
+        }
+        AtomicLong deposited = new AtomicLong();
+        Thread depositor = new Thread(() -> {
+            for (int round = 0; round < 20; round++) {
+                for (Account account : savings) {
+                    account.deposit(1);
+                    deposited.incrementAndGet();
+                }
+            }
+        });
+        depositor.start();
+        InterestAccrual.Summary summary = new InterestAccrual(AccountStore.ACCOUNTS,
+                only(first, ACCOUNTS, InterestAccrual.flat(250)), null).accrue();
+        depositor.join();
+
+        long total = 0;
+        for (Account account : savings) {
+            total += account.getBalance();
+        }
+        assertEquals(ACCOUNTS, summary.getAccounts());
+        assertEquals(ACCOUNTS * Money.ofDollars(1_000) + deposited.get() + summary.getInterest(), total);
+    }
+
+    @Test
+    void recordsEveryPaymentInTheJournal() throws IOException {
+        int first = 1_320_000;
+        HashMap<Integer, Account> savings = new HashMap<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            savings.put(first + i, new Saving(first + i, Money.ofDollars(10 + i)));
+        }
+        String journalDir = dir.resolve("journal").toString();
+        TransactionJournal journal = new TransactionJournal(journalDir, 256);
+        InterestAccrual.Summary summary = new InterestAccrual(AccountStore.ACCOUNTS,
+                only(first, ACCOUNTS, InterestAccrual.flat(100)), journal).accrue();
+        journal.close();
+
+        JournalReader reader = new JournalReader(journalDir);
+        long records = 0;
+        long interest = 0;
+        while (reader.next()) {
+            assertEquals(TransactionType.INTEREST, reader.getType());
+            Account account = savings.get(reader.getSourceAccount());
+            assertEquals(account.getBalance(), reader.getSourceBalance(), "Account " + reader.getSourceAccount());
+            interest += reader.getAmount();
+            records++;
+        }
+        assertEquals(summary.getAccounts(), records);
+        assertEquals(summary.getInterest(), interest);
+    }
+
+    @Test
+    void rejectsMalformedTiers() {
+        assertThrows(IllegalArgumentException.class, () -> InterestAccrual.parseTiers("0:100,abc"));
+        assertThrows(IllegalArgumentException.class, () -> InterestAccrual.parseTiers("100:100,50:200"));
+        assertThrows(IllegalArgumentException.class, () -> InterestAccrual.parseTiers("0:x"));
+    }
+
+    /**
+     * Restricts a schedule to a range of account numbers, paying nothing outside it.
+     */
+    private static InterestAccrual.RateSchedule only(int first, int count, InterestAccrual.RateSchedule schedule) {
+        return (accountNumber, balance) -> accountNumber >= first && accountNumber < first + count
+                ? schedule.basisPoints(accountNumber, balance) : 0;
+    }
+}
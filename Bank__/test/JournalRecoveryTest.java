@@ -0,0 +1,317 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that the balances left by a crash are recovered from the {@link TransactionJournal}
+ * by {@link JournalRecovery}, ignoring a record that was cut short, including when many
+ * threads change the same accounts at once, and that a {@link CustomerSnapshot} only
+ * needs the records after the sequence its last write-back covered.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class JournalRecoveryTest {
+
+    private static final int CUSTOMERS = 40;
+
+    private static final long STARTING_BALANCE = Money.ofDollars(1_000);
+
+    private static final int THREADS = 8;
+
+    @TempDir
+    Path dir;
+
+    private String journalDir;
+    private TransactionJournal journal;
+    private ArrayList<Customer> live;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journalDir = dir.resolve("journal").toString();
+        journal = new TransactionJournal(journalDir, 64);  // Small segments, so the run spans many
+        live = newCustomers();
+        BankService service = new BankService(newDirectory(live), journal, false);
+
+        // Every kind of change, including ones that are refused and must not be replayed
+        SplittableRandom random = new SplittableRandom(42);
+        int made = 0;
+        for (int i = 0; i < 2_000; i++) {
+            int customer = 1 + random.nextInt(CUSTOMERS);
+            int other = 1 + random.nextInt(CUSTOMERS);
+            long amount = random.nextLong(1, Money.ofDollars(600));
+            BankService.Result result;
+            switch (random.nextInt(5)) {
+                case 0:
+                    result = service.deposit(customer, checking(customer), amount);
+                    break;
+                case 1:
+                    result = service.withdraw(customer, saving(customer), amount);
+                    break;
+                case 2:
+                    result = service.transfer(customer, checking(customer), amount, other, saving(other));
+                    break;
+                case 3:
+                    result = service.pay(customer, credit(customer), amount, other);
+                    break;
+                default:
+                    result = service.inquire(customer, checking(customer));
+                    break;
+            }
+            if (result.isOk()) {
+                made++;
+            }
+        }
+        assertTrue(made > 1_000, "Most changes are made");
+        journal.force();
+        tearRecord();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    void recoversTheBalancesLeftByACrash() throws IOException {
+        ArrayList<Customer> restored = newCustomers();
+        JournalRecovery.recover(journalDir, newDirectory(restored));
+        assertSameBalances(live, restored);
+    }
+
+    @Test
+    void replaysTheBalancesRecordedAfterAnySequence() throws IOException {
+        // Setting each balance to the one its last record left is safe to repeat
+        ArrayList<Customer> restored = newCustomers();
+        BankDirectory directory = newDirectory(restored);
+        JournalRecovery.replayBalances(journalDir, directory, 0);
+        JournalRecovery.replayBalances(journalDir, directory, journal.getNextSequence() / 2);
+        assertSameBalances(live, restored);
+    }
+
+    @Test
+    void recoversTheBalancesOfConcurrentOperations() throws IOException, InterruptedException {
+        // Every thread works on the same few accounts, so their records interleave
+        String concurrentDir = dir.resolve("concurrent").toString();
+        TransactionJournal concurrent = new TransactionJournal(concurrentDir, 64);
+        ArrayList<Customer> customers = newCustomers();
+        BankService service = new BankService(newDirectory(customers), concurrent, false);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            SplittableRandom random = new SplittableRandom(100 + t);
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 2_000; i++) {
+                    int customer = 1 + random.nextInt(4);
+                    int other = 1 + random.nextInt(4);
+                    long amount = random.nextLong(1, Money.ofDollars(300));
+                    switch (random.nextInt(6)) {
+                        case 0:
+                            service.deposit(customer, checking(customer), amount);
+                            break;
+                        case 1:
+                            service.withdraw(customer, saving(customer), amount);
+                            break;
+                        case 2:
+                            service.transfer(customer, checking(customer), amount, other, saving(other));
+                            break;
+                        case 3:
+                            service.pay(customer, credit(customer), amount, other);
+                            break;
+                        case 4:
+                            service.submitBatch(List.of(
+                                    BankService.Command.transfer(customer, saving(customer), amount, other,
+                                            checking(other)),
+                                    BankService.Command.inquiry(other, checking(other)),
+                                    BankService.Command.withdraw(other, checking(other), amount)));
+                            break;
+                        default:
+                            service.inquire(customer, saving(customer));
+                            break;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        concurrent.close();
+        assertEachAccountsRecordsInOrder(concurrentDir);
+
+        ArrayList<Customer> restored = newCustomers();
+        JournalRecovery.recover(concurrentDir, newDirectory(restored));
+        assertSameBalances(customers, restored);
+    }
+
+    @Test
+    void recoversACustomerSnapshotFromItsAppliedSequence() throws IOException {
+        String path = dir.resolve("customers.snapshot").toString();
+        CustomerSnapshot.write(path, newCustomers(), 0);  // The starting balances, before any record
+        discardChanges();
+
+        // The first start replays every record, and its write-back covers them all
+        LazyDirectory first = new LazyDirectory(new CustomerSnapshot(path), 8);
+        assertEquals(0, first.getAppliedSequence());
+        JournalRecovery.replayBalances(journalDir, first, first.getAppliedSequence());
+        first.trackJournal(journal::getNextSequence);
+        first.close();
+        long applied = journal.getNextSequence();
+
+        // More changes through the snapshot, then a crash before they are written back
+        CustomerSnapshot snapshot = new CustomerSnapshot(path);
+        assertEquals(applied, snapshot.getAppliedSequence());
+        LazyDirectory second = new LazyDirectory(snapshot, 8);
+        second.trackJournal(journal::getNextSequence);
+        BankService service = new BankService(second, journal, false);
+        BankService expected = new BankService(newDirectory(live), null, false);
+        for (int customer = 1; customer <= 4; customer++) {
+            assertTrue(service.transfer(customer, checking(customer), Money.ofDollars(1), customer + 1,
+                    saving(customer + 1)).isOk());
+            expected.transfer(customer, checking(customer), Money.ofDollars(1), customer + 1, saving(customer + 1));
+        }
+        discardChanges();
+        snapshot.close();
+
+        // Recovery reads only the customers changed after the applied sequence
+        LazyDirectory recovered = new LazyDirectory(new CustomerSnapshot(path), CUSTOMERS);
+        assertEquals(4, JournalRecovery.replayBalances(journalDir, recovered, recovered.getAppliedSequence()));
+        assertEquals(5, recovered.cachedCount());
+        ArrayList<Customer> restored = new ArrayList<>();
+        for (int id = 1; id <= CUSTOMERS; id++) {
+            restored.add(recovered.findCustomer(id));
+        }
+        assertSameBalances(live, restored);
+        recovered.close();
+    }
+
+    @Test
+    void continuesTheSequenceWhenReopened() throws IOException {
+        long next = journal.getNextSequence();
+        journal.close();
+        journal = new TransactionJournal(journalDir, 64);
+        assertEquals(next, journal.getNextSequence());
+        assertEquals(next, journal.append(TransactionType.DEPOSIT, 1, checking(1), 0, 0, 1, 1, 0));
+    }
+
+    /**
+     * Drops the accounts waiting to be written back, as a crash would, including those
+     * of other tests that share the {@link ChangeTracker}.
+     */
+    private static void discardChanges() {
+        while (ChangeTracker.poll() != null) {
+            // Nothing is saved
+        }
+    }
+
+    /**
+     * Writes the fields of the next record but not its type, as a crash in the middle
+     * of an append would leave it.
+     */
+    private void tearRecord() throws IOException {
+        File[] segments = TransactionJournal.listSegments(new File(journalDir));
+        File last = segments[segments.length - 1];
+        long offset = (journal.getNextSequence() - TransactionJournal.firstSequenceOf(last))
+                * TransactionJournal.RECORD_SIZE;
+        if (offset >= last.length()) {
+            return;  // The segment is full; the next record would start a new one
+        }
+        ByteBuffer record = ByteBuffer.allocate(TransactionJournal.RECORD_SIZE);
+        record.putLong(TransactionJournal.SEQUENCE_OFFSET, journal.getNextSequence());
+        record.putInt(TransactionJournal.SOURCE_ACCOUNT_OFFSET, checking(1));
+        record.putLong(TransactionJournal.AMOUNT_OFFSET, Money.ofDollars(1_000_000));
+        try (FileChannel channel = FileChannel.open(last.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(record, offset);
+        }
+    }
+
+    /**
+     * Checks that every record leaves its accounts with the balance they had after the
+     * account's previous record plus the record's own change, which only holds if each
+     * account's records are in the order its balance changed.
+     */
+    private static void assertEachAccountsRecordsInOrder(String journalDir) throws IOException {
+        HashMap<Integer, Long> balances = new HashMap<>();
+        for (Customer customer : newCustomers()) {
+            for (Account account : customer.getAccounts()) {
+                balances.put(account.getAccountNumber(), account.getBalance());
+            }
+        }
+        JournalReader reader = new JournalReader(journalDir);
+        int records = 0;
+        while (reader.next()) {
+            TransactionType type = reader.getType();
+            long amount = reader.getAmount();
+            long source = balances.merge(reader.getSourceAccount(), type.sourceChange(amount), Long::sum);
+            assertEquals(source, reader.getSourceBalance(), "Record " + reader.getSequence());
+            if (reader.getTargetAccount() != 0) {
+                long target = balances.merge(reader.getTargetAccount(), type.targetChange(amount), Long::sum);
+                assertEquals(target, reader.getTargetBalance(), "Record " + reader.getSequence());
+            }
+            records++;
+        }
+        assertTrue(records > THREADS * 1_000, "Most operations are recorded");
+    }
+
+    private static void assertSameBalances(ArrayList<Customer> expected, ArrayList<Customer> actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            ArrayList<Account> accounts = expected.get(i).getAccounts();
+            for (int a = 0; a < accounts.size(); a++) {
+                Account account = accounts.get(a);
+                assertEquals(account.getBalance(), actual.get(i).getAccounts().get(a).getBalance(),
+                        "Account " + account.getAccountNumber());
+            }
+        }
+    }
+
+    private static ArrayList<Customer> newCustomers() {
+        ArrayList<Customer> customers = new ArrayList<>();
+        for (int id = 1; id <= CUSTOMERS; id++) {
+            customers.add(RunBank.createCustomer(id, "First", "Last", "1-Jan-00", "Address", "Phone",
+                    checking(id), STARTING_BALANCE, saving(id), STARTING_BALANCE, credit(id), STARTING_BALANCE, 0));
+        }
+        return customers;
+    }
+
+    private static BankDirectory newDirectory(ArrayList<Customer> customers) {
+        BankDirectory directory = new BankDirectory(customers.size());
+        for (Customer customer : customers) {
+            directory.addCustomer(customer);
+        }
+        return directory;
+    }
+
+    private static int checking(int customer) {
+        return customer * 10;
+    }
+
+    private static int saving(int customer) {
+        return customer * 10 + 1;
+    }
+
+    private static int credit(int customer) {
+        return customer * 10 + 2;
+    }
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a {@link LastNameIndex} finds the same pages of customers as sorting and
+ * filtering all of them, whether their names are kept as strings or in the arena of
+ * {@link CompactCustomer}s, and that it counts matches without allocating.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class LastNameIndexTest {
+
+    private static final String[] NAMES = {"Smith", "smith", "SMITHERS", "Smyth", "Núñez", "NUÑEZ", "nuñes",
+        "O'Brien", "Ó'Brien", "Ng", "N", "", "Åberg", "aberg", "Zeta", "ÿves", "Straße", "STRASSE", "µ"};
+
+    private static final String[] PREFIXES = {"", "s", "SMI", "smith", "smithers!", "n", "NU", "núñ", "o'",
+        "ó", "a", "Å", "å", "z", "ÿ", "Ÿ", "stra", "STRAß", "µ", "Μ", "q"};
+
+    /**
+     * The order the index promises: last name ignoring case, then ID.
+     */
+    private static final Comparator<Customer> ORDER = Comparator
+            .comparing(Customer::getLastName, String.CASE_INSENSITIVE_ORDER)
+            .thenComparingInt(Customer::getId);
+
+    @Test
+    void findsTheSamePagesAsAScan() {
+        LastNameIndex index = new LastNameIndex();
+        List<Customer> all = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(1);
+        for (int id = 1; id <= 2_000; id++) {
+            Customer customer = newCustomer(id, NAMES[random.nextInt(NAMES.length)], random.nextBoolean());
+            index.add(customer);
+            all.add(customer);
+            if (id % 500 == 0) {
+                assertMatchesScan(index, all);  // Merges what was added since the last search
+            }
+        }
+        assertEquals(all.size(), index.size());
+    }
+
+    @Test
+    void pagesThroughTheMatches() {
+        LastNameIndex index = new LastNameIndex();
+        for (int id = 100; id > 0; id--) {
+            index.add(newCustomer(id, id % 2 == 0 ? "Smith" : "smith", id % 3 == 0));
+        }
+        index.add(newCustomer(101, "Smyth", true));
+
+        assertEquals(100, index.count("smith"));
+        List<Customer> page = index.search("SMITH", 90, 20);
+        assertEquals(10, page.size());
+        for (int i = 0; i < page.size(); i++) {
+            assertEquals(91 + i, page.get(i).getId());
+        }
+        assertTrue(index.search("smith", 100, 20).isEmpty(), "Past the last match");
+        assertTrue(index.search("smith", 0, 0).isEmpty());
+        assertEquals(List.of(101), ids(index.search("smy", 0, 10)));
+    }
+
+    @Test
+    void countsCompactCustomersWithoutAllocating() {
+        LastNameIndex index = new LastNameIndex();
+        SplittableRandom random = new SplittableRandom(2);
+        for (int id = 1; id <= 10_000; id++) {
+            index.add(newCustomer(id, NAMES[random.nextInt(NAMES.length)] + id % 97, true));
+        }
+        index.merge();
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long counted = 0;
+        for (int warmUp = 0; warmUp < 2_000; warmUp++) {
+            counted += index.count(PREFIXES[warmUp % PREFIXES.length]);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 2_000; i++) {
+            counted += index.count(PREFIXES[i % PREFIXES.length]);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(counted > 0);
+        // Decoding the names visited by the binary searches would take megabytes
+        assertTrue(allocated < 64 * 1024, "Allocated " + allocated + " bytes");
+    }
+
+    /**
+     * Checks every prefix against sorting and filtering all the customers.
+     */
+    private static void assertMatchesScan(LastNameIndex index, List<Customer> all) {
+        List<Customer> sorted = new ArrayList<>(all);
+        sorted.sort(ORDER);
+        for (String prefix : PREFIXES) {
+            List<Integer> expected = new ArrayList<>();
+            for (Customer customer : sorted) {
+                if (customer.getLastName().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    expected.add(customer.getId());
+                }
+            }
+            assertEquals(expected, ids(index.search(prefix, 0, Integer.MAX_VALUE)), "Prefix " + prefix);
+            assertEquals(expected.size(), index.count(prefix), "Prefix " + prefix);
+            int offset = expected.size() / 3;
+            assertEquals(expected.subList(offset, Math.min(expected.size(), offset + 7)),
+                    ids(index.search(prefix, offset, 7)), "Page of prefix " + prefix);
+        }
+    }
+
+    private static Customer newCustomer(int id, String lastName, boolean compact) {
+        Customer customer = compact ? CompactCustomer.create(id, "First", lastName, "1-Jan-00", "Address", "Phone")
+                : null;
+        return customer != null ? customer : new PlainCustomer(id, "First", lastName, "1-Jan-00", "Address", "Phone");
+    }
+
+    private static List<Integer> ids(List<Customer> customers) {
+        List<Integer> ids = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            ids.add(customer.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,169 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a {@link LazyDirectory} keeps only its most recently used customers,
+ * writes back the balances of those it drops and reads them again with the same
+ * balances, and searches its {@link CustomerSnapshot} as a {@link BankDirectory}
+ * searches the customers it holds.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class LazyDirectoryTest {
+
+    private static final int FIRST_ID = 1_900_000;
+
+    private static final int CUSTOMERS = 400;
+
+    private static final long STARTING_BALANCE = Money.ofDollars(1_000);
+
+    private static final String[] NAMES = {"Smith", "smith", "SMITHERS", "Smyth", "Núñez", "NUÑEZ", "nuñes",
+        "O'Brien", "Ng", "N", "", "Åberg", "aberg", "Zeta", "Straße", "STRASSE"};
+
+    private static final String[] PREFIXES = {"", "s", "SMI", "smith", "smithers!", "n", "NU", "núñ", "o'",
+        "a", "Å", "z", "stra", "q"};
+
+    private static final String[] PHONES = {"(915) 747-5042", "915-747-5042", "+1 915 747 5042",
+        "0915 747 5042", "915 747 5043", "555-0100", "n/a", ""};
+
+    @TempDir
+    Path dir;
+
+    private String path;
+
+    private ArrayList<Customer> customers;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = dir.resolve("customers.snapshot").toString();
+        customers = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            int id = FIRST_ID + i;
+            customers.add(RunBank.createCustomer(id, "First", NAMES[random.nextInt(NAMES.length)], "1-Jan-00",
+                    "Address", PHONES[random.nextInt(PHONES.length)], id * 3, STARTING_BALANCE,
+                    id * 3 + 1, STARTING_BALANCE, id * 3 + 2, Money.ofDollars(500), 0));
+        }
+        CustomerSnapshot.write(path, customers, 0);
+        discardChanges();
+    }
+
+    @Test
+    void writesBackTheCustomersItDropsAndReadsThemAgain() throws IOException {
+        LazyDirectory directory = new LazyDirectory(new CustomerSnapshot(path), 4);
+        Customer first = directory.findCustomer(FIRST_ID);
+        Account checking = directory.findAccount(first, FIRST_ID * 3);
+        assertTrue(checking.deposit(Money.ofDollars(25)));
+        for (int i = 1; i < 4; i++) {
+            directory.findCustomer(FIRST_ID + i);
+        }
+        assertEquals(4, directory.cachedCount());
+        assertSame(first, directory.findCustomer(FIRST_ID), "A cached customer is not read again");
+
+        // Reading four more customers drops the first, writing back its changed balance
+        for (int i = 4; i < 8; i++) {
+            directory.findCustomer(FIRST_ID + i);
+        }
+        assertEquals(4, directory.cachedCount());
+        CustomerSnapshot.Record record = readRecord(FIRST_ID);
+        assertEquals(STARTING_BALANCE + Money.ofDollars(25), record.balances[0], "Written back when dropped");
+
+        // Read again, the customer keeps the view still in use and its balance
+        Customer reread = directory.findCustomer(FIRST_ID);
+        assertNotSame(first, reread);
+        assertSame(checking, directory.findAccount(reread, FIRST_ID * 3));
+        assertEquals(STARTING_BALANCE + Money.ofDollars(25), checking.getBalance());
+        assertTrue(checking.withdraw(Money.ofDollars(5)));
+        directory.close();
+
+        // A new directory reads the balances written back on close
+        LazyDirectory reopened = new LazyDirectory(new CustomerSnapshot(path), 4);
+        Account reloaded = reopened.findAccount(reopened.findCustomer(FIRST_ID), FIRST_ID * 3);
+        assertEquals(STARTING_BALANCE + Money.ofDollars(20), reloaded.getBalance());
+        assertEquals(STARTING_BALANCE, reopened.findAccount(FIRST_ID * 3 + 1).getBalance());
+        assertEquals(1, reopened.cachedCount());
+        reopened.close();
+    }
+
+    @Test
+    void searchesLikeABankDirectory() throws IOException {
+        BankDirectory expected = new BankDirectory(CUSTOMERS);
+        for (Customer customer : customers) {
+            expected.addCustomer(customer);
+        }
+        expected.buildSearchIndexes();
+        LazyDirectory directory = new LazyDirectory(new CustomerSnapshot(path), 16);  // Fewer than a search finds
+
+        for (String prefix : PREFIXES) {
+            int count = expected.countCustomersByLastName(prefix);
+            assertEquals(count, directory.countCustomersByLastName(prefix), "Count of " + prefix);
+            for (int offset = 0; offset <= count; offset += 7) {
+                assertEquals(ids(expected.findCustomersByLastName(prefix, offset, 10)),
+                        ids(directory.findCustomersByLastName(prefix, offset, 10)), prefix + " from " + offset);
+            }
+        }
+        for (String phone : PHONES) {
+            assertEquals(ids(expected.findCustomersByPhone(phone)), ids(directory.findCustomersByPhone(phone)),
+                    "Phone " + phone);
+        }
+        assertTrue(directory.cachedCount() <= 16);
+        directory.close();
+        discardChanges();
+    }
+
+    @Test
+    void refusesASnapshotOfAnotherVersion() throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 2), 4);
+        }
+        IOException e = assertThrows(IOException.class, () -> new CustomerSnapshot(path));
+        assertTrue(e.getMessage().contains("format version 2"), e.getMessage());
+    }
+
+    /**
+     * Reads the record of a customer straight from the snapshot file.
+     */
+    private CustomerSnapshot.Record readRecord(int customerID) throws IOException {
+        CustomerSnapshot snapshot = new CustomerSnapshot(path);
+        try {
+            return snapshot.read(snapshot.findCustomer(customerID));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Drops the accounts waiting to be written back, including those of other tests
+     * that share the {@link ChangeTracker}.
+     */
+    private static void discardChanges() {
+        while (ChangeTracker.poll() != null) {
+            // Nothing is saved
+        }
+    }
+
+    private static List<Integer> ids(List<Customer> customers) {
+        List<Integer> ids = new ArrayList<>();
+        for (Customer customer : customers) {
+            ids.add(customer.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a {@link LedgerFile} keeps each balance at its computed offset across a
+ * reopen, and records the applied journal sequence only once the pages are forced.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class LedgerFileTest {
+
+    private static final int SLOTS = 16;
+
+    private static final int PAGE_BYTES = SLOTS * 21;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keepsEachBalanceAtItsComputedOffset() throws IOException {
+        String path = dir.resolve("ledger").toString();
+        LedgerFile file = new LedgerFile(path, SLOTS, PAGE_BYTES);
+        assertEquals(0, file.pageCount());
+        for (int page = 0; page < 3; page++) {
+            ByteBuffer ledger = file.map(page);
+            for (int index = 0; index < SLOTS; index++) {
+                ledger.putLong(index << 3, balance(page, index));
+            }
+        }
+        file.close();
+
+        // Read the file itself: balance of slot s at HEADER_SIZE + page * pageBytes + index * 8
+        try (FileChannel channel = FileChannel.open(dir.resolve("ledger"), StandardOpenOption.READ)) {
+            ByteBuffer value = ByteBuffer.allocate(8).order(LedgerFile.ORDER);
+            for (int page = 0; page < 3; page++) {
+                for (int index = 0; index < SLOTS; index++) {
+                    value.clear();
+                    channel.read(value, LedgerFile.HEADER_SIZE + (long) page * PAGE_BYTES + index * 8L);
+                    assertEquals(balance(page, index), value.getLong(0), "Page " + page + " slot " + index);
+                }
+            }
+        }
+
+        LedgerFile reopened = new LedgerFile(path, SLOTS, PAGE_BYTES);
+        assertEquals(3, reopened.pageCount());
+        assertEquals(balance(2, 5), reopened.map(2).getLong(5 << 3));
+        assertEquals(0, reopened.map(3).getLong(0), "A new page reads as zeros");
+        reopened.close();
+    }
+
+    @Test
+    void recordsTheAppliedSequenceOnceThePagesAreForced() throws IOException {
+        String path = dir.resolve("ledger").toString();
+        LedgerFile file = new LedgerFile(path, SLOTS, PAGE_BYTES);
+        assertEquals(0, file.getAppliedSequence(), "A new file replays the whole journal");
+        file.map(0).putLong(0, 1_234);
+        long[] next = {42};
+        file.trackJournal(() -> next[0]);
+        file.force();
+        assertEquals(42, file.getAppliedSequence());
+
+        next[0] = 7;  // Never moves back
+        file.force();
+        assertEquals(42, file.getAppliedSequence());
+
+        next[0] = 99;
+        file.close();  // Forces with a tracked journal, whatever the policy
+        LedgerFile reopened = new LedgerFile(path, SLOTS, PAGE_BYTES);
+        assertEquals(99, reopened.getAppliedSequence());
+        assertEquals(1_234, reopened.map(0).getLong(0));
+        reopened.close();
+    }
+
+    @Test
+    void refusesAFileOfAnotherLayout() throws IOException {
+        String path = dir.resolve("ledger").toString();
+        new LedgerFile(path, SLOTS, PAGE_BYTES).close();
+        assertThrows(IOException.class, () -> new LedgerFile(path, SLOTS * 2, PAGE_BYTES * 2));
+    }
+
+    private static long balance(int page, int index) {
+        return page * 1_000_000L + index * 1_001L - 500;
+    }
+}
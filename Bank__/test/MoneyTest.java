@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the exact parsing and formatting of {@link Money} amounts.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class MoneyTest {
+
+    @Test
+    void parsesWholeAndFractionalAmounts() {
+        assertEquals(85756, Money.parse("857.56"));
+        assertEquals(-78693, Money.parse("-786.93"));
+        assertEquals(798500, Money.parse("7985"));
+        assertEquals(1250, Money.parse("+12.5"));
+        assertEquals(1200, Money.parse("12."));
+        assertEquals(5, Money.parse(".05"));
+        assertEquals(0, Money.parse("-0.00"));
+    }
+
+    @Test
+    void parsesTheExtremesOfALong() {
+        assertEquals(Long.MAX_VALUE, Money.parse("92233720368547758.07"));
+        assertEquals(Long.MIN_VALUE, Money.parse("-92233720368547758.08"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("92233720368547758.08"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-92233720368547758.09"));
+    }
+
+    @Test
+    void rejectsInexactOrMalformedText() {
+        for (String text : new String[] {"", "-", ".", "1.234", "1.2.3", "12a", " 12", "1e3", "--1"}) {
+            assertThrows(NumberFormatException.class, () -> Money.parse(text), text);
+        }
+    }
+
+    @Test
+    void parsesRangesOfCharactersAndBytes() {
+        String row = "x,857.56,-786.93,";
+        byte[] bytes = row.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(85756, Money.parse(row, 2, 8));
+        assertEquals(85756, Money.parse(bytes, 2, 8));
+        assertEquals(-78693, Money.parse(row, 9, 16));
+        assertEquals(-78693, Money.parse(bytes, 9, 16));
+        assertThrows(NumberFormatException.class, () -> Money.parse(bytes, 0, 8));
+    }
+
+    @Test
+    void parsesLegacyAmountsToTheNearestCent() {
+        assertEquals(123400, Money.parseLegacy("1.234e3"));
+        assertEquals(1235, Money.parseLegacy("12.3456"));
+        assertEquals(-1235, Money.parseLegacy("-12.3456"));
+        byte[] bytes = "12.3456".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(1235, Money.parseLegacy(bytes, 0, bytes.length));
+        assertThrows(NumberFormatException.class, () -> Money.parseLegacy("twelve"));
+    }
+
+    @Test
+    void formatsWhatItParses() {
+        for (String text : new String[] {"0.00", "0.05", "-0.05", "857.56", "-786.93", "92233720368547758.07",
+                "-92233720368547758.08"}) {
+            assertEquals(text, Money.toString(Money.parse(text)));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that the {@link ParallelCsvLoader} reads a file exactly as the line-by-line
+ * parser of {@link RunBank#LoadCSV(String)} does, across chunk boundaries.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class ParallelCsvLoaderTest {
+
+    /**
+     * Large enough to be cut into more than one chunk.
+     */
+    private static final int FILE_BYTES = 20 << 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void matchesTheLineByLineParser() throws IOException {
+        Path file = dir.resolve("Bank_users.csv");
+        Files.write(file, generate(new SplittableRandom(7)).getBytes(StandardCharsets.UTF_8));
+        assertSameCustomers(file);
+    }
+
+    @Test
+    void matchesTheLineByLineParserOnTheSampleFile() throws IOException {
+        assertSameCustomers(Path.of(System.getProperty("basedir", "../.."), "Bank__", "bank_users.csv"));
+    }
+
+    /**
+     * Loads a file with both parsers and compares every customer.
+     */
+    private static void assertSameCustomers(Path file) throws IOException {
+        List<Customer> parallel = ParallelCsvLoader.load(file.toString());
+        List<Customer> sequential = loadSequentially(file);
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(describe(sequential.get(i)), describe(parallel.get(i)), "Row " + (i + 1));
+        }
+    }
+
+    /**
+     * Loads a file with the line-by-line parser and returns the customers it added.
+     */
+    private static List<Customer> loadSequentially(Path file) {
+        String previous = System.setProperty("bank.csv.loader", "sequential");
+        int start = RunBank.customerList.size();
+        try {
+            RunBank.LoadCSV(file.toString());
+            return new ArrayList<>(RunBank.customerList.subList(start, RunBank.customerList.size()));
+        } finally {
+            RunBank.customerList.subList(start, RunBank.customerList.size()).clear();
+            if (previous == null) {
+                System.clearProperty("bank.csv.loader");
+            } else {
+                System.setProperty("bank.csv.loader", previous);
+            }
+        }
+    }
+
+    /**
+     * Generates customer rows with quoted addresses holding commas, padded fields,
+     * amounts in the older formats, invalid numbers and Windows line breaks.
+     */
+    private static String generate(SplittableRandom random) {
+        StringBuilder csv = new StringBuilder(FILE_BYTES + 256).append(CsvCheckpointer.HEADER);
+        for (int id = 1; csv.length() < FILE_BYTES; id++) {
+            int number = id * 3;
+            csv.append(id).append(',')
+                    .append(random.nextInt(20) == 0 ? " First" + id + " " : "First" + id).append(',')
+                    .append("Last").append(id % 997).append(',')
+                    .append(1 + id % 28).append("-Mar-").append(50 + id % 50).append(',')
+                    .append('"').append(id).append(" Oak St, Apt ").append(id % 40).append(", El Paso, TX\",")
+                    .append("(915) 555-").append(1000 + id % 9000).append(',')
+                    .append(number).append(',').append(amount(random)).append(',')
+                    .append(number + 1).append(',').append(amount(random)).append(',')
+                    .append(random.nextInt(5000) == 0 ? "n/a" : String.valueOf(number + 2)).append(',')
+                    .append(amount(random)).append(',')
+                    .append(amount(random))
+                    .append(random.nextInt(10) == 0 ? "\r\n" : "\n");
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Returns an amount in one of the formats found in customer files.
+     */
+    private static String amount(SplittableRandom random) {
+        long cents = random.nextLong(-1_000_000, 100_000_000);
+        int format = random.nextInt(10_000);
+        if (format == 0) {
+            return "12.3.4";  // Invalid, read as 0
+        }
+        if (format < 500) {
+            return Double.toString(cents / 100.0);  // Written as a double by an older version
+        }
+        return format < 1000 ? cents / 100 + ".5" : Money.toString(cents);
+    }
+
+    /**
+     * Returns every field a customer was loaded with.
+     */
+    private static String describe(Customer customer) {
+        StringBuilder fields = new StringBuilder().append(customer.getId()).append('|')
+                .append(customer.getFirstName()).append('|').append(customer.getLastName()).append('|')
+                .append(customer.getBirthDate()).append('|').append(customer.getAddress()).append('|')
+                .append(customer.getPhoneNumber());
+        for (Account account : customer.getAccounts()) {
+            fields.append('|').append(account.getAccountType()).append(' ').append(account.getAccountNumber())
+                    .append(' ').append(account.getBalance());
+            if (account instanceof Credit) {
+                fields.append(' ').append(((Credit) account).getMaxCredit());
+            }
+        }
+        return fields.toString();
+    }
+}
@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a {@link PhoneIndex} finds a customer by any way of writing the number,
+ * and tells apart numbers that differ only in leading zeros.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class PhoneIndexTest {
+
+    @Test
+    void findsANumberWrittenAnyWay() {
+        PhoneIndex index = new PhoneIndex(4);
+        Customer customer = newCustomer(1, "(915) 747-5042");
+        index.add(customer);
+
+        for (String number : new String[] {"(915) 747-5042", "915-747-5042", "+1 915 747 5042", "9157475042"}) {
+            assertEquals(List.of(customer), index.find(number), number);
+        }
+        assertTrue(index.find("915-747-5043").isEmpty());
+        assertTrue(index.find("no digits").isEmpty());
+        assertTrue(index.find(null).isEmpty());
+    }
+
+    @Test
+    void keepsLeadingZeros() {
+        assertNotEquals(PhoneIndex.normalize("0123"), PhoneIndex.normalize("123"));
+        assertNotEquals(PhoneIndex.normalize("00123"), PhoneIndex.normalize("0123"));
+        assertEquals(PhoneIndex.normalize("0 1-23"), PhoneIndex.normalize("0123"));
+
+        PhoneIndex index = new PhoneIndex(4);
+        Customer local = newCustomer(1, "0915 747 5042");
+        Customer national = newCustomer(2, "915 747 5042");
+        index.add(local);
+        index.add(national);
+        assertEquals(List.of(local), index.find("(0915) 747-5042"));
+        assertEquals(List.of(national), index.find("915.747.5042"));
+    }
+
+    @Test
+    void keepsTheLastDigitsOfALongNumber() {
+        String last18 = "123456789012345678";
+        assertEquals(PhoneIndex.normalize(last18), PhoneIndex.normalize("99" + last18));
+        assertNotEquals(PhoneIndex.normalize(last18), PhoneIndex.normalize(last18.substring(1)));
+        assertTrue(PhoneIndex.normalize("9" + last18) > 0, "Does not overflow");
+    }
+
+    @Test
+    void findsEveryCustomerSharingANumberInOrder() {
+        PhoneIndex index = new PhoneIndex(4);
+        Customer first = newCustomer(1, "555-0100");
+        Customer second = newCustomer(2, "555 0100");
+        Customer other = newCustomer(3, "555-0101");
+        index.add(first);
+        index.add(other);
+        index.add(second);
+        assertEquals(List.of(first, second), index.find("5550100"));
+    }
+
+    private static Customer newCustomer(int id, String phoneNumber) {
+        return new PlainCustomer(id, "First", "Last", "1-Jan-00", "Address", phoneNumber);
+    }
+}
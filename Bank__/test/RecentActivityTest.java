@@ -0,0 +1,148 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that {@link RecentActivity} keeps the latest changes of each account newest
+ * first, never returns half of an entry while other threads record, and that the
+ * {@link BankService} records both sides of a transfer.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class RecentActivityTest {
+
+    private static final int ENTRIES = 8;
+
+    private static final long BUDGET = 1L << 20;
+
+    @Test
+    void keepsTheLatestChangesNewestFirst() {
+        RecentActivity activity = new RecentActivity(ENTRIES, BUDGET);
+        Account account = new Checking(1_700_001, 0);
+        for (int i = 1; i <= 20; i++) {
+            activity.record(account, TransactionType.DEPOSIT, i, 0, i * 100L, 1_000L + i);
+        }
+        Account other = new Checking(1_700_002, 0);
+        activity.record(other, TransactionType.WITHDRAW, -5, 0, 95, 2_000);
+
+        List<RecentActivity.Entry> recent = activity.recent(account, 100);
+        assertEquals(ENTRIES, recent.size());
+        for (int i = 0; i < ENTRIES; i++) {
+            RecentActivity.Entry entry = recent.get(i);
+            assertEquals(20 - i, entry.getAmount());
+            assertEquals((20 - i) * 100L, entry.getBalance());
+            assertEquals(1_000L + 20 - i, entry.getTimeMillis());
+            assertEquals(TransactionType.DEPOSIT, entry.getType());
+        }
+        assertEquals(3, activity.recent(account, 3).size());
+        assertEquals(1, activity.recent(other, 100).size());
+        assertEquals(-5, activity.recent(other, 100).get(0).getAmount());
+
+        activity.forget(account.getSlot());
+        assertTrue(activity.recent(account, 100).isEmpty(), "A released slot starts empty");
+    }
+
+    @Test
+    void recordsNothingWhenTurnedOffOrOverBudget() {
+        Account account = new Checking(1_700_011, 0);
+        RecentActivity off = new RecentActivity(0, BUDGET);
+        off.record(account, TransactionType.DEPOSIT, 1, 0, 1, 1);
+        assertTrue(off.recent(account, 10).isEmpty());
+        assertEquals(0, off.getCapacity());
+
+        RecentActivity noBudget = new RecentActivity(ENTRIES, 0);
+        noBudget.record(account, TransactionType.DEPOSIT, 1, 0, 1, 1);
+        assertTrue(noBudget.recent(account, 10).isEmpty());
+    }
+
+    @Test
+    void neverReturnsHalfOfAnEntry() throws InterruptedException {
+        RecentActivity activity = new RecentActivity(ENTRIES, BUDGET);
+        Account account = new Checking(1_700_021, 0);
+        int writers = 4;
+        int changes = 5_000;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> torn = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(writers);
+
+        // Every field of an entry is derived from its amount, so a mix of two entries shows
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            Thread.ofPlatform().start(() -> {
+                for (int i = 1; i <= changes; i++) {
+                    long amount = writer * 1_000_000L + i;
+                    activity.record(account, TransactionType.TRANSFER, amount, writer, amount * 3, amount * 7);
+                }
+                finished.countDown();
+            });
+        }
+        Thread reader = Thread.ofPlatform().start(() -> {
+            while (!done.get()) {
+                List<RecentActivity.Entry> recent = activity.recent(account, ENTRIES);
+                long[] newest = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+                for (RecentActivity.Entry entry : recent) {
+                    long amount = entry.getAmount();
+                    int writer = (int) (amount / 1_000_000L);
+                    if (entry.getCounterparty() != writer || entry.getBalance() != amount * 3
+                            || entry.getTimeMillis() != amount * 7 || entry.getType() != TransactionType.TRANSFER) {
+                        torn.compareAndSet(null, "Torn entry for amount " + amount);
+                    }
+                    if (amount >= newest[writer]) {
+                        torn.compareAndSet(null, "Entries of writer " + writer + " out of order");
+                    }
+                    newest[writer] = amount;
+                }
+            }
+        });
+        finished.await();
+        done.set(true);
+        reader.join();
+
+        assertNull(torn.get(), torn.get());
+        List<RecentActivity.Entry> recent = activity.recent(account, 100);
+        assertEquals(ENTRIES, recent.size());
+    }
+
+    @Test
+    void theServiceRecordsBothSidesOfATransfer() {
+        ArrayList<Customer> customers = new ArrayList<>();
+        for (int id = 1; id <= 2; id++) {
+            customers.add(RunBank.createCustomer(1_700_100 + id, "First", "Last", "1-Jan-00", "Address", "Phone",
+                    17_001_000 + id * 10, Money.ofDollars(100), 17_001_001 + id * 10, Money.ofDollars(100),
+                    17_001_002 + id * 10, Money.ofDollars(100), 0));
+        }
+        BankDirectory directory = new BankDirectory(2);
+        for (Customer customer : customers) {
+            directory.addCustomer(customer);
+        }
+        BankService service = new BankService(directory, null, false);
+
+        assertTrue(service.deposit(1_700_101, 17_001_010, Money.ofDollars(5)).isOk());
+        assertTrue(service.transfer(1_700_101, 17_001_010, Money.ofDollars(30), 1_700_102, 17_001_021).isOk());
+        assertTrue(service.inquire(1_700_101, 17_001_010).isOk());
+        assertTrue(!service.withdraw(1_700_101, 17_001_010, Money.ofDollars(500)).isOk());
+
+        List<RecentActivity.Entry> source = service.recentActivity(1_700_101, 17_001_010, 10);
+        assertEquals(2, source.size(), "Inquiries and refused changes are not recorded");
+        assertEquals(TransactionType.TRANSFER, source.get(0).getType());
+        assertEquals(-Money.ofDollars(30), source.get(0).getAmount());
+        assertEquals(17_001_021, source.get(0).getCounterparty());
+        assertEquals(Money.ofDollars(75), source.get(0).getBalance());
+        assertEquals(Money.ofDollars(5), source.get(1).getAmount());
+
+        List<RecentActivity.Entry> target = service.recentActivity(1_700_102, 17_001_021, 10);
+        assertEquals(1, target.size());
+        assertEquals(Money.ofDollars(30), target.get(0).getAmount());
+        assertEquals(17_001_010, target.get(0).getCounterparty());
+        assertEquals(Money.ofDollars(130), target.get(0).getBalance());
+    }
+}
@@ -0,0 +1,232 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a {@link TransactionLogIndex} finds the same lines of an account as a scan
+ * of the whole log, survives a restart, indexes lines the last run wrote without
+ * indexing them and rebuilds itself when its file is missing or stale.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+class TransactionLogIndexTest {
+
+    private static final int FIRST_ACCOUNT = 1_600_000;
+
+    private static final int ACCOUNTS = 10;
+
+    @TempDir
+    Path dir;
+
+    private String log;
+    private String indexFile;
+
+    /**
+     * Every line written to the log so far, in order.
+     */
+    private List<String> written;
+
+    @BeforeEach
+    void setUp() {
+        log = dir.resolve("TransactionLog.txt").toString();
+        indexFile = log + transactionLogger.INDEX_SUFFIX;
+        written = new ArrayList<>();
+    }
+
+    @Test
+    void findsTheSameLinesAsAScanOfTheLog() throws IOException {
+        TransactionLogIndex index = new TransactionLogIndex(log, indexFile, true);
+        SplittableRandom random = new SplittableRandom(3);
+        for (int write = 0; write < 100; write++) {
+            append(index, randomLines(random, 1 + random.nextInt(10)));
+        }
+
+        TransactionHistory history = new TransactionHistory(log, index);
+        for (int account = FIRST_ACCOUNT; account < FIRST_ACCOUNT + ACCOUNTS; account++) {
+            assertEquals(scan(account, 7), texts(history.last(account, 7)), "Account " + account);
+            assertEquals(scan(account, Integer.MAX_VALUE), texts(history.last(account, Integer.MAX_VALUE)),
+                    "Account " + account);
+        }
+        assertTrue(history.last(FIRST_ACCOUNT + ACCOUNTS, 10).isEmpty(), "An account with no lines");
+        assertTrue(history.last(FIRST_ACCOUNT, 0).isEmpty());
+    }
+
+    @Test
+    void findsTheLinesWrittenInATimeRange() throws IOException, InterruptedException {
+        TransactionLogIndex index = new TransactionLogIndex(log, indexFile, true);
+        append(index, List.of(line("Deposit", FIRST_ACCOUNT, -1)));
+        Thread.sleep(5);
+        long from = System.currentTimeMillis();
+        List<String> later = List.of(line("Withdrawal", FIRST_ACCOUNT, -1), line("Deposit", FIRST_ACCOUNT, -1));
+        append(index, later);
+
+        TransactionHistory history = new TransactionHistory(log, index);
+        assertEquals(later, texts(history.between(FIRST_ACCOUNT, from, Long.MAX_VALUE)));
+        assertEquals(written.subList(0, 1), texts(history.between(FIRST_ACCOUNT, Long.MIN_VALUE, from)));
+        assertTrue(history.between(FIRST_ACCOUNT, from, from).isEmpty(), "An empty range");
+    }
+
+    @Test
+    void indexesTheLinesOfTheLastRunWhenReopened() throws IOException {
+        TransactionLogIndex index = new TransactionLogIndex(log, indexFile, true);
+        SplittableRandom random = new SplittableRandom(5);
+        for (int write = 0; write < 20; write++) {
+            append(index, randomLines(random, 5));
+        }
+        long indexed = index.size();
+
+        // The process stopped after writing these lines to the log but before indexing them
+        appendUnindexed(randomLines(random, 30));
+
+        TransactionLogIndex reopened = new TransactionLogIndex(log, indexFile, true);
+        assertTrue(reopened.size() > indexed, "The unindexed lines are indexed");
+        assertMatchesScan(reopened);
+
+        // The lines caught up were written to the index file too
+        TransactionLogIndex again = new TransactionLogIndex(log, indexFile, false);
+        assertEquals(reopened.size(), again.size());
+        assertMatchesScan(again);
+    }
+
+    @Test
+    void rebuildsAMissingDamagedOrStaleIndex() throws IOException {
+        TransactionLogIndex index = new TransactionLogIndex(log, indexFile, true);
+        SplittableRandom random = new SplittableRandom(9);
+        for (int write = 0; write < 20; write++) {
+            append(index, randomLines(random, 5));
+        }
+        long entries = index.size();
+
+        Files.delete(Path.of(indexFile));
+        TransactionLogIndex rebuilt = new TransactionLogIndex(log, indexFile, true);
+        assertEquals(entries, rebuilt.size());
+        assertMatchesScan(rebuilt);
+
+        // A torn last entry is dropped, and its line indexed again from the log
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+            file.setLength(file.length() - 7);
+        }
+        TransactionLogIndex repaired = new TransactionLogIndex(log, indexFile, true);
+        assertEquals(entries, repaired.size());
+        assertMatchesScan(repaired);
+
+        // A new, shorter log: the old entries point past its end
+        Files.delete(Path.of(log));
+        written.clear();
+        appendUnindexed(randomLines(random, 3));
+        TransactionLogIndex replaced = new TransactionLogIndex(log, indexFile, true);
+        assertTrue(replaced.size() <= 6, "Only the lines of the new log are indexed");
+        assertMatchesScan(replaced);
+    }
+
+    /**
+     * Checks that the last lines of every account found through the index are those a
+     * scan of the log finds.
+     */
+    private void assertMatchesScan(TransactionLogIndex index) throws IOException {
+        TransactionHistory history = new TransactionHistory(log, index);
+        for (int account = FIRST_ACCOUNT; account < FIRST_ACCOUNT + ACCOUNTS; account++) {
+            assertEquals(scan(account, Integer.MAX_VALUE), texts(history.last(account, Integer.MAX_VALUE)),
+                    "Account " + account);
+        }
+    }
+
+    /**
+     * Returns random log sentences, each about one account or, for transfers, two.
+     */
+    private static List<String> randomLines(SplittableRandom random, int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int account = FIRST_ACCOUNT + random.nextInt(ACCOUNTS);
+            if (random.nextInt(4) == 0) {
+                lines.add(line("Transfer", account, FIRST_ACCOUNT + random.nextInt(ACCOUNTS)));
+            } else {
+                lines.add(line(random.nextBoolean() ? "Deposit" : "Withdrawal", account, -1));
+            }
+        }
+        return lines;
+    }
+
+    private static String line(String kind, int account, int target) {
+        String text = kind + " of $12.50 from Checking-" + account;
+        return target < 0 ? text + "." : text + " to Saving-" + target + ".";
+    }
+
+    /**
+     * Writes lines to the log as one write and indexes them, as a log writer does.
+     */
+    private void append(TransactionLogIndex index, List<String> lines) throws IOException {
+        long base = Files.exists(Path.of(log)) ? Files.size(Path.of(log)) : 0;
+        TransactionLogIndex.Pending pending = new TransactionLogIndex.Pending();
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            for (int account : accountsOf(line)) {
+                pending.add(account, text.length());
+            }
+            text.append(line).append('\n');
+        }
+        appendUnindexed(lines);
+        index.commit(pending, base);
+    }
+
+    /**
+     * Writes lines to the log without indexing them.
+     */
+    private void appendUnindexed(List<String> lines) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            for (String line : lines) {
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        written.addAll(lines);
+    }
+
+    /**
+     * Returns the last lines of an account found by reading every line of the log.
+     */
+    private List<String> scan(int account, int count) {
+        List<String> lines = new ArrayList<>();
+        for (String line : written) {
+            if (accountsOf(line).contains(account)) {
+                lines.add(line);
+            }
+        }
+        return lines.subList(Math.max(0, lines.size() - count), lines.size());
+    }
+
+    private static List<Integer> accountsOf(String line) {
+        List<Integer> accounts = new ArrayList<>(2);
+        for (String word : line.split("[ .]")) {
+            int dash = word.indexOf('-');
+            if (dash > 0) {
+                int account = Integer.parseInt(word.substring(dash + 1));
+                if (!accounts.contains(account)) {
+                    accounts.add(account);
+                }
+            }
+        }
+        return accounts;
+    }
+
+    private static List<String> texts(List<TransactionHistory.Entry> entries) {
+        List<String> texts = new ArrayList<>(entries.size());
+        for (TransactionHistory.Entry entry : entries) {
+            texts.add(entry.getText());
+        }
+        return texts;
+    }
+}
@@ -1,34 +1,333 @@
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The {@code transactionLogger} class is responsible for logging transaction messages to a log file.
  * It maintains a log file where each transaction message is appended.
  * This class uses a static method for logging, making it easily accessible.
+ *
+ * <p>
+ * By default each message is written synchronously. After {@link #startAsync} is called,
+ * messages are handed to an {@link AsyncLogWriter}, which batches them onto a single
+ * open file channel from a background thread until {@link #shutdown} drains it.
+ * </p>
+ *
+ * <p>
+ * Transactions are logged as structured events with {@link #logEvent} and
+ * {@link #logEvents} rather than as finished sentences. In asynchronous mode an event is
+ * queued as its fields, and its sentence is rendered by the background writer; when
+ * logging synchronously, it is rendered into one reusable {@link LogLine}. Either way
+ * logging a transaction builds no strings.
+ * </p>
+ *
+ * <p>
+ * Both ways add the accounts of each line they write to a {@link TransactionLogIndex}
+ * kept in {@code TransactionLog.txt.idx}, so {@link #history()} can look up the lines of
+ * an account without scanning the log. Indexing can be turned off with
+ * {@code -Dbank.log.index=false}.
+ * </p>
  */
 public class transactionLogger {
     
     /**
      * The path of the log file where transaction messages will be recorded.
      */
-    private static final String LOG_FILE = "TransactionLog.txt";
+    static final String LOG_FILE = "TransactionLog.txt";
+
+    /**
+     * The suffix added to the log file path to name its index file.
+     */
+    static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * The index of the log, or {@code null} if indexing is turned off or the index
+     * could not be opened.
+     */
+    private static final TransactionLogIndex INDEX = openIndex();
+
+    /**
+     * The asynchronous writer in use, or {@code null} when logging synchronously.
+     */
+    private static volatile AsyncLogWriter asyncWriter;
+
+    /**
+     * Guards the synchronous line, its pending accounts and the channel they are written
+     * to, which also keeps concurrent messages from interleaving.
+     */
+    private static final ReentrantLock SYNC_LOCK = new ReentrantLock();
+
+    /**
+     * The line that messages are rendered into when logging synchronously. Guarded by
+     * {@link #SYNC_LOCK}.
+     */
+    private static final LogLine SYNC_LINE = new LogLine(512);
+
+    /**
+     * The log file opened in append mode for synchronous writes, or {@code null} until
+     * the first one and after a failed one. Guarded by {@link #SYNC_LOCK}.
+     */
+    private static FileChannel syncChannel;
+
+    /**
+     * The accounts of the synchronous line, to add to the index once it is written.
+     * Guarded by {@link #SYNC_LOCK}.
+     */
+    private static final TransactionLogIndex.Pending SYNC_PENDING = new TransactionLogIndex.Pending();
+
+    /**
+     * Opens the index of the log, unless indexing is turned off.
+     */
+    private static TransactionLogIndex openIndex() {
+        if (!Boolean.parseBoolean(System.getProperty("bank.log.index", "true"))) {
+            return null;
+        }
+        try {
+            return new TransactionLogIndex(LOG_FILE, LOG_FILE + INDEX_SUFFIX, true);
+        } catch (IOException e) {
+            System.err.println("Error opening transaction log index, not indexing: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the history of the log, which finds the lines of an account through the
+     * index.
+     *
+     * @return The history, or {@code null} if the log is not indexed.
+     */
+    public static TransactionHistory history() {
+        return INDEX != null ? new TransactionHistory(LOG_FILE, INDEX) : null;
+    }
+
+    /**
+     * Switches the logger to asynchronous group-commit mode.
+     *
+     * <p>
+     * A shutdown hook is registered so that queued messages are still drained if the
+     * program ends without calling {@link #shutdown}. Calling this while asynchronous
+     * mode is already active has no effect.
+     * </p>
+     *
+     * @param durability          The durability policy for the log file.
+     * @param fsyncIntervalMillis The interval between forces in {@code INTERVAL} mode.
+     * @param capacity            The number of messages the ring buffer can hold.
+     */
+    public static synchronized void startAsync(AsyncLogWriter.Durability durability,
+            long fsyncIntervalMillis, int capacity) {
+        if (asyncWriter != null) {
+            return;
+        }
+        try {
+            asyncWriter = new AsyncLogWriter(LOG_FILE, INDEX, capacity, durability, fsyncIntervalMillis);
+            Runtime.getRuntime().addShutdownHook(new Thread(transactionLogger::shutdown));
+        } catch (IOException e) {
+            System.err.println("Error opening log file, logging synchronously: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drains every queued message to the log file and returns the logger to
+     * synchronous mode. Has no effect when the logger is already synchronous.
+     *
+     * <p>
+     * The writer is closed before the logger lets go of it. A message logged meanwhile
+     * is refused by the closing writer, and its caller waits for the writer to finish
+     * before writing the message synchronously, so lines stay in order and the offsets
+     * of the {@link TransactionLogIndex} stay those of the file.
+     * </p>
+     */
+    public static synchronized void shutdown() {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            writer.close();
+            asyncWriter = null;
+        }
+    }
 
     /**
      * Appends a transaction message to the log file.
      * 
-     * This method opens the log file in append mode, writes the given message,
-     * and adds a newline. In case of an I/O error, it prints an error message to the console.
+     * This method appends the given message and a newline to the log file, which stays
+     * open between messages. In case of an I/O error, it prints an error message to the console.
+     * In asynchronous mode the message is queued for the background writer instead; once
+     * that writer has failed to write a batch, messages are counted as failed rather than
+     * written around it, out of order. Each call is timed in the {@code log} metrics of {@link BankMetrics}.
      * 
      * @param message The transaction message to log. It should be a non-null, descriptive string
      *                representing the transaction details.
      */
     public static void log(String message) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(LOG_FILE, true))) {
-            bw.write(message);
-            bw.newLine();
+        long start = System.nanoTime();
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            boolean queued = writer.append(message);
+            if (queued || writer.hasFailed()) {
+                BankMetrics.LOG.record(start, queued);
+                return;
+            }
+            writer.close();  // Closing: write after everything it still drains
+        }
+
+        boolean written;
+        SYNC_LOCK.lock();
+        try {
+            SYNC_LINE.reset();
+            SYNC_LINE.append(message).appendLineSeparator();
+            written = writeSyncLine();
+        } finally {
+            SYNC_LOCK.unlock();
+        }
+        BankMetrics.LOG.record(start, written);
+    }
+
+    /**
+     * Logs one transaction as an event, whose sentence is rendered by
+     * {@link LogLine#appendEvent}. Timed like {@link #log(String)}.
+     *
+     * @param type          The type of the transaction.
+     * @param customer      The customer who made it.
+     * @param account       The customer's account.
+     * @param receiver      The receiving customer of a transfer or payment, or {@code null}.
+     * @param target        The receiving account of a transfer or payment, or {@code null}.
+     * @param amount        The amount, in cents.
+     * @param balance       The balance it left in the customer's account, in cents.
+     * @param targetBalance The balance it left in the receiving account, in cents.
+     */
+    public static void logEvent(TransactionType type, Customer customer, Account account, Customer receiver,
+            Account target, long amount, long balance, long targetBalance) {
+        long start = System.nanoTime();
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            boolean queued = writer.appendEvent(type, customer, account, receiver, target, amount, balance,
+                    targetBalance);
+            if (queued || writer.hasFailed()) {
+                BankMetrics.LOG.record(start, queued);
+                return;
+            }
+            writer.close();  // Closing: write after everything it still drains
+        }
+
+        boolean written;
+        SYNC_LOCK.lock();
+        try {
+            SYNC_LINE.reset();
+            SYNC_PENDING.addEvent(type, 0, account, target);
+            SYNC_LINE.appendEvent(type, customer, account, receiver, target, amount, balance, targetBalance)
+                    .appendLineSeparator();
+            written = writeSyncLine();
+        } finally {
+            SYNC_LOCK.unlock();
+        }
+        BankMetrics.LOG.record(start, written);
+    }
+
+    /**
+     * Logs the summary of an interest accrual as one {@code INTEREST} event, rendered by
+     * {@link LogLine#appendEvent} like any other. Timed like {@link #log(String)}.
+     *
+     * @param accounts The number of accounts paid.
+     * @param interest The total interest paid, in cents.
+     */
+    public static void logInterest(long accounts, long interest) {
+        logEvent(TransactionType.INTEREST, null, null, null, null, interest, accounts, 0);
+    }
+
+    /**
+     * Logs many transactions in order with one hand-off to the asynchronous writer, or
+     * one write when logging synchronously. The arguments are columns of the events, as
+     * in {@link #logEvent}; entries whose type is {@code null} are skipped. Timed as one
+     * call.
+     *
+     * @param types          The types of the transactions; {@code null} skips an entry.
+     * @param customers      The customers who made them.
+     * @param accounts       The customers' accounts.
+     * @param receivers      The receiving customers of transfers and payments, or {@code null}.
+     * @param targets        The receiving accounts of transfers and payments, or {@code null}.
+     * @param amounts        The amounts, in cents.
+     * @param balances       The balances they left in the customers' accounts, in cents.
+     * @param targetBalances The balances they left in the receiving accounts, in cents.
+     * @param count          The number of entries in the columns.
+     */
+    public static void logEvents(TransactionType[] types, Customer[] customers, Account[] accounts,
+            Customer[] receivers, Account[] targets, long[] amounts, long[] balances, long[] targetBalances,
+            int count) {
+        long start = System.nanoTime();
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            boolean queued = writer.appendEvents(types, customers, accounts, receivers, targets, amounts,
+                    balances, targetBalances, count);
+            if (queued || writer.hasFailed()) {
+                BankMetrics.LOG.record(start, queued);
+                return;
+            }
+            writer.close();  // Closing: write after everything it still drains
+        }
+
+        boolean written;
+        SYNC_LOCK.lock();
+        try {
+            SYNC_LINE.reset();
+            for (int i = 0; i < count; i++) {
+                if (types[i] != null) {
+                    SYNC_PENDING.addEvent(types[i], SYNC_LINE.length(), accounts[i], targets[i]);
+                    SYNC_LINE.appendEvent(types[i], customers[i], accounts[i], receivers[i], targets[i],
+                            amounts[i], balances[i], targetBalances[i]).appendLineSeparator();
+                }
+            }
+            written = writeSyncLine();
+        } finally {
+            SYNC_LOCK.unlock();
+        }
+        BankMetrics.LOG.record(start, written);
+    }
+
+    /**
+     * Writes the synchronous line to the log file and indexes the accounts staged for
+     * it. The file is opened once and kept open; after a failed write it is closed and
+     * opened again by the next one. Must be called while holding {@link #SYNC_LOCK}.
+     *
+     * @return {@code true} if the line was written.
+     */
+    private static boolean writeSyncLine() {
+        try {
+            if (syncChannel == null) {
+                syncChannel = FileChannel.open(Paths.get(LOG_FILE), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            long base = INDEX != null ? syncChannel.size() : 0;
+            ByteBuffer buffer = ByteBuffer.wrap(SYNC_LINE.array(), 0, SYNC_LINE.length());
+            while (buffer.hasRemaining()) {
+                syncChannel.write(buffer);
+            }
+            if (INDEX != null) {
+                INDEX.commit(SYNC_PENDING, base);
+            }
+            return true;
         } catch (IOException e) {
             System.err.println("Error writing to log file: " + e.getMessage());
+            closeSyncChannel();
+            return false;
+        } finally {
+            SYNC_PENDING.clear();
+        }
+    }
+
+    /**
+     * Closes the synchronous channel, ignoring errors. Must be called while holding
+     * {@link #SYNC_LOCK}.
+     */
+    private static void closeSyncChannel() {
+        if (syncChannel != null) {
+            try {
+                syncChannel.close();
+            } catch (IOException e) {
+                // The channel is unusable either way; the next write opens a new one
+            }
+            syncChannel = null;
         }
     }
 }
@@ -0,0 +1,173 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * The bank of the JMH benchmarks, calling its hot paths directly.
+ *
+ * <p>
+ * JMH only accepts benchmarks in a named package, from which the bank's classes in the
+ * default package cannot be used, so the benchmarks in {@code bank.jmh} go through the
+ * {@link bank.jmh.Bank} interface to this class. It loads customers into
+ * {@link RunBank}'s list and directory as the bank does at startup, and keeps each
+ * customer's accounts in arrays so that choosing the accounts of an operation costs
+ * no more than an array read.
+ * </p>
+ *
+ * <p>
+ * The transaction log is written synchronously to {@code TransactionLog.txt} in the
+ * working directory, unless {@code -Dbank.log.durability} selects the asynchronous
+ * writer as for {@link RunBank}.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public class JmhBank implements bank.jmh.Bank {
+
+    /**
+     * The starting balance of every generated account, in cents. Large enough that
+     * transfers and payments of a cent never fail.
+     */
+    private static final long STARTING_BALANCE = Money.ofDollars(1_000_000_000L);
+
+    // The loaded customers and their accounts, by number
+    private Customer[] customers = new Customer[0];
+    private Account[] checking = new Account[0];
+    private Account[] saving = new Account[0];
+    private Credit[] credit = new Credit[0];
+
+    public JmhBank() {
+        String logDurability = System.getProperty("bank.log.durability");
+        if (logDurability != null) {
+            transactionLogger.startAsync(AsyncLogWriter.Durability.valueOf(logDurability.toUpperCase()),
+                    Long.getLong("bank.log.fsyncMillis", 1000), Integer.getInteger("bank.log.capacity", 8192));
+        }
+    }
+
+    @Override
+    public void generate(String path, int count) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder line = new StringBuilder(256);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path), 1 << 16)) {
+            writer.write(CsvCheckpointer.HEADER);
+            for (int id = 1; id <= count; id++) {
+                line.setLength(0);
+                writer.append(appendRow(line, id, random));
+            }
+        }
+    }
+
+    @Override
+    public String[] lines(int count) {
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder line = new StringBuilder(256);
+        String[] lines = new String[count];
+        for (int id = 1; id <= count; id++) {
+            line.setLength(0);
+            appendRow(line, id, random);
+            lines[id - 1] = line.substring(0, line.length() - 1);  // Without the line break
+        }
+        return lines;
+    }
+
+    @Override
+    public void load(String path) {
+        RunBank.LoadCSV(path);
+        int count = RunBank.customerList.size();
+        customers = RunBank.customerList.toArray(new Customer[0]);
+        checking = new Account[count];
+        saving = new Account[count];
+        credit = new Credit[count];
+        for (int i = 0; i < count; i++) {
+            ArrayList<Account> accounts = customers[i].getAccounts();
+            checking[i] = accounts.get(0);
+            saving[i] = accounts.get(1);
+            credit[i] = (Credit) accounts.get(2);
+        }
+    }
+
+    @Override
+    public void unload() {
+        for (Customer customer : RunBank.customerList) {
+            for (Account account : customer.getAccounts()) {
+                AccountStore.ACCOUNTS.free(account.getSlot());
+            }
+        }
+        RunBank.customerList = new ArrayList<>();
+        RunBank.directory = new BankDirectory();
+        RunBank.service = new BankService(RunBank.directory, null, false);
+        customers = new Customer[0];
+        checking = new Account[0];
+        saving = new Account[0];
+        credit = new Credit[0];
+    }
+
+    @Override
+    public void save(String path) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));  // Not a line per save in the results
+        try {
+            RunBank.saveToCSV(path);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    @Override
+    public String[] parse(String line) {
+        return RunBank.parseCSVLine(line);
+    }
+
+    @Override
+    public Object findCustomer(int customerID) {
+        return RunBank.findCustomerById(customerID);
+    }
+
+    @Override
+    public boolean transfer(int source, int target, long amount) {
+        return checking[source].transfer(saving[target], amount);
+    }
+
+    @Override
+    public boolean pay(int payer, int receiver, long amount) {
+        return credit[payer].pay(amount, customers[receiver]);
+    }
+
+    @Override
+    public void log(String message) {
+        transactionLogger.log(message);
+    }
+
+    @Override
+    public void logEvent(int customer) {
+        Account account = checking[customer];
+        transactionLogger.logEvent(TransactionType.DEPOSIT, customers[customer], account, null, null, 100,
+                account.getBalance(), 0);
+    }
+
+    @Override
+    public void close() {
+        transactionLogger.shutdown();
+    }
+
+    /**
+     * Appends the line of a generated customer, ending with a line break.
+     */
+    private static StringBuilder appendRow(StringBuilder line, int id, SplittableRandom random) {
+        line.append(id).append(",First").append(id).append(",Last").append(random.nextInt(1000))
+                .append(",1-Jan-80,\"").append(random.nextInt(10_000)).append(" Main St, El Paso, TX 79968\",")
+                .append("(915) 555-").append(1000 + random.nextInt(9000)).append(',');
+        line.append(id).append(',');
+        Money.append(line, STARTING_BALANCE).append(',');
+        line.append(200_000_000 + id).append(',');
+        Money.append(line, STARTING_BALANCE).append(',');
+        line.append(400_000_000 + id).append(',');
+        Money.append(line, STARTING_BALANCE).append(',');
+        return Money.append(line, 0).append('\n');
+    }
+}
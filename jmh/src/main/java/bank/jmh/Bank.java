@@ -0,0 +1,132 @@
+package bank.jmh;
+
+import java.io.IOException;
+
+/**
+ * The bank's hot paths, as the benchmarks call them.
+ *
+ * <p>
+ * The bank's classes are in the default package, which JMH does not accept for
+ * benchmarks and which no named package can import. The benchmarks therefore call the
+ * bank through this interface, implemented by {@code JmhBank} in the default package
+ * next to the bank's classes and loaded by name. There is only one implementation, so
+ * each call is inlined as a direct one and costs the benchmarks nothing.
+ * </p>
+ *
+ * <p>
+ * Customers are numbered from 0 in the order of the customer file; a generated file
+ * gives customer {@code i} the ID {@code i + 1}.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+public interface Bank {
+
+    /**
+     * Creates the bank of the benchmarks.
+     *
+     * @return The bank.
+     */
+    static Bank create() {
+        try {
+            return (Bank) Class.forName("JmhBank").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("The bank's classes are not on the class path: " + e, e);
+        }
+    }
+
+    /**
+     * Writes a customer file.
+     *
+     * @param path      The path of the file.
+     * @param customers The number of customers.
+     * @throws IOException If the file cannot be written.
+     */
+    void generate(String path, int customers) throws IOException;
+
+    /**
+     * Returns lines of a customer file, without its header.
+     *
+     * @param customers The number of lines.
+     * @return The lines.
+     */
+    String[] lines(int customers);
+
+    /**
+     * Loads a customer file, as the bank does at startup.
+     *
+     * @param path The path of the file.
+     */
+    void load(String path);
+
+    /**
+     * Drops the customers loaded last and frees the slots of their accounts, so that
+     * loading again does not grow the account store.
+     */
+    void unload();
+
+    /**
+     * Saves every loaded customer to a customer file, as the bank does on exit.
+     *
+     * @param path The path of the file.
+     */
+    void save(String path);
+
+    /**
+     * Splits a line of a customer file into its fields.
+     *
+     * @param line The line.
+     * @return The fields.
+     */
+    String[] parse(String line);
+
+    /**
+     * Finds a customer by ID.
+     *
+     * @param customerID The ID.
+     * @return The customer, or {@code null} if there is none.
+     */
+    Object findCustomer(int customerID);
+
+    /**
+     * Transfers an amount from a customer's checking account to another customer's
+     * savings account.
+     *
+     * @param source The number of the paying customer.
+     * @param target The number of the receiving customer.
+     * @param amount The amount, in cents.
+     * @return {@code true} if the transfer was made.
+     */
+    boolean transfer(int source, int target, long amount);
+
+    /**
+     * Pays an amount from a customer's credit account to another customer.
+     *
+     * @param payer    The number of the paying customer.
+     * @param receiver The number of the receiving customer.
+     * @param amount   The amount, in cents.
+     * @return {@code true} if the payment was made.
+     */
+    boolean pay(int payer, int receiver, long amount);
+
+    /**
+     * Writes a message to the transaction log.
+     *
+     * @param message The message.
+     */
+    void log(String message);
+
+    /**
+     * Writes a deposit to a customer's checking account to the transaction log, as a
+     * structured event.
+     *
+     * @param customer The number of the customer.
+     */
+    void logEvent(int customer);
+
+    /**
+     * Stops the transaction log, writing what is still queued.
+     */
+    void close();
+}
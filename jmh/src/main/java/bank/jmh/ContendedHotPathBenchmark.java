@@ -0,0 +1,15 @@
+package bank.jmh;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Runs the operations of {@link HotPathBenchmark} on four threads at once, sharing one
+ * bank, so that transfers and payments contend for the same accounts and the log
+ * benchmarks for the same log.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+@Threads(4)
+public class ContendedHotPathBenchmark extends HotPathBenchmark {
+}
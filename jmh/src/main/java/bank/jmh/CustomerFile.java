@@ -0,0 +1,72 @@
+package bank.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A generated customer file of each size, for the benchmarks that load the bank.
+ *
+ * <p>
+ * The file is written to a temporary directory once per trial, before the setup of the
+ * benchmark extending this class, and deleted after it. Each size runs in a JVM of its
+ * own, since every load adds its accounts to the bank's account store; the largest
+ * sizes need the heap given here, or more with {@code -jvmArgs}.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-Xmx4g", "--enable-preview"})
+public abstract class CustomerFile {
+
+    /**
+     * The number of customers in the file.
+     */
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int customers;
+
+    /**
+     * The bank being measured.
+     */
+    protected Bank bank;
+
+    /**
+     * The directory of the file.
+     */
+    protected File dir;
+
+    /**
+     * The path of the file.
+     */
+    protected String file;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        bank = Bank.create();
+        dir = Files.createTempDirectory("bank-jmh").toFile();
+        file = new File(dir, "customers-" + customers + ".csv").getPath();
+        bank.generate(file, customers);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        bank.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File written : files) {
+                written.delete();
+            }
+        }
+        dir.delete();
+    }
+}
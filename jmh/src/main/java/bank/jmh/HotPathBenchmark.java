@@ -0,0 +1,74 @@
+package bank.jmh;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the operations on a loaded bank: {@code findCustomerById},
+ * {@code Account.transfer}, {@code Credit.pay}, {@code transactionLogger.log} and
+ * {@code transactionLogger.logEvent}, each on customers chosen at random, on one
+ * thread. {@link ContendedHotPathBenchmark} runs the same operations on four.
+ *
+ * <p>
+ * The log benchmarks append to {@code TransactionLog.txt} in the working directory, so
+ * run them from a scratch directory.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+public class HotPathBenchmark extends CustomerFile {
+
+    /**
+     * A message as long as those the bank logs.
+     */
+    private static final String MESSAGE = "Benchmark Customer deposited $1.00 to Checking-1. "
+            + "Benchmark Customer's New Balance for Checking-1: $2.00";
+
+    @Setup(Level.Trial)
+    public void load() {
+        bank.load(file);
+    }
+
+    @Benchmark
+    public Object findCustomerById() {
+        return bank.findCustomer(1 + ThreadLocalRandom.current().nextInt(customers));
+    }
+
+    @Benchmark
+    public boolean transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return bank.transfer(random.nextInt(customers), random.nextInt(customers), 1);
+    }
+
+    @Benchmark
+    public boolean pay() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return bank.pay(random.nextInt(customers), random.nextInt(customers), 1);
+    }
+
+    @Benchmark
+    public void log() {
+        bank.log(MESSAGE);
+    }
+
+    @Benchmark
+    public void logEvent() {
+        bank.logEvent(ThreadLocalRandom.current().nextInt(customers));
+    }
+}
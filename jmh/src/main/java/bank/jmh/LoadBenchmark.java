@@ -0,0 +1,41 @@
+package bank.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code LoadCSV}: loading a whole customer file into the bank, as at startup.
+ *
+ * <p>
+ * Before each load the customers of the previous one are dropped and the slots of their
+ * accounts freed, outside the measured time, so every load starts from an empty bank.
+ * Files of 4 MB or more are loaded in parallel, as by the bank itself.
+ * </p>
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoadBenchmark extends CustomerFile {
+
+    @Setup(Level.Invocation)
+    public void unload() {
+        bank.unload();
+    }
+
+    @Benchmark
+    public void loadCSV() {
+        bank.load(file);
+    }
+}
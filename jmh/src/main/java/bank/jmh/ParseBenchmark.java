@@ -0,0 +1,55 @@
+package bank.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code parseCSVLine}: splitting one line of a customer file into its fields.
+ * The lines are those of a generated file, taken in turn, so the time does not depend
+ * on the size of the bank.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "--enable-preview")
+public class ParseBenchmark {
+
+    /**
+     * The number of distinct lines parsed.
+     */
+    private static final int LINES = 10_000;
+
+    private Bank bank;
+
+    private String[] lines;
+
+    private int next;
+
+    @Setup
+    public void generate() {
+        bank = Bank.create();
+        lines = bank.lines(LINES);
+    }
+
+    @Benchmark
+    public String[] parseCSVLine() {
+        String line = lines[next];
+        next = next + 1 < LINES ? next + 1 : 0;
+        return bank.parse(line);
+    }
+}
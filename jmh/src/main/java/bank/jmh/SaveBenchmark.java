@@ -0,0 +1,43 @@
+package bank.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code saveToCSV}: rewriting the whole customer file from the loaded bank,
+ * as on exit.
+ *
+ * @author [Jose Luis Hernandez]
+ * @version 1.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SaveBenchmark extends CustomerFile {
+
+    /**
+     * The path the customers are saved to.
+     */
+    private String saved;
+
+    @Setup(Level.Trial)
+    public void load() {
+        bank.load(file);
+        saved = new File(dir, "saved.csv").getPath();
+    }
+
+    @Benchmark
+    public void saveToCSV() {
+        bank.save(saved);
+    }
+}